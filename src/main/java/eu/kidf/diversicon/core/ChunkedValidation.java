@@ -0,0 +1,812 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.exceptions.DivIoException;
+import eu.kidf.diversicon.core.exceptions.InvalidXmlException;
+
+/**
+ * Validation of big LMF files using many cores.
+ *
+ * <p>
+ * The file is split at lines starting a {@code Lexicon},
+ * {@code LexicalEntry} or {@code Synset} element, and each chunk is given
+ * to a {@link DivXmlValidator} of its own on a worker pool, wrapped in copies
+ * of the {@code LexicalResource} and {@code Lexicon} start tags it lies in.
+ * Chunks always start at the beginning of a line, so shifting line numbers
+ * is enough to report exact positions. Ids and references collected by
+ * workers are then merged, and internal references are checked on the
+ * merged sets, so references across chunks are resolved.
+ * </p>
+ *
+ * <p>
+ * XML Schema validation can't be split, as content models and assertions
+ * span the whole document: it reads the whole file on a worker of its own,
+ * at the same time as the chunks.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+final class ChunkedValidation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedValidation.class);
+
+    /**
+     * Default value of {@link #getMinFileSize()}
+     *
+     * @since 0.1.0
+     */
+    static final long DEFAULT_MIN_FILE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Default value of {@link #getChunkSize()}
+     *
+     * @since 0.1.0
+     */
+    static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * Max number of issues each chunk keeps with full details, further
+     * issues are only counted
+     *
+     * @since 0.1.0
+     */
+    static final int MAX_CHUNK_ISSUES = DivXmlHandler.MAX_DETAILED_ISSUES;
+
+    private static volatile long minFileSize = DEFAULT_MIN_FILE_SIZE;
+
+    private static volatile long chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Files with longer lines are not split
+     */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private static final String LEXICAL_RESOURCE = "LexicalResource";
+    private static final String LEXICON = "Lexicon";
+
+    private static final List<String> BOUNDARY_TAGS = Arrays.asList(LEXICON, "LexicalEntry", "Synset");
+
+    private static final byte[] XML_DECL_START = ascii("<?xml");
+    private static final byte[] XML_DECL_END = ascii("?>");
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] TAG_END = ascii(">");
+
+    /**
+     * @since 0.1.0
+     */
+    private ChunkedValidation() {
+    }
+
+    /**
+     * Files smaller than this are validated in a single pass. By default
+     * {@link #DEFAULT_MIN_FILE_SIZE}.
+     *
+     * @since 0.1.0
+     */
+    static long getMinFileSize() {
+        return minFileSize;
+    }
+
+    /**
+     * See {@link #getMinFileSize()}
+     *
+     * @since 0.1.0
+     */
+    static void setMinFileSize(long minFileSize) {
+        checkArgument(minFileSize >= 0, "Min file size must be >= 0, found instead %s", minFileSize);
+        ChunkedValidation.minFileSize = minFileSize;
+    }
+
+    /**
+     * Approximate size in bytes of a chunk. By default
+     * {@link #DEFAULT_CHUNK_SIZE}.
+     *
+     * @since 0.1.0
+     */
+    static long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * See {@link #getChunkSize()}
+     *
+     * @since 0.1.0
+     */
+    static void setChunkSize(long chunkSize) {
+        checkArgument(chunkSize > 0, "Chunk size must be > 0, found instead %s", chunkSize);
+        ChunkedValidation.chunkSize = chunkSize;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A range of the file, with the markup needed to parse it alone
+     *
+     * @since 0.1.0
+     */
+    static class Chunk {
+        private long start;
+        private long end;
+        /**
+         * Line of the file where the chunk starts
+         */
+        private int line;
+        private byte[] prefix;
+        private int prefixLines;
+        private byte[] suffix;
+
+        Chunk(long start, int line, byte[] prefix) {
+            this.start = start;
+            this.line = line;
+            this.prefix = prefix;
+            this.prefixLines = count(prefix, (byte) '\n');
+            this.suffix = new byte[0];
+        }
+
+        /**
+         * Returns the line of the file where the chunk starts
+         */
+        int getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the amount to add to line numbers reported by a parser of
+         * the chunk to obtain line numbers in the file
+         */
+        int lineOffset() {
+            return line - prefixLines - 1;
+        }
+
+        InputStream open(File file) throws IOException {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                fis.getChannel()
+                   .position(start);
+            } catch (IOException ex) {
+                fis.close();
+                throw ex;
+            }
+            BoundedInputStream content = new BoundedInputStream(new BufferedInputStream(fis), end - start);
+            return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(prefix),
+                    content,
+                    new ByteArrayInputStream(suffix))));
+        }
+    }
+
+    /**
+     * Reads a file line by line as bytes, keeping track of positions.
+     *
+     * @since 0.1.0
+     */
+    private static class LineReader {
+        private InputStream in;
+        private byte[] line;
+        private int length;
+        /**
+         * File position of current line
+         */
+        private long start;
+        private long next;
+        private int number;
+
+        LineReader(InputStream in) {
+            this.in = in;
+            this.line = new byte[1024];
+            this.length = 0;
+            this.start = 0;
+            this.next = 0;
+            this.number = 0;
+        }
+
+        /**
+         * Reads next line, including the terminating newline.
+         *
+         * @return false at the end of file or on a line too long.
+         */
+        boolean next() throws IOException {
+            start = next;
+            length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (length == line.length) {
+                    if (length == MAX_LINE_LENGTH) {
+                        LOG.debug("Found line longer than " + MAX_LINE_LENGTH + " bytes, won't split the file.");
+                        return false;
+                    }
+                    line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH, length * 2));
+                }
+                line[length++] = (byte) b;
+                if (b == '\n') {
+                    break;
+                }
+            }
+            next = start + length;
+            if (length == 0) {
+                return false;
+            }
+            number++;
+            return true;
+        }
+
+        /**
+         * Returns the position of first non whitespace byte, or -1 if none
+         */
+        int firstNonBlank() {
+            for (int i = 0; i < length; i++) {
+                if (line[i] != ' ' && line[i] != '\t' && line[i] != '\r' && line[i] != '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the position of {@code bytes} in current line starting from
+         * {@code from}, or -1 if not found.
+         */
+        int indexOf(byte[] bytes, int from) {
+            for (int i = Math.max(0, from); i + bytes.length <= length; i++) {
+                int j = 0;
+                while (j < bytes.length && line[i + j] == bytes[j]) {
+                    j++;
+                }
+                if (j == bytes.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns {@code true} if an element with given name starts at
+         * {@code pos}
+         */
+        boolean startsTag(int pos, String name) {
+            if (pos < 0 || pos >= length || line[pos] != '<') {
+                return false;
+            }
+            int end = pos + name.length() + 1;
+            if (end > length) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (line[pos + 1 + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            if (end == length) {
+                return true;
+            }
+            byte b = line[end];
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' || b == '/';
+        }
+
+        /**
+         * Returns whether a comment is open at the end of current line, given
+         * whether it was open at its start.
+         */
+        boolean inCommentAfter(boolean inComment) {
+            int i = 0;
+            while (true) {
+                int found = indexOf(inComment ? COMMENT_END : COMMENT_START, i);
+                if (found == -1) {
+                    return inComment;
+                }
+                i = found + (inComment ? COMMENT_END.length : COMMENT_START.length);
+                inComment = !inComment;
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static int count(byte[] bytes, byte b) {
+        int ret = 0;
+        for (byte c : bytes) {
+            if (c == b) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns {@code true} if {@code file} is worth validating in chunks
+     *
+     * @since 0.1.0
+     */
+    static boolean isWorthy(File file) {
+        return file.length() >= minFileSize && Runtime.getRuntime()
+                                                      .availableProcessors() > 1;
+    }
+
+    /**
+     * Splits {@code file} in chunks of about {@code chunkSize} bytes.
+     *
+     * @return the chunks, or {@code null} if the file can't be split.
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    static List<Chunk> split(File file, long chunkSize) throws IOException {
+
+        List<Chunk> ret = new ArrayList<>();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            LineReader reader = new LineReader(in);
+
+            byte[] xmlDecl = new byte[0];
+            ByteArrayOutputStream lexResTag = null;
+            ByteArrayOutputStream lexiconTag = null;
+            // tag being copied, until its closing '>'
+            ByteArrayOutputStream capture = null;
+            boolean inComment = false;
+
+            Chunk chunk = new Chunk(0, 1, new byte[0]);
+            ret.add(chunk);
+
+            while (reader.next()) {
+                int pos = reader.firstNonBlank();
+
+                if (reader.number == 1) {
+                    if (reader.length >= 2 && ((reader.line[0] == (byte) 0xFE && reader.line[1] == (byte) 0xFF)
+                            || (reader.line[0] == (byte) 0xFF && reader.line[1] == (byte) 0xFE))) {
+                        LOG.debug("Found UTF-16 file, won't split it.");
+                        return null;
+                    }
+                    // utf-8 byte order mark
+                    if (reader.length >= 3 && reader.line[0] == (byte) 0xEF && reader.line[1] == (byte) 0xBB
+                            && reader.line[2] == (byte) 0xBF) {
+                        pos = 3;
+                    }
+                    if (pos >= 0 && reader.indexOf(XML_DECL_START, pos) == pos) {
+                        int end = reader.indexOf(XML_DECL_END, pos);
+                        if (end == -1) {
+                            return null;
+                        }
+                        xmlDecl = Arrays.copyOfRange(reader.line, pos, end + XML_DECL_END.length);
+                    }
+                }
+
+                boolean wasInComment = inComment;
+                inComment = reader.inCommentAfter(inComment);
+
+                if (capture == null && !wasInComment) {
+                    if (lexResTag == null && reader.startsTag(pos, LEXICAL_RESOURCE)) {
+                        lexResTag = new ByteArrayOutputStream();
+                        capture = lexResTag;
+                    } else if (lexResTag != null && reader.startsTag(pos, LEXICON)) {
+                        lexiconTag = new ByteArrayOutputStream();
+                        capture = lexiconTag;
+                    }
+
+                    String tag = null;
+                    for (String t : BOUNDARY_TAGS) {
+                        if (reader.startsTag(pos, t)) {
+                            tag = t;
+                        }
+                    }
+
+                    if (tag != null
+                            && lexResTag != null
+                            && lexResTag != capture
+                            && reader.start - chunk.start >= chunkSize
+                            && (LEXICON.equals(tag) || (lexiconTag != null && lexiconTag != capture))) {
+
+                        chunk.end = reader.start;
+
+                        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+                        prefix.write(xmlDecl);
+                        prefix.write(lexResTag.toByteArray());
+                        if (LEXICON.equals(tag)) {
+                            chunk.suffix = "\n</LexicalResource>".getBytes(StandardCharsets.US_ASCII);
+                        } else {
+                            prefix.write(lexiconTag.toByteArray());
+                            chunk.suffix = "\n</Lexicon></LexicalResource>".getBytes(StandardCharsets.US_ASCII);
+                        }
+                        prefix.write('\n');
+
+                        chunk = new Chunk(reader.start, reader.number, prefix.toByteArray());
+                        ret.add(chunk);
+                    }
+                }
+
+                if (capture != null) {
+                    int from = capture.size() == 0 ? pos : 0;
+                    int end = reader.indexOf(TAG_END, from);
+                    if (end == -1) {
+                        capture.write(reader.line, from, reader.length - from);
+                    } else {
+                        capture.write(reader.line, from, end + 1 - from);
+                        capture = null;
+                    }
+                }
+            }
+
+            if (reader.length > 0) {
+                // line too long
+                return null;
+            }
+            chunk.end = reader.next;
+        }
+
+        return ret.size() > 1 ? ret : null;
+    }
+
+    /**
+     * Reports line numbers shifted by a fixed amount
+     *
+     * @since 0.1.0
+     */
+    private static class OffsetLocator implements Locator {
+
+        private Locator locator;
+        private int offset;
+
+        OffsetLocator(Locator locator, int offset) {
+            this.locator = locator;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getPublicId() {
+            return locator.getPublicId();
+        }
+
+        @Override
+        public String getSystemId() {
+            return locator.getSystemId();
+        }
+
+        @Override
+        public int getLineNumber() {
+            int ret = locator.getLineNumber();
+            return ret < 0 ? ret : ret + offset;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return locator.getColumnNumber();
+        }
+    }
+
+    /**
+     * An issue found in a chunk
+     *
+     * @since 0.1.0
+     */
+    private static class Issue {
+        @Nullable
+        private DivValidationError code;
+        private SAXParseException ex;
+        private boolean warning;
+
+        Issue(@Nullable DivValidationError code, SAXParseException ex, boolean warning) {
+            this.code = code;
+            this.ex = ex;
+            this.warning = warning;
+        }
+    }
+
+    /**
+     * Silently records issues found in a chunk, to be reported later in
+     * document order. Only the first {@link #MAX_CHUNK_ISSUES} issues are
+     * kept, like {@link DivXmlHandler} only keeps the first ones, the others
+     * are just counted.
+     *
+     * @since 0.1.0
+     */
+    private static class ChunkHandler extends DivXmlHandler {
+
+        private List<Issue> issues;
+
+        /**
+         * Codes of issues which were not kept to number of them, {@code null}
+         * code for issues without one
+         */
+        private Map<DivValidationError, Long> omittedWarnings;
+        private Map<DivValidationError, Long> omittedErrors;
+
+        ChunkHandler(XmlValidationConfig config, String defaultSystemId) {
+            super(config, defaultSystemId);
+            this.issues = new ArrayList<>();
+            this.omittedWarnings = new HashMap<>();
+            this.omittedErrors = new HashMap<>();
+        }
+
+        private void record(@Nullable DivValidationError code, SAXParseException ex, boolean warning) {
+            if (issues.size() < MAX_CHUNK_ISSUES) {
+                issues.add(new Issue(code, ex, warning));
+            } else {
+                Map<DivValidationError, Long> omitted = warning ? omittedWarnings : omittedErrors;
+                Long count = omitted.get(code);
+                omitted.put(code, count == null ? 1L : count + 1);
+            }
+        }
+
+        @Override
+        public void warning(SAXParseException ex) {
+            record(null, ex, true);
+            super.warning(ex);
+        }
+
+        @Override
+        public void warning(DivValidationError code, SAXParseException ex) {
+            record(code, ex, true);
+            super.warning(code, ex);
+        }
+
+        @Override
+        public void error(SAXParseException ex) throws SAXException {
+            record(null, ex, false);
+            super.error(ex);
+        }
+
+        @Override
+        public void error(DivValidationError code, SAXParseException ex) throws SAXException {
+            record(code, ex, false);
+            super.error(code, ex);
+        }
+    }
+
+    /**
+     * Performs structural validation of a chunk
+     *
+     * @since 0.1.0
+     */
+    private static DivXmlValidator validateChunk(
+            File file,
+            String systemId,
+            final Chunk chunk,
+            XmlValidationConfig chunkConfig) throws IOException, SAXException, ParserConfigurationException {
+
+        ChunkHandler handler = new ChunkHandler(chunkConfig, systemId);
+        DivXmlValidator ret = new DivXmlValidator(new LexResPackage(), handler);
+
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setValidating(false);
+
+        XMLFilterImpl filter = new XMLFilterImpl(factory.newSAXParser()
+                                                        .getXMLReader()) {
+            @Override
+            public void setDocumentLocator(Locator locator) {
+                super.setDocumentLocator(new OffsetLocator(locator, chunk.lineOffset()));
+            }
+        };
+        filter.setContentHandler(ret);
+        filter.setErrorHandler(handler);
+
+        try (InputStream is = chunk.open(file)) {
+            InputSource source = new InputSource(is);
+            source.setSystemId(systemId);
+            filter.parse(source);
+        }
+        return ret;
+    }
+
+    /**
+     * Reports issues of {@code chunk} to {@code errorHandler}, skipping the
+     * ones found in markup copied from previous chunks. Issues the chunk
+     * didn't keep are only counted.
+     *
+     * @since 0.1.0
+     */
+    private static void report(Chunk chunk, boolean first, ChunkHandler handler, DivXmlHandler errorHandler)
+            throws SAXException {
+        for (Issue issue : handler.issues) {
+            SAXParseException ex = issue.ex;
+            if (issue.code == null) {
+                // reported by the parser, line is not shifted yet
+                ex = new SAXParseException(ex.getMessage(), ex.getPublicId(), ex.getSystemId(),
+                        ex.getLineNumber() < 0 ? ex.getLineNumber() : ex.getLineNumber() + chunk.lineOffset(),
+                        ex.getColumnNumber(), ex.getException());
+            }
+            if (!first && ex.getLineNumber() >= 0 && ex.getLineNumber() < chunk.line) {
+                continue;
+            }
+            if (issue.warning) {
+                if (issue.code == null) {
+                    errorHandler.warning(ex);
+                } else {
+                    errorHandler.warning(issue.code, ex);
+                }
+            } else {
+                if (issue.code == null) {
+                    errorHandler.error(ex);
+                } else {
+                    errorHandler.error(issue.code, ex);
+                }
+            }
+        }
+        for (Map.Entry<DivValidationError, Long> entry : handler.omittedWarnings.entrySet()) {
+            errorHandler.countOmitted(entry.getKey(), true, entry.getValue());
+        }
+        for (Map.Entry<DivValidationError, Long> entry : handler.omittedErrors.entrySet()) {
+            errorHandler.countOmitted(entry.getKey(), false, entry.getValue());
+        }
+    }
+
+    /**
+     * Same as
+     * {@link Diversicons#validateXmlSinglePass(File, XmlValidationConfig)},
+     * but splits the file in chunks validated in parallel. If the file
+     * can't be split, or a chunk can't be parsed alone, falls back to
+     * single pass validation.
+     *
+     * @throws DivException
+     * @throws InvalidXmlException
+     *             on fatal errors
+     *
+     * @since 0.1.0
+     */
+    static DivXmlValidator validate(
+            final File file,
+            final String systemId,
+            final XmlValidationConfig config) {
+
+        checkNotNull(file);
+        checkNotNull(systemId);
+        checkNotNull(config);
+
+        final DivXmlHandler errorHandler = new DivXmlHandler(config, systemId);
+
+        final XmlValidationConfig chunkConfig = XmlValidationConfig.builder()
+                                                                   .setLog(NOPLogger.NOP_LOGGER)
+                                                                   .setLogLimit(0)
+                                                                   .setFailFast(false)
+                                                                   .setdiversiconConfig(
+                                                                           config.getDiversiconConfig())
+                                                                   .build();
+
+        List<Chunk> chunks;
+        try {
+            chunks = split(file, chunkSize);
+            if (chunks == null) {
+                LOG.debug("Couldn't split " + systemId + ", validating it in a single pass.");
+                return singlePass(file, systemId, config);
+            }
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + file.getAbsolutePath(), ex);
+        }
+
+        int nThreads = Runtime.getRuntime()
+                              .availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+
+        try {
+            Future<Void> schemaFuture = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Diversicons.validateXmlSchema(file, config, errorHandler);
+                    return null;
+                }
+            });
+
+            LOG.debug("Validating " + systemId + " in " + chunks.size() + " chunks with " + nThreads
+                    + " threads...");
+
+            List<Future<DivXmlValidator>> futures = new ArrayList<>();
+            for (final Chunk chunk : chunks) {
+                futures.add(executor.submit(new Callable<DivXmlValidator>() {
+                    @Override
+                    public DivXmlValidator call() throws Exception {
+                        return validateChunk(file, systemId, chunk, chunkConfig);
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            get(schemaFuture);
+
+            List<DivXmlValidator> validators = new ArrayList<>();
+            try {
+                for (Future<DivXmlValidator> future : futures) {
+                    validators.add(future.get());
+                }
+            } catch (ExecutionException ex) {
+                // schema validation passed, so probably the split was wrong.
+                // Issues found by schema validation will be logged again
+                LOG.debug("Couldn't validate chunks of " + systemId + ", validating it in a single pass.",
+                        ex.getCause());
+                return singlePass(file, systemId, config);
+            }
+
+            DivXmlValidator ret = new DivXmlValidator(new LexResPackage(), errorHandler);
+            try {
+                for (int i = 0; i < chunks.size(); i++) {
+                    DivXmlValidator validator = validators.get(i);
+                    report(chunks.get(i), i == 0, (ChunkHandler) validator.getErrorHandler(), errorHandler);
+                    ret.merge(validator);
+                }
+                ret.validateCollectedRefs();
+            } catch (SAXException ex) {
+                throw new InvalidXmlException(errorHandler, "Fatal error while validating " + systemId, ex);
+            }
+            return ret;
+
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + file.getAbsolutePath(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new DivException("Interrupted while validating " + systemId, ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @throws InvalidXmlException
+     *             if the task failed with it
+     *
+     * @since 0.1.0
+     */
+    private static void get(Future<Void> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new DivException(ex.getCause());
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static DivXmlValidator singlePass(File file, String systemId, XmlValidationConfig config)
+            throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return Diversicons.validateXmlSinglePass(fis, systemId, config);
+        }
+    }
+}
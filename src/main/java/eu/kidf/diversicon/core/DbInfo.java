@@ -1,7 +1,14 @@
 package eu.kidf.diversicon.core;
 
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkDepth;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
 import javax.annotation.Nullable;
 
 import eu.kidf.diversicon.core.exceptions.DivNotFoundException;
@@ -22,6 +29,10 @@ public class DbInfo {
     @Nullable
     private ImportJob currentImportJob;
     private boolean toValidate;
+    private int closureMaxDepth;
+    private String closureRelations;
+    @Nullable
+    private Long idFilterVersion;
 
     /**
      * @since 0.1.0
@@ -33,6 +44,8 @@ public class DbInfo {
         this.toNormalize = false;
         this.toAugment = false;
         this.description = "";        
+        this.closureMaxDepth = -1;
+        this.closureRelations = "";
     }
        
 
@@ -185,5 +198,119 @@ public class DbInfo {
         this.toValidate = toValidate;
     }
 
+    /**
+     * The maximum depth of transitive closure edges materialized in the db, 
+     * or {@code -1} if there is no limit.
+     * 
+     * @see ImportConfig#getClosureMaxDepth()
+     * @since 0.1.0
+     */
+    public int getClosureMaxDepth() {
+        return closureMaxDepth;
+    }
+
+    /**
+     * See {@link #getClosureMaxDepth()}
+     * 
+     * @since 0.1.0
+     */
+    public void setClosureMaxDepth(int closureMaxDepth) {
+        checkArgument(closureMaxDepth == -1 || closureMaxDepth >= 1,
+                "Closure max depth must be -1 or >= 1, found instead %s", closureMaxDepth);
+        this.closureMaxDepth = closureMaxDepth;
+    }
+
+    /**
+     * Space separated names of relations whose transitive closure is 
+     * materialized in the db. If empty, closure is materialized for all
+     * {@link Diversicons#getCanonicalTransitiveRelations() canonical transitive relations}.
+     * 
+     * @see #materializedRelations()
+     * @see ImportConfig#getClosureRelations()
+     * @since 0.1.0
+     */
+    public String getClosureRelations() {
+        return closureRelations;
+    }
+
+    /**
+     * See {@link #getClosureRelations()}
+     * 
+     * @since 0.1.0
+     */
+    public void setClosureRelations(String closureRelations) {
+        checkNotNull(closureRelations);
+        this.closureRelations = closureRelations;
+    }
+
+    /**
+     * Version of the stored id filter, incremented each time the filter is
+     * built or removed, so instances holding a copy of the filter can tell
+     * it is out of date. It is only written with plain SQL.
+     * 
+     * @since 0.1.0
+     */
+    public long getIdFilterVersion() {
+        return idFilterVersion == null ? 0 : idFilterVersion;
+    }
+
+    /**
+     * Returns the canonical transitive relations whose closure is 
+     * materialized in the db.
+     * 
+     * @see #getClosureRelations()
+     * @since 0.1.0
+     */
+    public List<String> materializedRelations() {
+        if (closureRelations == null || closureRelations.trim().isEmpty()) {
+            return Diversicons.getCanonicalTransitiveRelations();
+        }
+        List<String> ret = new ArrayList<>();
+        for (String relName : closureRelations.trim().split("\\s+")) {
+            ret.add(relName);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns {@code true} if the closure described by this DbInfo has the
+     * same max depth and materialized relations requested by
+     * {@code importConfig}.
+     * 
+     * @since 0.1.0
+     */
+    boolean hasClosureSettings(ImportConfig importConfig) {
+        checkNotNull(importConfig);
+        List<String> relNames = importConfig.getClosureRelations()
+                                            .isEmpty() ? Diversicons.getCanonicalTransitiveRelations()
+                                                    : importConfig.getClosureRelations();
+        return closureMaxDepth == importConfig.getClosureMaxDepth()
+                && new HashSet<>(materializedRelations()).equals(new HashSet<>(relNames));
+    }
+
+    /**
+     * Returns {@code true} if all the edges of {@code relName} up to 
+     * {@code depth} are materialized in the db, {@code false} if 
+     * connections must be computed on the fly.
+     * 
+     * @param depth if {@code -1}, edges at any depth are considered.
+     * 
+     * @since 0.1.0
+     */
+    public boolean isClosureMaterialized(String relName, int depth) {
+        checkNotEmpty(relName, "Invalid relation name!");
+        checkDepth(depth);
+
+        if (depth == 0 
+                || depth == 1
+                || !Diversicons.isCanonicalRelation(relName)
+                || !Diversicons.isTransitive(relName)) {
+            return true;
+        }
+        if (!materializedRelations().contains(relName)) {
+            return false;
+        }
+        return closureMaxDepth == -1 || (depth != -1 && depth <= closureMaxDepth);
+    }
 
 }
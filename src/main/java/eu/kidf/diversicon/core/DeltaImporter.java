@@ -0,0 +1,1060 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.IndexedCollection;
+import org.hibernate.mapping.ManyToOne;
+import org.hibernate.mapping.OneToMany;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalEntry;
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.core.Lexicon;
+import de.tudarmstadt.ukp.lmf.model.core.Sense;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
+import de.tudarmstadt.ukp.lmf.model.semantics.SynsetRelation;
+import de.tudarmstadt.ukp.lmf.transform.DBConfig;
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Compares a new version of a lexical resource with the one already in the
+ * db, and tells {@link StaxLmfImporter} what to change.
+ *
+ * <p>
+ * {@link #scan(File)} streams the new file against the ids of the stored
+ * lexicons, synsets, lexical entries and senses of the resource, and against
+ * its original synset relations (the ones not added by Diversicon graph
+ * normalization). Then:
+ * </p>
+ * <ul>
+ * <li>new elements are written with all of their content</li>
+ * <li>elements missing from the file are deleted with all of their content,
+ * and references to them from other rows are set to {@code null}. Edges
+ * normalization derived from removed relations are deleted too</li>
+ * <li>elements found under a different parent are deleted and written
+ * again</li>
+ * <li>senses pointing to a different synset are linked to it</li>
+ * <li>list positions of changed parents are renumbered</li>
+ * </ul>
+ *
+ * <p>
+ * Other content of elements which are kept (definitions, examples, frames,
+ * ...) is not compared. The synsets whose edges changed are available from
+ * {@link #getTouchedSynsets()}, for incremental graph processing.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+class DeltaImporter implements StaxLmfImporter.Delta {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeltaImporter.class);
+
+    /**
+     * Max number of parameters in a single {@code IN} list
+     */
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    private static final String LEXICON = "Lexicon";
+    private static final String SYNSET = "Synset";
+    private static final String LEXICAL_ENTRY = "LexicalEntry";
+    private static final String SENSE = "Sense";
+    private static final String SYNSET_RELATION = "SynsetRelation";
+
+    private Configuration cfg;
+    private Dialect dialect;
+    private DBConfig dbConfig;
+    private String resourceName;
+
+    private Owned lexicons;
+    private Owned synsets;
+    private Owned entries;
+    private Owned senses;
+    private Owned relations;
+
+    private String senseSynsetColumn;
+    private String relNameColumn;
+    private String targetColumn;
+    private String provenanceColumn;
+
+    /**
+     * Stored lexicon ids
+     */
+    private Set<String> storedLexicons;
+
+    /**
+     * Stored synset id to lexicon id
+     */
+    private Map<String, String> storedSynsets;
+
+    /**
+     * Stored lexical entry id to lexicon id
+     */
+    private Map<String, String> storedEntries;
+
+    /**
+     * Stored sense id to lexical entry id
+     */
+    private Map<String, String> storedSenseEntries;
+
+    /**
+     * Stored sense id to synset id
+     */
+    private Map<String, String> storedSenseSynsets;
+
+    /**
+     * Key of original relation (see {@link #relationKey(String, String, String)})
+     * to ids of stored relations not found in the file yet
+     */
+    private Map<String, LinkedList<Object>> storedRelations;
+
+    /**
+     * Element name and id of new elements, see {@link #elementKey(String, String)}
+     */
+    private Set<String> added;
+
+    /**
+     * Key of new relations to number of occurrences
+     */
+    private Map<String, Integer> addedRelations;
+
+    private Set<String> keptLexicons;
+    private Set<String> keptSynsets;
+    private Set<String> keptEntries;
+
+    /**
+     * Kept sense id to synset id in the file
+     */
+    private Map<String, String> keptSenseSynsets;
+
+    /**
+     * Parents whose lists changed, to renumber
+     */
+    private Map<Owned, Set<Serializable>> dirty;
+
+    private Set<String> touchedSynsets;
+
+    /**
+     * Referring columns by referenced entity name, see
+     * {@link #references(PersistentClass)}
+     */
+    private Map<String, List<String[]>> references;
+
+    private boolean scanned;
+
+    /**
+     * @param resourceName
+     *            the name of the lexical resource to compare with, which
+     *            must be in the db.
+     *
+     * @throws UnsupportedOperationException
+     *             if mappings of compared elements can't be handled.
+     *
+     * @since 0.1.0
+     */
+    DeltaImporter(Diversicon div, Configuration cfg, String resourceName) {
+        checkNotNull(div);
+        checkNotNull(cfg);
+        checkNotEmpty(resourceName, "Invalid resource name!");
+
+        this.cfg = cfg;
+        this.dialect = ((SessionFactoryImplementor) div.getSession()
+                                                       .getSessionFactory()).getDialect();
+        this.dbConfig = div.getDbConfig();
+        this.resourceName = resourceName;
+
+        PersistentClass resourcePc = classMapping(LexicalResource.class);
+        PersistentClass lexiconPc = classMapping(Lexicon.class);
+        PersistentClass synsetPc = classMapping(Synset.class);
+        PersistentClass entryPc = classMapping(LexicalEntry.class);
+        PersistentClass sensePc = classMapping(Sense.class);
+        PersistentClass relationPc = classMapping(SynsetRelation.class);
+
+        this.lexicons = owned(resourcePc, lexiconPc);
+        this.synsets = owned(lexiconPc, synsetPc);
+        this.entries = owned(lexiconPc, entryPc);
+        this.senses = owned(entryPc, sensePc);
+        this.relations = owned(synsetPc, relationPc);
+
+        this.senseSynsetColumn = column(sensePc.getProperty("synset")
+                                               .getValue());
+        this.relNameColumn = column(relationPc.getProperty("relName")
+                                              .getValue());
+        this.targetColumn = column(relationPc.getProperty("target")
+                                             .getValue());
+        this.provenanceColumn = column(classMapping(DivSynsetRelation.class).getProperty("provenance")
+                                                                            .getValue());
+
+        this.storedLexicons = new HashSet<>();
+        this.storedSynsets = new HashMap<>();
+        this.storedEntries = new HashMap<>();
+        this.storedSenseEntries = new HashMap<>();
+        this.storedSenseSynsets = new HashMap<>();
+        this.storedRelations = new HashMap<>();
+        this.added = new HashSet<>();
+        this.addedRelations = new HashMap<>();
+        this.keptLexicons = new HashSet<>();
+        this.keptSynsets = new HashSet<>();
+        this.keptEntries = new HashSet<>();
+        this.keptSenseSynsets = new HashMap<>();
+        this.dirty = new HashMap<>();
+        this.touchedSynsets = new HashSet<>();
+        this.references = new HashMap<>();
+        this.scanned = false;
+    }
+
+    /**
+     * Loads the stored resource and compares it with {@code file}, without
+     * writing anything.
+     *
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    void scan(File file) {
+        checkNotNull(file);
+
+        long start = System.currentTimeMillis();
+
+        try (Connection conn = Diversicons.getH2Connection(dbConfig)) {
+            loadStored(conn);
+        } catch (SQLException ex) {
+            throw new DivException("Error while loading stored resource " + resourceName, ex);
+        }
+
+        try (InputStream is = new FileInputStream(file)) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(is);
+            try {
+                compare(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException ex) {
+            throw new DivException("Error while comparing " + file.getAbsolutePath() + " with stored resource "
+                    + resourceName, ex);
+        }
+
+        for (Map.Entry<String, LinkedList<Object>> entry : storedRelations.entrySet()) {
+            if (!entry.getValue()
+                      .isEmpty()) {
+                String[] parts = entry.getKey()
+                                      .split("\n", -1);
+                touchedSynsets.add(parts[0]);
+                touchedSynsets.add(parts[2]);
+                markDirty(relations, parts[0]);
+                markDirty(relations, parts[2]);
+            }
+        }
+        for (Object synsetId : removed(storedSynsets, keptSynsets)) {
+            touchedSynsets.add((String) synsetId);
+            markDirty(synsets, storedSynsets.get(synsetId));
+        }
+        scanned = true;
+
+        LOG.info("Compared " + file.getAbsolutePath() + " with stored resource " + resourceName + " in "
+                + Internals.formatInterval(System.currentTimeMillis() - start) + " :");
+        LOG.info("    new elements:        " + Internals.formatInteger(added.size()));
+        LOG.info("    new relations:       " + Internals.formatInteger(count(addedRelations)));
+        LOG.info("    removed synsets:     " + Internals.formatInteger(removed(storedSynsets, keptSynsets).size()));
+        LOG.info("    removed entries:     " + Internals.formatInteger(removed(storedEntries, keptEntries).size()));
+        LOG.info("    removed senses:      " + Internals.formatInteger(
+                removed(storedSenseEntries, keptSenseSynsets.keySet()).size()));
+        LOG.info("    removed relations:   " + Internals.formatInteger(removedRelationIds().size()));
+        LOG.info("    relinked senses:     " + Internals.formatInteger(relinks().size()));
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static long count(Map<String, Integer> counts) {
+        long ret = 0;
+        for (Integer n : counts.values()) {
+            ret += n;
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void loadStored(Connection conn) throws SQLException {
+
+        String lexiconIds = "SELECT " + lexicons.idColumn + " FROM " + lexicons.table
+                + " WHERE " + lexicons.keyColumn + " = ?";
+        String synsetIds = "SELECT " + synsets.idColumn + " FROM " + synsets.table
+                + " WHERE " + synsets.keyColumn + " IN (" + lexiconIds + ")";
+        String entryIds = "SELECT " + entries.idColumn + " FROM " + entries.table
+                + " WHERE " + entries.keyColumn + " IN (" + lexiconIds + ")";
+
+        try (PreparedStatement stat = conn.prepareStatement(lexiconIds)) {
+            stat.setString(1, resourceName);
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    storedLexicons.add(rs.getString(1));
+                }
+            }
+        }
+
+        try (PreparedStatement stat = conn.prepareStatement(
+                "SELECT " + synsets.idColumn + ", " + synsets.keyColumn + " FROM " + synsets.table
+                        + " WHERE " + synsets.keyColumn + " IN (" + lexiconIds + ")")) {
+            stat.setString(1, resourceName);
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    storedSynsets.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+
+        try (PreparedStatement stat = conn.prepareStatement(
+                "SELECT " + entries.idColumn + ", " + entries.keyColumn + " FROM " + entries.table
+                        + " WHERE " + entries.keyColumn + " IN (" + lexiconIds + ")")) {
+            stat.setString(1, resourceName);
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    storedEntries.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+
+        try (PreparedStatement stat = conn.prepareStatement(
+                "SELECT " + senses.idColumn + ", " + senses.keyColumn + ", " + senseSynsetColumn
+                        + " FROM " + senses.table
+                        + " WHERE " + senses.keyColumn + " IN (" + entryIds + ")")) {
+            stat.setString(1, resourceName);
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    storedSenseEntries.put(rs.getString(1), rs.getString(2));
+                    storedSenseSynsets.put(rs.getString(1), rs.getString(3));
+                }
+            }
+        }
+
+        try (PreparedStatement stat = conn.prepareStatement(
+                "SELECT " + relations.idColumn + ", " + relations.keyColumn + ", " + relNameColumn + ", "
+                        + targetColumn
+                        + " FROM " + relations.table
+                        + " WHERE " + relations.keyColumn + " IN (" + synsetIds + ")"
+                        + "   AND (" + provenanceColumn + " IS NULL OR " + provenanceColumn + " <> ?)")) {
+            stat.setString(1, resourceName);
+            stat.setString(2, Diversicons.getProvenanceId());
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    String key = relationKey(rs.getString(2), rs.getString(3), rs.getString(4));
+                    LinkedList<Object> ids = storedRelations.get(key);
+                    if (ids == null) {
+                        ids = new LinkedList<>();
+                        storedRelations.put(key, ids);
+                    }
+                    ids.add(rs.getObject(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the new version of the resource, sorting its elements into
+     * kept and new ones.
+     *
+     * @since 0.1.0
+     */
+    private void compare(XMLStreamReader reader) throws XMLStreamException {
+
+        Deque<Frame> stack = new ArrayDeque<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                Frame parent = stack.peek();
+                String id = reader.getAttributeValue(null, "id");
+                boolean isNew;
+                if (parent != null && parent.isNew) {
+                    isNew = true;
+                } else {
+                    isNew = compare(name, id, reader, parent);
+                }
+                if (isNew && SYNSET_RELATION.equals(name) && parent != null) {
+                    touchedSynsets.add(parent.id);
+                    touchedSynsets.add(reader.getAttributeValue(null, "target"));
+                }
+                stack.push(new Frame(name, id, isNew));
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                stack.pop();
+            }
+        }
+    }
+
+    /**
+     * Compares an element outside new ones with the stored resource.
+     *
+     * @return {@code true} if the element is new
+     *
+     * @since 0.1.0
+     */
+    private boolean compare(String name, @Nullable String id, XMLStreamReader reader, @Nullable Frame parent) {
+
+        if (LEXICON.equals(name) && id != null) {
+            if (storedLexicons.contains(id)) {
+                keptLexicons.add(id);
+                return false;
+            }
+            return add(name, id, lexicons, resourceName);
+        }
+
+        if (parent == null || parent.isNew || parent.id == null) {
+            return false;
+        }
+
+        if (SYNSET.equals(name) && LEXICON.equals(parent.name) && id != null) {
+            String lexicon = storedSynsets.get(id);
+            if (parent.id.equals(lexicon)) {
+                keptSynsets.add(id);
+                return false;
+            }
+            touchedSynsets.add(id);
+            return add(name, id, synsets, parent.id);
+        }
+
+        if (SYNSET_RELATION.equals(name) && SYNSET.equals(parent.name)) {
+            String key = relationKey(parent.id, reader.getAttributeValue(null, "relName"),
+                    reader.getAttributeValue(null, "target"));
+            LinkedList<Object> ids = storedRelations.get(key);
+            if (ids != null && !ids.isEmpty()) {
+                ids.removeFirst();
+                return false;
+            }
+            Integer n = addedRelations.get(key);
+            addedRelations.put(key, n == null ? 1 : n + 1);
+            markDirty(relations, parent.id);
+            return true;
+        }
+
+        if (LEXICAL_ENTRY.equals(name) && LEXICON.equals(parent.name) && id != null) {
+            String lexicon = storedEntries.get(id);
+            if (parent.id.equals(lexicon)) {
+                keptEntries.add(id);
+                return false;
+            }
+            return add(name, id, entries, parent.id);
+        }
+
+        if (SENSE.equals(name) && LEXICAL_ENTRY.equals(parent.name) && id != null) {
+            String entry = storedSenseEntries.get(id);
+            if (parent.id.equals(entry)) {
+                keptSenseSynsets.put(id, reader.getAttributeValue(null, "synset"));
+                return false;
+            }
+            return add(name, id, senses, parent.id);
+        }
+
+        return false;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private boolean add(String name, String id, Owned owned, String parentId) {
+        added.add(elementKey(name, id));
+        markDirty(owned, parentId);
+        return true;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void markDirty(Owned owned, @Nullable Serializable parentId) {
+        if (parentId == null || owned.indexColumn == null) {
+            return;
+        }
+        Set<Serializable> parents = dirty.get(owned);
+        if (parents == null) {
+            parents = new HashSet<>();
+            dirty.put(owned, parents);
+        }
+        parents.add(parentId);
+    }
+
+    /**
+     * Returns the stored ids not in {@code kept}
+     *
+     * @since 0.1.0
+     */
+    private static List<Object> removed(Map<String, String> stored, Set<String> kept) {
+        List<Object> ret = new ArrayList<>();
+        for (String id : stored.keySet()) {
+            if (!kept.contains(id)) {
+                ret.add(id);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private List<Object> removedRelationIds() {
+        List<Object> ret = new ArrayList<>();
+        for (List<Object> ids : storedRelations.values()) {
+            ret.addAll(ids);
+        }
+        return ret;
+    }
+
+    /**
+     * Kept senses to link to a different synset: the one they point to in
+     * the file, which might also be a stored one being deleted and written
+     * again under a different lexicon.
+     *
+     * @since 0.1.0
+     */
+    private Map<String, String> relinks() {
+        Map<String, String> ret = new HashMap<>();
+        for (Map.Entry<String, String> entry : keptSenseSynsets.entrySet()) {
+            String synset = entry.getValue();
+            if (synset == null) {
+                continue;
+            }
+            if (!synset.equals(storedSenseSynsets.get(entry.getKey()))
+                    || (storedSynsets.containsKey(synset) && !keptSynsets.contains(synset))) {
+                ret.put(entry.getKey(), synset);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the synsets whose edges changed, including removed ones, so
+     * normalization and transitive closure can be updated only around them.
+     *
+     * @throws IllegalStateException
+     *             if called before {@link #scan(File)}
+     *
+     * @since 0.1.0
+     */
+    Set<String> getTouchedSynsets() {
+        if (!scanned) {
+            throw new IllegalStateException("Tried to get touched synsets before scanning!");
+        }
+        return Collections.unmodifiableSet(touchedSynsets);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public boolean isAdded(String name, Map<String, String> attributes, @Nullable Serializable parentId) {
+        if (SYNSET_RELATION.equals(name)) {
+            if (parentId == null) {
+                return false;
+            }
+            String key = relationKey(String.valueOf(parentId), attributes.get("relName"), attributes.get("target"));
+            Integer n = addedRelations.get(key);
+            if (n == null || n == 0) {
+                return false;
+            }
+            // occurrences are consumed in the same order they were counted
+            addedRelations.put(key, n - 1);
+            return true;
+        }
+        String id = attributes.get("id");
+        return id != null && added.contains(elementKey(name, id));
+    }
+
+    /**
+     * Deletes removed and moved elements, together with edges normalization
+     * derived from them.
+     *
+     * {@inheritDoc}
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void beforeWrite(Connection conn) throws SQLException {
+
+        long start = System.currentTimeMillis();
+
+        List<Object> removedRelations = removedRelationIds();
+        List<Object> removedSynsets = removed(storedSynsets, keptSynsets);
+        List<Object> removedEntries = removed(storedEntries, keptEntries);
+        List<Object> removedSenses = removed(storedSenseEntries, keptSenseSynsets.keySet());
+        List<Object> removedLexicons = removedLexicons();
+
+        deleteDerivedEdges(conn);
+
+        // synsets losing edges to removed ones
+        for (List<Object> chunk : chunks(removedSynsets)) {
+            try (PreparedStatement stat = conn.prepareStatement(
+                    "SELECT DISTINCT " + relations.keyColumn + " FROM " + relations.table
+                            + " WHERE " + targetColumn + " IN (" + params(chunk.size()) + ")")) {
+                setParams(stat, 1, chunk);
+                try (ResultSet rs = stat.executeQuery()) {
+                    while (rs.next()) {
+                        touchedSynsets.add(rs.getString(1));
+                        markDirty(relations, rs.getString(1));
+                    }
+                }
+            }
+            try (PreparedStatement stat = conn.prepareStatement(
+                    "DELETE FROM " + relations.table
+                            + " WHERE " + provenanceColumn + " = ?"
+                            + "   AND " + targetColumn + " IN (" + params(chunk.size()) + ")")) {
+                stat.setString(1, Diversicons.getProvenanceId());
+                setParams(stat, 2, chunk);
+                stat.executeUpdate();
+            }
+        }
+
+        for (Object entryId : removedEntries) {
+            markDirty(entries, storedEntries.get(entryId));
+        }
+        for (Object senseId : removedSenses) {
+            markDirty(senses, storedSenseEntries.get(senseId));
+        }
+
+        delete(conn, classMapping(SynsetRelation.class), removedRelations);
+        delete(conn, classMapping(Sense.class), removedSenses);
+        delete(conn, classMapping(LexicalEntry.class), removedEntries);
+        delete(conn, classMapping(Synset.class), removedSynsets);
+        delete(conn, classMapping(Lexicon.class), removedLexicons);
+
+        LOG.debug("Deleted removed elements in " + Internals.formatInterval(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private List<Object> removedLexicons() {
+        List<Object> ret = new ArrayList<>();
+        for (String id : storedLexicons) {
+            if (!keptLexicons.contains(id)) {
+                ret.add(id);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Deletes edges normalization added between endpoints of removed
+     * relations, in both directions. Edges still justified by other relations
+     * are added back when normalizing touched synsets.
+     *
+     * @since 0.1.0
+     */
+    private void deleteDerivedEdges(Connection conn) throws SQLException {
+        try (PreparedStatement stat = conn.prepareStatement(
+                "DELETE FROM " + relations.table
+                        + " WHERE " + provenanceColumn + " = ?"
+                        + "   AND ((" + relations.keyColumn + " = ? AND " + targetColumn + " = ?)"
+                        + "     OR (" + relations.keyColumn + " = ? AND " + targetColumn + " = ?))")) {
+            int n = 0;
+            for (String key : storedRelations.keySet()) {
+                if (storedRelations.get(key)
+                                   .isEmpty()) {
+                    continue;
+                }
+                String[] parts = key.split("\n", -1);
+                stat.setString(1, Diversicons.getProvenanceId());
+                stat.setString(2, parts[0]);
+                stat.setString(3, parts[2]);
+                stat.setString(4, parts[2]);
+                stat.setString(5, parts[0]);
+                stat.addBatch();
+                if (++n % IN_CHUNK_SIZE == 0) {
+                    stat.executeBatch();
+                }
+            }
+            stat.executeBatch();
+        }
+    }
+
+    /**
+     * Links senses to their new synsets and renumbers changed lists.
+     *
+     * {@inheritDoc}
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void afterWrite(Connection conn) throws SQLException {
+
+        try (PreparedStatement stat = conn.prepareStatement(
+                "UPDATE " + senses.table + " SET " + senseSynsetColumn + " = ?"
+                        + " WHERE " + senses.idColumn + " = ?")) {
+            for (Map.Entry<String, String> entry : relinks().entrySet()) {
+                stat.setString(1, entry.getValue());
+                stat.setString(2, entry.getKey());
+                stat.addBatch();
+            }
+            stat.executeBatch();
+        }
+
+        for (Map.Entry<Owned, Set<Serializable>> entry : dirty.entrySet()) {
+            renumber(conn, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Gives elements of lists contiguous positions, keeping their order. New
+     * elements got their position in the file, ties are broken by key.
+     *
+     * @since 0.1.0
+     */
+    private static void renumber(Connection conn, Owned owned, Set<Serializable> parentIds) throws SQLException {
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT " + owned.idColumn + ", " + owned.indexColumn + " FROM " + owned.table
+                        + " WHERE " + owned.keyColumn + " = ?"
+                        + " ORDER BY " + owned.indexColumn + ", " + owned.idColumn);
+                PreparedStatement update = conn.prepareStatement(
+                        "UPDATE " + owned.table + " SET " + owned.indexColumn + " = ?"
+                                + " WHERE " + owned.idColumn + " = ?")) {
+            for (Serializable parentId : parentIds) {
+                select.setObject(1, parentId);
+                int i = owned.baseIndex;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        if (rs.getInt(2) != i) {
+                            update.setInt(1, i);
+                            update.setObject(2, rs.getObject(1));
+                            update.addBatch();
+                        }
+                        i++;
+                    }
+                }
+            }
+            update.executeBatch();
+        }
+    }
+
+    /**
+     * Deletes rows of {@code pc} with given ids together with the elements
+     * they contain, and sets to {@code null} references to them held by
+     * other rows.
+     *
+     * <p>
+     * Contained elements are the ones of non inverse one-to-many collections:
+     * inverse collections in UBY mappings, like {@code Synset.senses}, are
+     * views of references held by the elements.
+     * </p>
+     *
+     * @since 0.1.0
+     */
+    private void delete(Connection conn, PersistentClass pc, List<Object> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String table = pc.getTable()
+                         .getQuotedName(dialect);
+        String idColumn = column(pc.getIdentifier());
+
+        Iterator<?> iter = pc.getPropertyClosureIterator();
+        while (iter.hasNext()) {
+            Property prop = (Property) iter.next();
+            if (!(prop.getValue() instanceof org.hibernate.mapping.Collection)) {
+                continue;
+            }
+            org.hibernate.mapping.Collection coll = (org.hibernate.mapping.Collection) prop.getValue();
+            if (coll.isInverse()) {
+                continue;
+            }
+            String keyColumn = column(coll.getKey());
+            if (coll.isOneToMany()) {
+                PersistentClass child = ((OneToMany) coll.getElement()).getAssociatedClass();
+                delete(conn, child, selectIds(conn, child, keyColumn, ids));
+            } else {
+                execute(conn, "DELETE FROM " + coll.getCollectionTable()
+                                                   .getQuotedName(dialect)
+                        + " WHERE " + keyColumn + " IN ", ids);
+            }
+        }
+
+        for (String[] ref : references(pc)) {
+            if (ref[2] == null) {
+                execute(conn, "UPDATE " + ref[0] + " SET " + ref[1] + " = NULL WHERE " + ref[1] + " IN ", ids);
+            } else {
+                execute(conn, "DELETE FROM " + ref[0] + " WHERE " + ref[1] + " IN ", ids);
+            }
+        }
+
+        execute(conn, "DELETE FROM " + table + " WHERE " + idColumn + " IN ", ids);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private List<Object> selectIds(
+            Connection conn,
+            PersistentClass pc,
+            String keyColumn,
+            List<Object> keys) throws SQLException {
+        List<Object> ret = new ArrayList<>();
+        for (List<Object> chunk : chunks(keys)) {
+            try (PreparedStatement stat = conn.prepareStatement(
+                    "SELECT " + column(pc.getIdentifier()) + " FROM " + pc.getTable()
+                                                                          .getQuotedName(dialect)
+                            + " WHERE " + keyColumn + " IN (" + params(chunk.size()) + ")")) {
+                setParams(stat, 1, chunk);
+                try (ResultSet rs = stat.executeQuery()) {
+                    while (rs.next()) {
+                        ret.add(rs.getObject(1));
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the columns holding foreign keys to rows of {@code pc}, as
+     * arrays of table, column and, for many-to-many collection tables, the
+     * key column of the collection (these rows are deleted, other references
+     * are set to {@code null}). References declared with
+     * {@code foreign-key="none"} and read only ones are skipped.
+     *
+     * @since 0.1.0
+     */
+    private List<String[]> references(PersistentClass pc) {
+        List<String[]> ret = references.get(pc.getEntityName());
+        if (ret != null) {
+            return ret;
+        }
+        ret = new ArrayList<>();
+        Iterator<?> classIter = cfg.getClassMappings();
+        while (classIter.hasNext()) {
+            PersistentClass other = (PersistentClass) classIter.next();
+            Iterator<?> iter = other.getPropertyIterator();
+            while (iter.hasNext()) {
+                Property prop = (Property) iter.next();
+                Value value = prop.getValue();
+                if (value instanceof ManyToOne) {
+                    ManyToOne m2o = (ManyToOne) value;
+                    if (prop.isUpdateable() && !"none".equals(m2o.getForeignKeyName())
+                            && refersTo(m2o, pc)) {
+                        ret.add(new String[] { other.getTable()
+                                                    .getQuotedName(dialect),
+                                column(m2o), null });
+                    }
+                } else if (value instanceof org.hibernate.mapping.Collection) {
+                    org.hibernate.mapping.Collection coll = (org.hibernate.mapping.Collection) value;
+                    if (!coll.isOneToMany() && coll.getElement() instanceof ManyToOne
+                            && refersTo((ManyToOne) coll.getElement(), pc)) {
+                        ret.add(new String[] { coll.getCollectionTable()
+                                                   .getQuotedName(dialect),
+                                column(coll.getElement()), column(coll.getKey()) });
+                    }
+                }
+            }
+        }
+        references.put(pc.getEntityName(), ret);
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private boolean refersTo(ManyToOne m2o, PersistentClass pc) {
+        PersistentClass target = cfg.getClassMapping(m2o.getReferencedEntityName());
+        return target != null && target.getRootClass() == pc.getRootClass();
+    }
+
+    /**
+     * Executes {@code sqlPrefix} followed by {@code IN} lists of ids, in
+     * chunks.
+     *
+     * @since 0.1.0
+     */
+    private static void execute(Connection conn, String sqlPrefix, List<Object> ids) throws SQLException {
+        for (List<Object> chunk : chunks(ids)) {
+            try (PreparedStatement stat = conn.prepareStatement(sqlPrefix + "(" + params(chunk.size()) + ")")) {
+                setParams(stat, 1, chunk);
+                stat.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static List<List<Object>> chunks(List<Object> ids) {
+        List<List<Object>> ret = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CHUNK_SIZE) {
+            ret.add(ids.subList(i, Math.min(ids.size(), i + IN_CHUNK_SIZE)));
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String params(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void setParams(PreparedStatement stat, int first, Collection<Object> values)
+            throws SQLException {
+        int i = first;
+        for (Object value : values) {
+            stat.setObject(i++, value);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String elementKey(String name, String id) {
+        return name + "\t" + id;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String relationKey(String source, @Nullable String relName, @Nullable String target) {
+        return source + "\n" + relName + "\n" + target;
+    }
+
+    /**
+     * @throws UnsupportedOperationException
+     *
+     * @since 0.1.0
+     */
+    private PersistentClass classMapping(Class<?> clazz) {
+        PersistentClass ret = cfg.getClassMapping(clazz.getName());
+        if (ret == null) {
+            throw new UnsupportedOperationException("Unmapped entity " + clazz.getName());
+        }
+        return ret;
+    }
+
+    /**
+     * @throws UnsupportedOperationException
+     *
+     * @since 0.1.0
+     */
+    private String column(Value value) {
+        Iterator<?> iter = value.getColumnIterator();
+        Object sel = iter.hasNext() ? iter.next() : null;
+        if (!(sel instanceof Column) || iter.hasNext()) {
+            throw new UnsupportedOperationException("Only single column values are supported!");
+        }
+        return ((Column) sel).getQuotedName(dialect);
+    }
+
+    /**
+     * Finds the collection of {@code owner} holding {@code element}s.
+     *
+     * @throws UnsupportedOperationException
+     *
+     * @since 0.1.0
+     */
+    private Owned owned(PersistentClass owner, PersistentClass element) {
+        Iterator<?> iter = owner.getPropertyClosureIterator();
+        while (iter.hasNext()) {
+            Property prop = (Property) iter.next();
+            if (!(prop.getValue() instanceof org.hibernate.mapping.Collection)) {
+                continue;
+            }
+            org.hibernate.mapping.Collection coll = (org.hibernate.mapping.Collection) prop.getValue();
+            if (coll.isOneToMany() && !coll.isInverse()
+                    && ((OneToMany) coll.getElement()).getAssociatedClass()
+                                                      .getRootClass() == element.getRootClass()) {
+                Owned ret = new Owned();
+                ret.table = element.getTable()
+                                   .getQuotedName(dialect);
+                ret.idColumn = column(element.getIdentifier());
+                ret.keyColumn = column(coll.getKey());
+                if (coll instanceof IndexedCollection && coll instanceof org.hibernate.mapping.List) {
+                    ret.indexColumn = column(((IndexedCollection) coll).getIndex());
+                    ret.baseIndex = ((org.hibernate.mapping.List) coll).getBaseIndex();
+                }
+                return ret;
+            }
+        }
+        throw new UnsupportedOperationException("Can't find collection of " + element.getEntityName() + " in "
+                + owner.getEntityName());
+    }
+
+    /**
+     * Elements held by a one-to-many collection, in the element table.
+     *
+     * @since 0.1.0
+     */
+    private static class Owned {
+        private String table;
+        private String idColumn;
+        private String keyColumn;
+        @Nullable
+        private String indexColumn;
+        private int baseIndex;
+    }
+
+    /**
+     * An open element of the file being compared.
+     *
+     * @since 0.1.0
+     */
+    private static class Frame {
+        private String name;
+        @Nullable
+        private String id;
+        private boolean isNew;
+
+        Frame(String name, @Nullable String id, boolean isNew) {
+            this.name = name;
+            this.id = id;
+            this.isNew = isNew;
+        }
+    }
+}
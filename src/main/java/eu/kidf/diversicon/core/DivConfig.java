@@ -41,6 +41,9 @@ public class DivConfig {
 
     private DBConfig dbConfig;
 
+    @Nullable
+    private ProgressListener progressListener;
+
     /**
      * @since 0.1.0
      */
@@ -48,6 +51,7 @@ public class DivConfig {
         this.httpProxy = null;
         this.timeout = DEFAULT_TIMEOUT;
         this.dbConfig = null;
+        this.progressListener = null;
     }
 
     /**
@@ -69,6 +73,19 @@ public class DivConfig {
         return timeout;
     }
 
+    /**
+     * Returns the listener receiving progress of long running operations, if
+     * any. Listener is shared, not copied, among configs derived from this
+     * one.
+     * 
+     * @see ImportConfig#getProgressListener()
+     * @since 0.1.0
+     */
+    @Nullable
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
     /**
      * Returns a new locator builder
      * 
@@ -118,6 +135,7 @@ public class DivConfig {
         protected Builder(DivConfig divConfig) {
             this();
             this.config = Internals.deepCopy(divConfig);
+            this.config.progressListener = divConfig.progressListener;
         }
         
         
@@ -194,6 +212,18 @@ public class DivConfig {
             return this;
         }
 
+        /**
+         * Sets the listener receiving progress of long running operations
+         * like {@link Diversicon#processGraph()}, which may also cancel them.
+         * 
+         * @since 0.1.0
+         */
+        public Builder setProgressListener(@Nullable ProgressListener progressListener) {
+            checkNotCreated();
+            this.config.progressListener = progressListener;
+            return this;
+        }
+
         /**
          * Returns a new instance of Diversicon Config. You can't call this
          * method twice.
@@ -243,6 +273,7 @@ public class DivConfig {
         Internals.checkNotNull(dbConfig);
         DivConfig ret = Internals.deepCopy(this);
         ret.dbConfig = dbConfig;
+        ret.progressListener = progressListener;
         return ret; 
     }
     
@@ -3,7 +3,6 @@ package eu.kidf.diversicon.core;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -12,6 +11,7 @@ import org.xml.sax.helpers.AttributesImpl;
 
 import de.tudarmstadt.ukp.lmf.transform.DBConfig;
 import de.tudarmstadt.ukp.lmf.transform.DBToXMLTransformer;
+import de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata;
 import eu.kidf.diversicon.core.LexResPackage;
 import eu.kidf.diversicon.core.internal.Internals;
 
@@ -23,6 +23,8 @@ class DivDbToXmlTransformer extends DBToXMLTransformer {
 
     private LexResPackage lexResPackage;
 
+    private DivXmlElementWriter elementWriter;
+
     /**
      * See {@link DBToXMLTransformer#DBToXMLTransformer(DBConfig, OutputStream, String)
      *      super constructor}
@@ -41,16 +43,29 @@ class DivDbToXmlTransformer extends DBToXMLTransformer {
         sessionFactory = div.getSessionFactory();        
         checkNotNull(lexResPackage);
         this.lexResPackage = lexResPackage;
+        this.elementWriter = newElementWriter(lexResPackage);
     }
        
+    /**
+     * @since 0.1.0
+     */
+    private DivXmlElementWriter newElementWriter(LexResPackage pack) {
+        return new DivXmlElementWriter(pack) {
+            @Override
+            protected UBYLMFClassMetadata getClassMetadata(Class<?> clazz) {
+                return DivDbToXmlTransformer.this.getClassMetadata(clazz);
+            }
+        };
+    }
+
     /**
      * 
      * {@inheritDoc}
      * 
      * <p>
      * <strong>
-     * DIVERSICON NOTE: this function MUST be <i>the same</i> as 
-     * {@link DivXmlWriter#doWriteElement(Object, boolean)}<br/>
+     * DIVERSICON NOTE: elements are written by {@link DivXmlElementWriter}, 
+     * like in {@link DivXmlWriter#doWriteElement(Object, boolean)}<br/>
      * 
      * For an explanation, see {@link Internals#prepareXmlElement(Object, boolean, LexResPackage, de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata, AttributesImpl, List)
      * prepareXmlElement} 
@@ -63,29 +78,7 @@ class DivDbToXmlTransformer extends DBToXMLTransformer {
      */
     @Override
     protected void doWriteElement(Object lmfObject, boolean closeTag) throws SAXException {
-
-        AttributesImpl atts = new AttributesImpl();
-        List<Object> children = new ArrayList<>();
-        
-        @Nullable
-        String elementName = Internals.prepareXmlElement(lmfObject,
-                closeTag,
-                lexResPackage,
-                getClassMetadata(lmfObject.getClass()),
-                atts, 
-                children);
-        
-        if (elementName == null){
-            return;
-        }
-        
-        th.startElement("", "", elementName, atts);
-        for (Object child : children) {
-            doWriteElement(child, true);
-        }
-        if (closeTag) 
-            th.endElement("", "", elementName);
+        elementWriter.write(th, lmfObject, closeTag);
     }
 
-
 }
@@ -0,0 +1,384 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.core.Sense;
+import de.tudarmstadt.ukp.lmf.model.interfaces.IHasID;
+import de.tudarmstadt.ukp.lmf.model.miscellaneous.EVarType;
+import de.tudarmstadt.ukp.lmf.model.morphology.Lemma;
+import de.tudarmstadt.ukp.lmf.model.semantics.SynsetRelation;
+import de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata;
+import de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata.UBYLMFFieldMetadata;
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Writes LMF objects as SAX events, producing the same elements as
+ * {@link Internals#prepareXmlElement(Object, boolean, LexResPackage, UBYLMFClassMetadata, AttributesImpl, List)
+ * prepareXmlElement} without reflection per field.
+ *
+ * <p>
+ * The first time a class is met, its fields are compiled once and for all
+ * into a {@link ClassWriter} holding attributes and children in DTD order,
+ * with getters as {@link MethodHandle method handles}. Attributes are
+ * collected in a single buffer reused for all elements, and children are
+ * written straight from the getters without collecting them first.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread safe, compiled class writers are shared.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+abstract class DivXmlElementWriter {
+
+    private static final String CDATA = "CDATA";
+
+    private static final ConcurrentMap<Class<?>, ClassWriter> CLASS_WRITERS = new ConcurrentHashMap<>();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final AttributesImpl atts;
+
+    private final StringBuilder idrefs;
+
+    /**
+     * Attributes of the LexicalResource coming before the fields
+     */
+    private final String[] lexResHeadAtts;
+
+    /**
+     * Attributes of the LexicalResource coming after the fields
+     */
+    private final String[] lexResTailAtts;
+
+    /**
+     * @since 0.1.0
+     */
+    DivXmlElementWriter(LexResPackage pack) {
+        checkNotNull(pack);
+
+        this.atts = new AttributesImpl();
+        this.idrefs = new StringBuilder();
+
+        this.lexResHeadAtts = new String[] { "prefix", pack.getPrefix() };
+
+        List<String> tail = new ArrayList<>();
+        boolean foundXsi = false;
+        String xsiPrefix = "xsi";
+        for (Map.Entry<String, String> entry : pack.getNamespaces()
+                                                   .entrySet()) {
+            tail.add("xmlns:" + entry.getKey());
+            tail.add(entry.getValue());
+            if (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(entry.getValue())) {
+                foundXsi = true;
+                xsiPrefix = entry.getKey();
+            }
+        }
+        if (!foundXsi) {
+            tail.add("xmlns:" + xsiPrefix);
+            tail.add(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+        }
+        tail.add(xsiPrefix + ":noNamespaceSchemaLocation");
+        tail.add(Diversicons.SCHEMA_1_0_PUBLIC_URL);
+        // default namespace is too complicated for users!
+        this.lexResTailAtts = tail.toArray(new String[tail.size()]);
+    }
+
+    /**
+     * Returns the UBY metadata of {@code clazz}, only asked the first time
+     * the class is met.
+     *
+     * @since 0.1.0
+     */
+    protected abstract UBYLMFClassMetadata getClassMetadata(Class<?> clazz);
+
+    /**
+     * Writes {@code lmfObject} and its children to {@code handler}. If
+     * {@code closeTag} is false, the element is left open and its
+     * {@link EVarType#CHILDREN collections of children} are not written.
+     *
+     * @since 0.1.0
+     */
+    void write(ContentHandler handler, Object lmfObject, boolean closeTag) throws SAXException {
+        checkNotNull(lmfObject);
+
+        if (lmfObject instanceof DivSynsetRelation) {
+            DivSynsetRelation dsr = (DivSynsetRelation) lmfObject;
+            if (Diversicons.getProvenanceId()
+                           .equals(dsr.getProvenance())) {
+                if (dsr.getDepth() > 1) {
+                    return;
+                }
+                if (!Diversicons.isCanonicalRelation(dsr.getRelName())) {
+                    return;
+                }
+            }
+        }
+
+        ClassWriter classWriter = classWriter(lmfObject.getClass());
+
+        atts.clear();
+        boolean lexRes = lmfObject instanceof LexicalResource;
+        if (lexRes) {
+            addAttributes(lexResHeadAtts);
+        }
+        for (FieldWriter field : classWriter.attributes) {
+            field.addAttribute(this, lmfObject);
+        }
+        if (lexRes) {
+            addAttributes(lexResTailAtts);
+        }
+
+        handler.startElement("", "", classWriter.elementName, atts);
+        // handler is done with attributes, so children can reuse the buffer
+        for (FieldWriter field : classWriter.children) {
+            field.writeChildren(this, handler, lmfObject, closeTag);
+        }
+        if (closeTag) {
+            handler.endElement("", "", classWriter.elementName);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void addAttributes(String[] namesAndValues) {
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            atts.addAttribute("", "", namesAndValues[i], CDATA, namesAndValues[i + 1]);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private ClassWriter classWriter(Class<?> clazz) {
+        ClassWriter ret = CLASS_WRITERS.get(clazz);
+        if (ret == null) {
+            ret = compile(clazz, getClassMetadata(clazz));
+            ClassWriter old = CLASS_WRITERS.putIfAbsent(clazz, ret);
+            if (old != null) {
+                ret = old;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    private static ClassWriter compile(Class<?> clazz, UBYLMFClassMetadata classMetadata) {
+        checkNotNull(classMetadata);
+
+        String elementName;
+        if (DivSynsetRelation.class.isAssignableFrom(clazz)) {
+            // DivSynsetRelation getters are the ones of SynsetRelation
+            elementName = SynsetRelation.class.getSimpleName();
+        } else {
+            elementName = clazz.getSimpleName();
+            int hibernateSuffixIdx = elementName.indexOf("_$$");
+            if (hibernateSuffixIdx > 0) {
+                elementName = elementName.substring(0, hibernateSuffixIdx);
+            }
+        }
+
+        List<UBYLMFFieldMetadata> fields;
+        // DTD order table is not thread safe
+        synchronized (DivXmlElementWriter.class) {
+            fields = Internals.extractFieldsInDtdOrder(classMetadata, elementName);
+        }
+
+        List<FieldWriter> attributes = new ArrayList<>();
+        List<FieldWriter> children = new ArrayList<>();
+
+        for (UBYLMFFieldMetadata fieldMeta : fields) {
+            EVarType varType = fieldMeta.getVarType();
+            String xmlFieldName = fieldMeta.getName()
+                                           .replace("_", "");
+            switch (varType) {
+            case ATTRIBUTE:
+            case ATTRIBUTE_OPTIONAL:
+            case IDREFS:
+                attributes.add(new FieldWriter(xmlFieldName, varType, getter(fieldMeta.getGetter()),
+                        // workaround for
+                        // https://github.com/diversicon-kb/diversicon/issues/24
+                        Sense.class.isAssignableFrom(clazz) && xmlFieldName.equals("index")));
+                break;
+            case IDREF:
+                if (Lemma.class.isAssignableFrom(clazz)
+                        && xmlFieldName.equals("lexicalEntry")) {
+                    break; // workaround for
+                           // https://github.com/diversicon-kb/diversicon/issues/22
+                }
+                attributes.add(new FieldWriter(xmlFieldName, varType, getter(fieldMeta.getGetter()), false));
+                break;
+            case CHILD:
+            case CHILDREN:
+                children.add(new FieldWriter(xmlFieldName, varType, getter(fieldMeta.getGetter()), false));
+                break;
+            case NONE:
+                break;
+            }
+        }
+
+        return new ClassWriter(elementName,
+                attributes.toArray(new FieldWriter[attributes.size()]),
+                children.toArray(new FieldWriter[children.size()]));
+    }
+
+    /**
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    private static MethodHandle getter(Method method) {
+        checkNotNull(method);
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup()
+                                .unreflect(method)
+                                .asType(GETTER_TYPE);
+        } catch (IllegalAccessException | SecurityException ex) {
+            throw new DivException("Couldn't access getter " + method, ex);
+        }
+    }
+
+    /**
+     * The compiled fields of a class
+     *
+     * @since 0.1.0
+     */
+    private static final class ClassWriter {
+
+        private final String elementName;
+        private final FieldWriter[] attributes;
+        private final FieldWriter[] children;
+
+        /**
+         * @since 0.1.0
+         */
+        private ClassWriter(String elementName, FieldWriter[] attributes, FieldWriter[] children) {
+            this.elementName = elementName;
+            this.attributes = attributes;
+            this.children = children;
+        }
+    }
+
+    /**
+     * A compiled field
+     *
+     * @since 0.1.0
+     */
+    private static final class FieldWriter {
+
+        private final String xmlName;
+        private final EVarType varType;
+        private final MethodHandle getter;
+        private final boolean skipZero;
+
+        /**
+         * @param skipZero
+         *            if true, value {@code 0} is not written
+         *
+         * @since 0.1.0
+         */
+        private FieldWriter(String xmlName, EVarType varType, MethodHandle getter, boolean skipZero) {
+            this.xmlName = xmlName;
+            this.varType = varType;
+            this.getter = getter;
+            this.skipZero = skipZero;
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        @Nullable
+        private Object get(Object lmfObject) throws SAXException {
+            try {
+                return (Object) getter.invokeExact(lmfObject);
+            } catch (Throwable ex) {
+                throw new SAXException(new DivException("Error while reading field " + xmlName + " of "
+                        + lmfObject.getClass()
+                                   .getName(),
+                        ex));
+            }
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void addAttribute(DivXmlElementWriter writer, Object lmfObject) throws SAXException {
+            Object value = get(lmfObject);
+            if (value == null) {
+                return;
+            }
+            switch (varType) {
+            case IDREF:
+                writer.atts.addAttribute("", "", xmlName, CDATA, ((IHasID) value).getId());
+                break;
+            case IDREFS:
+                StringBuilder sb = writer.idrefs;
+                sb.setLength(0);
+                for (Object obj : (Iterable<?>) value) {
+                    if (sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(((IHasID) obj).getId());
+                }
+                if (sb.length() > 0) {
+                    writer.atts.addAttribute("", "", xmlName, CDATA, sb.toString());
+                }
+                break;
+            default:
+                String s = value.toString();
+                if (!(skipZero && "0".equals(s))) {
+                    writer.atts.addAttribute("", "", xmlName, CDATA, s);
+                }
+            }
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void writeChildren(DivXmlElementWriter writer,
+                ContentHandler handler,
+                Object lmfObject,
+                boolean closeTag) throws SAXException {
+            if (varType == EVarType.CHILDREN && !closeTag) {
+                return;
+            }
+            Object value = get(lmfObject);
+            if (value == null) {
+                return;
+            }
+            if (varType == EVarType.CHILD) {
+                writer.write(handler, value, true);
+            } else {
+                for (Object child : (Iterable<?>) value) {
+                    writer.write(handler, child, true);
+                }
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package eu.kidf.diversicon.core;
 
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.xml.transform.ErrorListener;
@@ -25,6 +28,13 @@ import eu.kidf.diversicon.core.internal.Internals;
  * {@value #MAX_FIRST_ISSUES} encountered
  * issue .
  * 
+ * <p>
+ * Issues reported with a {@link DivValidationError} code are also counted
+ * per code. Reporters should build full exceptions only while
+ * {@link #isDetailed(DivValidationError)} holds, and cheap ones afterwards,
+ * as past the log limit most issues are only counted.
+ * </p>
+ * 
  * @since 0.1.0
  *
  */
@@ -32,6 +42,14 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
 
     public static final int MAX_FIRST_ISSUES = 10;
 
+    /**
+     * Number of issues per {@link DivValidationError} code which deserve full
+     * details, see {@link #isDetailed(DivValidationError)}
+     * 
+     * @since 0.1.0
+     */
+    public static final int MAX_DETAILED_ISSUES = 100;
+
     private XmlValidationConfig config;
 
     /**
@@ -43,6 +61,7 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
     private List<Exception> firstErrors;
     private long warningCount;
     private long errorCount;
+    private Map<DivValidationError, Long> codeCounts;
     @Nullable
     private Exception fatalError;
     private String fatalReason;
@@ -67,6 +86,7 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
         this.errorCount = 0;
         this.firstErrors = new ArrayList<>();
         this.firstWarnings = new ArrayList<>();
+        this.codeCounts = new EnumMap<>(DivValidationError.class);
         this.fatalError = null;
         this.config = XmlValidationConfig.builder()
                                          .setLog(LoggerFactory.getLogger(DivXmlHandler.class))
@@ -131,6 +151,47 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
         return warningCount;
     }
 
+    /**
+     * Returns the number of issues reported so far with given {@code code}
+     * 
+     * @since 0.1.0
+     */
+    public long getIssueCount(DivValidationError code) {
+        checkNotNull(code);
+        Long ret = codeCounts.get(code);
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * Returns the number of issues reported so far for each
+     * {@link DivValidationError} code. Codes without issues are not
+     * included.
+     * 
+     * @since 0.1.0
+     */
+    public Map<DivValidationError, Long> getIssueCounts() {
+        return Collections.unmodifiableMap(codeCounts);
+    }
+
+    /**
+     * Returns {@code true} if next issue with given {@code code} is among the
+     * first {@value #MAX_DETAILED_ISSUES} of its kind, so it is worth a full
+     * exception with message and stack trace.
+     * 
+     * @since 0.1.0
+     */
+    public boolean isDetailed(DivValidationError code) {
+        return getIssueCount(code) < MAX_DETAILED_ISSUES;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void countCode(DivValidationError code) {
+        checkNotNull(code);
+        codeCounts.put(code, getIssueCount(code) + 1);
+    }
+
     /**
      * Returns the excpetion for the fatal error, or fails if no fatal error
      * occurred
@@ -189,6 +250,16 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
         processWarning(ex);
     }
 
+    /**
+     * Reports a warning with given validation {@code code}
+     * 
+     * @since 0.1.0
+     */
+    public void warning(DivValidationError code, SAXParseException ex) {
+        countCode(code);
+        processWarning(ex);
+    }
+
     /**
      * 
      * @since 0.1.0
@@ -220,6 +291,20 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
         }
     }
 
+    /**
+     * Reports an error with given validation {@code code}
+     * 
+     * @since 0.1.0
+     */
+    public void error(DivValidationError code, SAXParseException ex) throws SAXException {
+        countCode(code);
+        try {
+            countError(ex);
+        } catch (TransformerException e) {
+            throw new SAXException(e); // in the unlikely case ....
+        }
+    }
+
     @Override
     public void error(TransformerException ex) throws TransformerException {
         try {
@@ -259,29 +344,71 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
             config.getLog()
                   .debug("Xerces message was -> " + msg);
         } else {
-            if (firstErrors.size() < MAX_FIRST_ISSUES) {
-                firstErrors.add(ex);
-            }
+            countError(ex);
+        }
+    }
+
+    /**
+     * Doesn't look at the message of {@code ex} unless it needs to be logged.
+     * 
+     * @since 0.1.0
+     */
+    private void countError(Exception ex) throws SAXException, TransformerException {
+        if (firstErrors.size() < MAX_FIRST_ISSUES) {
+            firstErrors.add(ex);
+        }
+
+        long issues = issuesCount();
+        this.errorCount += 1;
+        if (issues < config.getLogLimit()) {
+            config.getLog()
+                  .error(exceptionToString(ex, getDefaultSystemId()));
+        } else {
+            if (config.getLogLimit() == -1) {
 
-            long issues = issuesCount();
-            this.errorCount += 1;
-            if (issues < config.getLogLimit()) {
                 config.getLog()
                       .error(exceptionToString(ex, getDefaultSystemId()));
-            } else {
-                if (config.getLogLimit() == -1) {
-
-                    config.getLog()
-                          .error(exceptionToString(ex, getDefaultSystemId()));
-                }
-                if (config.isFailFast()) {
-                    
-                    config.getLog()
-                          .error("\nFound too many errors, interrupting validation!\n");
-                    throwException(ex);
-                }
             }
+            if (config.isFailFast()) {
+                
+                config.getLog()
+                      .error("\nFound too many errors, interrupting validation!\n");
+                throwException(ex);
+            }
+        }
+    }
 
+    /**
+     * Counts {@code count} issues whose details were not kept, for example
+     * by validators of file chunks. They are neither logged nor added to
+     * first issues.
+     * 
+     * @param code
+     *            if {@code null}, issues have no code.
+     * @throws SAXException
+     *             if errors are omitted and validation should fail fast
+     * 
+     * @since 0.1.0
+     */
+    void countOmitted(@Nullable DivValidationError code, boolean warning, long count) throws SAXException {
+        checkArgument(count >= 0, "Invalid count, must be >= 0, found instead %s", count);
+        if (count == 0) {
+            return;
+        }
+        if (code != null) {
+            codeCounts.put(code, getIssueCount(code) + count);
+        }
+        if (warning) {
+            this.warningCount += count;
+        } else {
+            long issues = issuesCount();
+            this.errorCount += count;
+            if (config.isFailFast() && (config.getLogLimit() == -1 || issues + count > config.getLogLimit())) {
+                config.getLog()
+                      .error("\nFound too many errors, interrupting validation!\n");
+                throw new SAXException("Found too many errors, omitted " + count + " of them"
+                        + (code == null ? "" : " with code " + code));
+            }
         }
     }
 
@@ -317,6 +444,16 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
         }
     }
 
+    /**
+     * Reports a fatal error with given validation {@code code}
+     * 
+     * @since 0.1.0
+     */
+    public void fatalError(DivValidationError code, SAXParseException ex) throws SAXException {
+        countCode(code);
+        fatalError(ex);
+    }
+
     /**
      * DIVERSICON NOTICE: check also {@link #fatalError(SAXParseException)}
      * 
@@ -354,6 +491,20 @@ public class DivXmlHandler implements ErrorHandler, ErrorListener {
                     sb.append("Found " + warningCount + " warnings");
                 }                
             } 
+            if (!codeCounts.isEmpty()) {
+                sb.append(" (");
+                boolean first = true;
+                for (Map.Entry<DivValidationError, Long> entry : codeCounts.entrySet()) {
+                    if (!first) {
+                        sb.append(", ");
+                    }
+                    sb.append(entry.getKey())
+                      .append(": ")
+                      .append(entry.getValue());
+                    first = false;
+                }
+                sb.append(")");
+            }
             
             return sb.toString();
         }
@@ -1,5 +1,13 @@
 package eu.kidf.diversicon.core;
 
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dom4j.ElementPath;
+
 import de.tudarmstadt.ukp.lmf.transform.XMLToDBTransformer;
 
 
@@ -9,14 +17,69 @@ import de.tudarmstadt.ukp.lmf.transform.XMLToDBTransformer;
  */
 class DivXmlToDbTransformer extends XMLToDBTransformer {      
 
+    private ProgressTracker tracker;
+    private int reportStep;
+    private long elementCount;
+    private Map<String, Long> entityCounts;
+
     /**
+     * @param tracker
+     *            receives count of written elements every {@code reportStep}
+     *            elements, and is checked for cancellation.
+     * 
      * @since 0.1.0
      */
     @SuppressWarnings("deprecation")
-    DivXmlToDbTransformer(Diversicon div) {
+    DivXmlToDbTransformer(Diversicon div, ProgressTracker tracker, int reportStep) {
         super(div.getDbConfig());        
         sessionFactory.close();  // div dirty but needed...       
-        sessionFactory = div.getSessionFactory();       
+        sessionFactory = div.getSessionFactory();
+        
+        checkNotNull(tracker);
+        checkArgument(reportStep > 0, "Invalid report step, must be > 0, found instead %s", reportStep);
+        this.tracker = tracker;
+        this.reportStep = reportStep;
+        this.elementCount = 0;
+        this.entityCounts = new HashMap<>();
     }      
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws eu.kidf.diversicon.core.exceptions.CancelledOperationException
+     *             if the import was cancelled. 
+     * 
+     * @since 0.1.0
+     */
+    @Override
+    public void onEnd(ElementPath epath) {
+        String name = epath.getCurrent()
+                           .getName();
+        super.onEnd(epath);
+        Long count = entityCounts.get(name);
+        entityCounts.put(name, count == null ? 1L : count + 1);
+        if (++elementCount % reportStep == 0) {
+            tracker.report(elementCount);
+            tracker.checkCancelled();
+        }
+    }
+
+    /**
+     * Returns the number of LMF elements processed so far.
+     * 
+     * @since 0.1.0
+     */
+    long getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Returns the number of LMF elements processed so far, keyed by element
+     * name.
+     * 
+     * @since 0.1.0
+     */
+    Map<String, Long> getEntityCounts() {
+        return entityCounts;
+    }
 }
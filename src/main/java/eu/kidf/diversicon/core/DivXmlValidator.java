@@ -1,13 +1,18 @@
 package eu.kidf.diversicon.core;
 
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
-import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
 
-import java.util.Collections;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
@@ -17,7 +22,10 @@ import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
 
+import de.tudarmstadt.ukp.lmf.model.core.Sense;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
 import eu.kidf.diversicon.core.LexResPackage;
 import eu.kidf.diversicon.core.exceptions.InvalidXmlException;
 import eu.kidf.diversicon.core.internal.Internals;
@@ -56,11 +64,23 @@ public class DivXmlValidator extends DefaultHandler {
     private ValidationStep step;
 
     /**
-     * See {@link #getTagIds()}
+     * See {@link #getIdRegistry()}
      * 
      * @since 0.1.0
      */
-    private Map<String, String> tagIds;
+    private IdRegistry tagIds;
+
+    /**
+     * References found during {@link ValidationStep#STEP_1_STRUCTURAL step 1},
+     * see {@link #validateCollectedRefs()}
+     */
+    private List<Ref> refs;
+
+    /**
+     * Prefix mappings reported by namespace aware parsers before the
+     * element declaring them starts.
+     */
+    private Map<String, String> prefixMappings;
 
     /**
      * Needed only in step 3
@@ -72,6 +92,12 @@ public class DivXmlValidator extends DefaultHandler {
      */
     private @Nullable ImportConfig importConfig;
 
+    /**
+     * See {@link #getContentHash()}
+     */
+    @Nullable
+    private String contentHash;
+
     /**
      * @param pack
      *            the package to fill with metadata extracted from the XML.
@@ -90,7 +116,9 @@ public class DivXmlValidator extends DefaultHandler {
         this.errorHandler = errorHandler;
 
         this.step = ValidationStep.STEP_1_STRUCTURAL;
-        this.tagIds = new HashMap<>();
+        this.tagIds = new IdRegistry("");
+        this.refs = new ArrayList<>();
+        this.prefixMappings = new LinkedHashMap<>();
         this.diversicon = null;
     }
 
@@ -145,12 +173,7 @@ public class DivXmlValidator extends DefaultHandler {
             String msg,
             @Nullable Exception ex) throws SAXException {
 
-        String fmsg = String.valueOf(xmlValidationError) + ": " + msg;
-        if (ex == null) {
-            errorHandler.error(new SAXParseException(fmsg, locator));
-        } else {
-            errorHandler.error(new SAXParseException(fmsg, locator, ex));
-        }
+        errorHandler.error(xmlValidationError, newIssue(xmlValidationError, ex, msg));
     }
 
     /**
@@ -170,12 +193,8 @@ public class DivXmlValidator extends DefaultHandler {
             String msg,
             @Nullable Exception ex) throws SAXException {
 
-        String fmsg = String.valueOf(xmlValidationError) + ": " + msg;
-        if (ex == null) {
-            errorHandler.fatalError(new SAXParseException(fmsg, locator));
-        } else {
-            errorHandler.fatalError(new SAXParseException(fmsg, locator, ex));
-        }
+        errorHandler.fatalError(xmlValidationError,
+                new SAXParseException(IssueException.join(xmlValidationError, msg), locator, ex));
     }
 
     /**
@@ -186,12 +205,22 @@ public class DivXmlValidator extends DefaultHandler {
             String msg,
             @Nullable Exception ex) {
 
-        String fmsg = String.valueOf(xmlValidationError) + ": " + msg;
+        errorHandler.warning(xmlValidationError, newIssue(xmlValidationError, ex, msg));
+    }
 
-        if (ex == null) {
-            errorHandler.warning(new SAXParseException(fmsg, locator));
+    /**
+     * Returns the exception for an issue with given {@code code} found at
+     * current location. The first {@value DivXmlHandler#MAX_DETAILED_ISSUES}
+     * issues of each code get a regular exception, later ones a stackless
+     * exception which joins message {@code parts} only when asked for it.
+     * 
+     * @since 0.1.0
+     */
+    private SAXParseException newIssue(DivValidationError code, @Nullable Exception ex, String... parts) {
+        if (errorHandler.isDetailed(code)) {
+            return new SAXParseException(IssueException.join(code, parts), locator, ex);
         } else {
-            errorHandler.warning(new SAXParseException(fmsg, locator, ex));
+            return new IssueException(code, parts, locator, ex);
         }
     }
 
@@ -232,6 +261,16 @@ public class DivXmlValidator extends DefaultHandler {
 
             for (ImportJob job : jobs) {
 
+                if (importConfig.isDelta()
+                        && pack.getName()
+                               .equals(job.getLexResPackage()
+                                          .getName())
+                        && Objects.equals(pack.getPrefix(), job.getLexResPackage()
+                                                               .getPrefix())) {
+                    // a new version of the resource
+                    continue;
+                }
+
                 if (pack.getName()
                         .equals(job.getLexResPackage()
                                    .getName())) {
@@ -282,6 +321,18 @@ public class DivXmlValidator extends DefaultHandler {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.1.0
+     */
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (step == ValidationStep.STEP_1_STRUCTURAL && !prefix.isEmpty()) {
+            prefixMappings.put(prefix, uri);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -304,6 +355,10 @@ public class DivXmlValidator extends DefaultHandler {
                 pack.setName(name);
                 pack.setPrefix(attrs.getValue("prefix"));
 
+                for (Map.Entry<String, String> entry : prefixMappings.entrySet()) {
+                    pack.putNamespace(entry.getKey(), entry.getValue());
+                }
+
                 for (int i = 0; i < attrs.getLength(); i++) {
 
                     String qname = attrs.getQName(i);
@@ -318,8 +373,10 @@ public class DivXmlValidator extends DefaultHandler {
                     }
                 }
 
-                if (!tagIds.containsKey(name)) {
-                    tagIds.put(name, tagName);
+                // ids are only stored once prefix is known
+                tagIds = new IdRegistry(pack.getPrefix() == null ? "" : pack.getPrefix());
+                if (name != null) {
+                    tagIds.add(name, tagName);
                 }
 
             } else {
@@ -341,16 +398,22 @@ public class DivXmlValidator extends DefaultHandler {
                 String id = attrs.getValue("id");
                 if (id != null) {
                     if (!id.startsWith(pack.getPrefix() + sep)) {
-                        errorHandler.error(new SAXParseException(DivValidationError.INVALID_INTERNAL_ID
-                                + ": Found " + tagName + " id " + id
-                                + " not starting with LexicalResource prefix '" + pack.getPrefix() + "'",
-                                locator));
-                    }
-                    if (!tagIds.containsKey(id)) {
-                        tagIds.put(id, tagName);
+                        errorHandler.error(DivValidationError.INVALID_INTERNAL_ID,
+                                newIssue(DivValidationError.INVALID_INTERNAL_ID, null,
+                                        "Found ", tagName, " id ", id,
+                                        " not starting with LexicalResource prefix '", pack.getPrefix(), "'"));
                     }
+                    tagIds.add(id, tagName);
+                }
+
+                if ("SynsetRelation".equals(tagName)) {
+                    collectRef(tagName, "target", attrs, "Synset");
+                }
+                if ("Sense".equals(tagName)) {
+                    collectRef(tagName, "synset", attrs, "Synset");
                 }
             }
+            prefixMappings.clear();
 
             break;
         case STEP_2_INTERNAL:
@@ -385,12 +448,8 @@ public class DivXmlValidator extends DefaultHandler {
             break;
         case STEP_3_EXTERNAL: // checks against db
 
-            if ("SynsetRelation".equals(tagName)) {
-                validateRefAgainstDb(calcProv(tagName, "target"), attrs.getValue("target"), "Synset");
-            }
-            if ("Sense".equals(tagName)) {
-                validateRefAgainstDb(calcProv(tagName, "synset"), attrs.getValue("synset"), "Synset");
-            }
+            // references collected in step 1 are resolved all together at
+            // the end, see validateRefsAgainstDb()
 
             break;
 
@@ -533,10 +592,7 @@ public class DivXmlValidator extends DefaultHandler {
             String details,
             @Nullable Exception ex) throws SAXException {
 
-        String msg = prov + " " + id + " : " + details;
-
-        error(valCode, msg, ex);
-
+        errorHandler.error(valCode, newIssue(valCode, ex, prov, " ", id, " : ", details));
     }
 
     /**
@@ -550,59 +606,73 @@ public class DivXmlValidator extends DefaultHandler {
             String prov,
             String details,
             @Nullable Exception ex) {
-        String msg = prov + " " + id + " : " + details;
-        warning(valCode, msg, ex);
+        errorHandler.warning(valCode, newIssue(valCode, ex, prov, " ", id, " : ", details));
     }
 
     /**
-     * @param prov
-     *            a human readable provenance description
-     * @throws SAXException
+     * Checks references to ids outside the document collected during
+     * {@link ValidationStep#STEP_1_STRUCTURAL step 1} against the db. Distinct
+     * ids are looked up all together with chunked queries, then missing ones
+     * are reported at the positions of the references in the XML.
      * 
      * @since 0.1.0
      */
-    private void validateRefAgainstDb(String prov, String targetId, String targetTag)
-            throws SAXException {
-
-        checkNotEmpty(prov, "Invalid prov!");
-        checkNotEmpty(targetTag, "Invalid target tag!");
-
-        if (this.step == ValidationStep.STEP_3_EXTERNAL) {
-            if (!targetId.startsWith(pack.getPrefix())) {
-                
-                switch (targetTag) {
-                case "Synset":
+    private void validateRefsAgainstDb() {
 
-                    try {
-                        this.diversicon.getSynsetById(targetId);
-                    } catch (Exception ex) {
-                        String details = "Db does not contain referenced synset!";
+        Map<String, Class<?>> classes = new HashMap<>();
+        classes.put("Synset", Synset.class);
+        classes.put("Sense", Sense.class);
 
-                        warningRef(targetId,
-                                DivValidationError.MISSING_EXTERNAL_ID,
-                                prov,
-                                details);
-
-                    }
-                    break;
-                case "Sense":
-                    try {
-                        this.diversicon.getSenseById(targetId);
-                    } catch (Exception ex) {
-                        String details = "Db does not contain referenced sense!";
+        Map<String, Set<String>> idsByTag = new HashMap<>();
+        for (Ref ref : refs) {
+            if (isExternal(ref) && classes.containsKey(ref.targetTag)) {
+                if (!idsByTag.containsKey(ref.targetTag)) {
+                    idsByTag.put(ref.targetTag, new HashSet<String>());
+                }
+                idsByTag.get(ref.targetTag)
+                        .add(ref.targetId);
+            }
+        }
 
-                        warningRef(targetId,
-                                DivValidationError.MISSING_EXTERNAL_ID,
-                                prov,
-                                details);
+        Map<String, Set<String>> storedByTag = new HashMap<>();
+        Map<String, String> detailsByTag = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : idsByTag.entrySet()) {
+            String tag = entry.getKey();
+            detailsByTag.put(tag, "Db does not contain referenced " + tag.toLowerCase() + "!");
+            storedByTag.put(entry.getKey(), diversicon.findStoredIds(classes.get(entry.getKey()), entry.getValue()));
+            LOG.debug("Looked up " + Internals.formatInteger(entry.getValue()
+                                                                  .size())
+                    + " distinct external " + entry.getKey() + " ids, found "
+                    + Internals.formatInteger(storedByTag.get(entry.getKey())
+                                                         .size()));
+        }
 
-                    }
-                    break;
+        Locator oldLocator = locator;
+        LocatorImpl refLocator = new LocatorImpl();
+        refLocator.setSystemId(errorHandler.getDefaultSystemId());
+        try {
+            locator = refLocator;
+            for (Ref ref : refs) {
+                Set<String> stored = storedByTag.get(ref.targetTag);
+                if (stored != null && isExternal(ref) && !stored.contains(ref.targetId)) {
+                    refLocator.setLineNumber(ref.line);
+                    refLocator.setColumnNumber(ref.col);
+                    warningRef(ref.targetId,
+                            DivValidationError.MISSING_EXTERNAL_ID,
+                            ref.prov,
+                            detailsByTag.get(ref.targetTag));
                 }
             }
-
+        } finally {
+            locator = oldLocator;
         }
+    }
 
+    /**
+     * @since 0.1.0
+     */
+    private boolean isExternal(Ref ref) {
+        return !ref.targetId.startsWith(pack.getPrefix());
     }
 
     /**
@@ -637,7 +707,7 @@ public class DivXmlValidator extends DefaultHandler {
         }
 
         if (prefix.equals(pack.getPrefix())) { // internal
-            if (!targetTag.equals(tagIds.get(targetId))) {
+            if (!tagIds.contains(targetId, targetTag)) {
                 errorRef(targetId,
                         DivValidationError.MISSING_INTERNAL_ID,
                         prov,
@@ -647,20 +717,220 @@ public class DivXmlValidator extends DefaultHandler {
 
     }
 
+    /**
+     * Remembers a reference to check in later steps
+     * 
+     * @since 0.1.0
+     */
+    private void collectRef(String tagName, String attr, Attributes attrs, String targetTag) {
+        String targetId = attrs.getValue(attr);
+        if (targetId == null) {
+            return;
+        }
+        int line = locator == null ? -1 : locator.getLineNumber();
+        int col = locator == null ? -1 : locator.getColumnNumber();
+        refs.add(new Ref(calcProv(tagName, attr), targetId, targetTag, line, col));
+    }
+
+    /**
+     * Performs current {@link ValidationStep step} on the references
+     * collected during {@link ValidationStep#STEP_1_STRUCTURAL step 1}, so
+     * the XML doesn't need to be read again. Reports keep the position of
+     * the references in the XML.
+     * 
+     * <p>
+     * Behaves like a parser pass, so it advances to next step.
+     * </p>
+     * 
+     * @throws IllegalStateException
+     *             if step 1 was not done yet.
+     * 
+     * @since 0.1.0
+     */
+    public void validateCollectedRefs() throws SAXException {
+
+        if (step == ValidationStep.STEP_1_STRUCTURAL) {
+            throw new IllegalStateException("Tried to validate collected references before doing step 1!");
+        }
+
+        Locator oldLocator = locator;
+        LocatorImpl refLocator = new LocatorImpl();
+        refLocator.setSystemId(errorHandler.getDefaultSystemId());
+
+        try {
+            locator = refLocator;
+            refLocator.setLineNumber(-1);
+            refLocator.setColumnNumber(-1);
+            startDocument();
+
+            for (Ref ref : refs) {
+                refLocator.setLineNumber(ref.line);
+                refLocator.setColumnNumber(ref.col);
+                switch (step) {
+                case STEP_2_INTERNAL:
+                    validateRefAgainstXml(ref.prov, ref.targetId, ref.targetTag);
+                    break;
+                case STEP_3_EXTERNAL:
+                    // resolved all together by endDocument()
+                    break;
+                default:
+                    LOG.warn("Tried to do an unsupported step: " + this.step);
+                    break;
+                }
+            }
+            endDocument();
+        } finally {
+            locator = oldLocator;
+        }
+    }
+
     @Override
     public void endDocument() throws SAXException {
         super.endDocument();
 
+        if (step == ValidationStep.STEP_3_EXTERNAL) {
+            validateRefsAgainstDb();
+        }
+
         step = ValidationStep.values()[step.ordinal() + 1];
     }
 
     /**
-     * Returns an unmodifiable map of found ids, in the form id -> xmltag
+     * Adds to this validator what {@code chunk} collected during
+     * {@link ValidationStep#STEP_1_STRUCTURAL step 1} on a part of the same
+     * document. The first merged chunk must hold the start of the document,
+     * as the package is taken from it.
+     * 
+     * @since 0.1.0
+     */
+    void merge(DivXmlValidator chunk) {
+        checkNotNull(chunk);
+        if (chunk.step == ValidationStep.STEP_1_STRUCTURAL) {
+            throw new IllegalStateException("Tried to merge a chunk before doing step 1 on it!");
+        }
+        if (step == ValidationStep.STEP_1_STRUCTURAL) {
+            pack = chunk.pack;
+            tagIds = chunk.tagIds;
+            step = chunk.step;
+        } else {
+            tagIds.addAll(chunk.tagIds);
+        }
+        refs.addAll(chunk.refs);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void writeNullable(DataOutput out, @Nullable String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Nullable
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes what is needed to perform
+     * {@link ValidationStep#STEP_3_EXTERNAL step 3} without reading the XML
+     * again, that is the package and the external references, see
+     * {@link #readState(DataInput, DivXmlHandler)}
+     * 
+     * @throws IllegalStateException
+     *             if validator is not ready for step 3
+     * 
+     * @since 0.1.0
+     */
+    void writeState(DataOutput out) throws IOException {
+        if (step != ValidationStep.STEP_3_EXTERNAL) {
+            throw new IllegalStateException("Tried to write validator state at step " + step
+                    + ", should be at " + ValidationStep.STEP_3_EXTERNAL);
+        }
+        writeNullable(out, pack.getName());
+        writeNullable(out, pack.getPrefix());
+        writeNullable(out, pack.getLabel());
+        out.writeInt(pack.getNamespaces()
+                         .size());
+        for (Map.Entry<String, String> entry : pack.getNamespaces()
+                                                   .entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeNullable(out, entry.getValue());
+        }
+        List<Ref> external = new ArrayList<>();
+        for (Ref ref : refs) {
+            if (isExternal(ref)) {
+                external.add(ref);
+            }
+        }
+        out.writeInt(external.size());
+        for (Ref ref : external) {
+            out.writeUTF(ref.prov);
+            out.writeUTF(ref.targetId);
+            out.writeUTF(ref.targetTag);
+            out.writeInt(ref.line);
+            out.writeInt(ref.col);
+        }
+    }
+
+    /**
+     * Returns a validator ready for {@link ValidationStep#STEP_3_EXTERNAL step
+     * 3} from state written by {@link #writeState(DataOutput)}. It doesn't
+     * know the ids in the XML.
+     * 
+     * @since 0.1.0
+     */
+    static DivXmlValidator readState(DataInput in, DivXmlHandler errorHandler) throws IOException {
+        checkNotNull(errorHandler);
+        LexResPackage pack = new LexResPackage();
+        pack.setName(readNullable(in));
+        pack.setPrefix(readNullable(in));
+        pack.setLabel(readNullable(in));
+        int namespaces = in.readInt();
+        for (int i = 0; i < namespaces; i++) {
+            pack.putNamespace(in.readUTF(), readNullable(in));
+        }
+
+        DivXmlValidator ret = new DivXmlValidator(pack, errorHandler);
+        ret.tagIds = new IdRegistry(pack.getPrefix() == null ? "" : pack.getPrefix());
+        int refs = in.readInt();
+        for (int i = 0; i < refs; i++) {
+            String prov = in.readUTF();
+            String targetId = in.readUTF();
+            String targetTag = in.readUTF();
+            int line = in.readInt();
+            int col = in.readInt();
+            ret.refs.add(new Ref(prov, targetId, targetTag, line, col));
+        }
+        ret.step = ValidationStep.STEP_3_EXTERNAL;
+        return ret;
+    }
+
+    /**
+     * Returns a new map of found ids, in the form id -> xmltag. For large
+     * documents prefer {@link #getIdRegistry()}, which takes far less memory.
      * 
      * @since 0.1.0
      */
     public Map<String, String> getTagIds() {
-        return Collections.unmodifiableMap(tagIds);
+        return tagIds.toMap();
+    }
+
+    /**
+     * Returns the registry of ids found during
+     * {@link ValidationStep#STEP_1_STRUCTURAL step 1}, each with the tag
+     * declaring it. It may be reused by later import phases to look up ids
+     * of the document without reading it again.
+     * 
+     * @since 0.1.0
+     */
+    public IdRegistry getIdRegistry() {
+        return tagIds;
     }
 
     /**
@@ -670,6 +940,26 @@ public class DivXmlValidator extends DefaultHandler {
         return pack;
     }
 
+    /**
+     * The hex SHA-256 of the validated content, or {@code null} if it was
+     * not computed.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * See {@link #getContentHash()}
+     * 
+     * @since 0.1.0
+     */
+    void setContentHash(@Nullable String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     /**
      * 
      * Sets required parameters for third pass.
@@ -734,4 +1024,76 @@ public class DivXmlValidator extends DefaultHandler {
             }
         }
     }
+
+    /**
+     * A reference found in the XML
+     * 
+     * @since 0.1.0
+     */
+    private static class Ref {
+        private String prov;
+        private String targetId;
+        private String targetTag;
+        private int line;
+        private int col;
+
+        Ref(String prov, String targetId, String targetTag, int line, int col) {
+            this.prov = prov;
+            this.targetId = targetId;
+            this.targetTag = targetTag;
+            this.line = line;
+            this.col = col;
+        }
+    }
+
+    /**
+     * Exception for issues past the first
+     * {@value DivXmlHandler#MAX_DETAILED_ISSUES} of their code. It has no stack
+     * trace and joins its message only when asked for, as past the log limit
+     * it is usually just counted.
+     * 
+     * @since 0.1.0
+     */
+    private static class IssueException extends SAXParseException {
+
+        private static final long serialVersionUID = 1L;
+
+        private DivValidationError code;
+        private String[] parts;
+        @Nullable
+        private String message;
+
+        IssueException(DivValidationError code, String[] parts, @Nullable Locator locator,
+                @Nullable Exception ex) {
+            super(null, locator, ex);
+            this.code = code;
+            this.parts = parts;
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        static String join(DivValidationError code, String... parts) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(code)
+              .append(": ");
+            for (String part : parts) {
+                sb.append(part);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String getMessage() {
+            if (message == null) {
+                message = join(code, parts);
+            }
+            return message;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
@@ -4,15 +4,14 @@ import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.io.FileNotFoundException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 import de.tudarmstadt.ukp.lmf.transform.LMFXmlWriter;
+import de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata;
 import eu.kidf.diversicon.core.LexResPackage;
 import eu.kidf.diversicon.core.internal.Internals;
 
@@ -28,6 +27,9 @@ class DivXmlWriter extends LMFXmlWriter {
 
     private LexResPackage lexResPackage;
 
+    @Nullable
+    private DivXmlElementWriter elementWriter;
+
 
     /**
      * Constructs a LMFXmlWriter, XML will be saved to OutputStream out.   
@@ -39,6 +41,7 @@ class DivXmlWriter extends LMFXmlWriter {
             LexResPackage pack) throws SAXException {
         super(outputStream, dtdPath);        
         this.lexResPackage = checkNotNull(pack); 
+        this.elementWriter = newElementWriter(pack);
         
     }
 
@@ -57,14 +60,26 @@ class DivXmlWriter extends LMFXmlWriter {
         super(outputPath, dtdPath);
     }
 
+    /**
+     * @since 0.1.0
+     */
+    private DivXmlElementWriter newElementWriter(LexResPackage pack) {
+        return new DivXmlElementWriter(pack) {
+            @Override
+            protected UBYLMFClassMetadata getClassMetadata(Class<?> clazz) {
+                return DivXmlWriter.this.getClassMetadata(clazz);
+            }
+        };
+    }
+
     /**
      * 
      * {@inheritDoc}
      * 
      * <p>
      * <strong>
-     * DIVERSICON NOTE: this function MUST be <i>the same</i> as 
-     * {@link DivDbToXmlTransformer#doWriteElement(Object, boolean)}<br/>
+     * DIVERSICON NOTE: elements are written by {@link DivXmlElementWriter}, 
+     * like in {@link DivDbToXmlTransformer#doWriteElement(Object, boolean)}<br/>
      * 
      * For an explanation, see {@link Internals#prepareXmlElement(Object, boolean, LexResPackage, de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata, AttributesImpl, List)
      * Internals#prepareXmlElement} 
@@ -76,30 +91,9 @@ class DivXmlWriter extends LMFXmlWriter {
      * 
      */
     @Override
-    protected void doWriteElement(Object lmfObject, boolean closeTag) throws SAXException {               
-        
-        AttributesImpl atts = new AttributesImpl();
-        List<Object> children = new ArrayList<>();        
-        
-        @Nullable
-        String elementName = Internals.prepareXmlElement(lmfObject,
-                closeTag,
-                lexResPackage,
-                getClassMetadata(lmfObject.getClass()),
-                atts, 
-                children);
-        
-        if (elementName == null){
-            return;
-        }
-        
-        th.startElement("", "", elementName, atts);
-        for (Object child : children) {
-            doWriteElement(child, true);
-        }
-        if (closeTag) 
-            th.endElement("", "", elementName);
+    protected void doWriteElement(Object lmfObject, boolean closeTag) throws SAXException {
+        checkNotNull(elementWriter, "No lexical resource package was provided!");
+        elementWriter.write(th, lmfObject, closeTag);
     }
-        
 
 }
@@ -10,10 +10,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,6 +30,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
 
 import javax.annotation.Nullable;
@@ -33,6 +48,7 @@ import org.apache.commons.io.IOUtils;
 import org.h2.tools.Script;
 import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.ScrollMode;
@@ -42,24 +58,35 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
 import org.hibernate.service.ServiceRegistryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 import org.xml.sax.SAXException;
 
 import de.tudarmstadt.ukp.lmf.api.Uby;
 import de.tudarmstadt.ukp.lmf.model.core.LexicalEntry;
 import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
 import de.tudarmstadt.ukp.lmf.model.core.Lexicon;
+import de.tudarmstadt.ukp.lmf.model.core.Sense;
 import de.tudarmstadt.ukp.lmf.model.enums.ELabelTypeSemantics;
 import de.tudarmstadt.ukp.lmf.model.enums.EPartOfSpeech;
 import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
 import de.tudarmstadt.ukp.lmf.model.morphology.FormRepresentation;
+import de.tudarmstadt.ukp.lmf.model.miscellaneous.ConstraintSet;
 import de.tudarmstadt.ukp.lmf.model.morphology.Lemma;
+import de.tudarmstadt.ukp.lmf.model.multilingual.SenseAxis;
+import de.tudarmstadt.ukp.lmf.model.semantics.SemanticPredicate;
+import de.tudarmstadt.ukp.lmf.model.semantics.SynSemCorrespondence;
 import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
 import de.tudarmstadt.ukp.lmf.model.semantics.SynsetRelation;
+import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrame;
+import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrameSet;
 import de.tudarmstadt.ukp.lmf.transform.DBToXMLTransformer;
 import eu.kidf.diversicon.core.LexResPackage;
+import eu.kidf.diversicon.core.exceptions.CancelledOperationException;
 import eu.kidf.diversicon.core.exceptions.DivException;
 import eu.kidf.diversicon.core.exceptions.DivIoException;
 import eu.kidf.diversicon.core.exceptions.DivNotFoundException;
@@ -109,6 +136,24 @@ public class Diversicon extends Uby {
      */
     private static int COMMIT_STEP = 10000;
 
+    /**
+     * Temporary table of the synsets whose direct edges are mirrored again
+     * before an incremental closure
+     */
+    private static final String CLOSURE_SEEDS_TABLE = "ClosureSeeds";
+
+    /**
+     * Max number of ids in a single {@code IN} query
+     */
+    private static final int ID_CHUNK_SIZE = 1000;
+
+    /**
+     * Tables whose secondary indexes are dropped while writing in
+     * {@link ImportConfig#isBulkLoad() bulk load mode}
+     */
+    private static final List<String> BULK_LOAD_TABLES = Collections.unmodifiableList(
+            Arrays.asList("SynsetRelation", "Sense", "LexicalEntry"));
+
     /**
      * Maps a Diversicon Session hashcode to its Diversicon
      * 
@@ -121,6 +166,52 @@ public class Diversicon extends Uby {
      */
     private DivConfig config;
 
+    /**
+     * Lazily checked, see {@link #hasClosureTable()}
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private Boolean hasClosureTable;
+
+    /**
+     * Collects log messages of the current import job, if any
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private ImportLogSink importLogSink;
+
+    /**
+     * Synsets touched by delta imports of current {@link #importFiles(ImportConfig)}
+     * call, if the graph can be processed only around them.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private Set<String> deltaSynsets;
+
+    /**
+     * Lazily loaded, see {@link #mightContainId(String)}
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private IdFilter idFilter;
+
+    /**
+     * @since 0.1.0
+     */
+    private boolean idFilterLoaded;
+
+    /**
+     * Version of loaded {@link #idFilter}, see
+     * {@link DbInfo#getIdFilterVersion()}
+     * 
+     * @since 0.1.0
+     */
+    private long idFilterVersion;
+
     /**
      * @throws DivIoException
      * @throws InvalidSchemaException
@@ -333,14 +424,6 @@ public class Diversicon extends Uby {
             return new HashSet<Synset>().iterator();
         }
 
-        String depthConstraint;
-        if (depth == -1) {
-            depthConstraint = "";
-        } else {
-            depthConstraint = " SR.depth <= " + depth + " AND ";
-        }
-        
-        
         /*
         for (String relName : relNames) {
             if (Diversicons.isCanonicalRelation(relName) || !Diversicons.hasInverse(relName)) {
@@ -395,48 +478,20 @@ public class Diversicon extends Uby {
             orHsql = "";
         }
         */
-        String hsql = "(SR.source.id = :synsetId)";
-
-        String queryString = " SELECT SR.relName, SR.target.id"
-                + " FROM SynsetRelation SR"
-                + " WHERE "
-                + depthConstraint
-                + hsql;
-
-        Query query = session.createQuery(queryString);
-        query.setParameter("synsetId", synsetId);
-        //query.setParameter("targetSynsetId", synsetId);
-
-        Iterator it = query.iterate();
         
         Set<Synset> connectedSynsets = new HashSet<>();
-        while (it.hasNext()) {
-            Object[] result = (Object []) it.next();
-            String relName = (String) result[0];
-            String targetId = (String) result[1];
+        for (Object[] edge : getOutgoingEdges(synsetId, depth)) {
+            String relName = (String) edge[0];
+            String targetId = (String) edge[1];
             if (relSet.contains(relName)) {
                 connectedSynsets.add(getSynsetById(targetId));
             }
         }
         
-        hsql = "(SR.target.id = :synsetId)";
-        queryString = " SELECT SR.relName, SR.source.id"
-                + " FROM SynsetRelation SR"
-                + " WHERE "
-                + depthConstraint
-                + hsql;
-
-        query = session.createQuery(queryString);
-        query.setParameter("synsetId", synsetId);
-        //query.setParameter("targetSynsetId", synsetId);
-
-        it = query.iterate();
-        
-        while (it.hasNext()) {
+        for (Object[] edge : getIncomingEdges(synsetId, depth)) {
             String inverseRelName;
-            Object[] result = (Object []) it.next();
-            String relName = (String) result[0];
-            String targetId = (String) result[1];
+            String relName = (String) edge[0];
+            String targetId = (String) edge[1];
             try {
                 inverseRelName = Diversicons.getInverse(relName);
             } catch(DivNotFoundException e) {
@@ -447,6 +502,13 @@ public class Diversicon extends Uby {
             }
         }
 
+        DbInfo dbInfo = getDbInfo();
+        for (String relName : relSet) {
+            for (String targetId : traverseUnmaterialized(dbInfo, synsetId, relName, depth, null)) {
+                connectedSynsets.add(getSynsetById(targetId));
+            }
+        }
+
         return connectedSynsets.iterator();
     }
 
@@ -464,21 +526,58 @@ public class Diversicon extends Uby {
 
     /**
      * Validates, normalizes and augments the synsetRelation graph with edges to
-     * speed up searches.
+     * speed up searches. Progress is reported to the
+     * {@link DivConfig#getProgressListener() config listener}, if any.
      * 
      * @throws DivValidationException
+     * @throws CancelledOperationException
+     *             if the listener cancelled the operation. Work of the
+     *             current phase is rolled back, and the graph remains flagged
+     *             as to process.
      * 
      * @since 0.1.0
      */
     // todo what about provenance? todo instances?
     public void processGraph() {
+        processGraph(config.getProgressListener(), null, null);
+    }
+
+    /**
+     * See {@link #processGraph()}
+     * 
+     * @param job
+     *            if not {@code null}, durations, added edges and heap peak
+     *            are recorded into it (it's up to the caller to save it).
+     * @param synsetIds
+     *            if not {@code null}, the graph was already processed before
+     *            edges touching these synsets changed, so only they are
+     *            normalized and only the closure edges they affect are
+     *            computed again.
+     * 
+     * @since 0.1.0
+     */
+    private void processGraph(
+            @Nullable ProgressListener listener,
+            @Nullable ImportJob job,
+            @Nullable Set<String> synsetIds) {
 
         validateGraph();
 
-        normalizeGraph();
+        long start = System.currentTimeMillis();
+
+        InsertionStats normStats = normalizeGraph(listener, synsetIds);
 
-        computeTransitiveClosure();
+        long normEnd = System.currentTimeMillis();
 
+        InsertionStats closureStats = computeTransitiveClosure(listener, synsetIds);
+
+        if (job != null) {
+            job.setPhaseTime(ImportPhase.NORMALIZATION, normEnd - start);
+            job.setPhaseTime(ImportPhase.CLOSURE, System.currentTimeMillis() - normEnd);
+            job.addRelationCounts(normStats);
+            job.addRelationCounts(closureStats);
+            job.setPeakHeap(Math.max(job.getPeakHeap(), peakHeap()));
+        }
     }
 
     /**
@@ -622,11 +721,17 @@ public class Diversicon extends Uby {
     /*
      * Adds missing edges of depth 1 for relations we consider as canonical.
      * 
+     * @param synsetIds if not {@code null}, only these synsets are normalized,
+     *          missing ones are ignored.
+     * @return stats of added edges
      * @throws DivException
+     * @throws CancelledOperationException
      *
      * @since 0.1.0
      */
-    private void normalizeGraph() {
+    private InsertionStats normalizeGraph(
+            @Nullable ProgressListener listener,
+            @Nullable Set<String> synsetIds) {
 
         checkArgument(!getDbInfo().isToValidate(), "Tried to normalize a graph which is yet to validate!");
 
@@ -644,14 +749,8 @@ public class Diversicon extends Uby {
             Synset rootDomain = getSynsetById(DivUpper.SYNSET_ROOT_DOMAIN);
             Set<String> domainCandidates = domainCandidates();
             
-            long totalSynsets = getSynsetCount();
-
-            String hql = "FROM Synset";
-            Query query = session.createQuery(hql);
+            long totalSynsets = synsetIds == null ? getSynsetCount() : synsetIds.size();
 
-            ScrollableResults synsets = query
-                                             .setCacheMode(CacheMode.IGNORE)
-                                             .scroll(ScrollMode.FORWARD_ONLY);
             int count = 0;
 
             InsertionStats insStats = new InsertionStats();
@@ -660,35 +759,30 @@ public class Diversicon extends Uby {
 
             LOG.info("\nFound " + totalSynsets + " synsets.\n");
 
+            ProgressTracker tracker = new ProgressTracker(listener, ImportPhase.NORMALIZATION, "", totalSynsets);
+            tracker.report(0);
 
-            
-            while (synsets.next()) {
-
-                Synset synset = (Synset) synsets.get(0);
-                LOG.trace("Processing synset with id " + synset.getId() + " ...");
-
-                List<SynsetRelation> relations = synset.getSynsetRelations();
-
-                if (domainCandidates.contains(synset.getId())){
-                    normalizeCandidateDomain(synset, rootDomain, insStats);    
-                }
-                              
-                                
-                for (SynsetRelation sr : new ArrayList<>(relations)){                    
-                    
-                    DivSynsetRelation ssr = (DivSynsetRelation) sr;
 
-                    normalizeTopicToDomain(ssr, insStats);
+            
+            if (synsetIds == null) {
+                String hql = "FROM Synset";
+                Query query = session.createQuery(hql);
 
-                    normalizeInverses(ssr, insStats);
+                ScrollableResults synsets = query
+                                                 .setCacheMode(CacheMode.IGNORE)
+                                                 .scroll(ScrollMode.FORWARD_ONLY);
 
+                while (synsets.next()) {
+                    normalizeSynset((Synset) synsets.get(0), rootDomain, domainCandidates, insStats);
+                    checkpoint = normalizationStep(++count, checkpoint, tracker);
                 }
-
-                if (++count % COMMIT_STEP == 0) {
-                    // flush a batch of updates and release memory:
-                    session.flush();
-                    session.clear();
-                    checkpoint = reportLog(checkpoint, "SynsetRelation normalization - processed synsets", count);
+            } else {
+                for (String synsetId : synsetIds) {
+                    Synset synset = (Synset) session.get(Synset.class, synsetId);
+                    if (synset != null) {
+                        normalizeSynset(synset, rootDomain, domainCandidates, insStats);
+                    }
+                    checkpoint = normalizationStep(++count, checkpoint, tracker);
                 }
             }
 
@@ -698,6 +792,8 @@ public class Diversicon extends Uby {
 
             tx.commit();
 
+            tracker.report(count);
+
             LOG.info("");
             LOG.info("Done normalizing SynsetRelations.");
             LOG.info("");
@@ -705,15 +801,74 @@ public class Diversicon extends Uby {
             LOG.info("   Elapsed time: " + Internals.formatInterval(start, new Date()));
             LOG.info("");
 
+            return insStats;
+
         } catch (Exception ex) {
             LOG.error("Error while normalizing graph! Rolling back!");
             if (tx != null) {
                 tx.rollback();
             }
+            if (ex instanceof CancelledOperationException) {
+                throw (CancelledOperationException) ex;
+            }
             throw new DivException("Error while computing normalized graph!", ex);
         }
     }
 
+    /**
+     * Adds missing edges of depth 1 to a single synset, see
+     * {@link #normalizeGraph(ProgressListener, Set)}
+     * 
+     * @since 0.1.0
+     */
+    private void normalizeSynset(
+            Synset synset,
+            Synset rootDomain,
+            Set<String> domainCandidates,
+            InsertionStats insStats) {
+
+        LOG.trace("Processing synset with id " + synset.getId() + " ...");
+
+        List<SynsetRelation> relations = synset.getSynsetRelations();
+
+        if (domainCandidates.contains(synset.getId())){
+            normalizeCandidateDomain(synset, rootDomain, insStats);    
+        }
+                      
+                        
+        for (SynsetRelation sr : new ArrayList<>(relations)){                    
+            
+            DivSynsetRelation ssr = (DivSynsetRelation) sr;
+
+            normalizeTopicToDomain(ssr, insStats);
+
+            normalizeInverses(ssr, insStats);
+
+        }
+    }
+
+    /**
+     * Every {@link #COMMIT_STEP} normalized synsets flushes updates, releases
+     * memory and reports progress.
+     * 
+     * @return the new checkpoint, see {@link #reportLog(Date, String, long)}
+     * @throws CancelledOperationException
+     * 
+     * @since 0.1.0
+     */
+    private Date normalizationStep(int count, Date checkpoint, ProgressTracker tracker) {
+        if (count % COMMIT_STEP == 0) {
+            // flush a batch of updates and release memory:
+            session.flush();
+            session.clear();
+            Date ret = reportLog(checkpoint, "SynsetRelation normalization - processed synsets", count);
+            tracker.report(count);
+            tracker.checkCancelled();
+            return ret;
+        }
+        return checkpoint;
+    }
+
     /**
      * Connects provided candidate domain synset by 
      * {@link Diversicons#RELATION_DIVERSICON_SUPER_DOMAIN superDomain} relation
@@ -870,15 +1025,32 @@ public class Diversicon extends Uby {
      * Before calling this, the graph has to be normalized by calling
      * {@link #normalizeGraph()}
      * 
+     * Computed edges are stored in {@link SynsetClosure#TABLE}, which is 
+     * truncated and reloaded from scratch, unless {@code synsetIds} are
+     * given. Each relation, or each range of source synsets of a relation, is
+     * computed by a separate {@link TransitiveClosureTask} on a thread pool,
+     * with its own connection and batch writer.
+     * Only relations and depths allowed by {@link DbInfo#getClosureRelations()}
+     * and {@link DbInfo#getClosureMaxDepth()} are materialized.
+     * 
      * Caveats: uses SQL recursive queries which are not supported by Hibernate.
      * 
      * @throws DivException
-     *             when transaction goes wrong it is automatically rolled back
+     *             when a task goes wrong, closure table is emptied 
      *             and DivException is thrown
+     * @throws CancelledOperationException
+     *             when cancelled by the listener, closure table is emptied
+     * @param synsetIds
+     *            if not {@code null}, the closure table holds the closure of
+     *            the graph before edges touching these synsets changed, and
+     *            only the edges they affect are computed again.
+     * @return stats of written edges
      * 
      * @since 0.1.0
      */
-    private void computeTransitiveClosure() {
+    private InsertionStats computeTransitiveClosure(
+            @Nullable ProgressListener listener,
+            @Nullable Set<String> synsetIds) {
         Date startComputing = new Date();
 
         LOG.info("Computing transitive closure for SynsetRelations (may take some minutes) ...");
@@ -886,269 +1058,759 @@ public class Diversicon extends Uby {
         checkArgument(!getDbInfo().isToNormalize(),
                 "Tried to compute transitive closure of a graph which is yet to normalize!");
 
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
+        DbInfo closureInfo = getDbInfo();
+        List<String> relNames = closureInfo.materializedRelations();
+        int maxDepth = closureInfo.getClosureMaxDepth();
 
-            InsertionStats relStats = new InsertionStats();
+        prepareClosureTables(synsetIds);
 
-            relStats.setEdgesPriorInsertion(getSynsetRelationsCount());
+        InsertionStats relStats = new InsertionStats();
 
-            LOG.info("\n   Found " + Internals.formatInteger(relStats.getEdgesPriorInsertion())
-                    + " synset relations.\n");
+        relStats.setEdgesPriorInsertion(getSynsetRelationsCount());
 
-            int count = 0;
+        LOG.info("\n   Found " + Internals.formatInteger(relStats.getEdgesPriorInsertion())
+                + " synset relations.\n");
 
-            // As: the edges computed so far
-            // Bs: original edges
-
-            // NOTE: THIS ONE IS FAST BUT STILL COMPUTES DUPLICATES !
-            String sqlSelect = "  "
-                    + " WITH RECURSIVE SR_A(synsetId, relName, target, depth) AS ("
-                    + "    ("
-                    + "        SELECT synsetId, relName, target, depth"
-                    + "        FROM SynsetRelation"
-                    + "        WHERE depth = 1"
-                    + "              AND relName IN  " + makeSqlList(Diversicons.getCanonicalTransitiveRelations())
-                    + "    )"
-                    + "    UNION ALL"
-                    + "    ("
-                    + "        SELECT SR_A.synsetId, SR_A.relName, SR_B.target, (SR_A.depth + 1)"
-                    + "        FROM SR_A, SynsetRelation SR_B"
-                    + "        WHERE"
-                    + "            SR_A.relName = SR_B.relName"
-                    + "        AND SR_A.target = SR_B.synsetId"
-                    + "        AND SR_B.depth = 1  "
-                    + "    )"
-                    + " ) ((SELECT synsetId, relName, target,  depth"
-                    + " FROM  SR_A)"
-                    + " MINUS " // doesn't remove all duplicates, but can be
-                                // enough for now
-                    + " (SELECT synsetId, relName, target,  depth"
-                    + " FROM SynsetRelation)"
-                    + " )";
-
-            Date checkpoint = new Date();
-
-            SQLQuery query = session.createSQLQuery(sqlSelect);
-
-            ScrollableResults results = query
-                                             .setCacheMode(CacheMode.IGNORE)
-                                             .scroll(ScrollMode.FORWARD_ONLY);
-
-            LOG.info("\n   Elapsed time: " + Internals.formatInterval(startComputing, new Date()) + "\n");
-            LOG.info("\nGoing to write closure into the db...\n");
-            
-            Date startWriting = new Date();
-            
-            while (results.next()) {
-
-                Synset source = (Synset) session.get(Synset.class, (String) results.get(0));
-                String relName = (String) results.get(1);
-                String targetId = (String) results.get(2);
-                int depth;
-                Object depthCandidate = results.get(3);
-                if (depthCandidate instanceof String) {
-                    depth = Integer.parseInt((String) depthCandidate);
-                } else if (depthCandidate instanceof Integer || depthCandidate instanceof Long) {
-                    depth = (int) results.get(3);
-                } else {
-                    throw new DivException("Internal error, couldn't parse depth " + depthCandidate + " its class is "
-                            + depthCandidate.getClass()
-                                            .getName());
-                }
+        ProgressTracker tracker = new ProgressTracker(listener, ImportPhase.CLOSURE, "", -1);
 
-                if (depth > relStats.getMaxLevel()) {
-                    relStats.setMaxLevel(depth);
-                }
+        List<TransitiveClosureTask> tasks = closureTasks(relNames, maxDepth, tracker, synsetIds);
 
-                DivSynsetRelation ssr = new DivSynsetRelation();
+        int nThreads = Math.max(1, Math.min(tasks.size(), Runtime.getRuntime()
+                                                                  .availableProcessors()));
 
-                ssr.setDepth(depth);
-                ssr.setProvenance(Diversicons.getProvenanceId());
-                ssr.setRelName(relName);
-                ssr.setRelType(Diversicons.getRelationType(relName));
-                ssr.setSource(source);
-                Synset targetSynset = new Synset();
-                targetSynset.setId(targetId);
-                ssr.setTarget(targetSynset);
+        LOG.info("Going to compute and write closure of " + relNames.size() + " relations in " + tasks.size()
+                + " tasks with " + nThreads + " threads" + (maxDepth == -1 ? "" : " up to depth " + maxDepth)
+                + (synsetIds == null ? "" : " for edges affected by " + synsetIds.size() + " synsets") + "...");
 
-                source.getSynsetRelations()
-                      .add(ssr);
-                session.save(ssr);
-                session.merge(source);
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
 
-                relStats.inc(relName);
+        tracker.report(0);
 
-                if (++count % COMMIT_STEP == 0) {
-                    // flush a batch of updates and release memory:
-                    session.flush();
-                    session.clear();
-                    checkpoint = reportLog(checkpoint,
-                            "SynsetRelation transitive closure - written edges",
-                            count);
-                }
+        Transaction tx = null;
+        try {
+            List<Future<InsertionStats>> futures = new ArrayList<>();
+            for (TransitiveClosureTask task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            executor.shutdown();
+
+            for (Future<InsertionStats> future : futures) {
+                relStats.merge(future.get());
             }
 
+            tx = session.beginTransaction();
             DbInfo dbInfo = getDbInfo();
             dbInfo.setToAugment(false);
             session.saveOrUpdate(dbInfo);
 
             tx.commit();
 
+            tracker.report(relStats.totEdges());
+
             LOG.info("");
             LOG.info("Done writing transitive closure for SynsetRelations.");
             LOG.info("");
             LOG.info(relStats.toString());
-            LOG.info("   Elapsed time:  " + Internals.formatInterval(startWriting, new Date()));
+            LOG.info("   Elapsed time:  " + Internals.formatInterval(startComputing, new Date()));
             LOG.info("");
 
+            return relStats;
+
         } catch (Exception ex) {
             LOG.error("Error while computing transitive closure! Rolling back!");
             if (tx != null) {
                 tx.rollback();
             }
-            throw new DivException("Error while computing transitive closure!", ex);
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException exi) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            truncateClosure();
+            if (ex instanceof ExecutionException && ex.getCause() instanceof CancelledOperationException) {
+                throw (CancelledOperationException) ex.getCause();
+            }
+            if (ex instanceof ExecutionException && ex.getCause() != null) {
+                throw new DivException("Error while computing transitive closure!", ex.getCause());
+            } else {
+                throw new DivException("Error while computing transitive closure!", ex);
+            }
         }
 
     }
 
     /**
+     * Returns the tasks computing the closure of {@code relNames}. When
+     * computing the whole closure, each relation is split into
+     * {@link TransitiveClosureTask#getSourceRanges() ranges} of source synset
+     * keys, so even a single big relation like hypernymy uses all the cores.
+     * Delta updates have one task per relation, as edges to compute again
+     * must be removed first.
+     * 
+     * @throws DivException
+     * 
      * @since 0.1.0
      */
-    public long getSynsetRelationsCount() {
-        // tried to put DivSynsetRelation.class but was always giving a 0 count
-        // ..
-        return ((Number) session.createCriteria(SynsetRelation.class)
-                                .setProjection(Projections.rowCount())
-                                .uniqueResult()).longValue();
-
-    }
+    private List<TransitiveClosureTask> closureTasks(
+            List<String> relNames,
+            int maxDepth,
+            ProgressTracker tracker,
+            @Nullable Set<String> synsetIds) {
 
-    /**
-     * Imports an XML using defualt config. 
-     * <ul>
-     * <li>For more options, see {@link #importFiles(ImportConfig)}.</li>
-     * <li>For supported URL formats, see
-     * {@link Diversicons#readData(String, boolean)}
-     * </li>
-     * </ul>
-     * </p>
-     * @since 0.1.0
-     */
-    public ImportJob importXml(String fileUrl, String... otherFileUrls) {       
-        
-        ImportConfig config = new ImportConfig();
+        List<TransitiveClosureTask> ret = new ArrayList<>();
 
-        config.setAuthor(Diversicons.DEFAULT_AUTHOR);
-        ArrayList<String> urls = Internals.newArrayList();
-        urls.add(fileUrl);
-        urls.addAll(Arrays.asList(otherFileUrls));
-        
-        config.setFileUrls(urls);
+        if (synsetIds != null) {
+            for (String relName : relNames) {
+                ret.add(new TransitiveClosureTask(dbConfig, relName, maxDepth, COMMIT_STEP, tracker, synsetIds));
+            }
+            return ret;
+        }
 
-        return importFiles(config).get(0);
+        Connection conn = null;
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            for (String relName : relNames) {
+                for (int[] range : TransitiveClosureTask.sourceRanges(conn, relName,
+                        TransitiveClosureTask.getSourceRanges())) {
+                    ret.add(new TransitiveClosureTask(dbConfig, relName, maxDepth, COMMIT_STEP, tracker,
+                            range[0], range[1]));
+                }
+            }
+            return ret;
+        } catch (SQLException ex) {
+            throw new DivException("Error while splitting closure computation!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+            }
+        }
     }
 
     /**
-     * Imports lexical resource files. Each file import is going to be a separate
-     * transaction. 
+     * Makes sure closure tables exist, assigns integer keys to new synsets
+     * and mirrors direct edges into the integer edge table.
      * 
-     * <p> In case one import fails, stops and tries to roll back as much as it can.
-     * (See <a href="https://github.com/diversicon-kb/diversicon-core/issues/38" target="_blank">
-     * issue 38</a> for more info on transactions)
-     * </p>
+     * @param synsetIds
+     *            if {@code null} the closure table is emptied and all edges
+     *            are mirrored again, otherwise only edges going out of these
+     *            synsets.
      * 
-     * @throws DivValidationException
-     * @throws InterruptedImportException
+     * @throws DivException
      * 
      * @since 0.1.0
      */
-    public List<ImportJob> importFiles(ImportConfig importConfig) {        
-        
-        Date start = new Date();
-
-        List<ImportJob> ret = new ArrayList<>();
-
-        checkNotNull(importConfig);
-
-        checkNotBlank(importConfig.getAuthor(), "Invalid ImportConfig author!");
-        checkNotEmpty(importConfig.getFileUrls(), "Invalid ImportConfig filepaths!");
-
-        int i = 0;
-        for (String fileUrl : importConfig.getFileUrls()) {
-            checkNotBlank(fileUrl, "Invalid file url at position " + i + "!");
-            i++;
-        }
-
-        LOG.info("Going to import " + importConfig.getFileUrls()
-                                                  .size()
-                + " files by import author " + importConfig.getAuthor() + "...");
-
-        if (importConfig.isDryRun() && importConfig.getFileUrls().size() > 1){
-            LOG.info("");
-            LOG.info("**********   DRY RUN: found many files to import!   ");
-            LOG.info("");
-            LOG.info("**********            If second file depends on first one there might be validation errors due to  ");
-            LOG.info("**********            data not actually being written to disk!");             
-            LOG.info("");
-        }
-        
-        DbInfo oldDbInfo = null;
-        
-        if (importConfig.isDryRun()){
-            LOG.info("");
-            LOG.info("**********   DRY RUN:  skipping DbInfo table update   **********");
-            LOG.info("");
-        } else {
-            oldDbInfo = prepareDbForImport();    
-        }
-        
-
+    private void prepareClosureTables(@Nullable Set<String> synsetIds) {
+        Connection conn = null;
         try {
-            for (String fileUrl : importConfig.getFileUrls()) {
-                ImportJob job = importFile(importConfig, fileUrl);
-                ret.add(job);
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+            SynsetClosure.createTables(conn);
+            if (synsetIds == null) {
+                SynsetClosure.truncate(conn);
             }
-        } catch (InvalidImportException ex) {
-            if (ret.isEmpty()) {
-                LOG.error("");
-                LOG.error("Import failed, no LexicalResource data was written to disk. "
-                        + "Aborting all imports.", ex);
-                if (importConfig.isDryRun()){
-                    LOG.info("********   DRY RUN: skipping restoring DbInfo table  (no change was done to it) *************");
-                } else {
-                    setDbInfo(oldDbInfo);    
+            SynsetClosure.updateKeys(conn);
+            if (synsetIds == null) {
+                SynsetClosure.loadEdges(conn, null);
+            } else {
+                SynsetClosure.createKeysTable(conn, CLOSURE_SEEDS_TABLE, synsetIds);
+                SynsetClosure.loadEdges(conn, CLOSURE_SEEDS_TABLE);
+            }
+            conn.commit();
+            hasClosureTable = true;
+        } catch (SQLException ex) {
+            throw new DivException("Error while preparing closure tables!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
                 }
-                
             }
-            throw ex;
         }
+    }
 
-        if (importConfig.isSkipAugment()) {
-            LOG.info("Skipping graph augmentation as requested by user.");
-        } else if (importConfig.isDryRun()) {
-            LOG.info("");
-            LOG.info("*************    DRY RUN: skipping graph augmentation   ************");
-            LOG.info("");            
-        } else {
-            try {
-                processGraph();
-            } catch (Exception ex) {
-                throw new InterruptedImportException("Error while augmenting graph with computed edges!", ex);
+    /**
+     * Assigns integer keys to synsets written by an import, so they are
+     * available before graph processing.
+     * 
+     * @throws DivException
+     * 
+     * @since 0.1.0
+     */
+    private void updateSynsetKeys() {
+        Connection conn = null;
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+            SynsetClosure.createTables(conn);
+            SynsetClosure.updateKeys(conn);
+            conn.commit();
+        } catch (SQLException ex) {
+            throw new DivException("Error while assigning synset keys!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
             }
         }
-
-        logImportResult(importConfig, start, ret);
-
-        if (importConfig.isDryRun()){
-            LOG.info("");
-            LOG.info("*************    DRY RUN:  end of import,  no data was written to disk.   ************");
-            LOG.info("");                        
-        }
-       
-        return ret;
-
+    }
+
+    /**
+     * Removes all closure edges. Closure tasks commit in batches, so if one
+     * of them fails we need to remove edges already written by all of them.
+     * 
+     * @since 0.1.0
+     */
+    private void truncateClosure() {
+        Connection conn = null;
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            SynsetClosure.truncate(conn);
+            conn.commit();
+            LOG.info("Removed closure edges.");
+        } catch (Exception ex) {
+            LOG.error("Error while removing closure edges!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the db has the table for edges computed by
+     * transitive closure (dbs created by older Diversicon versions might
+     * store them in SynsetRelation table).
+     * 
+     * @since 0.1.0
+     */
+    private boolean hasClosureTable() {
+        if (hasClosureTable == null) {
+            Number count = (Number) session.createSQLQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES"
+                    + " WHERE UPPER(TABLE_NAME) = " + quote(SynsetClosure.TABLE.toUpperCase()))
+                                           .uniqueResult();
+            hasClosureTable = count.longValue() > 0;
+        }
+        return hasClosureTable;
+    }
+
+    /**
+     * Returns edges computed by transitive closure departing from (or
+     * arriving to, if {@code incoming}) {@code synsetId}, as arrays of
+     * relation name, other synset id and depth.
+     * 
+     * @param depth
+     *            the maximum depth, if {@code -1} there is no limit.
+     * 
+     * @since 0.1.0
+     */
+    private List<Object[]> getClosureEdges(String synsetId, boolean incoming, int depth) {
+        List<Object[]> ret = new ArrayList<>();
+        if (depth == 0 || depth == 1 || !hasClosureTable()) {
+            return ret;
+        }
+
+        SQLQuery query = session.createSQLQuery(SynsetClosure.edgesSql(incoming, depth));
+        query.setParameter("synsetId", synsetId);
+
+        for (Object row : query.list()) {
+            Object[] cols = (Object[]) row;
+            ret.add(new Object[] {
+                    SynsetClosure.relName(((Number) cols[0]).intValue()),
+                    (String) cols[1],
+                    ((Number) cols[2]).intValue() });
+        }
+        return ret;
+    }
+
+    /**
+     * Returns relation name and target id of the edges departing from
+     * {@code synsetId} within given {@code depth}, both the ones in
+     * SynsetRelation table and the ones computed by transitive closure.
+     * 
+     * @param depth
+     *            the maximum depth, if {@code -1} there is no limit.
+     * 
+     * @since 0.1.0
+     */
+    private List<Object[]> getOutgoingEdges(String synsetId, int depth) {
+        return getEdges(synsetId, false, depth);
+    }
+
+    /**
+     * Returns relation name and source id of the edges arriving to
+     * {@code synsetId} within given {@code depth}, both the ones in
+     * SynsetRelation table and the ones computed by transitive closure.
+     * 
+     * @param depth
+     *            the maximum depth, if {@code -1} there is no limit.
+     * 
+     * @since 0.1.0
+     */
+    private List<Object[]> getIncomingEdges(String synsetId, int depth) {
+        return getEdges(synsetId, true, depth);
+    }
+
+    /**
+     * See {@link #getOutgoingEdges(String, int)} and
+     * {@link #getIncomingEdges(String, int)}
+     * 
+     * @since 0.1.0
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> getEdges(String synsetId, boolean incoming, int depth) {
+
+        String depthConstraint;
+        if (depth == -1) {
+            depthConstraint = "";
+        } else {
+            depthConstraint = " SR.depth <= " + depth + " AND ";
+        }
+
+        String queryString;
+        if (incoming) {
+            queryString = " SELECT SR.relName, SR.source.id"
+                    + " FROM SynsetRelation SR"
+                    + " WHERE "
+                    + depthConstraint
+                    + " (SR.target.id = :synsetId)";
+        } else {
+            queryString = " SELECT SR.relName, SR.target.id"
+                    + " FROM SynsetRelation SR"
+                    + " WHERE "
+                    + depthConstraint
+                    + " (SR.source.id = :synsetId)";
+        }
+
+        Query query = session.createQuery(queryString);
+        query.setParameter("synsetId", synsetId);
+
+        List<Object[]> ret = new ArrayList<>(query.list());
+        ret.addAll(getClosureEdges(synsetId, incoming, depth));
+        return ret;
+    }
+
+    /**
+     * Returns the edges departing from {@code synsetId} which were computed
+     * by transitive closure. They are not stored in SynsetRelation table, so
+     * returned relations are just detached views with
+     * {@link Diversicons#getProvenanceId() Diversicon provenance}, and 
+     * their target synsets only have the id set.
+     * 
+     * <p>
+     * NOTE: these edges are <i>not</i> returned by
+     * {@link Synset#getSynsetRelations()}, which only holds relations read
+     * from imported resources and the ones added by normalization.
+     * </p>
+     * 
+     * @since 0.1.0
+     */
+    public List<DivSynsetRelation> getClosureSynsetRelations(String synsetId) {
+        checkId(synsetId, "Invalid synset id!");
+
+        List<DivSynsetRelation> ret = new ArrayList<>();
+        if (!mightContainId(synsetId)) {
+            return ret;
+        }
+
+        Synset source = new Synset();
+        source.setId(synsetId);
+
+        for (Object[] edge : getClosureEdges(synsetId, false, -1)) {
+            String relName = (String) edge[0];
+
+            DivSynsetRelation ssr = new DivSynsetRelation();
+            ssr.setDepth((Integer) edge[2]);
+            ssr.setProvenance(Diversicons.getProvenanceId());
+            ssr.setRelName(relName);
+            ssr.setRelType(Diversicons.getRelationType(relName));
+            ssr.setSource(source);
+            Synset target = new Synset();
+            target.setId((String) edge[1]);
+            ssr.setTarget(target);
+            ret.add(ssr);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of synset relations, including the edges computed
+     * by transitive closure.
+     * 
+     * @since 0.1.0
+     */
+    public long getSynsetRelationsCount() {
+        // tried to put DivSynsetRelation.class but was always giving a 0 count
+        // ..
+        long ret = ((Number) session.createCriteria(SynsetRelation.class)
+                                .setProjection(Projections.rowCount())
+                                .uniqueResult()).longValue();
+        if (hasClosureTable()) {
+            ret += ((Number) session.createSQLQuery("SELECT COUNT(*) FROM " + SynsetClosure.TABLE)
+                                    .uniqueResult()).longValue();
+        }
+        return ret;
+
+    }
+
+    /**
+     * Imports an XML using defualt config. 
+     * <ul>
+     * <li>For more options, see {@link #importFiles(ImportConfig)}.</li>
+     * <li>For supported URL formats, see
+     * {@link Diversicons#readData(String, boolean)}
+     * </li>
+     * </ul>
+     * </p>
+     * @since 0.1.0
+     */
+    public ImportJob importXml(String fileUrl, String... otherFileUrls) {       
+        
+        ImportConfig config = new ImportConfig();
+
+        config.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ArrayList<String> urls = Internals.newArrayList();
+        urls.add(fileUrl);
+        urls.addAll(Arrays.asList(otherFileUrls));
+        
+        config.setFileUrls(urls);
+
+        return importFiles(config).get(0);
+    }
+
+    /**
+     * Imports lexical resource files. Each file import is going to be a separate
+     * transaction. 
+     * 
+     * <p> In case one import fails, stops and tries to roll back as much as it can.
+     * (See <a href="https://github.com/diversicon-kb/diversicon-core/issues/38" target="_blank">
+     * issue 38</a> for more info on transactions)
+     * </p>
+     * 
+     * <p>
+     * Progress is reported to {@link ImportConfig#getProgressListener()}, or
+     * if missing to the {@link DivConfig#getProgressListener() config listener}.
+     * If the listener cancels the import before any LMF data is written,
+     * {@link CancelledOperationException} is thrown and DbInfo is restored,
+     * otherwise the import is interrupted like on any other failure.
+     * </p>
+     * 
+     * @throws DivValidationException
+     * @throws InterruptedImportException
+     * @throws CancelledOperationException
+     * 
+     * @since 0.1.0
+     */
+    public List<ImportJob> importFiles(ImportConfig importConfig) {        
+        
+        Date start = new Date();
+
+        List<ImportJob> ret = new ArrayList<>();
+
+        checkNotNull(importConfig);
+
+        checkNotBlank(importConfig.getAuthor(), "Invalid ImportConfig author!");
+        checkNotEmpty(importConfig.getFileUrls(), "Invalid ImportConfig filepaths!");
+
+        int i = 0;
+        for (String fileUrl : importConfig.getFileUrls()) {
+            checkNotBlank(fileUrl, "Invalid file url at position " + i + "!");
+            i++;
+        }
+
+        LOG.info("Going to import " + importConfig.getFileUrls()
+                                                  .size()
+                + " files by import author " + importConfig.getAuthor() + "...");
+
+        if (importConfig.isDryRun() && importConfig.getFileUrls().size() > 1){
+            if (Diversicons.isH2Db(dbConfig)) {
+                LOG.info("");
+                LOG.info("**********   DRY RUN: found many files to import, writing them into an in-memory shadow db   ");
+                LOG.info("");
+                try (DryRunShadow shadow = DryRunShadow.create(dbConfig, cfg)) {
+                    ret = shadow.importFiles(importConfig);
+                }
+                LOG.info("");
+                LOG.info("*************    DRY RUN:  end of import,  no data was written to disk.   ************");
+                LOG.info("");
+                return ret;
+            } else {
+                LOG.info("");
+                LOG.info("**********   DRY RUN: found many files to import!   ");
+                LOG.info("");
+                LOG.info("**********            If second file depends on first one there might be validation errors due to  ");
+                LOG.info("**********            data not actually being written to disk!");
+                LOG.info("");
+            }
+        }
+
+        DbInfo oldDbInfo = null;
+
+        // delta imports of an already processed graph only need to revisit
+        // touched synsets, provided stored closure was computed with the same
+        // settings
+        deltaSynsets = null;
+        if (importConfig.isDelta() && !importConfig.isDryRun()) {
+            DbInfo dbInfo = getDbInfo();
+            if (!dbInfo.isToValidate() && !dbInfo.isToNormalize() && !dbInfo.isToAugment() && hasClosureTable()) {
+                if (dbInfo.hasClosureSettings(importConfig)) {
+                    deltaSynsets = new HashSet<>();
+                } else {
+                    LOG.info("Closure settings differ from stored ones, delta import will process the whole graph.");
+                }
+            }
+        }
+        
+        if (importConfig.isDryRun()){
+            LOG.info("");
+            LOG.info("**********   DRY RUN:  skipping DbInfo table update   **********");
+            LOG.info("");
+        } else {
+            oldDbInfo = prepareDbForImport(importConfig);    
+        }
+        
+
+        ProgressListener listener = progressListener(importConfig);
+
+        boolean bulkLoad = importConfig.isBulkLoad()
+                && !importConfig.isDryRun()
+                && Diversicons.isH2Db(dbConfig);
+
+        Map<String, String> savedSettings = null;
+        List<String> droppedIndexes = new ArrayList<>();
+        boolean completed = false;
+
+        if (bulkLoad) {
+            LOG.info("Turning on H2 bulk load mode ...");
+            savedSettings = Diversicons.turnH2InsertionModeOn(dbConfig);
+        }
+
+        try {
+            if (bulkLoad) {
+                droppedIndexes = Diversicons.h2DropSecondaryIndexes(dbConfig, BULK_LOAD_TABLES);
+            }
+
+            try {
+                if (importConfig.getThreads() > 1 && importConfig.getFileUrls()
+                                                                 .size() > 1) {
+                    List<StagedImport> plan = StagedImport.plan(stageFiles(importConfig));
+                    // each file is released by its own import, the ones
+                    // never reached by the cleanup below
+                    int next = 0;
+                    try {
+                        while (next < plan.size()) {
+                            try (StagedImport staged = plan.get(next++)) {
+                                LOG.info("Loading LMF : " + staged.getFileUrl() + " ...");
+                                ProgressTracker tracker = new ProgressTracker(listener, ImportPhase.WRITE,
+                                        staged.getFileUrl(), -1);
+                                tracker.checkCancelled();
+                                resetPeakHeap();
+                                ret.add(importFile(importConfig, staged, tracker));
+                            }
+                        }
+                    } finally {
+                        for (StagedImport staged : plan.subList(next, plan.size())) {
+                            staged.close();
+                        }
+                    }
+                } else {
+                    for (String fileUrl : importConfig.getFileUrls()) {
+                        ImportJob job = importFile(importConfig, fileUrl, listener);
+                        ret.add(job);
+                    }
+                }
+            } catch (InvalidImportException | CancelledOperationException ex) {
+                if (ret.isEmpty()) {
+                    LOG.error("");
+                    LOG.error("Import failed, no LexicalResource data was written to disk. "
+                            + "Aborting all imports.", ex);
+                    if (importConfig.isDryRun()){
+                        LOG.info("********   DRY RUN: skipping restoring DbInfo table  (no change was done to it) *************");
+                    } else {
+                        setDbInfo(oldDbInfo);    
+                    }
+                    
+                }
+                throw ex;
+            }
+
+            // graph augmentation queries need the indexes
+            if (!droppedIndexes.isEmpty()) {
+                LOG.info("Rebuilding indexes ...");
+                Diversicons.h2CreateIndexes(dbConfig, droppedIndexes);
+                droppedIndexes.clear();
+            }
+
+            // graph augmentation writes from several connections at once,
+            // so table locks must be back on
+            if (bulkLoad && savedSettings.containsKey("LOCK_MODE")) {
+                Map<String, String> lockMode = new HashMap<>();
+                lockMode.put("LOCK_MODE", savedSettings.remove("LOCK_MODE"));
+                Diversicons.h2TurnInsertionModOff(dbConfig, lockMode);
+            }
+
+            if (importConfig.isSkipAugment()) {
+                LOG.info("Skipping graph augmentation as requested by user.");
+            } else if (importConfig.isDryRun()) {
+                LOG.info("");
+                LOG.info("*************    DRY RUN: skipping graph augmentation   ************");
+                LOG.info("");            
+            } else {
+                try {
+                    ImportJob lastJob = ret.get(ret.size() - 1);
+                    processGraph(listener, lastJob, deltaSynsets);
+                    updateImportJob(lastJob);
+                } catch (Exception ex) {
+                    throw new InterruptedImportException("Error while augmenting graph with computed edges!", ex);
+                }
+            }
+            if (!importConfig.isDryRun()) {
+                buildIdFilter();
+            }
+            completed = true;
+        } finally {
+            deltaSynsets = null;
+            if (bulkLoad) {
+                endBulkLoad(savedSettings, droppedIndexes, completed);
+            }
+        }
+
+        logImportResult(importConfig, start, ret);
+
+        if (importConfig.isDryRun()){
+            LOG.info("");
+            LOG.info("*************    DRY RUN:  end of import,  no data was written to disk.   ************");
+            LOG.info("");                        
+        }
+       
+        return ret;
+
+    }
+
+    /**
+     * Rebuilds dropped indexes and restores H2 settings saved when bulk load
+     * mode was turned on. If import didn't complete errors are only logged,
+     * so they don't hide the original one.
+     * 
+     * @since 0.1.0
+     */
+    private void endBulkLoad(
+            Map<String, String> savedSettings,
+            List<String> droppedIndexes,
+            boolean completed) {
+        try {
+            try {
+                if (!droppedIndexes.isEmpty()) {
+                    LOG.info("Rebuilding indexes ...");
+                    Diversicons.h2CreateIndexes(dbConfig, droppedIndexes);
+                }
+            } finally {
+                Diversicons.h2TurnInsertionModOff(dbConfig, savedSettings);
+                LOG.info("Turned off H2 bulk load mode.");
+            }
+        } catch (RuntimeException ex) {
+            if (completed) {
+                throw ex;
+            } else {
+                LOG.error("Error while turning off H2 bulk load mode!", ex);
+            }
+        }
+    }
+
+    /**
+     * Fetches and validates files of {@code importConfig} concurrently, with
+     * {@link ImportConfig#getThreads()} threads. Validation steps needing the
+     * db are left to the import of each file.
+     * 
+     * @throws InvalidImportException
+     *             if any file can't be fetched or is invalid.
+     * 
+     * @since 0.1.0
+     */
+    private List<StagedImport> stageFiles(final ImportConfig importConfig) {
+
+        List<String> fileUrls = importConfig.getFileUrls();
+        int nThreads = Math.min(importConfig.getThreads(), fileUrls.size());
+
+        LOG.info("Fetching and validating " + fileUrls.size() + " files with " + nThreads + " threads ...");
+
+        final XmlValidationConfig xmlValidationConfig = xmlValidationConfig(importConfig);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+
+        List<Future<StagedImport>> futures = new ArrayList<>();
+        List<StagedImport> staged = new ArrayList<>();
+
+        try {
+            for (final String fileUrl : fileUrls) {
+                futures.add(executor.submit(new Callable<StagedImport>() {
+                    @Override
+                    public StagedImport call() {
+                        StagedImport ret = StagedImport.fetch(config, fileUrl);
+                        try {
+                            ret.validate(importConfig, xmlValidationConfig);
+                        } catch (RuntimeException ex) {
+                            ret.close();
+                            throw ex;
+                        }
+                        return ret;
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            for (Future<StagedImport> future : futures) {
+                staged.add(future.get());
+            }
+            return staged;
+
+        } catch (InterruptedException | ExecutionException ex) {
+            executor.shutdownNow();
+            for (Future<StagedImport> future : futures) {
+                closeStaged(future);
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            if (ex.getCause() instanceof InvalidImportException) {
+                throw (InvalidImportException) ex.getCause();
+            }
+            throw new InvalidImportException("Error while fetching and validating files to import!",
+                    ex.getCause() == null ? ex : ex.getCause());
+        }
+    }
+
+    /**
+     * Waits for a staging task to end and releases its files, if it
+     * succeeded.
+     * 
+     * @since 0.1.0
+     */
+    private static void closeStaged(Future<StagedImport> future) {
+        try {
+            future.get(1, TimeUnit.MINUTES)
+                  .close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread()
+                  .interrupt();
+        } catch (Exception ex) {
+            // task failed, it already cleaned up
+        }
     }
 
     /**
@@ -1186,39 +1848,85 @@ public class Diversicon extends Uby {
 
     }
 
+    /**
+     * Returns the listener of {@code importConfig}, or if missing the one
+     * from Diversicon config.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private ProgressListener progressListener(ImportConfig importConfig) {
+        if (importConfig.getProgressListener() == null) {
+            return config.getProgressListener();
+        } else {
+            return importConfig.getProgressListener();
+        }
+    }
+
     /**
      * Imports a single LMF XML
      * 
      * @throws InvalidImportException
      * @throws InterruptedImportException If something goes wrong 
+     * @throws CancelledOperationException If cancelled before writing 
      * 
      * @since 0.1.0
      */
-    private ImportJob importFile(ImportConfig importConfig, String url) {
+    private ImportJob importFile(
+            ImportConfig importConfig,
+            String url,
+            @Nullable ProgressListener listener) {
 
         LOG.info("Loading LMF : " + url + " ...");
 
-        File file;
-        try {
-            file = Diversicons.readData(config, url, true)
-                              .toTempFile();
-        } catch (Exception ex) {
-            throw new InvalidImportException("Couldn't read file to import: " + url, ex);
+        ProgressTracker tracker = new ProgressTracker(listener, ImportPhase.WRITE, url, -1);
+        tracker.checkCancelled();
+
+        resetPeakHeap();
+
+        try (StagedImport staged = StagedImport.fetch(config, url)) {
+            return importFile(importConfig, staged, tracker);
         }
+    }
 
-        LexResPackage pack;
+    /**
+     * Imports a single LMF XML which was already fetched, and possibly
+     * validated against XML Schema and its own content.
+     * 
+     * @throws InvalidImportException
+     * @throws InterruptedImportException
+     *             If something goes wrong
+     * 
+     * @since 0.1.0
+     */
+    private ImportJob importFile(
+            ImportConfig importConfig,
+            StagedImport staged,
+            ProgressTracker tracker) {
 
-        try {
-            pack = Diversicons.readPackageFromLexRes(file);
-        } catch (Exception ex) {
-            throw new InvalidImportException("Couldn't extract attributes from LexicalResource " + url, ex);
+        String url = staged.getFileUrl();
+        boolean validatedAhead = staged.getValidator() != null;
+
+        ImportJob job = importConfig.isDryRun() || importConfig.isDelta() ? null : resumableImportJob(staged);
+        boolean resumed = job != null;
+        if (resumed) {
+            LOG.info("Found interrupted import job " + job.getId() + " for " + url + " , skipping validation and resuming it.");
+        } else {
+            job = newImportJob(
+                    importConfig,
+                    url,
+                    staged,
+                    staged.getLexResPackage());
+        }
+        job.setPhaseTime(ImportPhase.FETCH, staged.getFetchTime());
+        if (validatedAhead && !resumed) {
+            // structural and internal validation are included, see
+            // ImportPhase.SCHEMA_VALIDATION
+            job.setPhaseTime(ImportPhase.SCHEMA_VALIDATION, staged.getValidationTime());
         }
 
-        ImportJob job = newImportJob(
-                importConfig,
-                url,
-                file,
-                pack);
+        // after validation, so streams are already spooled
+        File file = staged.getFile();
 
         if (importConfig.isDryRun()){
             
@@ -1232,12 +1940,80 @@ public class Diversicon extends Uby {
             LOG.info("Starting import...");
             LOG.info("");
 
+            if (importConfig.isDelta()) {
+                // the new version replaces the stored package row
+                job.setLexResPackage((LexResPackage) session.merge(job.getLexResPackage()));
+            }
+
+            setCurrentImportJob(job);
+
             try {
-                DivXmlToDbTransformer trans = new DivXmlToDbTransformer(this);
-                trans.transform(file, null);
+                tracker.report(0);
+                long writeStart = System.currentTimeMillis();
+                StaxLmfImporter staxImporter = null;
+                // checkpoints and deltas are only handled by the StAX importer
+                if (importConfig.isDelta()) {
+                    staxImporter = new StaxLmfImporter(this, cfg, tracker,
+                            importConfig.getBatchSize(),
+                            importConfig.getQueueDepth());
+                    if (!staxImporter.supports(file)) {
+                        throw new DivException("Delta import needs the StAX importer, which can't handle " + url);
+                    }
+                } else if (importConfig.isStaxImport() || resumed) {
+                    staxImporter = new StaxLmfImporter(this, cfg, tracker,
+                            importConfig.getBatchSize(),
+                            importConfig.getQueueDepth());
+                    if (!resumed && !staxImporter.supports(file)) {
+                        LOG.warn("Falling back to UBY importer for " + url);
+                        importLogSink.add(Level.WARN, "StAX importer can't handle " + url
+                                + ", falling back to UBY importer");
+                        staxImporter = null;
+                    }
+                }
+
+                long elementCount;
+                if (staxImporter == null) {
+                    DivXmlToDbTransformer trans = new DivXmlToDbTransformer(this, tracker, importConfig.getBatchSize());
+                    trans.transform(file, null);
+                    job.setEntityCounts(trans.getEntityCounts());
+                    elementCount = trans.getElementCount();
+                } else if (importConfig.isDelta()) {
+                    DeltaImporter delta = new DeltaImporter(this, cfg, job.getLexResPackage()
+                                                                          .getName());
+                    delta.scan(file);
+                    staxImporter.importDelta(file, delta);
+                    // rows were written outside of Hibernate
+                    session.clear();
+                    if (deltaSynsets != null) {
+                        deltaSynsets.addAll(delta.getTouchedSynsets());
+                    }
+                    job.setEntityCounts(staxImporter.getEntityCounts());
+                    elementCount = staxImporter.getElementCount();
+                } else {
+                    staxImporter.importFile(file, job);
+                    // rows were written outside of Hibernate
+                    session.clear();
+                    job.setEntityCounts(staxImporter.getEntityCounts());
+                    elementCount = staxImporter.getElementCount();
+                }
+                updateSynsetKeys();
+                job.setPhaseTime(ImportPhase.WRITE, System.currentTimeMillis() - writeStart);
+                job.setPeakHeap(peakHeap());
                 endImportJob(job);
+                tracker.report(elementCount);
 
             } catch (Exception ex) {
+                // so buffered messages of the failed job are not lost
+                try {
+                    closeImportLogSink(job);
+                } catch (Exception exc) {
+                    LOG.error("Error while closing import log of failed job " + job.getId(), exc);
+                }
+                if (importConfig.isDelta()) {
+                    LOG.error("Delta of " + url + " was rolled back.");
+                } else if (importConfig.isStaxImport() || resumed) {
+                    LOG.error("Import of " + url + " can be resumed from last committed batch by importing it again.");
+                }
                 throw new InterruptedImportException("Error while loading lmf xml " + url, ex);
             }
 
@@ -1275,11 +2051,30 @@ public class Diversicon extends Uby {
     }
 
     /**
-     * Writes DBInfo flags to DB.
+     * Writes DBInfo flags and closure settings from {@code importConfig} to DB.
+     * If closure settings differ from stored ones, stored closure edges are
+     * removed, as they can't be described by the new settings.
      * 
      * @since 0.1.0
      */
-    private DbInfo prepareDbForImport() {
+    private DbInfo prepareDbForImport(ImportConfig importConfig) {
+
+        // written ids would be missing from the filter
+        removeIdFilter();
+
+        DbInfo storedInfo = getDbInfo();
+        if (!storedInfo.hasClosureSettings(importConfig)) {
+            LOG.info("Closure settings changed from max depth " + storedInfo.getClosureMaxDepth()
+                    + " of " + storedInfo.materializedRelations() + " to max depth "
+                    + importConfig.getClosureMaxDepth() + " of "
+                    + (importConfig.getClosureRelations()
+                                   .isEmpty() ? Diversicons.getCanonicalTransitiveRelations()
+                                           : importConfig.getClosureRelations())
+                    + ", closure will be computed again from scratch.");
+            if (hasClosureTable()) {
+                truncateClosure();
+            }
+        }
 
         Transaction tx = null;
         try {
@@ -1291,6 +2086,13 @@ public class Diversicon extends Uby {
             dbInfo.setToValidate(true);
             dbInfo.setToNormalize(true);
             dbInfo.setToAugment(true);
+            dbInfo.setClosureMaxDepth(importConfig.getClosureMaxDepth());
+            StringBuilder closureRelations = new StringBuilder();
+            for (String relName : importConfig.getClosureRelations()) {
+                closureRelations.append(relName + " ");
+            }
+            dbInfo.setClosureRelations(closureRelations.toString()
+                                                       .trim());
             session.saveOrUpdate(dbInfo);
 
             tx.commit();
@@ -1330,8 +2132,12 @@ public class Diversicon extends Uby {
 
         Transaction tx = null;
         try {
+            closeImportLogSink(job);
+
             tx = session.beginTransaction();
             job.setEndDate(new Date());
+            job.setCheckpointElements(0);
+            job.setCheckpointState(null);
             session.saveOrUpdate(job);
 
             DbInfo dbInfo = getDbInfo();
@@ -1351,6 +2157,60 @@ public class Diversicon extends Uby {
 
     }
 
+    /**
+     * Saves changes to an already ended import job.
+     * 
+     * @since 0.1.0
+     */
+    private void updateImportJob(ImportJob job) {
+        checkNotNull(job);
+
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            session.saveOrUpdate(job);
+            tx.commit();
+        } catch (Exception ex) {
+            LOG.error("Error while updating import job in db, rolling back!");
+            if (tx != null) {
+                tx.rollback();
+            }
+
+            throw new DivException("Error while updating import job in db!", ex);
+        }
+    }
+
+    /**
+     * Resets the peak usage of heap memory pools, see {@link #peakHeap()}
+     * 
+     * @since 0.1.0
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP.equals(pool.getType())) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum in bytes of peak usages of heap memory pools since last
+     * {@link #resetPeakHeap()}. As pools may peak at different times, this
+     * is an upper bound of the actual peak.
+     * 
+     * @since 0.1.0
+     */
+    private static long peakHeap() {
+        long ret = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP.equals(pool.getType())) {
+                ret += pool.getPeakUsage()
+                           .getUsed();
+            }
+        }
+        return ret;
+    }
+
     /**
      * 
      * Validates metadata and xml (if present), then returns an
@@ -1370,10 +2230,10 @@ public class Diversicon extends Uby {
      * @param fileUrl
      *            Url to the file to import. This is what will be used to
      *            actually import the file
-     * @param xmlFile
-     *            the physical source LMF XML file. If there was none, use
+     * @param staged
+     *            the opened source LMF XML file. If there was none, use
      *            {@code null}. This will only be used to validate the file
-     *            prior import.
+     *            prior import, unless it was already validated.
      * @see #setCurrentImportJob(ImportJob)
      * @throws InvalidImportException
      *             if thrown means some validation failed but no
@@ -1383,13 +2243,16 @@ public class Diversicon extends Uby {
     private ImportJob newImportJob(
             ImportConfig importConfig,
             String fileUrl,
-            @Nullable File file,
+            @Nullable StagedImport staged,
             LexResPackage pack) {
 
-        validateImport(importConfig, fileUrl, file, pack);
-
         ImportJob job = new ImportJob();
 
+        validateImport(importConfig, fileUrl, staged, pack, job);
+
+        if (staged != null) {
+            job.setContentHash(staged.getContentHash());
+        }
         job.setAuthor(importConfig.getAuthor());
         job.setDescription(importConfig.getDescription());
         job.setStartDate(new Date());
@@ -1409,18 +2272,21 @@ public class Diversicon extends Uby {
      * enabled
      * </ul>
      * 
+     * @param job
+     *            where to record validation phase durations
      * @throws InvalidImportException
-     * @see #newImportJob(ImportConfig, String, File, LexResPackage) for more
+     * @see #newImportJob(ImportConfig, String, StagedImport, LexResPackage) for more
      *      info.
      * @since 0.1.0
      */
     private void validateImport(
             ImportConfig importConfig,
             String fileUrl,
-            @Nullable File xmlFile,
-            LexResPackage pack) {
+            @Nullable StagedImport staged,
+            LexResPackage pack,
+            ImportJob job) {
         
-        DivXmlValidator divValidator = null;
+        DivXmlValidator divValidator = staged == null ? null : staged.getValidator();
         try {
 
             checkNotNull(importConfig);
@@ -1432,24 +2298,33 @@ public class Diversicon extends Uby {
 
             
 
-            XmlValidationConfig xmlValidationConfig = XmlValidationConfig.builder()
-                                                                         .setLog(LOG)
-                                                                         .setLogLimit(importConfig.getLogLimit())
-                                                                         .setFailFast(true)
-                                                                         .setStrict(!importConfig.isForce())
-                                                                         .build();
+            XmlValidationConfig xmlValidationConfig = xmlValidationConfig(importConfig);
 
             // FIRST AND SECOND STEP
 
-            if (xmlFile == null) {
+            long phaseStart = System.currentTimeMillis();
+
+            if (divValidator != null) {
+                LOG.info("XML was already validated.");
+                LOG.info("");
+            } else if (staged == null) {
                 divValidator = Diversicons.validateResource(pack, null, xmlValidationConfig);
+                // resource validation doesn't separate the steps
+                job.setPhaseTime(ImportPhase.STRUCTURAL_VALIDATION, System.currentTimeMillis() - phaseStart);
                 LOG.info("Resource is valid!");
                 LOG.info("");
             } else {
                 LOG.info("");
-                LOG.info("Validating XML Schema of " + xmlFile.getAbsolutePath() + "   ...");
+                LOG.info("Validating XML Schema of " + staged.getSystemId() + "   ...");
                 LOG.info("");
-                divValidator = Diversicons.validateXml(xmlFile, xmlValidationConfig);
+                // schema, structural and internal validation share a single
+                // read of the file, internal refs are checked on collected ids
+                divValidator = staged.validateSinglePass(xmlValidationConfig);
+                // structural and internal validation are included, see
+                // ImportPhase.SCHEMA_VALIDATION
+                job.setPhaseTime(ImportPhase.SCHEMA_VALIDATION, System.currentTimeMillis() - phaseStart);
+
+                divValidator.checkPassed();
 
                 LOG.info("XML is valid!");
                 LOG.info("");
@@ -1460,15 +2335,19 @@ public class Diversicon extends Uby {
             LOG.info("Checking XML external references against the database ...");
             LOG.info("");
 
+            phaseStart = System.currentTimeMillis();
+
             divValidator.prepareThirdPass(this, importConfig);
-            if (xmlFile == null) {
+            if (staged == null) {
                 Diversicons.validateResourceStep(pack, null, divValidator);
             } else {
-                Diversicons.validateXmlStep(xmlFile, divValidator);
+                divValidator.validateCollectedRefs();
             }
 
             divValidator.checkPassed();
 
+            job.setPhaseTime(ImportPhase.EXTERNAL_VALIDATION, System.currentTimeMillis() - phaseStart);
+
             if (divValidator.getErrorHandler().getWarningCount() > 0
                     && importConfig.isForce()) {
                 LOG.warn("Ignoring warnings because of force flag.\n");                
@@ -1484,6 +2363,58 @@ public class Diversicon extends Uby {
         }
     }
 
+    /**
+     * Returns the latest import job of {@code staged} file url which was
+     * interrupted after committing some data, or {@code null} if there is
+     * none. Since resumed jobs skip validation, a job is resumed only if
+     * the content hash it recorded matches the one of {@code staged}: 
+     * otherwise the file changed meanwhile, and must be validated again
+     * in a new job.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private ImportJob resumableImportJob(StagedImport staged) {
+        String fileUrl = staged.getFileUrl();
+        Criteria crit = session.createCriteria(ImportJob.class);
+        crit.add(Restrictions.eq("fileUrl", fileUrl));
+        crit.add(Restrictions.isNull("endDate"));
+        crit.addOrder(Order.desc("id"));
+        crit.setMaxResults(1);
+        ImportJob ret = (ImportJob) crit.uniqueResult();
+        if (ret == null) {
+            return null;
+        }
+        // checkpoints are written outside of Hibernate
+        session.refresh(ret);
+        if (ret.getCheckpointElements() == 0) {
+            return null;
+        }
+        if (ret.getContentHash() == null
+                || !ret.getContentHash()
+                       .equals(staged.hashContent())) {
+            LOG.warn("Found interrupted import job " + ret.getId() + " for " + fileUrl
+                    + " , but file content changed since then: validating it again in a new job.");
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the configuration for validating files to import.
+     * 
+     * @since 0.1.0
+     */
+    private static XmlValidationConfig xmlValidationConfig(ImportConfig importConfig) {
+        return XmlValidationConfig.builder()
+                                  .setLog(LOG)
+                                  .setLogLimit(importConfig.getLogLimit())
+                                  .setFailFast(true)
+                                  .setStrict(!importConfig.isForce())
+                                  .setCacheDir(importConfig.getValidationCacheDir())
+                                  .build();
+    }
+
     /**
      * @since 0.1.0
      * @param job
@@ -1501,6 +2432,9 @@ public class Diversicon extends Uby {
 
             tx.commit();
 
+            importLogSink = new ImportLogSink(session.getSessionFactory(), job);
+            job.setLogSink(importLogSink);
+
         } catch (Exception ex) {
             LOG.error("Error while adding import job in db, rolling back!");
             if (tx != null) {
@@ -1512,6 +2446,36 @@ public class Diversicon extends Uby {
 
     }
 
+    /**
+     * Writes pending log messages of {@code job} and detaches its sink
+     * from this instance, so later messages are not attributed to it.
+     * 
+     * @throws DivException
+     *             if messages couldn't be written.
+     * 
+     * @since 0.1.0
+     */
+    private void closeImportLogSink(ImportJob job) {
+        ImportLogSink sink = job.getLogSink();
+        if (importLogSink == sink) {
+            importLogSink = null;
+        }
+        if (sink != null) {
+            sink.close();
+        }
+    }
+
+    /**
+     * Returns the sink collecting log messages of the current import job, or
+     * {@code null} if no job is running.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    ImportLogSink getImportLogSink() {
+        return importLogSink;
+    }
+
     /**
      * Returns all registered namespaces.
      * 
@@ -1566,12 +2530,9 @@ public class Diversicon extends Uby {
      * a database. Call is synchronous, after finishing returns a log of the
      * import.
      * <p>
-     * NOTE: This method is suitable only for small lexical resources,
-     * generally for testing purposes. If you have a big resource, stream the
-     * load process by providing your implementation of <a href=
-     * "https://github.com/dkpro/dkpro-uby/blob/master/de.tudarmstadt.ukp.uby.persistence.transform-asl/src/main/java/de/tudarmstadt/ukp/lmf/transform/LMFDBTransformer.java"
-     * target="_blank"> LMFDBTransformer</a> and then call {@code transform()}
-     * on it instead.
+     * Objects of the resource are written as they are, without copying them.
+     * If you have a big resource, instead of building it all in memory stream
+     * it with {@link #openImportSink(LexicalResource, LexResPackage, ImportConfig)}.
      * </p>
      * 
      * @param importConfig a configuration for the import. Must have only one file url.
@@ -1589,17 +2550,74 @@ public class Diversicon extends Uby {
             LexResPackage pack,
             ImportConfig importConfig) {
 
+        try (ImportSink sink = openImportSink(lexRes, pack, importConfig)) {
+            for (Lexicon lexicon : lexRes.getLexicons()) {
+                sink.addLexicon(lexicon);
+                for (LexicalEntry lexicalEntry : lexicon.getLexicalEntries()) {
+                    sink.addLexicalEntry(lexicalEntry);
+                }
+                for (SubcategorizationFrame subcatFrame : lexicon.getSubcategorizationFrames()) {
+                    sink.addSubcategorizationFrame(subcatFrame);
+                }
+                for (SubcategorizationFrameSet subcatFrameSet : lexicon.getSubcategorizationFrameSets()) {
+                    sink.addSubcategorizationFrameSet(subcatFrameSet);
+                }
+                for (SemanticPredicate semanticPredicate : lexicon.getSemanticPredicates()) {
+                    sink.addSemanticPredicate(semanticPredicate);
+                }
+                for (Synset synset : lexicon.getSynsets()) {
+                    sink.addSynset(synset);
+                }
+                for (SynSemCorrespondence synSemCorrespondence : lexicon.getSynSemCorrespondences()) {
+                    sink.addSynSemCorrespondence(synSemCorrespondence);
+                }
+                for (ConstraintSet constraintSet : lexicon.getConstraintSets()) {
+                    sink.addConstraintSet(constraintSet);
+                }
+            }
+            for (SenseAxis senseAxis : lexRes.getSenseAxes()) {
+                sink.addSenseAxis(senseAxis);
+            }
+            return sink.finish();
+        }
+    }
+
+    /**
+     * 
+     * Starts importing a {@link LexicalResource} whose content is provided
+     * object by object to the returned sink, so the resource never needs to
+     * be fully in memory. Validation is performed only on {@code pack}, and
+     * the import ends when {@link ImportSink#finish()} is called. For the
+     * order objects must be added in, see {@link ImportSink}.
+     * 
+     * @param lexRes
+     *            the resource attributes, lexicons and sense axes in it are
+     *            ignored.
+     * @param importConfig
+     *            a configuration for the import. Must have only one file
+     *            url.
+     * @param pack
+     *            A LexicalResource doesn't contain stuff like namespaces, so
+     *            we have to provide them by ourselves in pack.
+     * @throws InvalidImportException
+     * @throws InterruptedImportException
+     * 
+     * @since 0.1.0
+     */
+    public ImportSink openImportSink(
+            LexicalResource lexRes,
+            LexResPackage pack,
+            ImportConfig importConfig) {
+
         Internals.checkLexResPackage(pack, lexRes);
         Internals.checkEquals(1, importConfig.getFileUrls().size());
         
         LOG.info("Going to save lexical resource to database...");
 
-        ImportJob job = null;
-
         String fileUrl = importConfig.getFileUrls().get(0);
         try {
 
-            job = newImportJob(importConfig,
+            ImportJob job = newImportJob(importConfig,
                     fileUrl,
                     null,
                     pack);
@@ -1609,20 +2627,14 @@ public class Diversicon extends Uby {
                 LOG.info("**********   DRY RUN:  skipping actual import     ***********");
                 LOG.info("");                                
             } else {
-                prepareDbForImport();
+                prepareDbForImport(importConfig);
 
                 setCurrentImportJob(job);
 
-                new JavaToDbTransformer(this, lexRes).transform();
-
-                if (!importConfig.isSkipAugment()) {
-                    processGraph();
-                }
-
-                endImportJob(job);
-
+                resetPeakHeap();
             }
-
+            
+            return new ImportSink(this, lexRes, importConfig, job);
             
         } catch (InvalidImportException ex) {
 
@@ -1633,18 +2645,44 @@ public class Diversicon extends Uby {
             throw new InterruptedImportException("Error when importing lexical resource "
                     + lexRes.getName() + " !", ex);
         }
+    }
+
+    /**
+     * Completes the import of a resource written by an {@link ImportSink}.
+     * 
+     * @param writeTime
+     *            time spent writing, in millisecs
+     * @throws InterruptedImportException
+     * 
+     * @since 0.1.0
+     */
+    void endResourceImport(ImportConfig importConfig, ImportJob job, long writeTime) {
 
-        
-        
         if (importConfig.isDryRun()){
             LOG.info("");
             LOG.info("**********   DRY RUN:  end of import, no data was written to disk !     ***********");
             LOG.info("");                                
-        } else {
-            LOG.info("Done saving.");
-        }                
+            return;
+        }
+        
+        try {
+            job.setPhaseTime(ImportPhase.WRITE, writeTime);
+            job.setPeakHeap(peakHeap());
 
-        return job;
+            if (!importConfig.isSkipAugment()) {
+                processGraph(progressListener(importConfig), job, null);
+            }
+
+            endImportJob(job);
+            buildIdFilter();
+        } catch (InterruptedImportException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new InterruptedImportException("Error when importing lexical resource "
+                    + job.getLexResPackage().getName() + " !", ex);
+        }
+
+        LOG.info("Done saving.");
     }
     
     /**
@@ -1927,6 +2965,15 @@ public class Diversicon extends Uby {
             return false;
         }
 
+        // edges always depart from stored synsets, and a path either starts
+        // from source or, for inverse relations, from target
+        IdFilter filter = idFilter();
+        if (filter != null
+                && !filter.mightContain(sourceSynsetId)
+                && !filter.mightContain(targetSynsetId)) {
+            return false;
+        }
+
         List<String> directRelations = new ArrayList<>();
         List<String> inverseRelations = new ArrayList<>();
 
@@ -1938,74 +2985,26 @@ public class Diversicon extends Uby {
             }
         }
 
-        String depthConstraint;
-        if (depth == -1) {
-            depthConstraint = "";
-        } else {
-            depthConstraint = " SR.depth <= " + depth + " AND ";
-        }
-
-        String directHsql;
-        if (directRelations.isEmpty()) {
-            directHsql = "";
-        } else {
-            directHsql = " "
-                    + " ("
-                    + "     SR.source.id = :sourceSynsetId"
-                    // Gabor: optimised SQL call for performance, the conditions below
-                    // will be checked programmatically in Java
-                    //+ "     AND   SR.target.id = :targetSynsetId"
-                    //+ "     AND   SR.relName IN " + makeSqlList(directRelations)
-                    + " )";
-        }
-
-        String inverseHsql;
-        if (inverseRelations.isEmpty()) {
-            inverseHsql = "";
-        } else {
-            inverseHsql = ""
-                    + "  ("
-                    + "      SR.source.id = :targetSynsetId"
-                    // Gabor: optimised SQL call for performance, the conditions below
-                    // will be checked programmatically in Java
-                    //+ "      AND SR.target.id = :sourceSynsetId"
-                    //+ "      AND SR.relName IN " + makeSqlList(inverseRelations)
-                    + "  )";
-
-        }
-
-        String orHsql;
-        if (!directRelations.isEmpty() && !inverseRelations.isEmpty()) {
-            orHsql = " OR ";
-        } else {
-            orHsql = "";
-        }
-
-        String queryString = " SELECT SR.relName, SR.target.id"
-                + " FROM SynsetRelation SR"
-                + " WHERE "
-                + depthConstraint
-                + "("
-                + directHsql
-                + orHsql
-                + inverseHsql
-                + ")";
-        
-        Query query = session.createQuery(queryString);
         if (!directRelations.isEmpty()) {
-            query.setParameter("sourceSynsetId", sourceSynsetId);
+            for (Object[] edge : getOutgoingEdges(sourceSynsetId, depth)) {
+                if (targetSynsetId.equals(edge[1]) && directRelations.contains(edge[0])) {
+                    return true;
+                }
+            }
         }
+
         if (!inverseRelations.isEmpty()) {
-            query.setParameter("targetSynsetId", targetSynsetId);
+            for (Object[] edge : getOutgoingEdges(targetSynsetId, depth)) {
+                if (sourceSynsetId.equals(edge[1]) && inverseRelations.contains(edge[0])) {
+                    return true;
+                }
+            }
         }
 
-        Iterator it = query.iterate();
-        while(it.hasNext()) {
-            Object[] results = (Object[]) it.next();
-            String relName = (String) (results[0]);
-            String target = (String) (results[1]);
-            if (sourceSynsetId.equals(target) && inverseRelations.contains(relName) ||
-                targetSynsetId.equals(target) && directRelations.contains(relName)) {
+        DbInfo dbInfo = getDbInfo();
+        for (String relName : relNames) {
+            Set<String> reached = traverseUnmaterialized(dbInfo, sourceSynsetId, relName, depth, targetSynsetId);
+            if (reached.contains(targetSynsetId)) {
                 return true;
             }
         }
@@ -2044,42 +3043,25 @@ public class Diversicon extends Uby {
             return relNames;
         }
 
-        String depthConstraint;
-        if (depth == -1) {
-            depthConstraint = "";
-        } else {
-            depthConstraint = " SR.depth <= " + depth + " AND ";
+        // see isConnected
+        IdFilter filter = idFilter();
+        if (filter != null
+                && !filter.mightContain(sourceSynsetId)
+                && !filter.mightContain(targetSynsetId)) {
+            return relNames;
         }
 
-        String hsql = "(SR.source.id = :synsetId)";// OR SR.source.id = :targetSynsetId)";
-
-        String queryString = " SELECT SR.relName, SR.target.id"
-                + " FROM SynsetRelation SR"
-                + " WHERE "
-                + depthConstraint
-                + hsql;
-        
-        Query query = session.createQuery(queryString);
-        query.setParameter("synsetId", sourceSynsetId);
-
-        Iterator it = query.iterate();
-        while(it.hasNext()) {
-            Object[] results = (Object[]) it.next();
-            String relName = (String) (results[0]);
-            String target = (String) (results[1]);
+        for (Object[] edge : getOutgoingEdges(sourceSynsetId, depth)) {
+            String relName = (String) (edge[0]);
+            String target = (String) (edge[1]);
             if (targetSynsetId.equals(target)) {
                 relNames.add(relName);
             }
         }
         
-        query = session.createQuery(queryString);
-        query.setParameter("synsetId", targetSynsetId);
-
-        it = query.iterate();
-        while(it.hasNext()) {
-            Object[] results = (Object[]) it.next();
-            String relName = (String) (results[0]);
-            String target = (String) (results[1]);
+        for (Object[] edge : getOutgoingEdges(targetSynsetId, depth)) {
+            String relName = (String) (edge[0]);
+            String target = (String) (edge[1]);
             if (sourceSynsetId.equals(target)) {
                 String inverseRel;
                 try {
@@ -2091,9 +3073,312 @@ public class Diversicon extends Uby {
             }
         }
 
+        DbInfo dbInfo = getDbInfo();
+        List<String> unmaterialized = new ArrayList<>();
+        for (String relName : Diversicons.getCanonicalTransitiveRelations()) {
+            unmaterialized.add(relName);
+            if (Diversicons.hasInverse(relName)) {
+                unmaterialized.add(Diversicons.getInverse(relName));
+            }
+        }
+        for (String relName : unmaterialized) {
+            if (!relNames.contains(relName)) {
+                Set<String> reached = traverseUnmaterialized(dbInfo, sourceSynsetId, relName, depth, targetSynsetId);
+                if (reached.contains(targetSynsetId)) {
+                    relNames.add(relName);
+                }
+            }
+        }
+
         return relNames;
     }
 
+    /**
+     * Computes on the fly connections along {@code relName} which
+     * are not materialized in the db, see
+     * {@link DbInfo#isClosureMaterialized(String, int)}. Traversal follows
+     * depth 1 edges of the canonical relation, backwards if {@code relName}
+     * is the inverse of a canonical one.
+     * 
+     * @param depth
+     *            the maximum depth to reach, if {@code -1} there is no limit.
+     * @param stopId
+     *            if reached, traversal stops early.
+     * 
+     * @return the ids of reached synsets, or an empty set if connections
+     *         along {@code relName} are already materialized within
+     *         {@code depth}.
+     * 
+     * @since 0.1.0
+     */
+    private Set<String> traverseUnmaterialized(
+            DbInfo dbInfo,
+            String synsetId,
+            String relName,
+            int depth,
+            @Nullable String stopId) {
+
+        Set<String> visited = new HashSet<>();
+
+        String canonicalRelName;
+        boolean inverse;
+        if (Diversicons.isCanonicalRelation(relName)) {
+            canonicalRelName = relName;
+            inverse = false;
+        } else if (Diversicons.hasInverse(relName)
+                && Diversicons.isCanonicalRelation(Diversicons.getInverse(relName))) {
+            canonicalRelName = Diversicons.getInverse(relName);
+            inverse = true;
+        } else {
+            return visited;
+        }
+
+        if (dbInfo.isClosureMaterialized(canonicalRelName, depth)) {
+            return visited;
+        }
+
+        String queryString;
+        if (inverse) {
+            queryString = " SELECT SR.source.id"
+                    + " FROM SynsetRelation SR"
+                    + " WHERE SR.depth = 1 AND SR.relName = :relName AND SR.target.id IN (:ids)";
+        } else {
+            queryString = " SELECT SR.target.id"
+                    + " FROM SynsetRelation SR"
+                    + " WHERE SR.depth = 1 AND SR.relName = :relName AND SR.source.id IN (:ids)";
+        }
+
+        Set<String> frontier = new HashSet<>();
+        frontier.add(synsetId);
+        int level = 0;
+        while (!frontier.isEmpty() && (depth == -1 || level < depth)) {
+            Query query = session.createQuery(queryString);
+            query.setParameter("relName", canonicalRelName);
+            query.setParameterList("ids", frontier);
+
+            Set<String> next = new HashSet<>();
+            for (Object id : query.list()) {
+                String reachedId = (String) id;
+                if (visited.add(reachedId)) {
+                    if (reachedId.equals(stopId)) {
+                        return visited;
+                    }
+                    next.add(reachedId);
+                }
+            }
+            frontier = next;
+            level++;
+        }
+
+        return visited;
+    }
+
+    /**
+     * Returns {@code false} if no synset or sense with {@code id} is surely
+     * in the db, {@code true} if there might be one. Answers come from the
+     * persisted {@link IdFilter}, if there is none the db might contain any
+     * id.
+     * 
+     * @since 0.1.0
+     */
+    boolean mightContainId(String id) {
+        IdFilter filter = idFilter();
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * Returns the stored {@link IdFilter}, or {@code null} if there is none.
+     * The loaded filter is kept until its
+     * {@link DbInfo#getIdFilterVersion() version} in the db changes, which
+     * happens whenever any instance starts or ends an import.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    private IdFilter idFilter() {
+        long version = storedIdFilterVersion();
+        if (version == -1) {
+            // can't tell whether a loaded filter is still valid
+            return null;
+        }
+        if (!idFilterLoaded || version != idFilterVersion) {
+            try (Connection conn = Diversicons.getH2Connection(dbConfig)) {
+                idFilter = IdFilter.load(conn);
+            } catch (SQLException ex) {
+                LOG.debug("Couldn't connect to load id filter!", ex);
+                idFilter = null;
+            }
+            // if filter changed meanwhile, next call will reload it
+            idFilterVersion = version;
+            idFilterLoaded = true;
+        }
+        return idFilter;
+    }
+
+    /**
+     * Returns the {@link DbInfo#getIdFilterVersion() version} of the stored id
+     * filter, or {@code -1} if it can't be read (i.e. in dbs created by older
+     * Diversicon versions).
+     * 
+     * @since 0.1.0
+     */
+    private long storedIdFilterVersion() {
+        try {
+            Number ret = (Number) session.createSQLQuery("SELECT idFilterVersion FROM DbInfo")
+                                         .setMaxResults(1)
+                                         .uniqueResult();
+            return ret == null ? 0 : ret.longValue();
+        } catch (HibernateException ex) {
+            LOG.debug("Couldn't read id filter version, id filter won't be used.", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Returns a native query selecting the id column of entities of class
+     * {@code clazz}
+     * 
+     * @since 0.1.0
+     */
+    private String idsSql(Class<?> clazz) {
+        PersistentClass pc = cfg.getClassMapping(clazz.getName());
+        if (pc == null) {
+            throw new DivException("Unmapped entity " + clazz.getName());
+        }
+        Column idColumn = (Column) pc.getIdentifier()
+                                     .getColumnIterator()
+                                     .next();
+        return "SELECT " + idColumn.getName() + " FROM " + pc.getTable()
+                                                             .getName();
+    }
+
+    /**
+     * Builds the {@link IdFilter} of all synset and sense ids in the db and
+     * stores it.
+     * 
+     * @throws DivException
+     * 
+     * @since 0.1.0
+     */
+    private void buildIdFilter() {
+        long start = System.currentTimeMillis();
+        Connection conn = null;
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+
+            String synsetsSql = idsSql(Synset.class);
+            String sensesSql = idsSql(Sense.class);
+            long count = 0;
+            try (Statement stat = conn.createStatement();
+                    ResultSet rs = stat.executeQuery(
+                            "SELECT (SELECT COUNT(*) FROM (" + synsetsSql + ") S1),"
+                                    + " (SELECT COUNT(*) FROM (" + sensesSql + ") S2)")) {
+                rs.next();
+                count = rs.getLong(1) + rs.getLong(2);
+            }
+
+            IdFilter filter = IdFilter.create(count, IdFilter.FALSE_POSITIVE_RATE);
+            for (String sql : new String[] { synsetsSql, sensesSql }) {
+                try (Statement stat = conn.createStatement();
+                        ResultSet rs = stat.executeQuery(sql)) {
+                    while (rs.next()) {
+                        filter.put(rs.getString(1));
+                    }
+                }
+            }
+            filter.store(conn);
+            long version = IdFilter.bumpVersion(conn);
+            conn.commit();
+
+            idFilter = filter;
+            idFilterVersion = version;
+            idFilterLoaded = true;
+            LOG.debug("Built " + filter + " in " + Internals.formatInterval(System.currentTimeMillis() - start));
+        } catch (SQLException ex) {
+            throw new DivException("Error while building id filter!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the stored {@link IdFilter}, so lookups go to the db until it is
+     * built again.
+     * 
+     * @throws DivException
+     * 
+     * @since 0.1.0
+     */
+    void removeIdFilter() {
+        idFilter = null;
+        idFilterLoaded = false;
+        Connection conn = null;
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+            IdFilter.remove(conn);
+            long version = IdFilter.bumpVersion(conn);
+            conn.commit();
+            idFilterVersion = version;
+            idFilterLoaded = true;
+        } catch (SQLException ex) {
+            throw new DivException("Error while removing id filter!", ex);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the ids among {@code ids} of entities of class {@code clazz}
+     * present in the db. Ids are looked up with one query every
+     * {@link #ID_CHUNK_SIZE} of them. Synset and sense ids surely missing
+     * according to the {@link #mightContainId(String) id filter} are not
+     * looked up at all.
+     * 
+     * @param clazz
+     *            a mapped class with a string id, like {@link Synset}
+     * 
+     * @since 0.1.0
+     */
+    Set<String> findStoredIds(Class<?> clazz, Collection<String> ids) {
+        checkNotNull(clazz);
+        checkNotNull(ids);
+
+        Set<String> ret = new HashSet<>();
+        String queryString = "SELECT E.id FROM " + clazz.getName() + " E WHERE E.id IN (:ids)";
+        IdFilter filter = Synset.class.equals(clazz) || Sense.class.equals(clazz) ? idFilter() : null;
+        List<String> chunk = new ArrayList<>();
+        Iterator<String> iter = ids.iterator();
+        while (iter.hasNext()) {
+            String id = iter.next();
+            if (filter == null || filter.mightContain(id)) {
+                chunk.add(id);
+            }
+            if (!chunk.isEmpty() && (chunk.size() == ID_CHUNK_SIZE || !iter.hasNext())) {
+                Query query = session.createQuery(queryString);
+                query.setParameterList("ids", chunk);
+                for (Object found : query.list()) {
+                    ret.add((String) found);
+                }
+                chunk.clear();
+            }
+        }
+        return ret;
+    }
+
     /**
      * Returns a nicely formatted import log
      * 
@@ -2160,6 +3445,41 @@ public class Diversicon extends Uby {
         sb.append("Duration    : ");
         sb.append(Internals.formatInterval(job.getStartDate(), job.getEndDate()));        
         sb.append("\n");
+        if (!job.getPhaseTimes()
+                .isEmpty()) {
+            sb.append("Phases      : \n");
+            for (ImportPhase phase : ImportPhase.values()) {
+                long millis = job.getPhaseTime(phase);
+                if (millis != -1) {
+                    sb.append("    " + phase.getDescr() + ":   " + Internals.formatInterval(millis) + "\n");
+                }
+            }
+        }
+        if (!job.getEntityCounts()
+                .isEmpty()) {
+            sb.append("Written rows: \n");
+            for (String entity : new TreeSet<>(job.getEntityCounts()
+                                                  .keySet())) {
+                sb.append("    " + entity + ":   " + Internals.formatInteger(job.getEntityCounts()
+                                                                             .get(entity))
+                        + "\n");
+            }
+        }
+        if (!job.getRelationCounts()
+                .isEmpty()) {
+            sb.append("Added edges : \n");
+            for (String relName : new TreeSet<>(job.getRelationCounts()
+                                                   .keySet())) {
+                sb.append("    " + relName + ":   " + Internals.formatInteger(job.getRelationCounts()
+                                                                              .get(relName))
+                        + "\n");
+            }
+        }
+        if (job.getPeakHeap() != -1) {
+            sb.append("Peak heap   : ");
+            sb.append(Internals.formatInteger(job.getPeakHeap() / (1024 * 1024)) + " MB");
+            sb.append("\n");
+        }
         if (!Internals.isBlank(job.getDescription())){
             sb.append(job.getDescription());
             sb.append("\n");            
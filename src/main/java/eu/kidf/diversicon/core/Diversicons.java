@@ -1,6 +1,7 @@
 package eu.kidf.diversicon.core;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -12,6 +13,8 @@ import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -27,6 +30,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
@@ -38,7 +44,7 @@ import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.xerces.impl.Constants;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.basex.core.Context;
 import org.basex.io.serial.Serializer;
 import org.basex.query.QueryException;
@@ -67,11 +73,11 @@ import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.LocatorImpl;
 
 import javax.annotation.Nullable;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -80,8 +86,8 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
 import de.tudarmstadt.ukp.lmf.hibernate.HibernateConnect;
 import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
@@ -181,6 +187,29 @@ public final class Diversicons {
      */
     public static final int DEFAULT_LOG_LIMIT = 20;
 
+    /**
+     * Default number of rows written in a single batch by the streaming
+     * importer, see {@link ImportConfig#getBatchSize()}
+     * 
+     * @since 0.1.0
+     */
+    public static final int DEFAULT_IMPORT_BATCH_SIZE = 10000;
+
+    /**
+     * Default number of items waiting between stages of the streaming
+     * importer, see {@link ImportConfig#getQueueDepth()}
+     * 
+     * @since 0.1.0
+     */
+    public static final int DEFAULT_IMPORT_QUEUE_DEPTH = 4;
+
+    /**
+     * H2 cache size in KB used by {@link #turnH2InsertionModeOn(DBConfig)}
+     * 
+     * @since 0.1.0
+     */
+    static final int H2_BULK_LOAD_CACHE_SIZE = 65536;
+
     /**
      * @since 0.1.0
      */
@@ -736,6 +765,26 @@ public final class Diversicons {
 
         SchemaExport se = new SchemaExport(hcfg);
         se.create(dbConfig.isShowSQL(), true);
+
+        // closure tables are not mapped by Hibernate
+        Connection conn = getH2Connection(dbConfig);
+        try {
+            if (drop) {
+                SynsetClosure.dropTables(conn);
+                IdFilter.dropTable(conn);
+            }
+            SynsetClosure.createTables(conn);
+            IdFilter.createTable(conn);
+            conn.commit();
+        } catch (SQLException ex) {
+            throw new DivException("Error while creating closure tables!", ex);
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                LOG.error("Couldn't close connection, db config is " + toString(dbConfig, false), ex);
+            }
+        }
         try {
             tx = session.beginTransaction();
             DbInfo dbInfo = new DbInfo();
@@ -774,6 +823,16 @@ public final class Diversicons {
 
     }
 
+    /**
+     * Returns the mappings from canonical names of Uby classes to the ones of
+     * Diversicon classes replacing them in hibernate mappings.
+     *
+     * @since 0.1.0
+     */
+    static Map<String, String> getCustomClassMappings() {
+        return Collections.unmodifiableMap(customClassMappings);
+    }
+
     /**
      * Loads a given {@code xml} hibernate configuration into {@code hcfg}
      *
@@ -1231,61 +1290,203 @@ public final class Diversicons {
     }
 
     /**
-     * @deprecated TODO in progress
+     * Puts an H2 db in fast insertion mode, see
+     * <a href="http://www.h2database.com/html/performance.html#fast_import"
+     * target="_blank">H2 docs</a>: transaction log is disabled, cache is
+     * enlarged and table level locking is turned off. Since these are
+     * database wide settings, they also apply to other connections.
+     * 
+     * <p>
+     * <strong>NOTE:</strong> with {@code LOCK_MODE 0} writes from different
+     * connections are not isolated, so restore the saved {@code LOCK_MODE}
+     * before writing from more than one connection at a time.
+     * </p>
+     * 
+     * <p>
+     * {@code UNDO_LOG} is a per connection setting and is left untouched,
+     * so failed batches can still be rolled back.
+     * </p>
+     * 
+     * <p>
+     * <strong>NOTE:</strong> with transaction log off, a crash during
+     * insertions may corrupt the db.
+     * </p>
+     * 
+     * @return the previous settings, to restore with
+     *         {@link #h2TurnInsertionModOff(DBConfig, Map)}
+     * 
+     * @throws DivIoException
+     * 
      * @since 0.1.0
      */
-    @SuppressWarnings("unused")
-    public static void turnH2InsertionModeOn(DBConfig dbConfig) {
+    public static Map<String, String> turnH2InsertionModeOn(DBConfig dbConfig) {
+        checkH2Db(dbConfig);
 
-        /**
-         * from
-         * http://www.h2database.com/html/performance.html#fast_import
-         */
-        String saveVars = ""
-                + "  SET @DIV_SAVED_LOG @LOG;"
-                + "  SET @DIV_SAVED_CACHE_SIZE @CACHE_SIZE;"
-                + "  SET @DIV_SAVED_LOCK_MODE @LOCK_MODE;"
-                + "  SET @DIV_SAVED_UNDO_LOG @UNDO_LOG;";
-
-        String setFastOptions = "\n"
-                + "  SET LOG 0;"
-                + "  SET CACHE_SIZE 65536;"
-                + "  SET LOCK_MODE 0;"
-                + "  SET UNDO_LOG 0;";
+        Map<String, String> ret = new LinkedHashMap<>();
 
-        Connection conn = null;
-        Statement stat = null;
-        ResultSet rs = null;
+        try (Connection conn = getH2Connection(dbConfig);
+                Statement stat = conn.createStatement()) {
 
-        try {
-            // todo need to improve connection with dbConfig params
+            try (ResultSet rs = stat.executeQuery("SELECT NAME, VALUE FROM INFORMATION_SCHEMA.SETTINGS"
+                    + " WHERE NAME IN ('LOG', 'CACHE_SIZE', 'info.CACHE_MAX_SIZE', 'MV_STORE')")) {
+                Map<String, String> settings = new HashMap<>();
+                while (rs.next()) {
+                    settings.put(rs.getString(1), rs.getString(2));
+                }
+                // LOG is not listed by all H2 versions, 2 is H2 default
+                ret.put("LOG", settings.containsKey("LOG") ? settings.get("LOG") : "2");
+                if (settings.containsKey("CACHE_SIZE")) {
+                    ret.put("CACHE_SIZE", settings.get("CACHE_SIZE"));
+                } else if (settings.containsKey("info.CACHE_MAX_SIZE")) {
+                    // SET CACHE_SIZE takes KB, while current max size is
+                    // in MB on MVStore and in KB on PageStore
+                    long cacheSize = Long.parseLong(settings.get("info.CACHE_MAX_SIZE")
+                                                            .trim());
+                    if (Boolean.parseBoolean(settings.get("MV_STORE"))) {
+                        cacheSize *= 1024;
+                    }
+                    ret.put("CACHE_SIZE", Long.toString(cacheSize));
+                }
+            }
 
-            conn = DriverManager.getConnection(
-                    dbConfig.getJdbc_url(),
-                    dbConfig.getUser(),
-                    dbConfig.getPassword());
+            try (ResultSet rs = stat.executeQuery("CALL LOCK_MODE()")) {
+                rs.next();
+                ret.put("LOCK_MODE", rs.getString(1));
+            }
 
-            stat = conn.createStatement();
-            stat.execute(saveVars + setFastOptions);
-        } catch (SQLException ex) {
+            stat.execute("SET LOG 0");
+            stat.execute("SET CACHE_SIZE " + H2_BULK_LOAD_CACHE_SIZE);
+            stat.execute("SET LOCK_MODE 0");
+
+            LOG.debug("Turned H2 insertion mode on, saved settings: " + ret);
+
+            return ret;
+        } catch (SQLException | NumberFormatException ex) {
             throw new DivIoException("Error while turning h2 insertion mode on !", ex);
         }
-        throw new UnsupportedOperationException("Developer forgot to implement method!");
     }
 
     /**
-     * @deprecated // TODO in progress
+     * Restores settings changed by {@link #turnH2InsertionModeOn(DBConfig)}
+     * 
+     * @param savedSettings
+     *            the settings returned by
+     *            {@link #turnH2InsertionModeOn(DBConfig)}
+     * 
+     * @throws DivIoException
+     * 
      * @since 0.1.0
      */
-    public static void h2TurnInsertionModOff() {
-        @SuppressWarnings("unused")
-        String restoreSavedVars = ""
-                + "  SET LOG @DIV_SAVED_LOG;"
-                + "  SET CACHE_SIZE @DIV_SAVED_CACHE_SIZE;"
-                + "  SET LOCK_MODE @DIV_SAVED_LOCK_MODE;"
-                + "  SET UNDO_LOG @DIV_SAVED_UNDO_LOG;";
-        throw new UnsupportedOperationException("Developer forgot to implement method!");
+    public static void h2TurnInsertionModOff(DBConfig dbConfig, Map<String, String> savedSettings) {
+        checkH2Db(dbConfig);
+        checkNotNull(savedSettings);
 
+        try (Connection conn = getH2Connection(dbConfig);
+                Statement stat = conn.createStatement()) {
+            for (Map.Entry<String, String> entry : savedSettings.entrySet()) {
+                stat.execute("SET " + entry.getKey() + " " + Integer.parseInt(entry.getValue()
+                                                                                  .trim()));
+            }
+            LOG.debug("Turned H2 insertion mode off.");
+        } catch (SQLException | NumberFormatException ex) {
+            throw new DivIoException("Error while turning h2 insertion mode off !", ex);
+        }
+    }
+
+    /**
+     * Drops non unique indexes of provided tables which don't back any
+     * constraint.
+     * 
+     * @return the statements to create dropped indexes again, see
+     *         {@link #h2CreateIndexes(DBConfig, List)}
+     * 
+     * @throws DivIoException
+     * 
+     * @since 0.1.0
+     */
+    static List<String> h2DropSecondaryIndexes(DBConfig dbConfig, List<String> tables) {
+        checkH2Db(dbConfig);
+        checkNotNull(tables);
+
+        List<String> ret = new ArrayList<>();
+
+        if (tables.isEmpty()) {
+            return ret;
+        }
+
+        StringBuilder tableList = new StringBuilder();
+        for (String table : tables) {
+            tableList.append(tableList.length() == 0 ? "" : ", ");
+            tableList.append("'" + table.toUpperCase() + "'");
+        }
+
+        try (Connection conn = getH2Connection(dbConfig);
+                Statement stat = conn.createStatement()) {
+
+            // index name -> create statement
+            Map<String, StringBuilder> creates = new LinkedHashMap<>();
+
+            try (ResultSet rs = stat.executeQuery("SELECT INDEX_NAME, TABLE_NAME, COLUMN_NAME"
+                    + " FROM INFORMATION_SCHEMA.INDEXES"
+                    + " WHERE TABLE_SCHEMA = SCHEMA()"
+                    + "   AND TABLE_NAME IN (" + tableList + ")"
+                    + "   AND INDEX_TYPE_NAME = 'INDEX'"
+                    + " ORDER BY INDEX_NAME, ORDINAL_POSITION")) {
+                while (rs.next()) {
+                    String indexName = rs.getString(1);
+                    StringBuilder create = creates.get(indexName);
+                    if (create == null) {
+                        create = new StringBuilder("CREATE INDEX IF NOT EXISTS " + indexName
+                                + " ON " + rs.getString(2) + " (" + rs.getString(3));
+                        creates.put(indexName, create);
+                    } else {
+                        create.append(", " + rs.getString(3));
+                    }
+                }
+            }
+
+            for (Map.Entry<String, StringBuilder> entry : creates.entrySet()) {
+                try {
+                    stat.execute("DROP INDEX " + entry.getKey());
+                    ret.add(entry.getValue() + ")");
+                } catch (SQLException ex) {
+                    // indexes of foreign keys can't be dropped
+                    LOG.debug("Couldn't drop index " + entry.getKey() + ", skipping it: " + ex.getMessage());
+                }
+            }
+
+            LOG.debug("Dropped " + ret.size() + " indexes.");
+
+            return ret;
+        } catch (SQLException ex) {
+            throw new DivIoException("Error while dropping indexes!", ex);
+        }
+    }
+
+    /**
+     * Executes create statements returned by
+     * {@link #h2DropSecondaryIndexes(DBConfig, List)}
+     * 
+     * @throws DivIoException
+     * 
+     * @since 0.1.0
+     */
+    static void h2CreateIndexes(DBConfig dbConfig, List<String> creates) {
+        checkH2Db(dbConfig);
+        checkNotNull(creates);
+
+        Date start = new Date();
+
+        try (Connection conn = getH2Connection(dbConfig);
+                Statement stat = conn.createStatement()) {
+            for (String create : creates) {
+                stat.execute(create);
+            }
+        } catch (SQLException ex) {
+            throw new DivIoException("Error while creating indexes!", ex);
+        }
+
+        LOG.debug("Created " + creates.size() + " indexes in " + Internals.formatInterval(start, new Date()));
     }
 
     /**
@@ -1866,8 +2067,7 @@ public final class Diversicons {
         ret.setEncoding("UTF-8");
 
         try {
-            ret.setByteStream(readData(systemId)
-                                                .stream());
+            ret.setByteStream(new ByteArrayInputStream(XmlResourceCache.read(diversiconConfig, systemId)));
             return ret;
         } catch (Exception ex) {
             if ((Diversicons.SCHEMA_1_NAMESPACE.equals(namespaceUri)
@@ -1882,7 +2082,7 @@ public final class Diversicons {
                         + "\n namespaceUrl=" + namespaceUri
                         + "\n classpathUrl=" + classpathUrl);
 
-                ret.setByteStream(readData(classpathUrl).stream());
+                ret.setByteStream(new ByteArrayInputStream(XmlResourceCache.read(diversiconConfig, classpathUrl)));
                 return ret;
             }
         }
@@ -1947,56 +2147,39 @@ public final class Diversicons {
             File xmlFile,
             final XmlValidationConfig config) {
 
-        checkNotNull(xmlFile);
-        checkNotNull(config);
+        DivXmlValidator divXmlValidator = validateXmlSinglePass(xmlFile, config);
 
-        // if editor can't find the Constants.W3C_XML_SCHEMA11_NS_URI constant
-        // probably default xerces is being used instead of the one supporting
-        // schema 1.1
-
-        SchemaFactory factory = SchemaFactory.newInstance(Constants.W3C_XML_SCHEMA10_NS_URI);
-
-        Schema schema;
-        try {
-            if (Internals.isBlank(config.getXsdUrl())) {
-                schema = factory.newSchema();
-            } else {
-                File xsd = readData(config.getXsdUrl())
-                                                       .toTempFile();
-                schema = factory.newSchema(xsd);
-                LOG.debug("Validating against schema: " + config.getXsdUrl());
-            }
-        } catch (SAXException e) {
-            throw new DivException(e);
-        }
+        divXmlValidator.checkPassed();
 
-        Source source = new StreamSource(xmlFile);
-        DivXmlHandler errorHandler = new DivXmlHandler(config, source.getSystemId());
+        return divXmlValidator;
+    }
 
-        Validator validator = schema.newValidator();
+    /**
+     * Validates an xml file against XML Schema only, reporting to provided
+     * {@code errorHandler}. To also perform the other validation steps, see
+     * {@link #validateXmlSinglePass(File, XmlValidationConfig)}.
+     * 
+     * @throws DivException
+     * @throws InvalidXmlException
+     * 
+     * @since 0.1.0
+     */
+    static void validateXmlSchema(
+            File xmlFile,
+            XmlValidationConfig config,
+            DivXmlHandler errorHandler) {
 
-        LSResourceResolver lsResResolver = new LSResourceResolver() {
+        checkNotNull(xmlFile);
+        checkNotNull(config);
+        checkNotNull(errorHandler);
 
-            @Override
-            public LSInput resolveResource(
-                    String type,
-                    String namespaceURI,
-                    String publicId,
-                    String systemId,
-                    String baseURI) {
+        Schema schema = newSchema(config);
 
-                LOG.debug("Received XML resource request for"
-                        + "\n type         = " + type
-                        + "\n namespaceURI = " + namespaceURI
-                        + "\n publicId     = " + publicId
-                        + "\n systemId     = " + systemId
-                        + "\n baseURI      = " + baseURI);
+        Source source = new StreamSource(xmlFile);
 
-                return resolveXmlResource(config.getDiversiconConfig(), namespaceURI, systemId);
-            }
-        };
+        Validator validator = schema.newValidator();
 
-        validator.setResourceResolver(lsResResolver);
+        validator.setResourceResolver(newResourceResolver(config));
 
         validator.setErrorHandler(errorHandler);
 
@@ -2005,54 +2188,265 @@ public final class Diversicons {
         } catch (SAXException | IOException e) {
             throw new InvalidXmlException(errorHandler, "Fatal error while validating " + xmlFile.getAbsolutePath(), e);
         }
+    }
 
-        DivXmlValidator divXmlValidator = new DivXmlValidator(new LexResPackage(), errorHandler);
+    /**
+     * Validates an xml file against XML Schema and performs structural and
+     * internal {@link ValidationStep validation steps} reading the file only
+     * once: SAX events go through the schema validator to
+     * {@link DivXmlValidator}, which collects ids and references. Internal
+     * references are then checked on the collected sets, as can be
+     * {@link DivXmlValidator#validateCollectedRefs() external ones}.
+     * 
+     * <p>
+     * Big files are split in chunks validated in parallel instead, see
+     * {@link ChunkedValidation}.
+     * </p>
+     * 
+     * <p>
+     * Doesn't check whether validation passed, see
+     * {@link DivXmlValidator#checkPassed()}
+     * </p>
+     * 
+     * @throws DivException
+     * @throws InvalidXmlException
+     *             on fatal errors
+     * 
+     * @since 0.1.0
+     */
+    static DivXmlValidator validateXmlSinglePass(
+            File xmlFile,
+            final XmlValidationConfig config) {
 
-        validateXmlStep(xmlFile, divXmlValidator);
-        // need two steps!
-        validateXmlStep(xmlFile, divXmlValidator);
+        return validateXmlSinglePass(xmlFile, null, false, config);
+    }
 
-        divXmlValidator.checkPassed();
+    /**
+     * Same as {@link #validateXmlSinglePass(File, XmlValidationConfig)}. If
+     * {@code config} {@link XmlValidationConfig#isCached() is cached} and the
+     * same content already passed validation without issues with an
+     * equivalent config, returns a validator restored from
+     * {@link ValidationCache} without reading the file.
+     * 
+     * @param contentHash
+     *            the hash of the file content, if already known.
+     * @param hashed
+     *            if true, the hash of the content is computed while reading
+     *            the file unless already known, and set in returned
+     *            validator, see {@link DivXmlValidator#getContentHash()}.
+     *            Cached configs always compute it.
+     * 
+     * @throws DivException
+     * @throws InvalidXmlException
+     *             on fatal errors
+     * 
+     * @since 0.1.0
+     */
+    static DivXmlValidator validateXmlSinglePass(
+            File xmlFile,
+            @Nullable String contentHash,
+            boolean hashed,
+            final XmlValidationConfig config) {
 
-        return divXmlValidator;
+        checkNotNull(xmlFile);
+        checkNotNull(config);
+
+        String systemId = new StreamSource(xmlFile).getSystemId();
+
+        String hash = contentHash;
+        if (config.isCached()) {
+            if (hash == null) {
+                hash = ValidationCache.knownContentHash(xmlFile, config);
+            }
+            if (hash != null) {
+                DivXmlValidator cached = ValidationCache.load(ValidationCache.key(hash, config), systemId, config);
+                if (cached != null) {
+                    config.getLog()
+                          .info("Same content of " + systemId
+                                  + " already passed validation, skipping XML Schema, structural and internal checks.");
+                    cached.setContentHash(hash);
+                    return cached;
+                }
+            }
+        }
+
+        DivXmlValidator ret;
+        if (hash == null && (hashed || config.isCached())) {
+            ret = validateXmlFile(xmlFile, systemId, true, config);
+            hash = ret.getContentHash();
+            if (config.isCached()) {
+                ValidationCache.storeContentHash(xmlFile, hash, config);
+            }
+        } else {
+            ret = validateXmlFile(xmlFile, systemId, false, config);
+            ret.setContentHash(hash);
+        }
+
+        if (config.isCached()) {
+            ValidationCache.store(ValidationCache.key(hash, config), ret, config);
+        }
+        return ret;
     }
 
     /**
-     * Performs one XML validation step with custom Java code.
+     * Validates {@code xmlFile}, in chunks if it is big.
      * 
-     * <p>
-     * Needed because current Xerces
-     * Xml Schema 1.1 assert implemention has problems, see
-     * <a href="https://github.com/diversicon-kb/diversicon-core/issues/21"
-     * target="_blank">
-     * issue 21 </a>
-     * </p>
+     * @param hashed
+     *            if true, the hash of the content is set in returned
+     *            validator. Files read in a single pass are hashed while
+     *            reading them, chunks are read in parallel so the hash is
+     *            computed meanwhile by another thread.
      * 
+     * @throws DivException
      * @throws InvalidXmlException
+     *             on fatal errors
      * 
      * @since 0.1.0
      */
-    static void validateXmlStep(
-            File file,
-            DivXmlValidator divXmlValidator) {
+    private static DivXmlValidator validateXmlFile(
+            final File xmlFile,
+            String systemId,
+            boolean hashed,
+            XmlValidationConfig config) {
 
-        DivXmlHandler errorHandler = divXmlValidator.getErrorHandler();
+        DivXmlValidator ret;
+
+        if (ChunkedValidation.isWorthy(xmlFile)) {
+            if (!hashed) {
+                return ChunkedValidation.validate(xmlFile, systemId, config);
+            }
+            FutureTask<String> hashTask = new FutureTask<>(new Callable<String>() {
+                @Override
+                public String call() {
+                    return ValidationCache.contentHash(xmlFile);
+                }
+            });
+            Thread hashThread = new Thread(hashTask, "div-content-hash");
+            hashThread.setDaemon(true);
+            hashThread.start();
+            try {
+                ret = ChunkedValidation.validate(xmlFile, systemId, config);
+                ret.setContentHash(hashTask.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+                throw new DivIoException("Interrupted while hashing " + xmlFile.getAbsolutePath(), ex);
+            } catch (ExecutionException ex) {
+                throw new DivIoException("Error while hashing " + xmlFile.getAbsolutePath(), ex.getCause());
+            } finally {
+                hashTask.cancel(true);
+            }
+            return ret;
+        }
+
+        MessageDigest digest = hashed ? Internals.newSha256() : null;
+        try (InputStream fis = hashed ? new DigestInputStream(new FileInputStream(xmlFile), digest)
+                : new FileInputStream(xmlFile)) {
+            ret = validateXmlSinglePass(fis, systemId, config);
+            if (hashed) {
+                // parser may stop before trailing whitespace
+                byte[] buf = new byte[8192];
+                while (fis.read(buf) != -1) {
+                    // just hashing
+                }
+                ret.setContentHash(Internals.toHex(digest.digest()));
+            }
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + xmlFile.getAbsolutePath(), ex);
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link #validateXmlSinglePass(File, XmlValidationConfig)}, but
+     * reads provided stream, without closing it.
+     * 
+     * @param systemId
+     *            the system id reported in validation messages
+     * @throws DivException
+     * @throws InvalidXmlException
+     *             on fatal errors
+     * 
+     * @since 0.1.0
+     */
+    static DivXmlValidator validateXmlSinglePass(
+            InputStream xmlStream,
+            String systemId,
+            final XmlValidationConfig config) {
+
+        checkNotNull(xmlStream);
+        checkNotNull(systemId);
+        checkNotNull(config);
+
+        Schema schema = newSchema(config);
+
+        DivXmlHandler errorHandler = new DivXmlHandler(config, systemId);
+        DivXmlValidator divXmlValidator = new DivXmlValidator(new LexResPackage(), errorHandler);
+
+        ValidatorHandler validatorHandler = schema.newValidatorHandler();
+        validatorHandler.setResourceResolver(newResourceResolver(config));
+        validatorHandler.setErrorHandler(errorHandler);
+        validatorHandler.setContentHandler(divXmlValidator);
 
         SAXParserFactory factory = SAXParserFactory.newInstance();
+        // schema validator wants namespace aware events
+        factory.setNamespaceAware(true);
         factory.setValidating(false);
-        SAXParser parser;
+
         try {
-            parser = factory.newSAXParser();
-            parser.getXMLReader()
-                  .setErrorHandler(errorHandler);
+            XMLReader reader = factory.newSAXParser()
+                                      .getXMLReader();
+            reader.setErrorHandler(errorHandler);
+            reader.setContentHandler(validatorHandler);
+            InputSource is = new InputSource(new CloseShieldInputStream(xmlStream));
+            is.setSystemId(systemId);
+            reader.parse(is);
 
-            InputSource is = new InputSource(new FileInputStream(file));
+            divXmlValidator.validateCollectedRefs();
 
-            parser.parse(is, divXmlValidator);
         } catch (ParserConfigurationException | SAXException | IOException e) {
-            throw new InvalidXmlException(errorHandler, e);
+            throw new InvalidXmlException(errorHandler, "Fatal error while validating " + systemId, e);
         }
 
+        return divXmlValidator;
+    }
+
+    /**
+     * Returns the compiled schema to validate with, possibly cached, see
+     * {@link XmlResourceCache}
+     * 
+     * @throws DivException
+     * 
+     * @since 0.1.0
+     */
+    private static Schema newSchema(XmlValidationConfig config) {
+        return XmlResourceCache.schema(config);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static LSResourceResolver newResourceResolver(final XmlValidationConfig config) {
+        return new LSResourceResolver() {
+
+            @Override
+            public LSInput resolveResource(
+                    String type,
+                    String namespaceURI,
+                    String publicId,
+                    String systemId,
+                    String baseURI) {
+
+                LOG.debug("Received XML resource request for"
+                        + "\n type         = " + type
+                        + "\n namespaceURI = " + namespaceURI
+                        + "\n publicId     = " + publicId
+                        + "\n systemId     = " + systemId
+                        + "\n baseURI      = " + baseURI);
+
+                return resolveXmlResource(config.getDiversiconConfig(), namespaceURI, systemId);
+            }
+        };
     }
 
     /**
@@ -2094,15 +2488,36 @@ public final class Diversicons {
      */
     public static LexResPackage readPackageFromLexRes(File lexResFile) {
 
+        try (FileInputStream fis = new FileInputStream(lexResFile)) {
+            return readPackageFromLexRes(fis, lexResFile.getAbsolutePath());
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + lexResFile.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Reads metadata about a given resource, consuming only the beginning of
+     * the stream, which is not closed.
+     * 
+     * @param lexResStream
+     *            the stream of an XML Lexical Resource
+     * @param descr
+     *            description of the stream to use in messages
+     * 
+     * @since 0.1.0
+     */
+    public static LexResPackage readPackageFromLexRes(InputStream lexResStream, String descr) {
+
         LexResPackage ret = new LexResPackage();
 
         SAXReader reader = new SAXReader(false);
 
         DivXmlExtractor handler = new DivXmlExtractor(ret);
         reader.setDefaultHandler(handler);
-        try (FileInputStream fis = new FileInputStream(lexResFile)) {
-            reader.read(fis);
-        } catch (DocumentException | IOException e) {
+        try {
+            // parser may close the stream when stopped
+            reader.read(new CloseShieldInputStream(lexResStream));
+        } catch (DocumentException e) {
 
             if (e.getMessage()
                  .contains(DivXmlExtractor.FOUND)) {
@@ -2110,7 +2525,7 @@ public final class Diversicons {
             }
         }
         throw new DivNotFoundException("Couldn't find required tags in "
-                + lexResFile.getAbsolutePath() + "  !");
+                + descr + "  !");
 
     }
 
@@ -0,0 +1,236 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.lmf.model.core.Sense;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
+import de.tudarmstadt.ukp.lmf.transform.DBConfig;
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.exceptions.InterruptedImportException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * In-memory H2 db standing in for a target db during a
+ * {@link ImportConfig#isDryRun() dry run} of many files, so files depending
+ * on earlier ones can be validated against data actually written.
+ *
+ * <p>
+ * The shadow holds the packages and namespaces of the target db, together
+ * with the ids of its synsets and senses, which is all validation needs to
+ * check references to already imported resources. Files are then imported
+ * into the shadow for real, without graph augmentation. The shadow is
+ * dropped by {@link #close()}.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+class DryRunShadow implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DryRunShadow.class);
+
+    private static final int COPY_BATCH_SIZE = 10000;
+
+    private DBConfig dbConfig;
+
+    @Nullable
+    private Diversicon shadow;
+
+    /**
+     * @since 0.1.0
+     */
+    private DryRunShadow(DBConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.shadow = null;
+    }
+
+    /**
+     * Creates a shadow of the H2 db at {@code targetDbConfig}.
+     *
+     * @param cfg
+     *            the Hibernate configuration of the target db
+     *
+     * @throws InterruptedImportException
+     *
+     * @since 0.1.0
+     */
+    static DryRunShadow create(DBConfig targetDbConfig, Configuration cfg) {
+        checkNotNull(targetDbConfig);
+        checkNotNull(cfg);
+
+        long start = System.currentTimeMillis();
+
+        DryRunShadow ret = new DryRunShadow(
+                Diversicons.h2InMemoryConfig("div-dryrun-" + UUID.randomUUID(), false));
+        try {
+            Diversicons.dropCreateTables(ret.dbConfig);
+
+            try (Connection src = Diversicons.getH2Connection(targetDbConfig);
+                    Connection dst = Diversicons.getH2Connection(ret.dbConfig)) {
+                dst.setAutoCommit(false);
+
+                // packages first, namespaces refer to them
+                long packs = copyRows(src, dst, tableName(cfg, LexResPackage.class), null);
+                copyRows(src, dst, tableName(cfg, Namespace.class), null);
+                long synsets = copyRows(src, dst, tableName(cfg, Synset.class), idColumn(cfg, Synset.class));
+                long senses = copyRows(src, dst, tableName(cfg, Sense.class), idColumn(cfg, Sense.class));
+
+                LOG.info("Created dry run shadow db with " + packs + " packages, " + synsets + " synset ids and "
+                        + senses + " sense ids in " + Internals.formatInterval(System.currentTimeMillis() - start));
+            }
+
+            ret.shadow = Diversicon.connectToDb(DivConfig.of(ret.dbConfig));
+        } catch (Exception ex) {
+            ret.close();
+            throw new InterruptedImportException("Error while creating dry run shadow db!", ex);
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static PersistentClass classMapping(Configuration cfg, Class<?> clazz) {
+        PersistentClass ret = cfg.getClassMapping(clazz.getName());
+        if (ret == null) {
+            throw new DivException("Unmapped entity " + clazz.getName());
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String tableName(Configuration cfg, Class<?> clazz) {
+        return classMapping(cfg, clazz).getTable()
+                                       .getName();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String idColumn(Configuration cfg, Class<?> clazz) {
+        return ((Column) classMapping(cfg, clazz).getIdentifier()
+                                                 .getColumnIterator()
+                                                 .next()).getName();
+    }
+
+    /**
+     * Copies rows of {@code table} from {@code src} to {@code dst},
+     * committing every {@link #COPY_BATCH_SIZE} rows.
+     *
+     * @param column
+     *            if {@code null} all columns are copied, otherwise only the
+     *            given one.
+     * @return the number of copied rows
+     *
+     * @since 0.1.0
+     */
+    private static long copyRows(
+            Connection src,
+            Connection dst,
+            String table,
+            @Nullable String column) throws SQLException {
+
+        long count = 0;
+        try (Statement select = src.createStatement();
+                ResultSet rs = select.executeQuery(
+                        "SELECT " + (column == null ? "*" : column) + " FROM " + table)) {
+
+            ResultSetMetaData meta = rs.getMetaData();
+            int n = meta.getColumnCount();
+            StringBuilder cols = new StringBuilder();
+            StringBuilder params = new StringBuilder();
+            for (int i = 1; i <= n; i++) {
+                if (i > 1) {
+                    cols.append(", ");
+                    params.append(", ");
+                }
+                cols.append(meta.getColumnName(i));
+                params.append("?");
+            }
+
+            try (PreparedStatement insert = dst.prepareStatement(
+                    "INSERT INTO " + table + " (" + cols + ") VALUES (" + params + ")")) {
+                while (rs.next()) {
+                    for (int i = 1; i <= n; i++) {
+                        insert.setObject(i, rs.getObject(i));
+                    }
+                    insert.addBatch();
+                    count++;
+                    if (count % COPY_BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                        dst.commit();
+                    }
+                }
+                insert.executeBatch();
+                dst.commit();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Imports files into the shadow db, writing them for real but skipping
+     * graph augmentation.
+     *
+     * @param importConfig
+     *            a dry run configuration, which is left untouched.
+     *
+     * @since 0.1.0
+     */
+    List<ImportJob> importFiles(ImportConfig importConfig) {
+        checkNotNull(importConfig);
+
+        ImportConfig shadowConfig = new ImportConfig(importConfig);
+        shadowConfig.setDryRun(false);
+        shadowConfig.setBulkLoad(false);
+        shadowConfig.setSkipAugment(true);
+
+        return shadow.importFiles(shadowConfig);
+    }
+
+    /**
+     * Disconnects from the shadow db and drops it. Errors are only logged.
+     *
+     * @since 0.1.0
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public void close() {
+        if (shadow != null) {
+            try {
+                shadow.getSession()
+                      .close();
+                shadow.getSessionFactory()
+                      .close();
+            } catch (Exception ex) {
+                LOG.error("Error while disconnecting from dry run shadow db!", ex);
+            }
+            shadow = null;
+        }
+        try (Connection conn = Diversicons.getH2Connection(dbConfig);
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } catch (Exception ex) {
+            LOG.error("Error while dropping dry run shadow db!", ex);
+        }
+    }
+}
@@ -114,6 +114,19 @@ public class ExtractedStream {
         return extracted;
     }
 
+    /**
+     * Returns true if the stream reads an uncompressed file of the local
+     * filesystem, in which case {@link #toTempFile()} just returns that file
+     * without copying it.
+     * 
+     * @since 0.1.0
+     */
+    public boolean isLocalFile() {
+        return !extracted
+                && !sourceUrl.startsWith("classpath:")
+                && (sourceUrl.startsWith("file:") || !Internals.hasProtocol(sourceUrl));
+    }
+
     /**
      * Returns a file pointing to a physical location in the computer.
      * Calling this method will consume the stream. Do not write to the generated file.
@@ -0,0 +1,284 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.kidf.diversicon.core.exceptions.DivException;
+
+/**
+ * Bloom filter of the synset and sense ids stored in the db, to screen out
+ * lookups of ids which are surely missing without querying the db. An id
+ * the filter {@link #mightContain(String) might contain} still needs to be
+ * confirmed by a query.
+ *
+ * <p>
+ * The filter is persisted in {@link #TABLE}, next to {@link DbInfo}. It is
+ * removed when an import starts and built again when it ends, so a stored
+ * filter never misses ids written by imports. Both steps
+ * {@link #bumpVersion(Connection) bump} the
+ * {@link DbInfo#getIdFilterVersion() version} in DbInfo, so copies loaded
+ * by other instances are reloaded. Synsets and senses saved bypassing
+ * imports are not tracked.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+final class IdFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdFilter.class);
+
+    /**
+     * Table holding the serialized filter in a single row
+     *
+     * @since 0.1.0
+     */
+    static final String TABLE = "IdFilter";
+
+    /**
+     * Expected rate of false positives
+     *
+     * @since 0.1.0
+     */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] bits;
+    private long numBits;
+    private int numHashes;
+    private long size;
+
+    /**
+     * @since 0.1.0
+     */
+    private IdFilter(long numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = new long[(int) (numBits / 64)];
+        this.size = 0;
+    }
+
+    /**
+     * Creates an empty filter sized for {@code expectedIds} with given
+     * {@code falsePositiveRate}
+     *
+     * @since 0.1.0
+     */
+    static IdFilter create(long expectedIds, double falsePositiveRate) {
+        checkArgument(expectedIds >= 0, "Invalid expected ids: %s", expectedIds);
+        checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1, "Invalid false positive rate: %s",
+                falsePositiveRate);
+
+        long n = Math.max(1, expectedIds);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // whole longs
+        m = Math.max(64, (m + 63) / 64 * 64);
+        checkArgument(m / 64 <= Integer.MAX_VALUE, "Too many expected ids: %s", expectedIds);
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new IdFilter(m, k);
+    }
+
+    /**
+     * 64 bit FNV-1a hash, scrambled with MurmurHash3 finalizer
+     *
+     * @since 0.1.0
+     */
+    private static long hash(String id, long seed) {
+        long h = FNV_OFFSET ^ seed;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    void put(String id) {
+        checkNotNull(id);
+        long h1 = hash(id, 0);
+        long h2 = hash(id, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        size++;
+    }
+
+    /**
+     * Returns {@code false} if {@code id} was surely never
+     * {@link #put(String) put} in the filter, {@code true} if it might
+     * have been.
+     *
+     * @since 0.1.0
+     */
+    boolean mightContain(String id) {
+        checkNotNull(id);
+        long h1 = hash(id, 0);
+        long h2 = hash(id, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of ids put in the filter
+     *
+     * @since 0.1.0
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bits.length * 8 + 20);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeLong(numBits);
+            out.writeInt(numHashes);
+            out.writeLong(size);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static IdFilter fromBytes(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            IdFilter ret = new IdFilter(in.readLong(), in.readInt());
+            ret.size = in.readLong();
+            for (int i = 0; i < ret.bits.length; i++) {
+                ret.bits[i] = in.readLong();
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Creates the filter table, if it doesn't already exist.
+     *
+     * @since 0.1.0
+     */
+    static void createTable(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "  id INT PRIMARY KEY,"
+                    + "  filter BLOB NOT NULL"
+                    + ")");
+        }
+    }
+
+    /**
+     * Drops the filter table, if it exists.
+     *
+     * @since 0.1.0
+     */
+    static void dropTable(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS " + TABLE);
+        }
+    }
+
+    /**
+     * Removes the stored filter, if any.
+     *
+     * @since 0.1.0
+     */
+    static void remove(Connection conn) throws SQLException {
+        createTable(conn);
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DELETE FROM " + TABLE);
+        }
+    }
+
+    /**
+     * Increments the {@link DbInfo#getIdFilterVersion() version} of the
+     * stored filter and returns the new one. It's written with plain SQL,
+     * so Hibernate never writes back stale values.
+     *
+     * @since 0.1.0
+     */
+    static long bumpVersion(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("UPDATE DbInfo SET idFilterVersion = COALESCE(idFilterVersion, 0) + 1");
+            try (ResultSet rs = stat.executeQuery("SELECT idFilterVersion FROM DbInfo")) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored filter with this one.
+     *
+     * @since 0.1.0
+     */
+    void store(Connection conn) throws SQLException {
+        remove(conn);
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO " + TABLE + " (id, filter) VALUES (1, ?)")) {
+            insert.setBytes(1, toBytes());
+            insert.executeUpdate();
+        } catch (IOException ex) {
+            throw new DivException("Error while serializing id filter!", ex);
+        }
+    }
+
+    /**
+     * Returns the stored filter, or {@code null} if there is none (dbs
+     * created by older Diversicon versions don't even have the table).
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    static IdFilter load(Connection conn) {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("SELECT filter FROM " + TABLE)) {
+            if (rs.next()) {
+                return fromBytes(rs.getBytes(1));
+            } else {
+                return null;
+            }
+        } catch (SQLException | IOException ex) {
+            LOG.debug("Couldn't load id filter, lookups will go to the db.", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IdFilter [ids=" + size + ", bits=" + numBits + ", hashes=" + numHashes + "]";
+    }
+}
@@ -0,0 +1,318 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Compact registry of the ids found in an LMF document, each associated to
+ * the tag of the element declaring it.
+ *
+ * <p>
+ * Ids starting with the registry prefix followed by
+ * {@link Diversicons#NAMESPACE_SEPARATOR} are stored without it. Id
+ * characters are appended to a single {@code char} arena, each preceded by
+ * its length and tag kind, and are found through an open addressing table of
+ * arena offsets. Tag names are interned as byte kinds, so a registry of
+ * WordNet size takes a small fraction of the memory of a map of strings.
+ * </p>
+ *
+ * <p>
+ * The registry only grows, and is not thread safe.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+public class IdRegistry {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int INITIAL_ARENA = 16 * 1024;
+
+    /**
+     * Max number of distinct tags
+     */
+    private static final int MAX_KINDS = 127;
+
+    /**
+     * Kind flag of entries stored without prefix
+     */
+    private static final char STRIPPED = 0x80;
+
+    /**
+     * Max length of a stored id
+     */
+    private static final int MAX_ID_LENGTH = Character.MAX_VALUE;
+
+    private String prefix;
+
+    /**
+     * Entries as {@code [length][kind][id chars]}
+     */
+    private char[] arena;
+    private int arenaSize;
+
+    /**
+     * Arena offsets plus one, {@code 0} marks an empty slot.
+     */
+    private int[] slots;
+
+    /**
+     * Hashes of the entries in {@link #slots}
+     */
+    private int[] hashes;
+
+    private int size;
+
+    private List<String> tags;
+
+    /**
+     * @param prefix
+     *            the prefix of the lexical resource the ids belong to, may be
+     *            empty if not known.
+     *
+     * @since 0.1.0
+     */
+    public IdRegistry(String prefix) {
+        checkNotNull(prefix);
+        this.prefix = prefix.isEmpty() ? "" : prefix + Diversicons.NAMESPACE_SEPARATOR;
+        this.arena = new char[INITIAL_ARENA];
+        this.arenaSize = 0;
+        this.slots = new int[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.tags = new ArrayList<>();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private int start(String id) {
+        return !prefix.isEmpty() && id.startsWith(prefix) ? prefix.length() : 0;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static int hash(String id, int start, char flag) {
+        int h = flag;
+        for (int i = start; i < id.length(); i++) {
+            h = 31 * h + id.charAt(i);
+        }
+        // spreads high bits, as masks only keep low ones
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding {@code id}, or the empty slot where it should
+     * go.
+     *
+     * @since 0.1.0
+     */
+    private int slot(String id, int start, char flag, int hash) {
+        int mask = slots.length - 1;
+        int len = id.length() - start;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            if (hashes[i] == hash && matches(slots[i] - 1, id, start, len, flag)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private boolean matches(int off, String id, int start, int len, char flag) {
+        if (arena[off] != len || (arena[off + 1] & STRIPPED) != flag) {
+            return false;
+        }
+        for (int j = 0; j < len; j++) {
+            if (arena[off + 2 + j] != id.charAt(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private char kind(String tag) {
+        int ret = tags.indexOf(tag);
+        if (ret == -1) {
+            if (tags.size() == MAX_KINDS) {
+                throw new IllegalStateException("Too many distinct tags in id registry, max is " + MAX_KINDS);
+            }
+            tags.add(tag);
+            ret = tags.size() - 1;
+        }
+        return (char) ret;
+    }
+
+    /**
+     * Registers {@code id} as declared by element {@code tag}, unless it was
+     * already registered.
+     *
+     * @return {@code true} if the id was not registered before.
+     *
+     * @since 0.1.0
+     */
+    public boolean add(String id, String tag) {
+        checkNotNull(id);
+        checkNotEmpty(tag, "Invalid tag!");
+
+        int start = start(id);
+        int len = id.length() - start;
+        checkArgument(len <= MAX_ID_LENGTH, "Id is too long: %s", len);
+        char flag = start > 0 ? STRIPPED : 0;
+        int hash = hash(id, start, flag);
+        int i = slot(id, start, flag, hash);
+        if (slots[i] != 0) {
+            return false;
+        }
+
+        char kind = kind(tag);
+        if (arenaSize + len + 2 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + len + 2));
+        }
+        int off = arenaSize;
+        arena[off] = (char) len;
+        arena[off + 1] = (char) (kind | flag);
+        id.getChars(start, id.length(), arena, off + 2);
+        arenaSize += len + 2;
+
+        slots[i] = off + 1;
+        hashes[i] = hash;
+        size++;
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the table, keeping load factor under 0.5
+     *
+     * @since 0.1.0
+     */
+    private void grow() {
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != 0) {
+                int i = oldHashes[j] & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = oldSlots[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the tag of the element declaring {@code id}, or {@code null}
+     * if the id is not registered.
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    public String getTag(String id) {
+        checkNotNull(id);
+        int start = start(id);
+        char flag = start > 0 ? STRIPPED : 0;
+        int i = slot(id, start, flag, hash(id, start, flag));
+        if (slots[i] == 0) {
+            return null;
+        }
+        int off = slots[i] - 1;
+        return tags.get(arena[off + 1] & ~STRIPPED);
+    }
+
+    /**
+     * Registers all the ids of {@code other} not already registered here.
+     * 
+     * @since 0.1.0
+     */
+    public void addAll(IdRegistry other) {
+        checkNotNull(other);
+        int off = 0;
+        while (off < other.arenaSize) {
+            int len = other.arena[off];
+            char kind = other.arena[off + 1];
+            String id = new String(other.arena, off + 2, len);
+            if ((kind & STRIPPED) != 0) {
+                id = other.prefix + id;
+            }
+            add(id, other.tags.get(kind & ~STRIPPED));
+            off += len + 2;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    public boolean contains(String id) {
+        return getTag(id) != null;
+    }
+
+    /**
+     * Returns {@code true} if {@code id} is registered as declared by element
+     * {@code tag}
+     *
+     * @since 0.1.0
+     */
+    public boolean contains(String id, String tag) {
+        checkNotNull(tag);
+        return tag.equals(getTag(id));
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new map of registered ids, in the form id -> tag. Meant for
+     * small documents and debugging, as it takes as much memory as the
+     * registry is meant to save.
+     *
+     * @since 0.1.0
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> ret = new HashMap<>();
+        int off = 0;
+        while (off < arenaSize) {
+            int len = arena[off];
+            char kind = arena[off + 1];
+            String id = new String(arena, off + 2, len);
+            if ((kind & STRIPPED) != 0) {
+                id = prefix + id;
+            }
+            ret.put(id, tags.get(kind & ~STRIPPED));
+            off += len + 2;
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "IdRegistry [prefix=" + prefix + ", size=" + size + ", arena chars=" + arenaSize + "]";
+    }
+}
@@ -4,9 +4,11 @@ import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
 
 /**
  * Configuration for a whole {@link ImportJob} process.
@@ -24,6 +26,18 @@ public class ImportConfig {
     private int logLimit;   
     private boolean force;
     private boolean dryRun;
+    private int closureMaxDepth;
+    private List<String> closureRelations;
+    @Nullable
+    private ProgressListener progressListener;
+    private boolean staxImport;
+    private int threads;
+    private boolean bulkLoad;
+    private int batchSize;
+    private int queueDepth;
+    private boolean delta;
+    @Nullable
+    private File validationCacheDir;
 
     /**
      * Default constructor.
@@ -40,6 +54,42 @@ public class ImportConfig {
         this.logLimit = Diversicons.DEFAULT_LOG_LIMIT;
         this.force = false;
         this.dryRun = false;
+        this.closureMaxDepth = -1;
+        this.closureRelations = new ArrayList<>();
+        this.progressListener = null;
+        this.staxImport = false;
+        this.threads = 1;
+        this.bulkLoad = false;
+        this.batchSize = Diversicons.DEFAULT_IMPORT_BATCH_SIZE;
+        this.queueDepth = Diversicons.DEFAULT_IMPORT_QUEUE_DEPTH;
+        this.delta = false;
+        this.validationCacheDir = null;
+    }
+
+    /**
+     * Copy constructor. Lists are copied, the progress listener is shared.
+     *
+     * @since 0.1.0
+     */
+    ImportConfig(ImportConfig other) {
+        checkNotNull(other);
+        this.fileUrls = new ArrayList<>(other.fileUrls);
+        this.author = other.author;
+        this.description = other.description;
+        this.skipAugment = other.skipAugment;
+        this.logLimit = other.logLimit;
+        this.force = other.force;
+        this.dryRun = other.dryRun;
+        this.closureMaxDepth = other.closureMaxDepth;
+        this.closureRelations = new ArrayList<>(other.closureRelations);
+        this.progressListener = other.progressListener;
+        this.staxImport = other.staxImport;
+        this.threads = other.threads;
+        this.bulkLoad = other.bulkLoad;
+        this.batchSize = other.batchSize;
+        this.queueDepth = other.queueDepth;
+        this.delta = other.delta;
+        this.validationCacheDir = other.validationCacheDir;
     }
 
     /**
@@ -150,6 +200,16 @@ public class ImportConfig {
         sb.append("  author      = " + author + "\n");
         sb.append("  description = " + description + "\n");
         sb.append("  skipAugment = " + skipAugment + "\n");
+        sb.append("  closureMaxDepth  = " + closureMaxDepth + "\n");
+        sb.append("  closureRelations = " + closureRelations + "\n");
+        sb.append("  progressListener = " + progressListener + "\n");
+        sb.append("  staxImport  = " + staxImport + "\n");
+        sb.append("  threads     = " + threads + "\n");
+        sb.append("  bulkLoad    = " + bulkLoad + "\n");
+        sb.append("  batchSize   = " + batchSize + "\n");
+        sb.append("  queueDepth  = " + queueDepth + "\n");
+        sb.append("  delta       = " + delta + "\n");
+        sb.append("  validationCacheDir = " + validationCacheDir + "\n");
         sb.append("  fileUrls    = ");
 
         if (fileUrls.isEmpty()) {
@@ -206,7 +266,11 @@ public class ImportConfig {
     
     /**
      * A dry run simply simulates the import without writing anything into the database.
-     * 
+     *
+     * When importing many files from an H2 db, they are written into an
+     * in-memory shadow of the db, so files depending on earlier ones are
+     * validated against actual data.
+     *
      * @since 0.1.0
      */
     public boolean isDryRun() {
@@ -222,4 +286,275 @@ public class ImportConfig {
         this.dryRun = dryRun;
         return this;
     }
+    
+    /**
+     * If {@code true}, files are new versions of already imported lexical
+     * resources: each file is compared with the resource in the db having
+     * the same name and only the differences are written, in a single
+     * transaction. Synsets, lexical entries, senses and synset relations are
+     * added or removed, and senses are linked to their new synsets. Graph
+     * augmentation then only revisits the synsets touched by the changes.
+     *
+     * Delta imports need the {@link #isStaxImport() StAX importer} to support
+     * the files. Default is {@code false}.
+     *
+     * @since 0.1.0
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * See {@link #isDelta()}
+     *
+     * @since 0.1.0
+     */
+    public ImportConfig setDelta(boolean delta) {
+        this.delta = delta;
+        return this;
+    }
+
+    /**
+     * The maximum depth of transitive closure edges to materialize in the db
+     * during graph augmentation. Deeper connections will be computed on the
+     * fly by query methods.
+     * 
+     * If {@code -1} (default) closure is computed at any depth.
+     * 
+     * @since 0.1.0
+     */
+    public int getClosureMaxDepth() {
+        return closureMaxDepth;
+    }
+
+    /**
+     * See {@link #getClosureMaxDepth()}
+     * 
+     * @param closureMaxDepth
+     *            must be {@code -1} or {@code >= 1}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setClosureMaxDepth(int closureMaxDepth) {
+        checkArgument(closureMaxDepth == -1 || closureMaxDepth >= 1,
+                "Closure max depth must be -1 or >= 1, found instead %s", closureMaxDepth);
+        this.closureMaxDepth = closureMaxDepth;
+        return this;
+    }
+
+    /**
+     * The {@link Diversicons#getCanonicalTransitiveRelations() canonical
+     * transitive relations} whose closure is to be materialized in the db
+     * during graph augmentation. Connections along other relations will be
+     * computed on the fly by query methods.
+     * 
+     * If empty (default) closure is computed for all canonical transitive
+     * relations.
+     * 
+     * @since 0.1.0
+     */
+    public List<String> getClosureRelations() {
+        return closureRelations;
+    }
+
+    /**
+     * See {@link #getClosureRelations()}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setClosureRelations(List<String> closureRelations) {
+        checkNotNull(closureRelations);
+        for (String relName : closureRelations) {
+            checkNotEmpty(relName, "Invalid closure relation!");
+            checkArgument(Diversicons.getCanonicalTransitiveRelations()
+                                     .contains(relName),
+                    "Closure relation must be one of %s, found instead %s",
+                    Diversicons.getCanonicalTransitiveRelations(), relName);
+        }
+        this.closureRelations = closureRelations;
+        return this;
+    }
+
+    /**
+     * The listener receiving progress of the import and of the following graph
+     * augmentation, which may also cancel them. If {@code null} (default), the
+     * listener of {@link DivConfig#getProgressListener() DivConfig} is used.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * See {@link #getProgressListener()}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setProgressListener(@Nullable ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * If {@code true}, files are written by a StAX streaming importer using
+     * batched JDBC inserts instead of UBY importer. The resulting db content
+     * is the same, except for values of generated surrogate keys. Files
+     * the streaming importer can't handle are still written by UBY importer.
+     * By default {@code false}.
+     * 
+     * @since 0.1.0
+     */
+    public boolean isStaxImport() {
+        return staxImport;
+    }
+
+    /**
+     * See {@link #isStaxImport()}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setStaxImport(boolean staxImport) {
+        this.staxImport = staxImport;
+        return this;
+    }
+
+    /**
+     * The number of threads fetching and validating files concurrently.
+     * 
+     * If {@code 1} (default) each file is fetched, validated and written
+     * before passing to the next one. Otherwise, all files are first fetched
+     * and validated against XML Schema and their own content in parallel, then
+     * they are checked against the db and written one at a time, ordering
+     * them so each resource comes after the ones it references.
+     * 
+     * @since 0.1.0
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * See {@link #getThreads()}
+     * 
+     * @param threads
+     *            must be {@code >= 1}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setThreads(int threads) {
+        checkArgument(threads >= 1, "Threads must be >= 1, found instead %s", threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * If {@code true} and the db is H2, during import and following graph
+     * augmentation the db is put in
+     * {@link Diversicons#turnH2InsertionModeOn(de.tudarmstadt.ukp.lmf.transform.DBConfig)
+     * fast insertion mode}, and while writing LMF files secondary indexes of
+     * {@code SynsetRelation}, {@code Sense} and {@code LexicalEntry} are
+     * dropped and rebuilt afterwards. Table locking is turned back on before
+     * graph augmentation, which writes from several connections. Original
+     * settings are restored at the end, even if import fails. By default
+     * {@code false}.
+     * 
+     * <p>
+     * <strong>NOTE:</strong> as H2 transaction log is disabled, a crash
+     * during import may corrupt the db, so make a backup first.
+     * </p>
+     * 
+     * @since 0.1.0
+     */
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * See {@link #isBulkLoad()}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+        return this;
+    }
+
+    /**
+     * The number of rows the {@link #isStaxImport() streaming importer}
+     * writes and commits in a single batch. By default
+     * {@link Diversicons#DEFAULT_IMPORT_BATCH_SIZE}.
+     * 
+     * @since 0.1.0
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * See {@link #getBatchSize()}
+     * 
+     * @param batchSize
+     *            must be {@code >= 1}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setBatchSize(int batchSize) {
+        checkArgument(batchSize >= 1, "Batch size must be >= 1, found instead %s", batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * The max number of parsed chunks and of batches of rows the
+     * {@link #isStaxImport() streaming importer} keeps waiting between its
+     * parsing, mapping and writing stages. When a queue is full the stage
+     * feeding it waits, so the rows in memory are at most about
+     * {@code (queueDepth + 2) * batchSize}. By default
+     * {@link Diversicons#DEFAULT_IMPORT_QUEUE_DEPTH}.
+     * 
+     * @since 0.1.0
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * See {@link #getQueueDepth()}
+     * 
+     * @param queueDepth
+     *            must be {@code >= 1}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setQueueDepth(int queueDepth) {
+        checkArgument(queueDepth >= 1, "Queue depth must be >= 1, found instead %s", queueDepth);
+        this.queueDepth = queueDepth;
+        return this;
+    }
+
+    /**
+     * The directory where to remember outcomes of validations which passed
+     * without issues, so importing again the same content skips all the
+     * validation steps not needing the db, see
+     * {@link XmlValidationConfig#isCached()}. If {@code null}, validation
+     * is not cached. By default {@code null}.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    public File getValidationCacheDir() {
+        return validationCacheDir;
+    }
+
+    /**
+     * See {@link #getValidationCacheDir()}
+     * 
+     * @since 0.1.0
+     */
+    public ImportConfig setValidationCacheDir(@Nullable File validationCacheDir) {
+        this.validationCacheDir = validationCacheDir;
+        return this;
+    }
 }
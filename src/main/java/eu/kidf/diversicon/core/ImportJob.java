@@ -5,7 +5,9 @@ import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -27,6 +29,8 @@ public class ImportJob {
     private String description;
     
     private String fileUrl;
+    @Nullable
+    private String contentHash;
         
     @Nullable
     private Date startDate;
@@ -37,6 +41,21 @@ public class ImportJob {
 
     private LexResPackage lexResPackage;
 
+    private Map<String, Long> phaseTimes;
+    private Map<String, Long> entityCounts;
+    private Map<String, Long> relationCounts;
+    private long peakHeap;
+
+    private long checkpointElements;
+    @Nullable
+    private String checkpointState;
+
+    /**
+     * Not persisted, set while the job is running
+     */
+    @Nullable
+    private ImportLogSink logSink;
+
     /**
      * @since 0.1.0
      */
@@ -45,11 +64,19 @@ public class ImportJob {
         this.author = "";
         this.description = "";
         this.fileUrl = "";
+        this.contentHash = null;
         this.lexResPackage = new LexResPackage();
         
         this.startDate = null;
         this.endDate = null;
         this.logMessages = new ArrayList<>();
+        this.phaseTimes = new HashMap<>();
+        this.entityCounts = new HashMap<>();
+        this.relationCounts = new HashMap<>();
+        this.peakHeap = -1;
+        this.checkpointElements = 0;
+        this.checkpointState = null;
+        this.logSink = null;
     }
 
     
@@ -136,6 +163,25 @@ public class ImportJob {
         checkNotNull(fileUrl);
         this.fileUrl = fileUrl;
     }
+
+    /**
+     * The hex SHA-256 of the imported file content, or {@code null} if not
+     * known (i.e. for resources imported from Java objects).
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @see #getContentHash()
+     * @since 0.1.0
+     */
+    public void setContentHash(@Nullable String contentHash) {
+        this.contentHash = contentHash;
+    }
   
 
 
@@ -196,7 +242,11 @@ public class ImportJob {
      * or equal to the specified one.
      *  
      * <p>
-     * Most of the times the messages will be just the output logs
+     * Most of the times the messages will be just the output logs. If the
+     * job was run by this Diversicon instance, messages come from the
+     * {@link ImportLogSink} which collected them, so they are available even
+     * before the job ends. Messages of the same kind beyond a limit are
+     * summarized in a single one.
      * </p>
      * <p>
      * NOTE: Logs are *not* stored here by Diversicon Core, applications need to call
@@ -208,15 +258,35 @@ public class ImportJob {
     public List<LogMessage> getLogMessages(Level level) {
         checkNotNull(level);
         
+        List<LogMessage> messages = logSink == null ? logMessages : logSink.getMessages();
         List<LogMessage> ret = new ArrayList<>();
-        for (LogMessage msg : logMessages){
-            if (msg.getLevel().ordinal() >= level.ordinal()){
+        for (LogMessage msg : messages){
+            if (msg.getLevel().toInt() >= level.toInt()){
               ret.add(msg);  
             }
         }
-        return logMessages;
+        return ret;
     }    
     
+    /**
+     * The sink collecting messages of the running job, if any.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    ImportLogSink getLogSink() {
+        return logSink;
+    }
+
+    /**
+     * See {@link #getLogSink()}
+     * 
+     * @since 0.1.0
+     */
+    void setLogSink(@Nullable ImportLogSink logSink) {
+        this.logSink = logSink;
+    }
+
     /**
      * See {@link #getLogMessages()}
      * 
@@ -253,5 +323,179 @@ public class ImportJob {
         this.id = id;
     }
 
+    /**
+     * Durations in millisecs of the {@link ImportPhase}s of the import, keyed
+     * by phase name. Phases which were not executed are missing.
+     * 
+     * <p>
+     * When many files are imported together, graph normalization and closure
+     * run once at the end and are recorded only in the last job.
+     * </p>
+     * 
+     * @since 0.1.0
+     */
+    public Map<String, Long> getPhaseTimes() {
+        return phaseTimes;
+    }
+
+    /**
+     * See {@link #getPhaseTimes()}
+     * 
+     * @since 0.1.0
+     */
+    public void setPhaseTimes(Map<String, Long> phaseTimes) {
+        checkNotNull(phaseTimes);
+        this.phaseTimes = phaseTimes;
+    }
+
+    /**
+     * Returns the duration in millisecs of provided phase, or {@code -1} if
+     * the phase was not executed.
+     * 
+     * @since 0.1.0
+     */
+    public long getPhaseTime(ImportPhase phase) {
+        checkNotNull(phase);
+        Long ret = phaseTimes.get(phase.name());
+        if (ret == null) {
+            return -1;
+        } else {
+            return ret;
+        }
+    }
+
+    /**
+     * Sets the duration of provided phase, see {@link #getPhaseTimes()}
+     * 
+     * @param millis
+     *            must be >= 0
+     * 
+     * @since 0.1.0
+     */
+    public void setPhaseTime(ImportPhase phase, long millis) {
+        checkNotNull(phase);
+        checkArgument(millis >= 0, "Invalid phase time, must be >= 0, found instead %s", millis);
+        phaseTimes.put(phase.name(), millis);
+    }
+
+    /**
+     * Number of LMF elements written into the db, keyed by element name
+     * (i.e. {@code Synset}, {@code LexicalEntry}, ...)
+     * 
+     * @since 0.1.0
+     */
+    public Map<String, Long> getEntityCounts() {
+        return entityCounts;
+    }
+
+    /**
+     * See {@link #getEntityCounts()}
+     * 
+     * @since 0.1.0
+     */
+    public void setEntityCounts(Map<String, Long> entityCounts) {
+        checkNotNull(entityCounts);
+        this.entityCounts = entityCounts;
+    }
+
+    /**
+     * Number of SynsetRelation edges added by graph normalization and
+     * transitive closure, keyed by relation name.
+     * 
+     * @since 0.1.0
+     */
+    public Map<String, Long> getRelationCounts() {
+        return relationCounts;
+    }
+
+    /**
+     * See {@link #getRelationCounts()}
+     * 
+     * @since 0.1.0
+     */
+    public void setRelationCounts(Map<String, Long> relationCounts) {
+        checkNotNull(relationCounts);
+        this.relationCounts = relationCounts;
+    }
+
+    /**
+     * Adds edge counts of {@code stats} to {@link #getRelationCounts()}
+     * 
+     * @since 0.1.0
+     */
+    public void addRelationCounts(InsertionStats stats) {
+        checkNotNull(stats);
+        for (String relName : stats.relNames()) {
+            Long count = relationCounts.get(relName);
+            relationCounts.put(relName, (count == null ? 0L : count) + stats.count(relName));
+        }
+    }
+
+    /**
+     * The peak of used heap memory in bytes observed during the import, or
+     * {@code -1} if unknown.
+     * 
+     * @since 0.1.0
+     */
+    public long getPeakHeap() {
+        return peakHeap;
+    }
+
+    /**
+     * See {@link #getPeakHeap()}
+     * 
+     * @param peakHeap
+     *            must be >= -1
+     * @since 0.1.0
+     */
+    public void setPeakHeap(long peakHeap) {
+        checkArgument(peakHeap >= -1, "Invalid peak heap, must be >= -1, found instead %s", peakHeap);
+        this.peakHeap = peakHeap;
+    }
+
+    /**
+     * The number of LMF elements, in document order, which were already
+     * committed to the db by an import which didn't complete, or {@code 0}
+     * if there is nothing to resume. Importing again the same file url
+     * skips these elements.
+     * 
+     * @since 0.1.0
+     */
+    public long getCheckpointElements() {
+        return checkpointElements;
+    }
+
+    /**
+     * See {@link #getCheckpointElements()}
+     * 
+     * @param checkpointElements
+     *            must be >= 0
+     * @since 0.1.0
+     */
+    public void setCheckpointElements(long checkpointElements) {
+        checkArgument(checkpointElements >= 0, "Invalid checkpoint elements, must be >= 0, found instead %s",
+                checkpointElements);
+        this.checkpointElements = checkpointElements;
+    }
+
+    /**
+     * Keys of the elements still open at the checkpoint, needed to write
+     * their children when resuming. Format is private to the importer.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    String getCheckpointState() {
+        return checkpointState;
+    }
+
+    /**
+     * See {@link #getCheckpointState()}
+     * 
+     * @since 0.1.0
+     */
+    void setCheckpointState(@Nullable String checkpointState) {
+        this.checkpointState = checkpointState;
+    }
 
 }
@@ -0,0 +1,310 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import eu.kidf.diversicon.core.exceptions.DivException;
+
+/**
+ * Collects the {@link LogMessage}s of an {@link ImportJob} and writes them to
+ * the db in batches, so resources emitting lots of warnings don't slow down
+ * the import nor bloat the {@code LogMessage} table.
+ *
+ * <ul>
+ * <li>messages are buffered in memory and written every
+ * {@code bufferSize} messages, each batch in a single transaction</li>
+ * <li>messages are aggregated by {@link DivValidationError} code (or by
+ * level, if they have no code): only the first {@code examplesPerKind} of
+ * each kind are stored, the others are just counted and a summary message
+ * per kind is written on {@link #close()}, with the most severe level of the
+ * omitted messages</li>
+ * <li>no more than {@code maxStored} messages are stored overall</li>
+ * </ul>
+ *
+ * @since 0.1.0
+ */
+class ImportLogSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImportLogSink.class);
+
+    /**
+     * @since 0.1.0
+     */
+    static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    /**
+     * @since 0.1.0
+     */
+    static final int DEFAULT_EXAMPLES_PER_KIND = 100;
+
+    /**
+     * @since 0.1.0
+     */
+    static final int DEFAULT_MAX_STORED = 10000;
+
+    /**
+     * Matches the code {@link DivXmlValidator} puts at the beginning of
+     * messages, see {@link DivValidationError#toString()}
+     */
+    private static final Pattern CODE_PATTERN = Pattern.compile("^\\s*(DIV-\\d+)\\s*:");
+
+    private SessionFactory sessionFactory;
+    private ImportJob job;
+    private int bufferSize;
+    private int examplesPerKind;
+    private int maxStored;
+
+    private List<LogMessage> buffer;
+
+    /**
+     * Messages accepted for storage so far, including buffered ones
+     */
+    private List<LogMessage> stored;
+
+    /**
+     * Kind of message to number of messages received
+     */
+    private Map<String, Long> counts;
+
+    /**
+     * Kind of message to most severe level of omitted messages
+     */
+    private Map<String, Level> omittedLevels;
+
+    private long dropped;
+
+    /**
+     * Most severe level of messages dropped for reaching {@code maxStored}
+     */
+    private Level droppedLevel;
+    private boolean closed;
+
+    /**
+     * @param job
+     *            must be already saved in the db.
+     *
+     * @since 0.1.0
+     */
+    ImportLogSink(
+            SessionFactory sessionFactory,
+            ImportJob job,
+            int bufferSize,
+            int examplesPerKind,
+            int maxStored) {
+        checkNotNull(sessionFactory);
+        checkNotNull(job);
+        checkArgument(bufferSize > 0, "Invalid buffer size, must be > 0, found instead %s", bufferSize);
+        checkArgument(examplesPerKind >= 0, "Invalid examples per kind, must be >= 0, found instead %s",
+                examplesPerKind);
+        checkArgument(maxStored >= 0, "Invalid max stored messages, must be >= 0, found instead %s", maxStored);
+
+        this.sessionFactory = sessionFactory;
+        this.job = job;
+        this.bufferSize = bufferSize;
+        this.examplesPerKind = examplesPerKind;
+        this.maxStored = maxStored;
+        this.buffer = new ArrayList<>();
+        this.stored = new ArrayList<>();
+        this.counts = new LinkedHashMap<>();
+        this.omittedLevels = new HashMap<>();
+        this.dropped = 0;
+        this.droppedLevel = null;
+        this.closed = false;
+    }
+
+    /**
+     * Creates a sink with default limits.
+     *
+     * @since 0.1.0
+     */
+    ImportLogSink(SessionFactory sessionFactory, ImportJob job) {
+        this(sessionFactory, job, DEFAULT_BUFFER_SIZE, DEFAULT_EXAMPLES_PER_KIND, DEFAULT_MAX_STORED);
+    }
+
+    /**
+     * Returns the kind of a message, that is its {@link DivValidationError}
+     * code if present, otherwise its level.
+     *
+     * @since 0.1.0
+     */
+    static String kind(Level level, String msg) {
+        Matcher m = CODE_PATTERN.matcher(msg);
+        if (m.find()) {
+            return m.group(1);
+        } else {
+            return level.toString();
+        }
+    }
+
+    /**
+     * Records a message, possibly writing buffered ones.
+     *
+     * @throws DivException
+     *             if messages couldn't be written.
+     *
+     * @since 0.1.0
+     */
+    synchronized void add(Level level, String msg) {
+        checkNotNull(level);
+        checkNotNull(msg);
+
+        if (closed) {
+            LOG.error("Tried to append log to an already ended import job! Log was: " + msg);
+            return;
+        }
+
+        String kind = kind(level, msg);
+        Long count = counts.get(kind);
+        count = count == null ? 1L : count + 1;
+        counts.put(kind, count);
+
+        if (count > examplesPerKind) {
+            omittedLevels.put(kind, mostSevere(omittedLevels.get(kind), level));
+            return;
+        }
+        if (stored.size() >= maxStored) {
+            dropped++;
+            droppedLevel = mostSevere(droppedLevel, level);
+            return;
+        }
+
+        LogMessage logMessage = new LogMessage(job, level, msg);
+        stored.add(logMessage);
+        buffer.add(logMessage);
+        if (buffer.size() >= bufferSize) {
+            flush();
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static Level mostSevere(@Nullable Level a, Level b) {
+        if (a == null || b.toInt() > a.toInt()) {
+            return b;
+        } else {
+            return a;
+        }
+    }
+
+    /**
+     * Writes buffered messages in a single transaction.
+     *
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    private void write(List<LogMessage> messages) {
+        StatelessSession ss = null;
+        Transaction tx = null;
+        try {
+            ss = sessionFactory.openStatelessSession();
+            tx = ss.beginTransaction();
+            for (LogMessage msg : messages) {
+                ss.insert(msg);
+            }
+            tx.commit();
+        } catch (Exception ex) {
+            LOG.error("Error while writing import log messages, rolling back!");
+            if (tx != null) {
+                try {
+                    tx.rollback();
+                } catch (Exception exr) {
+                    LOG.error("Error while rolling back!", exr);
+                }
+            }
+            throw new DivException("Error while writing import log messages!", ex);
+        } finally {
+            if (ss != null) {
+                try {
+                    ss.close();
+                } catch (Exception ex) {
+                    LOG.error("Error while closing session", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes buffered messages and a summary for each kind of message which
+     * was not fully stored. Later messages are discarded.
+     *
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long omitted = entry.getValue() - examplesPerKind;
+            if (omitted > 0) {
+                LogMessage summary = new LogMessage(job, omittedLevels.get(entry.getKey()),
+                        entry.getKey() + ": omitted other " + omitted + " messages of this kind.");
+                stored.add(summary);
+                buffer.add(summary);
+            }
+        }
+        if (dropped > 0) {
+            LogMessage summary = new LogMessage(job, droppedLevel,
+                    "Reached max number of stored messages (" + maxStored + "), omitted other " + dropped
+                            + " messages.");
+            stored.add(summary);
+            buffer.add(summary);
+        }
+        closed = true;
+        flush();
+    }
+
+    /**
+     * Returns the messages stored so far, including summaries written on
+     * close.
+     *
+     * @since 0.1.0
+     */
+    synchronized List<LogMessage> getMessages() {
+        return Collections.unmodifiableList(new ArrayList<>(stored));
+    }
+
+    /**
+     * Returns the number of messages received so far for each kind, see
+     * {@link #kind(Level, String)}
+     *
+     * @since 0.1.0
+     */
+    synchronized Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+    }
+}
@@ -216,11 +216,11 @@ public class ImportLogger implements Logger {
     }
     
     private void addLogMessage(Level level, String msg){
-        ImportJob importJob = diversicon.getDbInfo().getCurrentImportJob();
-        if (importJob == null){
+        ImportLogSink sink = diversicon.getImportLogSink();
+        if (sink == null){
             LOG.error("Tried to append log, but there is no current import job! Log was: " + msg);         
         } else {
-            importJob.addLogMessage(new LogMessage(importJob, level, msg));    
+            sink.add(level, msg);    
         }
     }
 
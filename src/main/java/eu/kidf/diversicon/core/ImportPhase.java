@@ -0,0 +1,45 @@
+package eu.kidf.diversicon.core;
+
+/**
+ * A phase of an import whose duration is recorded in
+ * {@link ImportJob#getPhaseTimes()}. Writing, normalization and closure
+ * phases are also reported to {@link ProgressListener}s, the latter two
+ * even when processing the graph outside of imports.
+ * 
+ * @since 0.1.0
+ *
+ */
+public enum ImportPhase {
+
+    FETCH("Fetch and decompress file"),
+    /**
+     * When validating files this also includes structural and internal
+     * validation, which are done while reading the file for XML Schema
+     * validation: their own phases are then not recorded.
+     */
+    SCHEMA_VALIDATION("Validate against XML Schema"),
+    STRUCTURAL_VALIDATION(ValidationStep.STEP_1_STRUCTURAL.getDescr()),
+    INTERNAL_VALIDATION(ValidationStep.STEP_2_INTERNAL.getDescr()),
+    EXTERNAL_VALIDATION(ValidationStep.STEP_3_EXTERNAL.getDescr()),
+    WRITE("Write LMF elements into the db"),
+    NORMALIZATION("Add missing canonical SynsetRelations"),
+    CLOSURE("Compute transitive closure of SynsetRelations");
+
+    private String descr;
+
+    /**
+     * @since 0.1.0
+     */
+    private ImportPhase(String descr) {
+        this.descr = descr;
+    }
+
+    /**
+     * Returns a description of the phase
+     * 
+     * @since 0.1.0
+     */
+    public String getDescr() {
+        return descr;
+    }
+}
@@ -0,0 +1,419 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalEntry;
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.core.Lexicon;
+import de.tudarmstadt.ukp.lmf.model.miscellaneous.ConstraintSet;
+import de.tudarmstadt.ukp.lmf.model.multilingual.SenseAxis;
+import de.tudarmstadt.ukp.lmf.model.semantics.SemanticPredicate;
+import de.tudarmstadt.ukp.lmf.model.semantics.SynSemCorrespondence;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
+import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrame;
+import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrameSet;
+import eu.kidf.diversicon.core.exceptions.InterruptedImportException;
+import eu.kidf.diversicon.core.exceptions.InvalidStateException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Streams a {@link LexicalResource} into the db one object at a time, so
+ * programmatic imports of big resources don't need to hold the whole
+ * resource graph in memory. Get one with
+ * {@link Diversicon#openImportSink(LexicalResource, LexResPackage, ImportConfig)}.
+ *
+ * <p>
+ * Objects must be added in the order UBY writes them: for each lexicon,
+ * first {@link #addLexicon(Lexicon) the lexicon} and then its lexical
+ * entries, subcategorization frames, subcategorization frame sets, semantic
+ * predicates, synsets, synsem correspondences and constraint sets, in this
+ * order. Sense axes come after all the lexicons. Children lists of added
+ * lexicons are ignored.
+ * </p>
+ *
+ * <p>
+ * The LexicalResource and added lexicons are copied without their children,
+ * so they are never changed by the import. All other added objects are
+ * persisted as they are, without copying them, so they must not be modified
+ * after being added, and generated ids get set on them.
+ * They are written by a background thread: up to
+ * {@link ImportConfig#getBatchSize()} objects can wait to be written, after
+ * which add methods block.
+ * </p>
+ *
+ * <p>
+ * Call {@link #finish()} to complete the import. Closing a sink which was
+ * not finished aborts the import, possibly leaving already written objects
+ * in the db.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+public class ImportSink implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImportSink.class);
+
+    private static final int NO_PHASE = -1;
+    private static final int LEXICON = 0;
+    private static final int LEXICAL_ENTRY = 1;
+    private static final int SUBCATEGORIZATION_FRAME = 2;
+    private static final int SUBCATEGORIZATION_FRAME_SET = 3;
+    private static final int SEMANTIC_PREDICATE = 4;
+    private static final int SYNSET = 5;
+    private static final int SYN_SEM_CORRESPONDENCE = 6;
+    private static final int CONSTRAINT_SET = 7;
+    private static final int SENSE_AXIS = 8;
+
+    private Diversicon div;
+    private ImportConfig importConfig;
+    private ImportJob job;
+
+    /**
+     * {@code null} on dry runs
+     */
+    @Nullable
+    private BlockingQueue<Object> queue;
+    @Nullable
+    private JavaToDbTransformer transformer;
+    @Nullable
+    private ExecutorService executor;
+    @Nullable
+    private Future<Void> writer;
+
+    private int phase;
+    private long count;
+    private long writeStart;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Starts writing the LexicalResource. The import job must already be
+     * validated and set as current one.
+     *
+     * @since 0.1.0
+     */
+    ImportSink(
+            Diversicon div,
+            LexicalResource lexRes,
+            ImportConfig importConfig,
+            ImportJob job) {
+        checkNotNull(div);
+        checkNotNull(lexRes);
+        checkNotNull(importConfig);
+        checkNotNull(job);
+
+        this.div = div;
+        this.importConfig = importConfig;
+        this.job = job;
+        this.phase = NO_PHASE;
+        this.count = 0;
+        this.writeStart = System.currentTimeMillis();
+        this.finished = false;
+        this.closed = false;
+
+        if (importConfig.isDryRun()) {
+            return;
+        }
+
+        this.queue = new ArrayBlockingQueue<>(importConfig.getBatchSize());
+        try {
+            this.transformer = new JavaToDbTransformer(div, withoutChildren(lexRes), queue);
+        } catch (Exception ex) {
+            throw new InterruptedImportException("Error while starting import of lexical resource "
+                    + lexRes.getName() + " !", ex);
+        }
+
+        this.executor = Executors.newSingleThreadExecutor();
+        final JavaToDbTransformer trans = transformer;
+        this.writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                trans.transform();
+                return null;
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Starts a new lexicon. Its children must be added afterwards.
+     *
+     * @throws InvalidStateException
+     *             if sense axes were already added.
+     *
+     * @since 0.1.0
+     */
+    public void addLexicon(Lexicon lexicon) {
+        checkNotNull(lexicon);
+        add(queue == null ? lexicon : withoutChildren(lexicon), LEXICON);
+    }
+
+    /**
+     * Returns a copy of {@code lexRes} without lexicons and sense axes, so
+     * UBY writer doesn't add them twice and the original is never modified
+     * by the writer thread.
+     *
+     * @since 0.1.0
+     */
+    private static LexicalResource withoutChildren(LexicalResource lexRes) {
+        LexicalResource ret = Internals.shallowCopy(lexRes);
+        ret.setGlobalInformation(Internals.deepCopy(lexRes.getGlobalInformation()));
+        ret.setLexicons(new ArrayList<Lexicon>());
+        ret.setSenseAxes(new ArrayList<SenseAxis>());
+        return ret;
+    }
+
+    /**
+     * Returns a copy of {@code lexicon} without children, so UBY writer
+     * doesn't add them twice and the original is never modified by the
+     * writer thread.
+     *
+     * @since 0.1.0
+     */
+    private static Lexicon withoutChildren(Lexicon lexicon) {
+        Lexicon ret = Internals.shallowCopy(lexicon);
+        ret.setLexicalEntries(new ArrayList<LexicalEntry>());
+        ret.setSubcategorizationFrames(new ArrayList<SubcategorizationFrame>());
+        ret.setSubcategorizationFrameSets(new ArrayList<SubcategorizationFrameSet>());
+        ret.setSemanticPredicates(new ArrayList<SemanticPredicate>());
+        ret.setSynsets(new ArrayList<Synset>());
+        ret.setSynSemCorrespondences(new ArrayList<SynSemCorrespondence>());
+        ret.setConstraintSets(new ArrayList<ConstraintSet>());
+        return ret;
+    }
+
+    /**
+     * Adds a lexical entry to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addLexicalEntry(LexicalEntry lexicalEntry) {
+        add(lexicalEntry, LEXICAL_ENTRY);
+    }
+
+    /**
+     * Adds a subcategorization frame to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addSubcategorizationFrame(SubcategorizationFrame subcatFrame) {
+        add(subcatFrame, SUBCATEGORIZATION_FRAME);
+    }
+
+    /**
+     * Adds a subcategorization frame set to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addSubcategorizationFrameSet(SubcategorizationFrameSet subcatFrameSet) {
+        add(subcatFrameSet, SUBCATEGORIZATION_FRAME_SET);
+    }
+
+    /**
+     * Adds a semantic predicate to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addSemanticPredicate(SemanticPredicate semanticPredicate) {
+        add(semanticPredicate, SEMANTIC_PREDICATE);
+    }
+
+    /**
+     * Adds a synset to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addSynset(Synset synset) {
+        add(synset, SYNSET);
+    }
+
+    /**
+     * Adds a synsem correspondence to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addSynSemCorrespondence(SynSemCorrespondence synSemCorrespondence) {
+        add(synSemCorrespondence, SYN_SEM_CORRESPONDENCE);
+    }
+
+    /**
+     * Adds a constraint set to current lexicon.
+     *
+     * @throws InvalidStateException
+     *             if objects were added in the wrong order.
+     *
+     * @since 0.1.0
+     */
+    public void addConstraintSet(ConstraintSet constraintSet) {
+        add(constraintSet, CONSTRAINT_SET);
+    }
+
+    /**
+     * Adds a sense axis. After this, no more lexicons can be added.
+     *
+     * @since 0.1.0
+     */
+    public void addSenseAxis(SenseAxis senseAxis) {
+        add(senseAxis, SENSE_AXIS);
+    }
+
+    /**
+     * @throws InvalidStateException
+     * @throws InterruptedImportException
+     *
+     * @since 0.1.0
+     */
+    private void add(Object obj, int objPhase) {
+        checkNotNull(obj);
+        checkOpen();
+
+        if (objPhase == LEXICON) {
+            if (phase == SENSE_AXIS) {
+                throw new InvalidStateException("Can't add lexicons after sense axes!");
+            }
+        } else if (objPhase != SENSE_AXIS) {
+            if (phase == NO_PHASE || phase == SENSE_AXIS) {
+                throw new InvalidStateException("Tried to add a " + obj.getClass()
+                                                                        .getSimpleName()
+                        + " outside of a lexicon!");
+            }
+            if (objPhase < phase) {
+                throw new InvalidStateException("Tried to add a " + obj.getClass()
+                                                                        .getSimpleName()
+                        + " after objects which must follow it, see ImportSink javadoc for the right order.");
+            }
+        }
+        phase = objPhase;
+        count++;
+
+        if (queue != null) {
+            try {
+                Internals.put(queue, obj, writer);
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+                abort();
+                throw new InterruptedImportException("Interrupted while adding objects to import!", ex);
+            } catch (ExecutionException | RuntimeException ex) {
+                abort();
+                throw new InterruptedImportException("Error while writing lexical resource!",
+                        ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        }
+    }
+
+    /**
+     * @throws InvalidStateException
+     *
+     * @since 0.1.0
+     */
+    private void checkOpen() {
+        if (finished || closed) {
+            throw new InvalidStateException("Import sink is already " + (finished ? "finished!" : "closed!"));
+        }
+    }
+
+    /**
+     * Waits for all added objects to be written and completes the import,
+     * augmenting the graph unless {@link ImportConfig#isSkipAugment()}.
+     *
+     * @throws InterruptedImportException
+     *
+     * @since 0.1.0
+     */
+    public ImportJob finish() {
+        checkOpen();
+
+        if (queue != null) {
+            try {
+                Internals.put(queue, JavaToDbTransformer.END, writer);
+                writer.get();
+                if (!transformer.isDrained()) {
+                    throw new InvalidStateException(
+                            "Some objects were not written because they were added in the wrong order!");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+                abort();
+                throw new InterruptedImportException("Interrupted while writing lexical resource!", ex);
+            } catch (ExecutionException | RuntimeException ex) {
+                abort();
+                throw new InterruptedImportException("Error while writing lexical resource!",
+                        ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        }
+        finished = true;
+
+        LOG.debug("Added " + count + " objects to import.");
+
+        div.endResourceImport(importConfig, job, System.currentTimeMillis() - writeStart);
+        return job;
+    }
+
+    /**
+     * Stops the writer thread, if it is still running.
+     *
+     * @since 0.1.0
+     */
+    private void abort() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+        }
+    }
+
+    /**
+     * Aborts the import if it was not {@link #finish() finished}.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() {
+        if (!finished && !closed) {
+            LOG.warn("Closing unfinished import sink, aborting import of " + job.getFileUrl());
+            abort();
+        }
+        closed = true;
+    }
+}
@@ -2,6 +2,7 @@ package eu.kidf.diversicon.core;
 
 import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -47,8 +48,24 @@ public class InsertionStats {
     }
 
     /**
+     * Adds counts and max level of {@code other} stats to these ones.
+     * Edges prior insertion are not changed.
+     *
      * @since 0.1.0
-     */    
+     */
+    public void merge(InsertionStats other){
+        checkNotNull(other);
+        for (String relName : other.relNames()){
+            map.put(relName, count(relName) + other.count(relName));
+        }
+        if (other.getMaxLevel() > maxLevel){
+            setMaxLevel(other.getMaxLevel());
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
     public Set<String> relNames() {
         return map.keySet();
     }
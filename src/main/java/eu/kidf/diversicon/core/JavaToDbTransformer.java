@@ -4,8 +4,8 @@ import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
 import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
 
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
@@ -22,77 +22,122 @@ import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
 import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrame;
 import de.tudarmstadt.ukp.lmf.model.syntax.SubcategorizationFrameSet;
 import de.tudarmstadt.ukp.lmf.transform.LMFDBTransformer;
-import eu.kidf.diversicon.core.internal.Internals;
+import eu.kidf.diversicon.core.exceptions.InterruptedImportException;
 
 /**
- * 
- * Simple transformer to directly put into the db a LexicalResource complete
- * with all the lexicons, synsets, etc.
- * 
+ *
+ * Transformer putting into the db LMF objects taken one at a time from a
+ * queue filled by an {@link ImportSink}, in the order
+ * {@link LMFDBTransformer} asks for them.
+ *
+ * <p>
+ * Objects are persisted as they are, without copying them. The
+ * LexicalResource and the Lexicons must come with empty children lists, so
+ * {@link LMFDBTransformer} doesn't add children twice: {@link ImportSink}
+ * takes care of it.
+ * </p>
+ *
  * @since 0.1.0
  */
 class JavaToDbTransformer extends LMFDBTransformer {
 
     private static final Logger LOG = LoggerFactory.getLogger(JavaToDbTransformer.class);
 
+    /**
+     * Marks the end of queued objects, compared by identity.
+     *
+     * @since 0.1.0
+     */
+    static final Object END = new Object();
+
     private LexicalResource lexicalResource;
-    private Iterator<Lexicon> lexiconIter;
-    private Iterator<LexicalEntry> lexicalEntryIter;
-    private Iterator<SubcategorizationFrame> subcategorizationFrameIter;
-    private Iterator<SubcategorizationFrameSet> subcategorizationFrameSetIter;
-    private Iterator<SemanticPredicate> semanticPredicateIter;
-    private Iterator<SynSemCorrespondence> synSemCorrespondenceIter;
-    private Iterator<Synset> synsetIter;
-    private Iterator<SenseAxis> senseAxisIter;
-    private Iterator<ConstraintSet> constraintSetIter;
+    private BlockingQueue<Object> queue;
+
+    /**
+     * Next queued object, not yet consumed
+     */
+    @Nullable
+    private Object head;
 
     /**
      * Constructor of the transformer.
-     * 
+     *
      * @param lexRes
-     *            a LexicalResource complete with all the lexicons, synsets,
-     *            etc. MUST have a {@code name}
+     *            the LexicalResource. MUST have a {@code name} and no
+     *            lexicons nor sense axes: they must be put into
+     *            {@code queue}.
      * @throws FileNotFoundException
-     * 
+     *
      * @since 0.1.0
      */
     @SuppressWarnings("deprecation")
     public JavaToDbTransformer(
             Diversicon div,
-            LexicalResource lexRes)
+            LexicalResource lexRes,
+            BlockingQueue<Object> queue)
                     throws FileNotFoundException {
-        super(div.getDbConfig());        
-        sessionFactory.close();  // div dirty but needed...       
+        super(div.getDbConfig());
+        sessionFactory.close();  // div dirty but needed...
         sessionFactory = div.getSessionFactory();
-                
+
         checkNotNull(lexRes);
         checkNotEmpty(lexRes.getName(), "Invalid lexicalResource name!");
-        
-                
+        checkNotNull(queue);
+
+        this.queue = queue;
+        this.head = null;
+
         session = sessionFactory.openSession();
-        
+
         @Nullable
         LexicalResource existingLexicalResource = (LexicalResource) session.get(LexicalResource.class,
                 lexRes.getName());
         session.close();
-        
+
         if (existingLexicalResource == null) {
-            /** copy to avoid double additions by LMFDBTransformer */
-            LexicalResource lexicalResourceCopy = Internals.deepCopy(lexRes);            
-            this.lexicalResource = lexicalResourceCopy;
-            this.lexicalResource.setLexicons(new ArrayList<Lexicon>());
-            this.lexicalResource.setSenseAxes(new ArrayList<SenseAxis>());
+            this.lexicalResource = lexRes;
         } else {
             LOG.info("Importing into existing lexical resource " + lexRes.getName());
-            this.lexicalResource = existingLexicalResource;            
+            this.lexicalResource = existingLexicalResource;
         }
+    }
 
-        this.lexiconIter = lexRes.getLexicons()
-                                          .iterator();
-        this.senseAxisIter = lexRes.getSenseAxes()
-                                            .iterator();       
-        
+    /**
+     * Returns the next queued object if it is an instance of {@code clazz},
+     * otherwise {@code null}, waiting for the queue to be filled.
+     *
+     * @throws InterruptedImportException
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    private <T> T next(Class<T> clazz) {
+        if (head == null) {
+            try {
+                head = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread()
+                      .interrupt();
+                throw new InterruptedImportException("Interrupted while waiting for objects to import!", ex);
+            }
+        }
+        if (clazz.isInstance(head)) {
+            T ret = clazz.cast(head);
+            head = null;
+            return ret;
+        } else {
+            return null;
+        }
+    }
 
+    /**
+     * Returns {@code true} if all queued objects were consumed up to
+     * {@link #END}
+     *
+     * @since 0.1.0
+     */
+    boolean isDrained() {
+        return head == END;
     }
 
     /**
@@ -105,147 +150,101 @@ class JavaToDbTransformer extends LMFDBTransformer {
 
     /**
      * @since 0.1.0
-     */    
+     */
     @Override
     protected Lexicon createNextLexicon() {
-        // resetting lexicon array properties to avoid double additions by
-        // LMFDBTransformer
-        if (lexiconIter.hasNext()) {
-            Lexicon lexicon = Internals.deepCopy(lexiconIter.next());
-
+        Lexicon lexicon = next(Lexicon.class);
+        if (lexicon != null) {
             LOG.info("Creating Lexicon " + lexicon.getId());
-
-            subcategorizationFrameIter = lexicon.getSubcategorizationFrames()
-                                                .iterator();
-            lexicon.setSubcategorizationFrames(new ArrayList<SubcategorizationFrame>());
-            subcategorizationFrameSetIter = lexicon.getSubcategorizationFrameSets()
-                                                   .iterator();
-            lexicon.setSubcategorizationFrameSets(new ArrayList<SubcategorizationFrameSet>());
-            lexicalEntryIter = lexicon.getLexicalEntries()
-                                      .iterator();
-            lexicon.setLexicalEntries(new ArrayList<LexicalEntry>());
-            semanticPredicateIter = lexicon.getSemanticPredicates()
-                                           .iterator();
-            lexicon.setSemanticPredicates(new ArrayList<SemanticPredicate>());
-            synSemCorrespondenceIter = lexicon.getSynSemCorrespondences()
-                                              .iterator();
-            lexicon.setSynSemCorrespondences(new ArrayList<SynSemCorrespondence>());
-            constraintSetIter = lexicon.getConstraintSets()
-                                       .iterator();
-            lexicon.setConstraintSets(new ArrayList<ConstraintSet>());
-            return lexicon;
-        } else {
-            return null;
         }
-
+        return lexicon;
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */    
+     */
     @Override
     protected LexicalEntry getNextLexicalEntry() {
-        if (lexicalEntryIter.hasNext()) {
-            LexicalEntry lexicalEntry = lexicalEntryIter.next();
-            synsetIter = lexicalEntry.getSynsets()
-                                     .iterator();
-            return lexicalEntry;
-        } else {
-            return null;
-        }
-    }
-
-    /**
-     * Return the next element of the iterator or {@code null} if there is none
-     * 
-     * @since 0.1.0
-     */
-    @Nullable
-    private static <T> T next(Iterator<T> iter) {
-        if (iter != null && iter.hasNext()) {
-            return iter.next();
-        } else {
-            return null;
-        }
+        return next(LexicalEntry.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected SubcategorizationFrame getNextSubcategorizationFrame() {
-        return next(subcategorizationFrameIter);
+        return next(SubcategorizationFrame.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected SubcategorizationFrameSet getNextSubcategorizationFrameSet() {
-        return next(subcategorizationFrameSetIter);
+        return next(SubcategorizationFrameSet.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected SemanticPredicate getNextSemanticPredicate() {
-        return next(semanticPredicateIter);
+        return next(SemanticPredicate.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected Synset getNextSynset() {
-        return next(synsetIter);
+        return next(Synset.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected SynSemCorrespondence getNextSynSemCorrespondence() {
-        return next(synSemCorrespondenceIter);
+        return next(SynSemCorrespondence.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected ConstraintSet getNextConstraintSet() {
-        return next(constraintSetIter);
+        return next(ConstraintSet.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected SenseAxis getNextSenseAxis() {
-        return next(senseAxisIter);
+        return next(SenseAxis.class);
     }
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */        
+     */
     @Override
     protected void finish() {
 
@@ -253,9 +252,9 @@ class JavaToDbTransformer extends LMFDBTransformer {
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @since 0.1.0
-     */    
+     */
     @Override
     protected String getResourceAlias() {
         return lexicalResource.getName();
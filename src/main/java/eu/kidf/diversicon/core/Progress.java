@@ -0,0 +1,120 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+/**
+ * A progress report sent to {@link ProgressListener}. Immutable.
+ * 
+ * @since 0.1.0
+ */
+public final class Progress {
+
+    private ImportPhase phase;
+    private String descr;
+    private long processed;
+    private long total;
+    private long elapsed;
+
+    /**
+     * @param descr
+     *            what is being processed, i.e. a file url or a relation
+     *            name. May be empty.
+     * @param total
+     *            estimated number of items to process, {@code -1} if unknown.
+     * @param elapsed
+     *            millisecs since the phase started.
+     * 
+     * @since 0.1.0
+     */
+    public Progress(
+            ImportPhase phase,
+            String descr,
+            long processed,
+            long total,
+            long elapsed) {
+        checkNotNull(phase);
+        checkNotNull(descr);
+        checkArgument(processed >= 0, "Processed items must be >= 0, found instead %s", processed);
+        checkArgument(total >= -1, "Total must be >= -1, found instead %s", total);
+        checkArgument(elapsed >= 0, "Elapsed time must be >= 0, found instead %s", elapsed);
+
+        this.phase = phase;
+        this.descr = descr;
+        this.processed = processed;
+        this.total = total;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * The phase being tracked, one of {@link ImportPhase#WRITE},
+     * {@link ImportPhase#NORMALIZATION} or {@link ImportPhase#CLOSURE}
+     * 
+     * @since 0.1.0
+     */
+    public ImportPhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * What is being processed, i.e. a file url or a relation name. May be
+     * empty.
+     * 
+     * @since 0.1.0
+     */
+    public String getDescr() {
+        return descr;
+    }
+
+    /**
+     * Number of items processed so far in the phase (synsets for
+     * normalization, edges for closure, LMF elements for imports)
+     * 
+     * @since 0.1.0
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Estimated number of items to process in the phase, {@code -1} if
+     * unknown.
+     * 
+     * @since 0.1.0
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Millisecs since the phase started.
+     * 
+     * @since 0.1.0
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Processed items per second since the phase started.
+     * 
+     * @since 0.1.0
+     */
+    public double getThroughput() {
+        if (elapsed == 0) {
+            return 0;
+        } else {
+            return processed * 1000.0 / elapsed;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public String toString() {
+        return phase + (descr.isEmpty() ? "" : " " + descr) + ": "
+                + processed + (total == -1 ? "" : "/" + total)
+                + " items, " + String.format("%.1f", getThroughput()) + " items/s";
+    }
+}
@@ -0,0 +1,37 @@
+package eu.kidf.diversicon.core;
+
+/**
+ * Receives progress reports of long running operations like imports and
+ * graph processing, and may ask them to stop.
+ * 
+ * <p>
+ * Progress is reported at every commit boundary, which is also when
+ * {@link #isCancelled()} is checked. Implementations should return
+ * quickly, as they are called while holding db resources. Closure
+ * computation reports from its worker threads, one call at a time.
+ * </p>
+ * 
+ * @see ImportConfig#setProgressListener(ProgressListener)
+ * @see DivConfig.Builder#setProgressListener(ProgressListener)
+ * @since 0.1.0
+ */
+public interface ProgressListener {
+
+    /**
+     * Called at the start and end of each phase and after every committed
+     * batch.
+     * 
+     * @since 0.1.0
+     */
+    void onProgress(Progress progress);
+
+    /**
+     * Polled at every commit boundary. Once it returns {@code true} the
+     * running operation rolls back its pending work and throws
+     * {@link eu.kidf.diversicon.core.exceptions.CancelledOperationException
+     * CancelledOperationException}.
+     * 
+     * @since 0.1.0
+     */
+    boolean isCancelled();
+}
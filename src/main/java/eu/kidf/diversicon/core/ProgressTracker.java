@@ -0,0 +1,101 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import javax.annotation.Nullable;
+
+import eu.kidf.diversicon.core.exceptions.CancelledOperationException;
+
+/**
+ * Tracks a phase of a long running operation on behalf of an optional
+ * {@link ProgressListener}. Thread safe, so it can be shared by tasks running
+ * concurrently in the same phase.
+ * 
+ * @since 0.1.0
+ */
+class ProgressTracker {
+
+    @Nullable
+    private ProgressListener listener;
+    private ImportPhase phase;
+    private String descr;
+    private long total;
+    private long start;
+    private long processed;
+
+    /**
+     * @param listener
+     *            if {@code null}, progress is not reported and operation is
+     *            never cancelled.
+     * @param total
+     *            estimated items to process, {@code -1} if unknown.
+     * 
+     * @since 0.1.0
+     */
+    ProgressTracker(
+            @Nullable ProgressListener listener,
+            ImportPhase phase,
+            String descr,
+            long total) {
+        checkNotNull(phase);
+        checkNotNull(descr);
+
+        this.listener = listener;
+        this.phase = phase;
+        this.descr = descr;
+        this.total = total;
+        this.start = System.currentTimeMillis();
+        this.processed = 0;
+    }
+
+    /**
+     * Sets the items processed so far and reports them to the listener.
+     * 
+     * @since 0.1.0
+     */
+    synchronized void report(long processed) {
+        this.processed = processed;
+        notifyListener();
+    }
+
+    /**
+     * Adds {@code count} to the items processed so far and reports them to
+     * the listener.
+     * 
+     * @since 0.1.0
+     */
+    synchronized void add(long count) {
+        this.processed += count;
+        notifyListener();
+    }
+
+    /**
+     * To be called at commit boundaries.
+     * 
+     * @throws CancelledOperationException
+     *             if the listener requested to stop the operation. Caller is
+     *             responsible for rolling back pending work.
+     * 
+     * @since 0.1.0
+     */
+    synchronized void checkCancelled() {
+        if (listener != null && listener.isCancelled()) {
+            throw new CancelledOperationException("Cancelled " + phase.getDescr()
+                    + (descr.isEmpty() ? "" : " (" + descr + ")")
+                    + " after " + processed + " items");
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void notifyListener() {
+        if (listener != null) {
+            listener.onProgress(new Progress(phase,
+                    descr,
+                    processed,
+                    total,
+                    Math.max(0, System.currentTimeMillis() - start)));
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.kidf.diversicon.core.exceptions.DivIoException;
+import eu.kidf.diversicon.core.exceptions.InvalidImportException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * A file to import which was fetched and possibly validated ahead of writing
+ * it into the db, so {@link Diversicon#importFiles(ImportConfig)} can fetch
+ * and validate many files concurrently and then write them in dependency
+ * order.
+ *
+ * <p>
+ * Local uncompressed files are read in place. Other files (compressed,
+ * remote or in the classpath) are not copied to disk before parsing: the
+ * validation pass consumes the decompressing stream directly, while a copy
+ * is spooled to a temporary file for the write pass. Spooled files are
+ * deleted by {@link #close()}.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+class StagedImport implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StagedImport.class);
+
+    /**
+     * Max bytes the LexicalResource header may take to be read from a stream
+     * which is then rewound for validation.
+     */
+    private static final int HEADER_MARK_LIMIT = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private String fileUrl;
+    private File file;
+    private LexResPackage pack;
+    private long fetchTime;
+
+    /**
+     * Stream still to be consumed, which is being copied to {@link #file}
+     */
+    @Nullable
+    private InputStream pending;
+
+    /**
+     * Temporary directory holding spooled {@link #file}
+     */
+    @Nullable
+    private Path spoolDir;
+
+    @Nullable
+    private DivXmlValidator validator;
+    private long validationTime;
+
+    @Nullable
+    private String contentHash;
+
+    /**
+     * @since 0.1.0
+     */
+    private StagedImport(
+            String fileUrl,
+            File file,
+            LexResPackage pack,
+            @Nullable InputStream pending,
+            @Nullable Path spoolDir,
+            long fetchTime) {
+        this.fileUrl = fileUrl;
+        this.file = file;
+        this.pack = pack;
+        this.pending = pending;
+        this.spoolDir = spoolDir;
+        this.fetchTime = fetchTime;
+        this.validator = null;
+        this.validationTime = -1;
+        this.contentHash = null;
+    }
+
+    /**
+     * Opens the file at {@code fileUrl} (decompressing it if needed) and
+     * extracts its {@link LexResPackage}, reading only the beginning of the
+     * file.
+     *
+     * @throws InvalidImportException
+     *
+     * @since 0.1.0
+     */
+    static StagedImport fetch(DivConfig divConfig, String fileUrl) {
+        checkNotNull(divConfig);
+        checkNotEmpty(fileUrl, "Invalid file url!");
+
+        long start = System.currentTimeMillis();
+
+        ExtractedStream extracted;
+        try {
+            extracted = Diversicons.readData(divConfig, fileUrl, true);
+        } catch (Exception ex) {
+            throw new InvalidImportException("Couldn't read file to import: " + fileUrl, ex);
+        }
+
+        if (extracted.isLocalFile()) {
+            IOUtils.closeQuietly(extracted.stream());
+            File file = extracted.toTempFile();
+            LexResPackage pack;
+            try {
+                pack = Diversicons.readPackageFromLexRes(file);
+            } catch (Exception ex) {
+                throw new InvalidImportException("Couldn't extract attributes from LexicalResource " + fileUrl, ex);
+            }
+            return new StagedImport(fileUrl, file, pack, null, null, System.currentTimeMillis() - start);
+        }
+
+        Path spoolDir = null;
+        InputStream in = null;
+        try {
+            spoolDir = Internals.createTempDivDir("spool", false);
+            File spool = new File(spoolDir.toFile(), FilenameUtils.getName(extracted.getFilepath()));
+            LOG.debug("Spooling " + fileUrl + " to " + spool.getAbsolutePath());
+
+            in = new BufferedInputStream(
+                    new TeeInputStream(extracted.stream(),
+                            new BufferedOutputStream(new FileOutputStream(spool), BUFFER_SIZE),
+                            true),
+                    BUFFER_SIZE);
+
+            in.mark(HEADER_MARK_LIMIT);
+
+            LexResPackage pack;
+            try {
+                pack = Diversicons.readPackageFromLexRes(in, fileUrl);
+            } catch (Exception ex) {
+                throw new InvalidImportException("Couldn't extract attributes from LexicalResource " + fileUrl, ex);
+            }
+
+            try {
+                in.reset();
+            } catch (IOException ex) {
+                LOG.debug("LexicalResource header of " + fileUrl
+                        + " is too long to rewind the stream, validation will read the spooled file.");
+                drain(in);
+                in = null;
+            }
+
+            return new StagedImport(fileUrl, spool, pack, in, spoolDir, System.currentTimeMillis() - start);
+
+        } catch (IOException | RuntimeException ex) {
+            IOUtils.closeQuietly(in);
+            if (spoolDir != null) {
+                Internals.deleteTempDir(spoolDir);
+            }
+            if (ex instanceof InvalidImportException) {
+                throw (InvalidImportException) ex;
+            }
+            throw new InvalidImportException("Couldn't read file to import: " + fileUrl, ex);
+        }
+    }
+
+    /**
+     * Consumes and closes the stream.
+     *
+     * @since 0.1.0
+     */
+    private static void drain(InputStream in) throws IOException {
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (in.read(buf) != -1) {
+                // just copying to spool
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Validates the file in a single pass, see
+     * {@link Diversicons#validateXmlSinglePass(File, String, boolean, XmlValidationConfig)}.
+     * Doesn't check whether validation passed.
+     *
+     * <p>
+     * Content is hashed while being validated. If validation is
+     * {@link XmlValidationConfig#isCached() cached}, the hash is needed
+     * before validating to look up the cache: local files are looked up by
+     * size and modification time, while pending streams are hashed while
+     * spooling them, and the spooled file is then validated only if its
+     * outcome is not cached.
+     * </p>
+     *
+     * @since 0.1.0
+     */
+    DivXmlValidator validateSinglePass(XmlValidationConfig xmlValidationConfig) {
+        checkNotNull(xmlValidationConfig);
+
+        if (pending != null && xmlValidationConfig.isCached()) {
+            MessageDigest digest = Internals.newSha256();
+            pending = new DigestInputStream(pending, digest);
+            completeSpool();
+            contentHash = Internals.toHex(digest.digest());
+        }
+
+        if (pending == null) {
+            DivXmlValidator ret = Diversicons.validateXmlSinglePass(file, contentHash, true, xmlValidationConfig);
+            contentHash = ret.getContentHash();
+            return ret;
+        } else {
+            MessageDigest digest = Internals.newSha256();
+            pending = new DigestInputStream(pending, digest);
+            DivXmlValidator ret = Diversicons.validateXmlSinglePass(pending, fileUrl, xmlValidationConfig);
+            completeSpool();
+            contentHash = Internals.toHex(digest.digest());
+            ret.setContentHash(contentHash);
+            return ret;
+        }
+    }
+
+    /**
+     * Returns the hex SHA-256 of the file content, computing it if the file
+     * was not validated yet. Pending streams are hashed while completing
+     * the spool, so later validation reads the spooled file.
+     *
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    String hashContent() {
+        if (contentHash == null) {
+            if (pending == null) {
+                contentHash = ValidationCache.contentHash(file);
+            } else {
+                MessageDigest digest = Internals.newSha256();
+                pending = new DigestInputStream(pending, digest);
+                completeSpool();
+                contentHash = Internals.toHex(digest.digest());
+            }
+        }
+        return contentHash;
+    }
+
+    /**
+     * The hex SHA-256 of the file content, or {@code null} if the file was
+     * not validated nor {@link #hashContent() hashed} yet.
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Performs validation steps which don't need the db, that is XML Schema,
+     * {@link ValidationStep#STEP_1_STRUCTURAL structural} and
+     * {@link ValidationStep#STEP_2_INTERNAL internal} validation.
+     *
+     * @throws InvalidImportException
+     *
+     * @since 0.1.0
+     */
+    void validate(ImportConfig importConfig, XmlValidationConfig xmlValidationConfig) {
+        checkNotNull(importConfig);
+        checkNotNull(xmlValidationConfig);
+
+        long start = System.currentTimeMillis();
+        try {
+            validator = validateSinglePass(xmlValidationConfig);
+            validator.checkPassed();
+        } catch (Exception ex) {
+            throw new InvalidImportException(
+                    "Invalid import for " + fileUrl + "! \n", ex,
+                    importConfig, fileUrl, pack, validator);
+        }
+        validationTime = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Finishes copying the pending stream, if any, to the spool file.
+     *
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    private void completeSpool() {
+        if (pending != null) {
+            InputStream in = pending;
+            pending = null;
+            try {
+                drain(in);
+            } catch (IOException ex) {
+                throw new DivIoException("Error while spooling " + fileUrl, ex);
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    String getFileUrl() {
+        return fileUrl;
+    }
+
+    /**
+     * Returns the file to read, either the original one or the spooled copy.
+     * If the stream was not consumed yet, finishes spooling first.
+     *
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    File getFile() {
+        completeSpool();
+        return file;
+    }
+
+    /**
+     * Returns the system id to use in XML messages
+     *
+     * @since 0.1.0
+     */
+    String getSystemId() {
+        if (spoolDir == null) {
+            return new StreamSource(file).getSystemId();
+        } else {
+            return fileUrl;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    LexResPackage getLexResPackage() {
+        return pack;
+    }
+
+    /**
+     * Time spent opening the file and reading its header, in millisecs
+     *
+     * @since 0.1.0
+     */
+    long getFetchTime() {
+        return fetchTime;
+    }
+
+    /**
+     * The validator which performed steps up to
+     * {@link ValidationStep#STEP_2_INTERNAL}, or {@code null} if
+     * {@link #validate(ImportConfig, XmlValidationConfig)} wasn't called.
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    DivXmlValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Time spent in {@link #validate(ImportConfig, XmlValidationConfig)}, in
+     * millisecs, or {@code -1} if validation was not done.
+     *
+     * @since 0.1.0
+     */
+    long getValidationTime() {
+        return validationTime;
+    }
+
+    /**
+     * Closes pending streams and deletes the spooled file, if any. Original
+     * local files are left untouched.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(pending);
+        pending = null;
+        if (spoolDir != null) {
+            Internals.deleteTempDir(spoolDir);
+            spoolDir = null;
+        }
+    }
+
+    /**
+     * Orders staged imports so that each resource comes after the resources
+     * whose prefixes it declares among its namespaces. Otherwise, the original
+     * order is preserved. Circular dependencies are broken keeping the
+     * original order, later validation will complain about them unless
+     * {@link ImportConfig#isForce() forced}.
+     *
+     * @since 0.1.0
+     */
+    static List<StagedImport> plan(List<StagedImport> staged) {
+        checkNotNull(staged);
+
+        Map<String, StagedImport> byPrefix = new LinkedHashMap<>();
+        for (StagedImport st : staged) {
+            byPrefix.put(st.getLexResPackage()
+                           .getPrefix(),
+                    st);
+        }
+
+        List<StagedImport> ret = new ArrayList<>();
+        Set<StagedImport> visited = new HashSet<>();
+        Set<StagedImport> visiting = new HashSet<>();
+        for (StagedImport st : staged) {
+            visit(st, byPrefix, visited, visiting, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void visit(
+            StagedImport st,
+            Map<String, StagedImport> byPrefix,
+            Set<StagedImport> visited,
+            Set<StagedImport> visiting,
+            List<StagedImport> ret) {
+
+        String prefix = st.getLexResPackage()
+                          .getPrefix();
+        if (visited.contains(st)) {
+            return;
+        }
+        visiting.add(st);
+
+        for (String dep : st.getLexResPackage()
+                            .getNamespaces()
+                            .keySet()) {
+            StagedImport depSt = byPrefix.get(dep);
+            if (depSt == null || dep.equals(prefix)) {
+                continue;
+            }
+            if (visiting.contains(depSt)) {
+                LOG.warn("Found circular dependency between " + prefix + " and " + dep
+                        + ", keeping files order.");
+                continue;
+            }
+            visit(depSt, byPrefix, visited, visiting, ret);
+        }
+
+        visiting.remove(st);
+        visited.add(st);
+        ret.add(st);
+    }
+}
@@ -0,0 +1,1937 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hibernate.Session;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Assigned;
+import org.hibernate.id.ForeignGenerator;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PostInsertIdentifierGenerator;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Component;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.IndexedCollection;
+import org.hibernate.mapping.ManyToOne;
+import org.hibernate.mapping.OneToMany;
+import org.hibernate.mapping.OneToOne;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.RootClass;
+import org.hibernate.mapping.SingleTableSubclass;
+import org.hibernate.mapping.Table;
+import org.hibernate.mapping.ToOne;
+import org.hibernate.mapping.Value;
+import org.hibernate.type.DiscriminatorType;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.lmf.transform.DBConfig;
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.exceptions.UnmappedLmfException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Imports an LMF XML by streaming it with StAX and writing table rows with
+ * batched JDBC statements, as a faster alternative to UBY's
+ * {@link de.tudarmstadt.ukp.lmf.transform.XMLToDBTransformer
+ * XMLToDBTransformer}.
+ *
+ * <p>
+ * Elements are mapped to rows using the same Hibernate mappings UBY uses:
+ * tables, columns, value types, discriminators, id generators and list
+ * indexes all come from the {@link Configuration}, so the resulting db
+ * content is the same as the one written by UBY, apart from values of
+ * generated surrogate keys which depend on insertion order. Each row is
+ * queued when its element starts; values known only later (like keys of
+ * child elements referenced by the parent) are patched in the queued row or
+ * written with an update if the row was already handed to the writer.
+ * </p>
+ *
+ * <p>
+ * Import runs as a pipeline of three threads connected by bounded queues of
+ * {@code queueDepth} items: a parser thread reads the XML into chunks of
+ * element events, the calling thread maps them to rows grouped in batches of
+ * {@code batchSize} rows, and a writer thread executes each batch table by
+ * table in foreign key dependency order and commits it. When a stage is
+ * slower than the previous one, the queue in between fills up and blocks
+ * the producer, so memory stays bounded whatever the file size.
+ * </p>
+ *
+ * <p>
+ * Mappings using constructs the importer doesn't know about (multi column
+ * values, joined subclasses, maps, ...) make {@link #supports(File)}
+ * return {@code false}, in which case callers should use UBY importer.
+ * </p>
+ *
+ * <p>
+ * With {@link #importDelta(File, Delta)} only the elements a {@link Delta}
+ * selects are written, in a single transaction together with the other
+ * changes of the delta.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+class StaxLmfImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StaxLmfImporter.class);
+
+    /**
+     * Package of UBY model classes, LMF element names are their simple names.
+     */
+    private static final String UBY_MODEL_PACKAGE = "de.tudarmstadt.ukp.lmf.model";
+
+    /**
+     * Number of element events the parser hands to the mapper at once
+     */
+    private static final int EVENTS_CHUNK_SIZE = 1024;
+
+    /**
+     * Marks the end of parsed events, compared by identity.
+     */
+    private static final List<ElementEvent> NO_MORE_EVENTS = new ArrayList<>(0);
+
+    private Configuration cfg;
+    private SessionImplementor sessionImpl;
+    private SessionFactoryImplementor factory;
+    private Dialect dialect;
+    private DBConfig dbConfig;
+    private int batchSize;
+    private int queueDepth;
+    private ProgressTracker tracker;
+
+    /**
+     * LMF element name to mapped class
+     */
+    private Map<String, PersistentClass> classesByElement;
+
+    /**
+     * Table name to position in foreign key dependency order
+     */
+    private Map<String, Integer> tableRanks;
+
+    private Map<String, ClassPlan> classPlans;
+    private Map<String, Link> links;
+
+    /**
+     * Table name to last identity value assigned by this importer
+     */
+    private Map<String, Long> identities;
+    private Map<String, String> identityColumns;
+
+    /**
+     * Batch being filled by the mapper
+     */
+    private Batch batch;
+
+    /**
+     * Statements of the writer thread
+     */
+    private Map<String, PreparedStatement> statements;
+
+    /**
+     * Connection of the writer thread
+     */
+    @Nullable
+    private Connection conn;
+
+    /**
+     * Connection of the mapper thread, for reading current max ids
+     */
+    @Nullable
+    private Connection lookupConn;
+
+    private long elementCount;
+    private Map<String, Long> entityCounts;
+
+    /**
+     * Id of the import job where to save checkpoints, {@code -1} if none
+     */
+    private long jobId;
+
+    /**
+     * Elements already committed by a previous run, to skip
+     */
+    private long resumeFrom;
+    @Nullable
+    private String resumeState;
+
+    /**
+     * Whether the mapper is replaying elements committed by a previous run
+     */
+    private boolean skipping;
+
+    /**
+     * Selects elements to write, if importing a delta
+     */
+    @Nullable
+    private Delta delta;
+
+    /**
+     * Depth of the element selected by {@link #delta} the mapper is into,
+     * {@code -1} if none
+     */
+    private int selectedDepth;
+
+    /**
+     * Selects the elements to write when importing a new version of a
+     * resource already in the db, and applies the other differences.
+     *
+     * @since 0.1.0
+     */
+    interface Delta {
+
+        /**
+         * Returns {@code true} if an element is new, in which case it is
+         * written with all of its content. Elements inside new ones are not
+         * asked for.
+         *
+         * @param attributes
+         *            LMF attributes of the element
+         * @param parentId
+         *            key of the element containing this one, {@code null} for
+         *            the root
+         *
+         * @since 0.1.0
+         */
+        boolean isAdded(String name, Map<String, String> attributes, @Nullable Serializable parentId);
+
+        /**
+         * Called by the writer before writing new elements, in the same
+         * transaction.
+         *
+         * @since 0.1.0
+         */
+        void beforeWrite(Connection conn) throws SQLException;
+
+        /**
+         * Called by the writer after writing new elements, in the same
+         * transaction.
+         *
+         * @since 0.1.0
+         */
+        void afterWrite(Connection conn) throws SQLException;
+    }
+
+    /**
+     * @param batchSize
+     *            number of rows to send to the db in a single batch. Batches
+     *            are also commit points, where {@code tracker} gets notified
+     *            and checked for cancellation.
+     * @param queueDepth
+     *            max number of event chunks and of batches waiting between
+     *            pipeline stages.
+     *
+     * @since 0.1.0
+     */
+    StaxLmfImporter(
+            Diversicon div,
+            Configuration cfg,
+            ProgressTracker tracker,
+            int batchSize,
+            int queueDepth) {
+        checkNotNull(div);
+        checkNotNull(cfg);
+        checkNotNull(tracker);
+        checkArgument(batchSize > 0, "Invalid batch size, must be > 0, found instead %s", batchSize);
+        checkArgument(queueDepth > 0, "Invalid queue depth, must be > 0, found instead %s", queueDepth);
+
+        this.cfg = cfg;
+        Session session = div.getSession();
+        this.sessionImpl = (SessionImplementor) session;
+        this.factory = (SessionFactoryImplementor) session.getSessionFactory();
+        this.dialect = factory.getDialect();
+        this.dbConfig = div.getDbConfig();
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+        this.tracker = tracker;
+
+        this.classesByElement = new HashMap<>();
+        Iterator<?> iter = cfg.getClassMappings();
+        while (iter.hasNext()) {
+            PersistentClass pc = (PersistentClass) iter.next();
+            Class<?> clazz = pc.getMappedClass();
+            if (clazz != null && clazz.getName()
+                                      .startsWith(UBY_MODEL_PACKAGE)) {
+                classesByElement.put(clazz.getSimpleName(), pc);
+            }
+        }
+        // mappings of Uby classes point to our custom ones,
+        // i.e. Synset.synsetRelations holds DivSynsetRelation
+        for (Map.Entry<String, String> e : Diversicons.getCustomClassMappings()
+                                                      .entrySet()) {
+            PersistentClass custom = cfg.getClassMapping(e.getValue());
+            if (custom != null) {
+                String ubyName = e.getKey();
+                classesByElement.put(ubyName.substring(ubyName.lastIndexOf('.') + 1), custom);
+            }
+        }
+
+        this.tableRanks = computeTableRanks(cfg);
+        this.classPlans = new HashMap<>();
+        this.links = new HashMap<>();
+        this.identities = new HashMap<>();
+        this.identityColumns = new HashMap<>();
+        this.batch = new Batch();
+        this.statements = new LinkedHashMap<>();
+        this.elementCount = 0;
+        this.entityCounts = new HashMap<>();
+        this.jobId = -1;
+        this.resumeFrom = 0;
+        this.resumeState = null;
+        this.skipping = false;
+        this.delta = null;
+        this.selectedDepth = -1;
+    }
+
+    /**
+     * Orders tables so that tables referenced by foreign keys come first.
+     *
+     * @since 0.1.0
+     */
+    private static Map<String, Integer> computeTableRanks(Configuration cfg) {
+        Map<String, Table> tables = new HashMap<>();
+        Iterator<?> iter = cfg.getTableMappings();
+        while (iter.hasNext()) {
+            Table table = (Table) iter.next();
+            tables.put(table.getName(), table);
+        }
+
+        Map<String, Integer> ret = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        for (Table table : tables.values()) {
+            rankTable(table, visited, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Depth first visit of foreign keys. Cycles are broken arbitrarily.
+     *
+     * @since 0.1.0
+     */
+    private static void rankTable(Table table, Set<String> visited, Map<String, Integer> ranks) {
+        if (!visited.add(table.getName())) {
+            return;
+        }
+        Iterator<?> fks = table.getForeignKeyIterator();
+        while (fks.hasNext()) {
+            Table referenced = ((ForeignKey) fks.next()).getReferencedTable();
+            if (referenced != null && !referenced.getName()
+                                                 .equals(table.getName())) {
+                rankTable(referenced, visited, ranks);
+            }
+        }
+        ranks.put(table.getName(), ranks.size());
+    }
+
+    /**
+     * Returns {@code true} if all the elements and attributes found in
+     * {@code file} can be mapped to rows. Only reads the file.
+     *
+     * @since 0.1.0
+     */
+    boolean supports(File file) {
+        try (InputStream is = new FileInputStream(file)) {
+            XMLStreamReader reader = createReader(is);
+            Deque<PersistentClass> owners = new ArrayDeque<>();
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        Link link = link(owners.peek(), name);
+                        if (link.component == null) {
+                            ClassPlan plan = classPlan(link.pc);
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                if (isLmfAttribute(reader, i)) {
+                                    plan.attribute(reader.getAttributeLocalName(i));
+                                }
+                            }
+                        } else {
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                if (isLmfAttribute(reader, i)) {
+                                    link.component(reader.getAttributeLocalName(i));
+                                }
+                            }
+                        }
+                        owners.push(link.pc);
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        owners.pop();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return true;
+        } catch (UnmappedLmfException ex) {
+            LOG.warn("StAX importer can't handle " + file.getAbsolutePath() + " : " + ex.getMessage());
+            return false;
+        } catch (IOException | XMLStreamException ex) {
+            throw new DivException("Error while reading " + file.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Writes the content of provided LMF file into the db.
+     *
+     * <p>
+     * Each committed batch also saves a checkpoint on {@code job}, if it is
+     * already in the db: the number of elements written so far in document
+     * order and the keys of elements still open. If {@code job} has a
+     * checkpoint, elements up to it are skipped and writing continues from
+     * there, with the keys the interrupted run gave to still open elements.
+     * </p>
+     *
+     * @throws DivException
+     *             on failure, the current batch is rolled back.
+     * @throws eu.kidf.diversicon.core.exceptions.CancelledOperationException
+     *             if cancelled, the current batch is rolled back.
+     *
+     * @since 0.1.0
+     */
+    void importFile(File file, ImportJob job) {
+        checkNotNull(file);
+        checkNotNull(job);
+
+        jobId = job.getId();
+        resumeFrom = job.getCheckpointElements();
+        resumeState = job.getCheckpointState();
+        skipping = resumeFrom > 0;
+        if (skipping) {
+            LOG.info("Resuming import of " + file.getAbsolutePath() + " after "
+                    + Internals.formatInteger(resumeFrom) + " already written elements ...");
+        }
+
+        run(file);
+    }
+
+    /**
+     * Writes the elements of provided LMF file {@code delta} selects, with
+     * all of their content. Everything is written in a single transaction,
+     * which also includes the changes {@code delta} applies before and after
+     * new elements are written. No checkpoints are saved.
+     *
+     * @throws DivException
+     *             on failure, the whole delta is rolled back.
+     * @throws eu.kidf.diversicon.core.exceptions.CancelledOperationException
+     *             if cancelled, the whole delta is rolled back.
+     *
+     * @since 0.1.0
+     */
+    void importDelta(File file, Delta delta) {
+        checkNotNull(file);
+        checkNotNull(delta);
+
+        jobId = -1;
+        resumeFrom = 0;
+        resumeState = null;
+        this.delta = delta;
+        selectedDepth = -1;
+        // elements already in the db are skipped
+        skipping = true;
+
+        run(file);
+    }
+
+    /**
+     * Runs the import pipeline on {@code file}, see
+     * {@link #importFile(File, ImportJob)}
+     *
+     * @since 0.1.0
+     */
+    private void run(final File file) {
+
+        Date start = new Date();
+
+        final BlockingQueue<List<ElementEvent>> events = new ArrayBlockingQueue<>(queueDepth);
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(queueDepth);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+            lookupConn = Diversicons.getH2Connection(dbConfig);
+
+            Future<Void> parser = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException, XMLStreamException, InterruptedException {
+                    parse(file, events);
+                    return null;
+                }
+            });
+            Future<Void> writer = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws SQLException, InterruptedException {
+                    write(batches);
+                    return null;
+                }
+            });
+            executor.shutdown();
+
+            Deque<Context> stack = new ArrayDeque<>();
+            List<ElementEvent> chunk;
+            while ((chunk = Internals.take(events, parser)) != NO_MORE_EVENTS) {
+                for (ElementEvent event : chunk) {
+                    if (event.start) {
+                        Context parent = stack.peek();
+                        if (delta != null && selectedDepth < 0
+                                && delta.isAdded(event.name, event.attributes(),
+                                        parent == null ? null : parent.id)) {
+                            selectedDepth = stack.size() + 1;
+                            skipping = false;
+                        }
+                        stack.push(startElement(event, parent));
+                        if (skipping) {
+                            if (delta == null && elementCount == resumeFrom) {
+                                restoreCheckpoint(stack);
+                                skipping = false;
+                            }
+                        } else if (batch.size >= batchSize) {
+                            handOff(batches, writer, stack);
+                        }
+                    } else {
+                        stack.pop();
+                        if (selectedDepth > stack.size()) {
+                            // end of a new element
+                            selectedDepth = -1;
+                            skipping = true;
+                        }
+                    }
+                }
+            }
+            if (skipping && delta == null) {
+                throw new DivException("Checkpoint of import job " + jobId + " is past the end of file "
+                        + file.getAbsolutePath() + " , was the file changed?");
+            }
+            batch.last = true;
+            handOff(batches, writer, stack);
+
+            parser.get();
+            writer.get();
+
+            LOG.debug("Done writing " + Internals.formatInteger(elementCount) + " elements in "
+                    + Internals.formatInterval(start, new Date()));
+
+        } catch (SQLException | UnmappedLmfException | InterruptedException | ExecutionException
+                | RuntimeException ex) {
+            LOG.error("Error while importing " + file.getAbsolutePath() + "! Rolling back current "
+                    + (delta == null ? "batch!" : "delta!"));
+            // writer must be stopped before rolling back its connection
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException exi) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException exr) {
+                    LOG.error("Error while rolling back!", exr);
+                }
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new DivException("Error while importing " + file.getAbsolutePath(), cause);
+        } finally {
+            executor.shutdownNow();
+            batch = new Batch();
+            skipping = false;
+            delta = null;
+            selectedDepth = -1;
+            if (lookupConn != null) {
+                try {
+                    lookupConn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+                lookupConn = null;
+            }
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+                conn = null;
+            }
+        }
+    }
+
+    /**
+     * Parser stage: reads {@code file} and puts chunks of element events into
+     * {@code events}, ending with {@link #NO_MORE_EVENTS}. Blocks when the
+     * queue is full.
+     *
+     * @since 0.1.0
+     */
+    private static void parse(File file, BlockingQueue<List<ElementEvent>> events)
+            throws IOException, XMLStreamException, InterruptedException {
+
+        try (InputStream is = new FileInputStream(file)) {
+            XMLStreamReader reader = createReader(is);
+            try {
+                List<ElementEvent> chunk = new ArrayList<>(EVENTS_CHUNK_SIZE);
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        chunk.add(ElementEvent.start(reader));
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        chunk.add(ElementEvent.END);
+                    } else {
+                        continue;
+                    }
+                    if (chunk.size() >= EVENTS_CHUNK_SIZE) {
+                        events.put(chunk);
+                        chunk = new ArrayList<>(EVENTS_CHUNK_SIZE);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    events.put(chunk);
+                }
+                events.put(NO_MORE_EVENTS);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Writer stage: executes batches taken from {@code batches} and commits
+     * each of them, until the {@link Batch#last last} one. When importing a
+     * delta, everything is committed at the end.
+     *
+     * @since 0.1.0
+     */
+    private void write(BlockingQueue<Batch> batches) throws SQLException, InterruptedException {
+        try {
+            if (delta != null) {
+                delta.beforeWrite(conn);
+            }
+            Batch b;
+            do {
+                b = batches.take();
+                flush(b);
+            } while (!b.last);
+            if (delta != null) {
+                delta.afterWrite(conn);
+            }
+            restartIdentities();
+            conn.commit();
+        } finally {
+            for (PreparedStatement stat : statements.values()) {
+                try {
+                    stat.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing PreparedStatement", ex);
+                }
+            }
+            statements.clear();
+        }
+    }
+
+    /**
+     * Hands current batch over to the writer and starts a new one. From now
+     * on, rows of the handed batch belong to the writer: values set later on
+     * them go into updates.
+     *
+     * @param stack
+     *            elements open when handing off, see
+     *            {@link #checkpointState(Deque)}
+     *
+     * @since 0.1.0
+     */
+    private void handOff(BlockingQueue<Batch> batches, Future<?> writer, Deque<Context> stack)
+            throws InterruptedException, ExecutionException {
+        Batch b = batch;
+        b.elementCount = elementCount;
+        if (jobId >= 0) {
+            b.checkpointState = checkpointState(stack);
+        }
+        for (List<Row> rows : b.inserts.values()) {
+            for (Row row : rows) {
+                row.flushed = true;
+            }
+        }
+        batch = new Batch();
+        Internals.put(batches, b, writer);
+    }
+
+    /**
+     * Returns the number of LMF elements processed so far.
+     *
+     * @since 0.1.0
+     */
+    long getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Returns the number of LMF elements processed so far, keyed by element
+     * name.
+     *
+     * @since 0.1.0
+     */
+    Map<String, Long> getEntityCounts() {
+        return entityCounts;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static XMLStreamReader createReader(InputStream is) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory.createXMLStreamReader(is);
+    }
+
+    /**
+     * Namespaced attributes like {@code xsi:noNamespaceSchemaLocation} are
+     * not part of the LMF model.
+     *
+     * @since 0.1.0
+     */
+    private static boolean isLmfAttribute(XMLStreamReader reader, int i) {
+        String ns = reader.getAttributeNamespace(i);
+        return ns == null || ns.isEmpty();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private Context startElement(ElementEvent event, @Nullable Context parent)
+            throws SQLException, UnmappedLmfException {
+
+        String name = event.name;
+
+        elementCount++;
+        Long count = entityCounts.get(name);
+        entityCounts.put(name, count == null ? 1L : count + 1);
+
+        Link link = link(parent == null ? null : parent.plan.pc, name);
+
+        if (link.component != null) {
+            for (int i = 0; i < event.attributeNames.length; i++) {
+                ValuePlan vp = link.component(event.attributeNames[i]);
+                if (vp != null) {
+                    setLater(parent, vp.column, vp.convert(event.attributeValues[i]), vp.type);
+                }
+            }
+            return new Context(parent.plan, parent.id, parent.row);
+        }
+
+        ClassPlan plan = classPlan(link.pc);
+
+        Serializable id = allocateId(plan, event, parent);
+
+        Row row = new Row(plan.table, plan.dynamic);
+        // rows of skipped elements are already in the db
+        row.flushed = skipping;
+        row.set(plan.idColumn, id, plan.idType);
+        if (plan.discriminatorColumn != null) {
+            row.set(plan.discriminatorColumn, plan.discriminatorValue, plan.discriminatorType);
+        }
+
+        List<Object[]> idrefs = new ArrayList<>();
+
+        for (int i = 0; i < event.attributeNames.length; i++) {
+            ValuePlan vp = plan.attribute(event.attributeNames[i]);
+            if (vp == null) {
+                continue;
+            }
+            if (vp.collection == null) {
+                row.set(vp.column, vp.convert(event.attributeValues[i]), vp.type);
+            } else {
+                idrefs.add(new Object[] { vp, event.attributeValues[i] });
+            }
+        }
+
+        if (parent != null) {
+            int position = parent.nextPosition(link.property.getName());
+
+            if (link.keyColumn != null) {
+                Row target = link.collectionTable == null ? row : new Row(link.collectionTable, false);
+                target.set(link.keyColumn, parent.id, link.keyType);
+                if (link.indexColumn != null) {
+                    target.set(link.indexColumn, position + link.baseIndex, link.indexType);
+                }
+                if (link.collectionTable != null) {
+                    target.set(link.elementColumn, id, link.elementType);
+                    queue(target);
+                }
+            }
+            if (link.backRefColumn != null) {
+                row.set(link.backRefColumn, parent.id, link.backRefType);
+            }
+            if (link.ownerColumn != null) {
+                setLater(parent, link.ownerColumn, id, link.ownerType);
+            }
+        }
+
+        queue(row);
+
+        for (Object[] idref : idrefs) {
+            ValuePlan vp = (ValuePlan) idref[0];
+            int position = 0;
+            for (String ref : ((String) idref[1]).trim()
+                                                 .split("\\s+")) {
+                if (ref.isEmpty()) {
+                    continue;
+                }
+                Row collRow = new Row(vp.collection, false);
+                collRow.set(vp.keyColumn, id, vp.keyType);
+                if (vp.indexColumn != null) {
+                    collRow.set(vp.indexColumn, position + vp.baseIndex, vp.indexType);
+                }
+                collRow.set(vp.column, vp.convert(ref), vp.type);
+                queue(collRow);
+                position++;
+            }
+        }
+
+        return new Context(plan, id, row);
+    }
+
+    /**
+     * Sets a value of {@code owner} row, either in the queued row or with an
+     * update if the row was already handed to the writer.
+     *
+     * @since 0.1.0
+     */
+    private void setLater(Context owner, String column, @Nullable Object value, Type type) {
+        if (skipping) {
+            return;
+        }
+        if (owner.row.flushed) {
+            Row update = new Row(owner.row.table, false);
+            update.update = true;
+            update.set(column, value, type);
+            update.set(owner.plan.idColumn, owner.id, owner.plan.idType);
+            batch.updates.add(update);
+            batch.size++;
+        } else {
+            owner.row.set(column, value, type);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private void queue(Row row) {
+        if (skipping) {
+            return;
+        }
+        List<Row> rows = batch.inserts.get(row.table);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            batch.inserts.put(row.table, rows);
+        }
+        rows.add(row);
+        batch.size++;
+    }
+
+    /**
+     * Writes rows of {@code b} table by table in dependency order, then
+     * updates, and commits.
+     *
+     * @since 0.1.0
+     */
+    private void flush(Batch b) throws SQLException {
+
+        tracker.checkCancelled();
+
+        List<String> tables = new ArrayList<>(b.inserts.keySet());
+        java.util.Collections.sort(tables, new java.util.Comparator<String>() {
+            @Override
+            public int compare(String t1, String t2) {
+                return Integer.compare(rank(t1), rank(t2));
+            }
+        });
+
+        for (String table : tables) {
+            executeBatches(b.inserts.get(table));
+        }
+        executeBatches(b.updates);
+
+        if (jobId >= 0) {
+            saveCheckpoint(b);
+        }
+
+        if (delta == null) {
+            conn.commit();
+        }
+
+        tracker.report(b.elementCount);
+    }
+
+    /**
+     * Records in the import job row that elements of {@code b} are written,
+     * in the same transaction as the batch.
+     *
+     * @since 0.1.0
+     */
+    private void saveCheckpoint(Batch b) throws SQLException {
+        PreparedStatement stat = statement(
+                "UPDATE ImportJob SET checkpointElements = ?, checkpointState = ? WHERE id = ?");
+        stat.setLong(1, b.elementCount);
+        stat.setString(2, b.checkpointState);
+        stat.setLong(3, jobId);
+        stat.executeUpdate();
+    }
+
+    /**
+     * Encodes the keys of open elements, from the root down, one per line.
+     *
+     * @since 0.1.0
+     */
+    private static String checkpointState(Deque<Context> stack) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<Context> iter = stack.descendingIterator();
+        while (iter.hasNext()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(iter.next().id);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gives open elements the keys they had in the interrupted run. Keys
+     * which could be computed again while skipping are just checked.
+     *
+     * @throws DivException
+     *             if the checkpoint doesn't match the file.
+     *
+     * @since 0.1.0
+     */
+    private void restoreCheckpoint(Deque<Context> stack) {
+        String[] keys = resumeState == null ? new String[0] : resumeState.split("\n", -1);
+        if (keys.length != stack.size()) {
+            throw new DivException("Checkpoint of import job " + jobId + " doesn't match the file, was the file changed?");
+        }
+        int i = 0;
+        Iterator<Context> iter = stack.descendingIterator();
+        while (iter.hasNext()) {
+            Context ctx = iter.next();
+            if (ctx.id == null) {
+                ctx.id = parseKey(keys[i], ctx.plan.idType);
+            } else if (!keys[i].equals(String.valueOf(ctx.id))) {
+                throw new DivException("Checkpoint of import job " + jobId + " has key " + keys[i]
+                        + " where file has " + ctx.id + ", was the file changed?");
+            }
+            i++;
+        }
+        LOG.info("Skipped " + Internals.formatInteger(resumeFrom) + " already written elements.");
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static Serializable parseKey(String key, Type idType) {
+        Class<?> clazz = idType.getReturnedClass();
+        if (Integer.class.equals(clazz) || int.class.equals(clazz)) {
+            return Integer.valueOf(key);
+        }
+        if (Long.class.equals(clazz) || long.class.equals(clazz)) {
+            return Long.valueOf(key);
+        }
+        return key;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private int rank(String table) {
+        Integer ret = tableRanks.get(table);
+        return ret == null ? Integer.MAX_VALUE : ret;
+    }
+
+    /**
+     * Rows with the same columns share a batched statement.
+     *
+     * @since 0.1.0
+     */
+    private void executeBatches(List<Row> rows) throws SQLException {
+        Set<PreparedStatement> used = new java.util.LinkedHashSet<>();
+        for (Row row : rows) {
+            PreparedStatement stat = statement(row.sql(dialect));
+            int i = 1;
+            for (Binding binding : row.bindings()) {
+                binding.type.nullSafeSet(stat, binding.value, i++, sessionImpl);
+            }
+            stat.addBatch();
+            used.add(stat);
+        }
+        for (PreparedStatement stat : used) {
+            stat.executeBatch();
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private PreparedStatement statement(String sql) throws SQLException {
+        PreparedStatement ret = statements.get(sql);
+        if (ret == null) {
+            ret = conn.prepareStatement(sql);
+            statements.put(sql, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Identity columns were given explicit values, so identity generators
+     * need to skip them.
+     *
+     * @since 0.1.0
+     */
+    private void restartIdentities() throws SQLException {
+        if (identities.isEmpty()) {
+            return;
+        }
+        if (!Diversicons.isH2Db(dbConfig)) {
+            LOG.warn("Can't restart identity columns on non H2 db, next inserts by Hibernate might fail!");
+            return;
+        }
+        try (Statement stat = conn.createStatement()) {
+            for (String table : identities.keySet()) {
+                stat.execute("ALTER TABLE " + table + " ALTER COLUMN " + identityColumns.get(table)
+                        + " RESTART WITH " + (identities.get(table) + 1));
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Nullable
+    private Serializable allocateId(
+            ClassPlan plan,
+            ElementEvent event,
+            @Nullable Context parent) throws SQLException, UnmappedLmfException {
+
+        if (plan.generator instanceof Assigned) {
+            String value = event.attribute(plan.idAttribute);
+            if (value == null) {
+                throw new DivException("Missing attribute " + plan.idAttribute + " in element "
+                        + event.name + " at line " + event.line);
+            }
+            return (Serializable) plan.idValue.convert(value);
+        }
+
+        if (plan.generator instanceof ForeignGenerator) {
+            if (parent == null) {
+                throw new DivException("Found element " + event.name + " sharing id with missing parent!");
+            }
+            return parent.id;
+        }
+
+        if (skipping) {
+            // generated keys of skipped elements are restored only for open
+            // elements, see restoreCheckpoint
+            return null;
+        }
+
+        if (plan.generator instanceof PostInsertIdentifierGenerator) {
+            Long last = identities.get(plan.table);
+            if (last == null) {
+                last = maxId(plan.table, plan.idColumn);
+                identityColumns.put(plan.table, plan.idColumn);
+            }
+            long next = last + 1;
+            identities.put(plan.table, next);
+            if (Integer.class.equals(plan.idType.getReturnedClass())) {
+                return (int) next;
+            } else {
+                return next;
+            }
+        }
+
+        // increment, sequence, uuid...: Hibernate keeps its own state
+        // consistent
+        return plan.generator.generate(sessionImpl, null);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private long maxId(String table, String column) throws SQLException {
+        // when importing a delta the writer holds locks on removed rows
+        // until the end, so we must look with its connection
+        Connection c = delta == null ? lookupConn : conn;
+        try (Statement stat = c.createStatement();
+                ResultSet rs = stat.executeQuery("SELECT MAX(" + column + ") FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * @throws UnmappedLmfException
+     *             if the mapping of the class can't be handled.
+     * @since 0.1.0
+     */
+    private ClassPlan classPlan(PersistentClass pc) throws UnmappedLmfException {
+        ClassPlan ret = classPlans.get(pc.getEntityName());
+        if (ret == null) {
+            ret = new ClassPlan(pc);
+            classPlans.put(pc.getEntityName(), ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @param owner
+     *            if {@code null} element is the root.
+     * @throws UnmappedLmfException
+     *             if the element can't be handled.
+     * @since 0.1.0
+     */
+    private Link link(@Nullable PersistentClass owner, String elementName) throws UnmappedLmfException {
+        String key = (owner == null ? "" : owner.getEntityName()) + "/" + elementName;
+        Link ret = links.get(key);
+        if (ret == null) {
+            ret = new Link(owner, elementName);
+            links.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the name of the only column of {@code value}
+     *
+     * @throws UnmappedLmfException
+     *             if value doesn't have exactly one column.
+     * @since 0.1.0
+     */
+    private String column(Value value, String descr) throws UnmappedLmfException {
+        Iterator<?> iter = value.getColumnIterator();
+        if (!iter.hasNext()) {
+            throw new UnmappedLmfException("No column found for " + descr);
+        }
+        Object sel = iter.next();
+        if (!(sel instanceof Column) || iter.hasNext()) {
+            throw new UnmappedLmfException("Only single column values are supported, found " + descr);
+        }
+        return ((Column) sel).getQuotedName(dialect);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static boolean isAssignable(PersistentClass target, PersistentClass pc) {
+        return target.getMappedClass() != null
+                && pc.getMappedClass() != null
+                && target.getMappedClass()
+                         .isAssignableFrom(pc.getMappedClass());
+    }
+
+    /**
+     * How an LMF attribute is written.
+     *
+     * @since 0.1.0
+     */
+    private class ValuePlan {
+
+        private String column;
+        private Type type;
+        private Class<?> javaType;
+
+        /**
+         * Not null for IDREFS attributes
+         */
+        @Nullable
+        private String collection;
+        private String keyColumn;
+        private Type keyType;
+        @Nullable
+        private String indexColumn;
+        private Type indexType;
+        private int baseIndex;
+
+        /**
+         * @since 0.1.0
+         */
+        ValuePlan(String column, Type type, Class<?> javaType) {
+            this.column = column;
+            this.type = type;
+            this.javaType = javaType;
+        }
+
+        /**
+         * Converts attribute text to the Java type Hibernate expects.
+         *
+         * @since 0.1.0
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Object convert(String text) throws UnmappedLmfException {
+            if (String.class.equals(javaType)) {
+                return text;
+            }
+            if (Integer.class.equals(javaType) || int.class.equals(javaType)) {
+                return Integer.valueOf(text.trim());
+            }
+            if (Long.class.equals(javaType) || long.class.equals(javaType)) {
+                return Long.valueOf(text.trim());
+            }
+            if (Short.class.equals(javaType) || short.class.equals(javaType)) {
+                return Short.valueOf(text.trim());
+            }
+            if (Double.class.equals(javaType) || double.class.equals(javaType)) {
+                return Double.valueOf(text.trim());
+            }
+            if (Float.class.equals(javaType) || float.class.equals(javaType)) {
+                return Float.valueOf(text.trim());
+            }
+            if (Boolean.class.equals(javaType) || boolean.class.equals(javaType)) {
+                return Boolean.valueOf(text.trim());
+            }
+            if (javaType.isEnum()) {
+                return Enum.valueOf((Class<Enum>) javaType, text.trim());
+            }
+            if (Date.class.isAssignableFrom(javaType)) {
+                // UBY writes dates with Date.toString()
+                try {
+                    return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US).parse(text.trim());
+                } catch (ParseException ex) {
+                    return DatatypeConverter.parseDateTime(text.trim())
+                                            .getTime();
+                }
+            }
+            throw new UnmappedLmfException("Unsupported attribute type " + javaType.getName());
+        }
+    }
+
+    /**
+     * How rows of a mapped class are written.
+     *
+     * @since 0.1.0
+     */
+    private class ClassPlan {
+
+        private PersistentClass pc;
+        private String table;
+        private boolean dynamic;
+
+        private String idColumn;
+        private Type idType;
+        private IdentifierGenerator generator;
+        @Nullable
+        private String idAttribute;
+        @Nullable
+        private ValuePlan idValue;
+
+        @Nullable
+        private String discriminatorColumn;
+        @Nullable
+        private Object discriminatorValue;
+        @Nullable
+        private Type discriminatorType;
+
+        /**
+         * Attribute name to plan, {@code null} plan means attribute is ignored
+         */
+        private Map<String, ValuePlan> attributes;
+
+        /**
+         * @throws UnmappedLmfException
+         * @since 0.1.0
+         */
+        ClassPlan(PersistentClass pc) throws UnmappedLmfException {
+            this.pc = pc;
+            if (!(pc instanceof RootClass) && !(pc instanceof SingleTableSubclass)) {
+                throw new UnmappedLmfException("Only root classes and single table subclasses are supported, found "
+                        + pc.getEntityName());
+            }
+            this.table = pc.getTable()
+                           .getQuotedName(dialect);
+            this.dynamic = pc.useDynamicInsert();
+
+            RootClass root = pc.getRootClass();
+            this.idColumn = column(root.getIdentifier(), pc.getEntityName() + " id");
+            this.idType = root.getIdentifier()
+                              .getType();
+            this.generator = factory.getIdentifierGenerator(root.getEntityName());
+            if (generator instanceof Assigned) {
+                if (root.getIdentifierProperty() == null) {
+                    throw new UnmappedLmfException("Assigned id without property in " + pc.getEntityName());
+                }
+                this.idAttribute = xmlName(root.getIdentifierProperty());
+                this.idValue = new ValuePlan(idColumn, idType, idType.getReturnedClass());
+                if (!isSupportedJavaType(idValue.javaType)) {
+                    throw new UnmappedLmfException("Unsupported id type " + idValue.javaType.getName() + " of "
+                            + pc.getEntityName());
+                }
+            }
+
+            if (root.getDiscriminator() != null && root.isDiscriminatorInsertable()) {
+                this.discriminatorColumn = column(root.getDiscriminator(), pc.getEntityName() + " discriminator");
+                this.discriminatorType = root.getDiscriminator()
+                                             .getType();
+                try {
+                    this.discriminatorValue = ((DiscriminatorType<?>) discriminatorType).stringToObject(
+                            pc.getDiscriminatorValue());
+                } catch (Exception ex) {
+                    throw new UnmappedLmfException("Unsupported discriminator value "
+                            + pc.getDiscriminatorValue() + " in " + pc.getEntityName(), ex);
+                }
+            }
+
+            this.attributes = new HashMap<>();
+            if (idAttribute != null) {
+                attributes.put(idAttribute, null);
+            }
+        }
+
+        /**
+         * Returns the plan for provided attribute, or {@code null} if it
+         * has to be ignored.
+         *
+         * @throws UnmappedLmfException
+         * @since 0.1.0
+         */
+        @Nullable
+        ValuePlan attribute(String name) throws UnmappedLmfException {
+            if (attributes.containsKey(name)) {
+                return attributes.get(name);
+            }
+
+            ValuePlan ret = null;
+            Iterator<?> iter = pc.getPropertyClosureIterator();
+            while (iter.hasNext()) {
+                Property prop = (Property) iter.next();
+                if (!xmlName(prop).equals(name)) {
+                    continue;
+                }
+                Value value = prop.getValue();
+                String descr = pc.getEntityName() + "." + prop.getName();
+                if (value instanceof Collection) {
+                    Collection coll = (Collection) value;
+                    if (coll.isOneToMany() || !(coll.getElement() instanceof ManyToOne)) {
+                        throw new UnmappedLmfException("Unsupported IDREFS attribute " + descr);
+                    }
+                    ManyToOne element = (ManyToOne) coll.getElement();
+                    ret = new ValuePlan(column(element, descr),
+                            idTypeOf(element.getReferencedEntityName()),
+                            idTypeOf(element.getReferencedEntityName()).getReturnedClass());
+                    ret.collection = coll.getCollectionTable()
+                                         .getQuotedName(dialect);
+                    ret.keyColumn = column(coll.getKey(), descr + " key");
+                    ret.keyType = coll.getKey()
+                                      .getType();
+                    setIndex(ret, coll, descr);
+                } else if (!prop.isInsertable()) {
+                    ret = null;
+                } else if (value instanceof ManyToOne) {
+                    Type idType = idTypeOf(((ManyToOne) value).getReferencedEntityName());
+                    ret = new ValuePlan(column(value, descr), idType, idType.getReturnedClass());
+                } else if (value instanceof ToOne || value instanceof Component) {
+                    throw new UnmappedLmfException("Unsupported attribute " + descr);
+                } else {
+                    ret = new ValuePlan(column(value, descr), value.getType(), value.getType()
+                                                                                   .getReturnedClass());
+                    // validates type early
+                    if (!isSupportedJavaType(ret.javaType)) {
+                        throw new UnmappedLmfException("Unsupported attribute type "
+                                + ret.javaType.getName() + " of " + descr);
+                    }
+                }
+                break;
+            }
+            attributes.put(name, ret);
+            return ret;
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void setIndex(ValuePlan vp, Collection coll, String descr) throws UnmappedLmfException {
+            if (coll instanceof IndexedCollection) {
+                if (!(coll instanceof org.hibernate.mapping.List)) {
+                    throw new UnmappedLmfException("Unsupported indexed collection " + descr);
+                }
+                IndexedCollection ic = (IndexedCollection) coll;
+                vp.indexColumn = column(ic.getIndex(), descr + " index");
+                vp.indexType = ic.getIndex()
+                                 .getType();
+                vp.baseIndex = ((org.hibernate.mapping.List) coll).getBaseIndex();
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static boolean isSupportedJavaType(Class<?> clazz) {
+        // keep in sync with ValuePlan.convert
+        return String.class.equals(clazz)
+                || Integer.class.equals(clazz) || int.class.equals(clazz)
+                || Long.class.equals(clazz) || long.class.equals(clazz)
+                || Short.class.equals(clazz) || short.class.equals(clazz)
+                || Double.class.equals(clazz) || double.class.equals(clazz)
+                || Float.class.equals(clazz) || float.class.equals(clazz)
+                || Boolean.class.equals(clazz) || boolean.class.equals(clazz)
+                || clazz.isEnum()
+                || Date.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private Type idTypeOf(String entityName) throws UnmappedLmfException {
+        PersistentClass pc = cfg.getClassMapping(entityName);
+        if (pc == null) {
+            throw new UnmappedLmfException("Unmapped entity " + entityName);
+        }
+        return pc.getRootClass()
+                 .getIdentifier()
+                 .getType();
+    }
+
+    /**
+     * LMF attribute names are UBY field names without underscores.
+     *
+     * @since 0.1.0
+     */
+    private static String xmlName(Property prop) {
+        return prop.getName()
+                   .replace("_", "");
+    }
+
+    /**
+     * How an element is linked to the element containing it.
+     *
+     * @since 0.1.0
+     */
+    private class Link {
+
+        /**
+         * The element class, or owner class for components.
+         */
+        private PersistentClass pc;
+        @Nullable
+        private Property property;
+
+        /**
+         * Non null if element is a component of the owner
+         */
+        @Nullable
+        private Component component;
+        private Map<String, ValuePlan> componentAttributes;
+
+        /**
+         * Collection key, in element table or in {@link #collectionTable}
+         */
+        @Nullable
+        private String keyColumn;
+        private Type keyType;
+        @Nullable
+        private String indexColumn;
+        private Type indexType;
+        private int baseIndex;
+        @Nullable
+        private String collectionTable;
+        private String elementColumn;
+        private Type elementType;
+
+        /**
+         * Element column referring back to owner
+         */
+        @Nullable
+        private String backRefColumn;
+        private Type backRefType;
+
+        /**
+         * Owner column referring to element
+         */
+        @Nullable
+        private String ownerColumn;
+        private Type ownerType;
+
+        /**
+         * @throws UnmappedLmfException
+         * @since 0.1.0
+         */
+        Link(@Nullable PersistentClass owner, String elementName) throws UnmappedLmfException {
+
+            PersistentClass elementPc = classesByElement.get(elementName);
+
+            if (owner == null) {
+                if (elementPc == null) {
+                    throw new UnmappedLmfException("Unmapped root element " + elementName);
+                }
+                this.pc = elementPc;
+                return;
+            }
+
+            Property collectionProp = null;
+            Property toOneProp = null;
+            Property componentProp = null;
+
+            Iterator<?> iter = owner.getPropertyClosureIterator();
+            while (iter.hasNext()) {
+                Property prop = (Property) iter.next();
+                Value value = prop.getValue();
+                if (value instanceof Component) {
+                    Class<?> compClass = ((Component) value).getComponentClass();
+                    if (compClass != null && compClass.getSimpleName()
+                                                      .equals(elementName)) {
+                        componentProp = prop;
+                    }
+                } else if (elementPc == null) {
+                    continue;
+                } else if (value instanceof Collection) {
+                    Collection coll = (Collection) value;
+                    PersistentClass target = null;
+                    if (coll.getElement() instanceof OneToMany) {
+                        target = ((OneToMany) coll.getElement()).getAssociatedClass();
+                    } else if (coll.getElement() instanceof ManyToOne) {
+                        target = cfg.getClassMapping(((ManyToOne) coll.getElement()).getReferencedEntityName());
+                    }
+                    if (target != null && isAssignable(target, elementPc)) {
+                        if (collectionProp != null) {
+                            throw new UnmappedLmfException("Ambiguous collections for element "
+                                    + elementName + " in " + owner.getEntityName());
+                        }
+                        collectionProp = prop;
+                    }
+                } else if (value instanceof ToOne) {
+                    PersistentClass target = cfg.getClassMapping(((ToOne) value).getReferencedEntityName());
+                    if (target != null && isAssignable(target, elementPc) && toOneProp == null) {
+                        toOneProp = prop;
+                    }
+                }
+            }
+
+            String descr = owner.getEntityName() + "/" + elementName;
+
+            if (componentProp != null) {
+                this.pc = owner;
+                this.property = componentProp;
+                this.component = (Component) componentProp.getValue();
+                this.componentAttributes = new HashMap<>();
+            } else if (collectionProp != null) {
+                this.pc = elementPc;
+                this.property = collectionProp;
+                initCollection((Collection) collectionProp.getValue(), owner, descr);
+            } else if (toOneProp != null) {
+                this.pc = elementPc;
+                this.property = toOneProp;
+                initToOne((ToOne) toOneProp.getValue(), descr);
+            } else {
+                throw new UnmappedLmfException("Can't find how element " + descr + " is mapped");
+            }
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void initCollection(Collection coll, PersistentClass owner, String descr)
+                throws UnmappedLmfException {
+            if (coll.isOneToMany()) {
+                if (coll.isInverse()) {
+                    // element holds the relation, on a property pointing to
+                    // owner
+                    String backRefProp = null;
+                    Iterator<?> iter = pc.getPropertyClosureIterator();
+                    while (iter.hasNext()) {
+                        Property prop = (Property) iter.next();
+                        if (prop.getValue() instanceof ManyToOne
+                                && prop.isInsertable()
+                                && owner.getEntityName()
+                                        .equals(((ManyToOne) prop.getValue()).getReferencedEntityName())) {
+                            backRefProp = prop.getName();
+                            this.backRefColumn = column(prop.getValue(), descr + " back reference");
+                            this.backRefType = idTypeOf(owner.getEntityName());
+                            break;
+                        }
+                    }
+                    if (backRefProp == null) {
+                        throw new UnmappedLmfException("Can't find back reference of inverse collection "
+                                + descr);
+                    }
+                } else {
+                    this.keyColumn = column(coll.getKey(), descr + " key");
+                    this.keyType = coll.getKey()
+                                       .getType();
+                    setIndex(coll, descr);
+                }
+            } else if (coll.getElement() instanceof ManyToOne) {
+                if (coll.isInverse()) {
+                    throw new UnmappedLmfException("Unsupported inverse collection " + descr);
+                }
+                this.collectionTable = coll.getCollectionTable()
+                                           .getQuotedName(dialect);
+                this.keyColumn = column(coll.getKey(), descr + " key");
+                this.keyType = coll.getKey()
+                                   .getType();
+                this.elementColumn = column(coll.getElement(), descr + " element");
+                this.elementType = idTypeOf(((ManyToOne) coll.getElement()).getReferencedEntityName());
+                setIndex(coll, descr);
+            } else {
+                throw new UnmappedLmfException("Unsupported collection " + descr);
+            }
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void setIndex(Collection coll, String descr) throws UnmappedLmfException {
+            if (coll instanceof IndexedCollection) {
+                if (!(coll instanceof org.hibernate.mapping.List)) {
+                    throw new UnmappedLmfException("Unsupported indexed collection " + descr);
+                }
+                IndexedCollection ic = (IndexedCollection) coll;
+                this.indexColumn = column(ic.getIndex(), descr + " index");
+                this.indexType = ic.getIndex()
+                                   .getType();
+                this.baseIndex = ((org.hibernate.mapping.List) coll).getBaseIndex();
+            }
+        }
+
+        /**
+         * @since 0.1.0
+         */
+        private void initToOne(ToOne toOne, String descr) throws UnmappedLmfException {
+            if (toOne instanceof ManyToOne) {
+                this.ownerColumn = column(toOne, descr);
+                this.ownerType = idTypeOf(toOne.getReferencedEntityName());
+            } else {
+                String refProp = ((OneToOne) toOne).getReferencedPropertyName();
+                if (refProp != null) {
+                    Property prop = pc.getProperty(refProp);
+                    this.backRefColumn = column(prop.getValue(), descr + " property-ref");
+                    this.backRefType = prop.getType();
+                } else if (!(classPlan(pc).generator instanceof ForeignGenerator)) {
+                    throw new UnmappedLmfException("Unsupported one-to-one " + descr);
+                }
+            }
+        }
+
+        /**
+         * Returns the plan of a component attribute, written into owner
+         * table, or {@code null} if attribute is to ignore.
+         *
+         * @since 0.1.0
+         */
+        @Nullable
+        ValuePlan component(String name) throws UnmappedLmfException {
+            if (componentAttributes.containsKey(name)) {
+                return componentAttributes.get(name);
+            }
+            ValuePlan ret = null;
+            Iterator<?> iter = component.getPropertyIterator();
+            while (iter.hasNext()) {
+                Property prop = (Property) iter.next();
+                if (xmlName(prop).equals(name)) {
+                    Value value = prop.getValue();
+                    String descr = component.getComponentClassName() + "." + prop.getName();
+                    if (value instanceof ToOne || value instanceof Collection || value instanceof Component) {
+                        throw new UnmappedLmfException("Unsupported component attribute " + descr);
+                    }
+                    ret = new ValuePlan(column(value, descr), value.getType(), value.getType()
+                                                                                   .getReturnedClass());
+                    if (!isSupportedJavaType(ret.javaType)) {
+                        throw new UnmappedLmfException("Unsupported attribute type of " + descr);
+                    }
+                    break;
+                }
+            }
+            componentAttributes.put(name, ret);
+            return ret;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static class Binding {
+        @Nullable
+        private Object value;
+        private Type type;
+
+        Binding(@Nullable Object value, Type type) {
+            this.value = value;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A row to insert, or to update if {@link #update} is true (in which case
+     * the last binding is the id in the where clause).
+     *
+     * @since 0.1.0
+     */
+    private static class Row {
+
+        private String table;
+        private boolean dynamic;
+        private boolean update;
+        private boolean flushed;
+        private LinkedHashMap<String, Binding> values;
+
+        Row(String table, boolean dynamic) {
+            this.table = table;
+            this.dynamic = dynamic;
+            this.update = false;
+            this.flushed = false;
+            this.values = new LinkedHashMap<>();
+        }
+
+        void set(String column, @Nullable Object value, Type type) {
+            values.put(column, new Binding(value, type));
+        }
+
+        /**
+         * Like Hibernate dynamic inserts, null values are left to column
+         * defaults.
+         *
+         * @since 0.1.0
+         */
+        List<Binding> bindings() {
+            List<Binding> ret = new ArrayList<>();
+            for (Binding binding : values.values()) {
+                if (update || !dynamic || binding.value != null) {
+                    ret.add(binding);
+                }
+            }
+            return ret;
+        }
+
+        String sql(Dialect dialect) {
+            StringBuilder sb = new StringBuilder();
+            if (update) {
+                List<String> columns = new ArrayList<>(values.keySet());
+                sb.append("UPDATE " + table + " SET ");
+                for (int i = 0; i < columns.size() - 1; i++) {
+                    sb.append(i == 0 ? "" : ", ");
+                    sb.append(columns.get(i) + " = ?");
+                }
+                sb.append(" WHERE " + columns.get(columns.size() - 1) + " = ?");
+            } else {
+                StringBuilder params = new StringBuilder();
+                sb.append("INSERT INTO " + table + " (");
+                boolean first = true;
+                for (Map.Entry<String, Binding> entry : values.entrySet()) {
+                    if (dynamic && entry.getValue().value == null) {
+                        continue;
+                    }
+                    sb.append(first ? "" : ", ");
+                    params.append(first ? "?" : ", ?");
+                    sb.append(entry.getKey());
+                    first = false;
+                }
+                sb.append(") VALUES (" + params + ")");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * An open element.
+     *
+     * @since 0.1.0
+     */
+    private static class Context {
+
+        private ClassPlan plan;
+        private Serializable id;
+        private Row row;
+        private Map<String, Integer> positions;
+
+        Context(ClassPlan plan, Serializable id, Row row) {
+            this.plan = plan;
+            this.id = id;
+            this.row = row;
+            this.positions = new HashMap<>();
+        }
+
+        /**
+         * Returns the position of the next child reached through
+         * {@code propName}
+         */
+        int nextPosition(String propName) {
+            Integer ret = positions.get(propName);
+            if (ret == null) {
+                ret = 0;
+            }
+            positions.put(propName, ret + 1);
+            return ret;
+        }
+    }
+
+    /**
+     * Start or end of an element, as read by the parser stage. Only LMF
+     * attributes are kept.
+     *
+     * @since 0.1.0
+     */
+    private static class ElementEvent {
+
+        private static final ElementEvent END = new ElementEvent(false, null, new String[0], new String[0], -1);
+
+        private boolean start;
+        @Nullable
+        private String name;
+        private String[] attributeNames;
+        private String[] attributeValues;
+        private int line;
+
+        ElementEvent(
+                boolean start,
+                @Nullable String name,
+                String[] attributeNames,
+                String[] attributeValues,
+                int line) {
+            this.start = start;
+            this.name = name;
+            this.attributeNames = attributeNames;
+            this.attributeValues = attributeValues;
+            this.line = line;
+        }
+
+        /**
+         * Copies the current start element of {@code reader}
+         */
+        static ElementEvent start(XMLStreamReader reader) {
+            int n = 0;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (isLmfAttribute(reader, i)) {
+                    n++;
+                }
+            }
+            String[] names = new String[n];
+            String[] values = new String[n];
+            int j = 0;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (isLmfAttribute(reader, i)) {
+                    names[j] = reader.getAttributeLocalName(i);
+                    values[j] = reader.getAttributeValue(i);
+                    j++;
+                }
+            }
+            return new ElementEvent(true, reader.getLocalName(), names, values, reader.getLocation()
+                                                                                      .getLineNumber());
+        }
+
+        /**
+         * Returns LMF attributes by name
+         */
+        Map<String, String> attributes() {
+            Map<String, String> ret = new HashMap<>();
+            for (int i = 0; i < attributeNames.length; i++) {
+                ret.put(attributeNames[i], attributeValues[i]);
+            }
+            return ret;
+        }
+
+        @Nullable
+        String attribute(String attrName) {
+            for (int i = 0; i < attributeNames.length; i++) {
+                if (attributeNames[i].equals(attrName)) {
+                    return attributeValues[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Rows the mapper hands to the writer to be committed together.
+     *
+     * @since 0.1.0
+     */
+    private static class Batch {
+
+        /**
+         * Table name to rows to insert
+         */
+        private Map<String, List<Row>> inserts;
+        private List<Row> updates;
+        private int size;
+
+        /**
+         * Elements mapped when the batch was handed off, for progress
+         * reports
+         */
+        private long elementCount;
+
+        /**
+         * Whether this is the last batch of the file
+         */
+        private boolean last;
+
+        /**
+         * Keys of elements open when the batch was handed off
+         */
+        @Nullable
+        private String checkpointState;
+
+        Batch() {
+            this.inserts = new HashMap<>();
+            this.updates = new ArrayList<>();
+            this.size = 0;
+            this.elementCount = 0;
+            this.last = false;
+            this.checkpointState = null;
+        }
+    }
+}
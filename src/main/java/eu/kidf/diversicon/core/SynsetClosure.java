@@ -0,0 +1,264 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage for edges computed by transitive closure. These are kept apart from
+ * {@code SynsetRelation} table in a compact table with integer synset keys,
+ * relation code and depth, so the closure can be rebuilt by just truncating
+ * and reloading it.
+ *
+ * <p>
+ * Synset string ids are mapped to dense integer keys by {@link #KEY_TABLE},
+ * which is filled as soon as synsets are imported. Direct edges of canonical
+ * transitive relations are mirrored with integer keys in
+ * {@link #EDGE_TABLE}, so the closure is computed by joining integers only
+ * and string ids are looked up just when edges are returned to callers.
+ * Relation codes are positions in
+ * {@link Diversicons#getCanonicalTransitiveRelations()}.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+final class SynsetClosure {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SynsetClosure.class);
+
+    /**
+     * Table holding computed closure edges with depth > 1
+     *
+     * @since 0.1.0
+     */
+    static final String TABLE = "SynsetClosure";
+
+    /**
+     * Table mapping synset string ids to integer keys
+     *
+     * @since 0.1.0
+     */
+    static final String KEY_TABLE = "SynsetKey";
+
+    /**
+     * Table mirroring direct edges of canonical transitive relations found in
+     * {@code SynsetRelation}, with integer synset keys and relation code
+     *
+     * @since 0.1.0
+     */
+    static final String EDGE_TABLE = "SynsetEdge";
+
+    /**
+     * @since 0.1.0
+     */
+    private SynsetClosure() {
+    }
+
+    /**
+     * Creates closure tables, if they don't already exist.
+     *
+     * @since 0.1.0
+     */
+    static void createTables(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE IF NOT EXISTS " + KEY_TABLE + " ("
+                    + "  synsetKey INT AUTO_INCREMENT PRIMARY KEY,"
+                    + "  synsetId VARCHAR(255) NOT NULL,"
+                    + "  CONSTRAINT SynsetKey_synsetId_UNIQUE UNIQUE (synsetId)"
+                    + ")");
+            stat.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "  source INT NOT NULL,"
+                    + "  target INT NOT NULL,"
+                    + "  relCode TINYINT NOT NULL,"
+                    + "  depth SMALLINT NOT NULL,"
+                    + "  PRIMARY KEY (source, relCode, target)"
+                    + ")");
+            stat.execute("CREATE INDEX IF NOT EXISTS SynsetClosure_target_IDX ON " + TABLE + " (target, relCode)");
+            stat.execute("CREATE TABLE IF NOT EXISTS " + EDGE_TABLE + " ("
+                    + "  source INT NOT NULL,"
+                    + "  target INT NOT NULL,"
+                    + "  relCode TINYINT NOT NULL,"
+                    + "  PRIMARY KEY (source, relCode, target)"
+                    + ")");
+            stat.execute("CREATE INDEX IF NOT EXISTS SynsetEdge_target_IDX ON " + EDGE_TABLE + " (target, relCode)");
+        }
+    }
+
+    /**
+     * Drops closure tables, if they exist.
+     *
+     * @since 0.1.0
+     */
+    static void dropTables(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS " + TABLE);
+            stat.execute("DROP TABLE IF EXISTS " + EDGE_TABLE);
+            stat.execute("DROP TABLE IF EXISTS " + KEY_TABLE);
+        }
+    }
+
+    /**
+     * Removes all closure edges. Synset keys are preserved.
+     *
+     * @since 0.1.0
+     */
+    static void truncate(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("TRUNCATE TABLE " + TABLE);
+        }
+    }
+
+    /**
+     * Assigns keys to synset ids which don't have one yet. Targets of
+     * relations are considered too, as they might point to synsets missing
+     * from the db.
+     *
+     * @since 0.1.0
+     */
+    static void updateKeys(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            int synsets = stat.executeUpdate("INSERT INTO " + KEY_TABLE + " (synsetId)"
+                    + " SELECT S.synsetId FROM Synset S"
+                    + " WHERE NOT EXISTS (SELECT 1 FROM " + KEY_TABLE + " K WHERE K.synsetId = S.synsetId)");
+            int targets = stat.executeUpdate("INSERT INTO " + KEY_TABLE + " (synsetId)"
+                    + " SELECT DISTINCT SR.target FROM SynsetRelation SR"
+                    + " WHERE SR.target IS NOT NULL"
+                    + " AND NOT EXISTS (SELECT 1 FROM " + KEY_TABLE + " K WHERE K.synsetId = SR.target)");
+            LOG.debug("Added " + (synsets + targets) + " synset keys.");
+        }
+    }
+
+    /**
+     * Creates the local temporary table {@code table} with a single
+     * {@code synsetKey} column, holding the keys of {@code synsetIds}. Ids
+     * without a key are ignored.
+     *
+     * @since 0.1.0
+     */
+    static void createKeysTable(Connection conn, String table, Collection<String> synsetIds) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + table
+                    + " (synsetKey INT PRIMARY KEY)");
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO " + table + " (synsetKey)"
+                        + " SELECT synsetKey FROM " + KEY_TABLE + " WHERE synsetId = ?")) {
+            for (String synsetId : new LinkedHashSet<>(synsetIds)) {
+                insert.setString(1, synsetId);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Mirrors direct edges of canonical transitive relations into
+     * {@link #EDGE_TABLE}. Synset keys must be {@link #updateKeys(Connection)
+     * up to date}.
+     *
+     * @param sourcesTable
+     *            if {@code null} the whole edge table is reloaded, otherwise
+     *            only edges going out of synsets whose keys are in its
+     *            {@code synsetKey} column.
+     *
+     * @return the number of loaded edges
+     *
+     * @since 0.1.0
+     */
+    static int loadEdges(Connection conn, @Nullable String sourcesTable) throws SQLException {
+
+        StringBuilder relCodes = new StringBuilder("CASE SR.relName");
+        StringBuilder relNames = new StringBuilder();
+        List<String> canonicals = Diversicons.getCanonicalTransitiveRelations();
+        for (int i = 0; i < canonicals.size(); i++) {
+            relCodes.append(" WHEN '" + canonicals.get(i) + "' THEN " + i);
+            relNames.append(i == 0 ? "" : ", ")
+                    .append("'" + canonicals.get(i) + "'");
+        }
+        relCodes.append(" END");
+
+        try (Statement stat = conn.createStatement()) {
+            String sourcesConstraint;
+            if (sourcesTable == null) {
+                stat.execute("TRUNCATE TABLE " + EDGE_TABLE);
+                sourcesConstraint = "";
+            } else {
+                stat.executeUpdate("DELETE FROM " + EDGE_TABLE
+                        + " WHERE source IN (SELECT synsetKey FROM " + sourcesTable + ")");
+                sourcesConstraint = "   AND K1.synsetKey IN (SELECT synsetKey FROM " + sourcesTable + ")";
+            }
+            int ret = stat.executeUpdate("INSERT INTO " + EDGE_TABLE + " (source, target, relCode)"
+                    + " SELECT DISTINCT K1.synsetKey, K2.synsetKey, " + relCodes
+                    + " FROM SynsetRelation SR, " + KEY_TABLE + " K1, " + KEY_TABLE + " K2"
+                    + " WHERE SR.depth = 1"
+                    + "   AND SR.relName IN (" + relNames + ")"
+                    + "   AND K1.synsetId = SR.synsetId"
+                    + "   AND K2.synsetId = SR.target"
+                    + sourcesConstraint);
+            LOG.debug("Loaded " + ret + " direct synset edges.");
+            return ret;
+        }
+    }
+
+    /**
+     * Returns the code of a canonical transitive relation.
+     *
+     * @throws IllegalArgumentException
+     *             if relation is not canonical transitive.
+     *
+     * @since 0.1.0
+     */
+    static int relCode(String relName) {
+        checkNotEmpty(relName, "Invalid relation name!");
+        int ret = Diversicons.getCanonicalTransitiveRelations()
+                             .indexOf(relName);
+        checkArgument(ret != -1, "Relation is not canonical transitive: %s", relName);
+        return ret;
+    }
+
+    /**
+     * Returns the name of the canonical transitive relation with code
+     * {@code relCode}
+     *
+     * @since 0.1.0
+     */
+    static String relName(int relCode) {
+        List<String> relNames = Diversicons.getCanonicalTransitiveRelations();
+        checkArgument(relCode >= 0 && relCode < relNames.size(), "Invalid relation code: %s", relCode);
+        return relNames.get(relCode);
+    }
+
+    /**
+     * Returns a native query selecting relation code, other synset id and
+     * depth of closure edges departing from (or arriving to, if
+     * {@code incoming}) synset given by parameter {@code :synsetId}
+     *
+     * @param depth
+     *            the maximum depth, if {@code -1} there is no limit.
+     *
+     * @since 0.1.0
+     */
+    static String edgesSql(boolean incoming, int depth) {
+        String from = incoming ? "target" : "source";
+        String to = incoming ? "source" : "target";
+        String depthConstraint = depth == -1 ? "" : " AND C.depth <= " + depth;
+        return "SELECT C.relCode, K2.synsetId, C.depth"
+                + " FROM " + KEY_TABLE + " K1, " + TABLE + " C, " + KEY_TABLE + " K2"
+                + " WHERE K1.synsetId = :synsetId"
+                + "   AND C." + from + " = K1.synsetKey"
+                + "   AND K2.synsetKey = C." + to
+                + depthConstraint;
+    }
+}
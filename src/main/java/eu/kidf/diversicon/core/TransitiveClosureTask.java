@@ -0,0 +1,495 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.lmf.transform.DBConfig;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Computes and writes the transitive closure of a single
+ * {@link Diversicons#getCanonicalTransitiveRelations() canonical transitive
+ * relation}, possibly only for edges going out of a range of source synset
+ * keys.
+ *
+ * <p>
+ * Each task opens its own JDBC connection and writes closure edges into
+ * {@link SynsetClosure#TABLE} with a batched prepared statement, committing
+ * every {@code batchSize} edges, so different relations and different
+ * {@link #sourceRanges(Connection, String, int) source ranges} of the same
+ * relation can be processed concurrently by {@link Diversicon#processGraph()}.
+ * </p>
+ *
+ * <p>
+ * When given seed synsets, only edges going out of the seeds and of the
+ * synsets reaching them are removed and computed again, which is enough to
+ * update the closure after some edges touching the seeds were added or
+ * removed.
+ * </p>
+ *
+ * <p>
+ * Tasks only read {@link SynsetClosure#EDGE_TABLE}, which must already
+ * mirror the direct edges of the graph.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+class TransitiveClosureTask implements Callable<InsertionStats> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransitiveClosureTask.class);
+
+    /**
+     * Time between progress reports in millisecs
+     */
+    private static final int LOG_DELAY = 5000;
+
+    /**
+     * Tasks writing concurrently into closure table may need to wait for
+     * each other's batch to be committed, in millisecs.
+     */
+    private static final int LOCK_TIMEOUT = 10 * 60 * 1000;
+
+    private static final String INSERT_SQL = "INSERT INTO " + SynsetClosure.TABLE
+            + " (source, target, relCode, depth)"
+            + " VALUES (?, ?, ?, ?)";
+
+    /**
+     * Temporary table of the synsets whose closure edges are to compute
+     * again, local to the task connection.
+     */
+    private static final String SOURCES_TABLE = "ClosureSources";
+
+    /**
+     * Temporary table of the seeds provided to the task
+     */
+    private static final String SEEDS_TABLE = "ClosureSeeds";
+
+    /**
+     * Default number of source key ranges each relation is split into when
+     * computing the whole closure.
+     */
+    static final int DEFAULT_SOURCE_RANGES = Runtime.getRuntime()
+                                                    .availableProcessors();
+
+    private static volatile int sourceRanges = DEFAULT_SOURCE_RANGES;
+
+    private DBConfig dbConfig;
+    private String relName;
+    private int maxDepth;
+    private int batchSize;
+    private ProgressTracker tracker;
+    @Nullable
+    private Collection<String> seeds;
+    private int fromKey;
+    private int toKey;
+
+    /**
+     * Creates a task computing the whole closure of {@code relName}, see
+     * {@link #TransitiveClosureTask(DBConfig, String, int, int, ProgressTracker, Collection)}
+     *
+     * @since 0.1.0
+     */
+    TransitiveClosureTask(
+            DBConfig dbConfig,
+            String relName,
+            int maxDepth,
+            int batchSize,
+            ProgressTracker tracker) {
+        this(dbConfig, relName, maxDepth, batchSize, tracker, null);
+    }
+
+    /**
+     * @param maxDepth
+     *            the maximum depth of edges to write, if {@code -1} there is
+     *            no limit.
+     * @param tracker
+     *            possibly shared with other tasks, receives the number of
+     *            edges written at each committed batch and is checked for
+     *            cancellation.
+     * @param seeds
+     *            if {@code null} the closure table is expected to hold no
+     *            edges of {@code relName}, otherwise it must hold the closure
+     *            of the graph before edges touching the seeds changed.
+     *
+     * @since 0.1.0
+     */
+    TransitiveClosureTask(
+            DBConfig dbConfig,
+            String relName,
+            int maxDepth,
+            int batchSize,
+            ProgressTracker tracker,
+            @Nullable Collection<String> seeds) {
+        checkNotNull(dbConfig);
+        checkNotNull(tracker);
+        checkNotEmpty(relName, "Invalid relation name!");
+        checkArgument(maxDepth == -1 || maxDepth >= 1, "Invalid max depth, must be -1 or >= 1, found instead ", maxDepth);
+        checkArgument(batchSize > 0, "Invalid batch size, must be > 0, found instead ", batchSize);
+
+        this.dbConfig = dbConfig;
+        this.relName = relName;
+        this.maxDepth = maxDepth;
+        this.batchSize = batchSize;
+        this.tracker = tracker;
+        this.seeds = seeds;
+        this.fromKey = Integer.MIN_VALUE;
+        this.toKey = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a task computing the closure of {@code relName} only for edges
+     * going out of synsets with keys from {@code fromKey} included to
+     * {@code toKey} excluded, see
+     * {@link #TransitiveClosureTask(DBConfig, String, int, int, ProgressTracker, Collection)}
+     *
+     * @see #sourceRanges(Connection, String, int)
+     * @since 0.1.0
+     */
+    TransitiveClosureTask(
+            DBConfig dbConfig,
+            String relName,
+            int maxDepth,
+            int batchSize,
+            ProgressTracker tracker,
+            int fromKey,
+            int toKey) {
+        this(dbConfig, relName, maxDepth, batchSize, tracker, null);
+        checkArgument(fromKey < toKey, "Invalid key range, fromKey must be less than toKey, found instead %s, %s",
+                fromKey, toKey);
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+    }
+
+    /**
+     * Number of source key ranges each relation is split into when computing
+     * the whole closure.
+     *
+     * @since 0.1.0
+     */
+    static int getSourceRanges() {
+        return sourceRanges;
+    }
+
+    /**
+     * See {@link #getSourceRanges()}, mostly meant for tests.
+     *
+     * @since 0.1.0
+     */
+    static void setSourceRanges(int sourceRanges) {
+        checkArgument(sourceRanges >= 1, "Source ranges must be >= 1, found instead %s", sourceRanges);
+        TransitiveClosureTask.sourceRanges = sourceRanges;
+    }
+
+    /**
+     * Splits keys of synsets having outgoing {@code relName} edges in
+     * {@link SynsetClosure#EDGE_TABLE} into at most {@code n} ranges of
+     * about the same width, as arrays of included start and excluded end.
+     * Ranges cover all possible keys, so the closure of a relation is the
+     * union of the closures of its ranges.
+     *
+     * @since 0.1.0
+     */
+    static List<int[]> sourceRanges(Connection conn, String relName, int n) throws SQLException {
+        checkArgument(n >= 1, "Invalid number of ranges, must be >= 1, found instead %s", n);
+
+        List<int[]> ret = new ArrayList<>();
+
+        long min;
+        long max;
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("SELECT MIN(source), MAX(source) FROM "
+                        + SynsetClosure.EDGE_TABLE
+                        + " WHERE relCode = " + SynsetClosure.relCode(relName))) {
+            rs.next();
+            min = rs.getLong(1);
+            if (rs.wasNull()) {
+                ret.add(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE });
+                return ret;
+            }
+            max = rs.getLong(2);
+        }
+
+        long width = (max - min) / n + 1;
+        int from = Integer.MIN_VALUE;
+        for (int i = 1; i < n && min + i * width <= max; i++) {
+            int to = (int) (min + i * width);
+            ret.add(new int[] { from, to });
+            from = to;
+        }
+        ret.add(new int[] { from, Integer.MAX_VALUE });
+        return ret;
+    }
+
+    /**
+     * Returns the recursive query selecting synset keys and minimal depth of
+     * closure edges of {@code relName} up to {@code maxDepth} (if {@code -1}
+     * there is no limit). Recursion runs over integer keys of
+     * {@link SynsetClosure#EDGE_TABLE}, and edges already stored there are
+     * skipped.
+     *
+     * @since 0.1.0
+     */
+    static String closureSql(String relName, int maxDepth) {
+        return closureSql(relName, maxDepth, null);
+    }
+
+    /**
+     * Like {@link #closureSql(String, int)}, but if {@code sourcesTable} is
+     * not {@code null} only edges going out of synsets whose keys are listed
+     * in its {@code synsetKey} column are selected.
+     *
+     * @since 0.1.0
+     */
+    static String closureSql(String relName, int maxDepth, @Nullable String sourcesTable) {
+        return closureSql(relName, maxDepth, sourcesTable, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #closureSql(String, int, String)}, but only edges going out
+     * of synsets with keys from {@code fromKey} included to {@code toKey}
+     * excluded are selected.
+     *
+     * @since 0.1.0
+     */
+    static String closureSql(String relName, int maxDepth, @Nullable String sourcesTable, int fromKey, int toKey) {
+
+        int relCode = SynsetClosure.relCode(relName);
+
+        String sourcesConstraint;
+        if (sourcesTable == null) {
+            sourcesConstraint = "";
+        } else {
+            sourcesConstraint = "              AND source IN (SELECT synsetKey FROM " + sourcesTable + ")";
+        }
+        if (fromKey != Integer.MIN_VALUE) {
+            sourcesConstraint += "              AND source >= " + fromKey;
+        }
+        if (toKey != Integer.MAX_VALUE) {
+            sourcesConstraint += "              AND source < " + toKey;
+        }
+
+        String depthConstraint;
+        if (maxDepth == -1) {
+            depthConstraint = "";
+        } else {
+            depthConstraint = "        AND E_A.depth < " + maxDepth;
+        }
+
+        // As: the edges computed so far
+        // Bs: original edges
+
+        // NOTE: recursion still computes duplicates, they are grouped at the end
+        return "  "
+                + " WITH RECURSIVE E_A(source, target, depth) AS ("
+                + "    ("
+                + "        SELECT source, target, 1"
+                + "        FROM " + SynsetClosure.EDGE_TABLE
+                + "        WHERE relCode = " + relCode
+                + sourcesConstraint
+                + "    )"
+                + "    UNION ALL"
+                + "    ("
+                + "        SELECT E_A.source, E_B.target, (E_A.depth + 1)"
+                + "        FROM E_A, " + SynsetClosure.EDGE_TABLE + " E_B"
+                + "        WHERE"
+                + "            E_B.relCode = " + relCode
+                + "        AND E_A.target = E_B.source"
+                + depthConstraint
+                + "    )"
+                + " ) "
+                + " SELECT E_A.source, E_A.target, MIN(E_A.depth)"
+                + " FROM E_A"
+                + " WHERE E_A.depth > 1"
+                + "   AND NOT EXISTS ("
+                + "         SELECT 1 FROM " + SynsetClosure.EDGE_TABLE + " E_C"
+                + "         WHERE E_C.relCode = " + relCode
+                + "           AND E_C.source = E_A.source"
+                + "           AND E_C.target = E_A.target)"
+                + " GROUP BY E_A.source, E_A.target";
+    }
+
+    /**
+     * Fills {@link #SOURCES_TABLE} with the keys of the seeds and of the
+     * synsets reaching them, either directly or through edges already in the
+     * closure table, and removes closure edges going out of them. Nothing is
+     * committed.
+     *
+     * @return the number of removed edges
+     *
+     * @since 0.1.0
+     */
+    private long removeAffected(Connection conn, Statement stat) throws SQLException {
+
+        int relCode = SynsetClosure.relCode(relName);
+
+        SynsetClosure.createKeysTable(conn, SEEDS_TABLE, seeds);
+        stat.execute("CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + SOURCES_TABLE
+                + " (synsetKey INT PRIMARY KEY)");
+
+        // closure table doesn't hold direct edges, so direct predecessors
+        // are looked up separately
+        stat.execute("INSERT INTO " + SOURCES_TABLE
+                + " SELECT synsetKey FROM " + SEEDS_TABLE
+                + " UNION"
+                + " SELECT E.source FROM " + SynsetClosure.EDGE_TABLE + " E"
+                + " WHERE E.relCode = " + relCode
+                + "   AND E.target IN (SELECT synsetKey FROM " + SEEDS_TABLE + ")"
+                + " UNION"
+                + " SELECT C.source FROM " + SynsetClosure.TABLE + " C"
+                + " WHERE C.relCode = " + relCode
+                + "   AND C.target IN (SELECT synsetKey FROM " + SEEDS_TABLE + ")");
+
+        return stat.executeUpdate("DELETE FROM " + SynsetClosure.TABLE
+                + " WHERE relCode = " + relCode
+                + "   AND source IN (SELECT synsetKey FROM " + SOURCES_TABLE + ")");
+    }
+
+    /**
+     * @throws SQLException
+     *             on failure, the batch being written is rolled back.
+     * @throws eu.kidf.diversicon.core.exceptions.CancelledOperationException
+     *             if cancelled, the batch being written is rolled back.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public InsertionStats call() throws SQLException {
+
+        InsertionStats ret = new InsertionStats();
+
+        Date start = new Date();
+        Date checkpoint = start;
+
+        Connection conn = null;
+        Statement stat = null;
+        ResultSet rs = null;
+        PreparedStatement insert = null;
+
+        try {
+            conn = Diversicons.getH2Connection(dbConfig);
+            conn.setAutoCommit(false);
+
+            stat = conn.createStatement();
+            if (Diversicons.isH2Db(dbConfig)) {
+                stat.execute("SET LOCK_TIMEOUT " + LOCK_TIMEOUT);
+            }
+
+            LOG.debug("Computing transitive closure of " + relName + " ...");
+
+            if (seeds == null) {
+                rs = stat.executeQuery(closureSql(relName, maxDepth, null, fromKey, toKey));
+            } else {
+                long removed = removeAffected(conn, stat);
+                LOG.debug("Removed " + Internals.formatInteger(removed) + " " + relName
+                        + " edges to compute again");
+                rs = stat.executeQuery(closureSql(relName, maxDepth, SOURCES_TABLE));
+            }
+
+            insert = conn.prepareStatement(INSERT_SQL);
+
+            int relCode = SynsetClosure.relCode(relName);
+
+            long count = 0;
+
+            while (rs.next()) {
+
+                int sourceKey = rs.getInt(1);
+                int targetKey = rs.getInt(2);
+                int depth = rs.getInt(3);
+
+                if (depth > ret.getMaxLevel()) {
+                    ret.setMaxLevel(depth);
+                }
+
+                insert.setInt(1, sourceKey);
+                insert.setInt(2, targetKey);
+                insert.setInt(3, relCode);
+                insert.setInt(4, depth);
+                insert.addBatch();
+
+                ret.inc(relName);
+
+                if (++count % batchSize == 0) {
+                    tracker.checkCancelled();
+                    insert.executeBatch();
+                    conn.commit();
+                    tracker.add(batchSize);
+
+                    Date now = new Date();
+                    if (now.getTime() - checkpoint.getTime() > LOG_DELAY) {
+                        LOG.info("SynsetRelation transitive closure - written " + relName + " edges: "
+                                + Internals.formatInteger(count));
+                        checkpoint = now;
+                    }
+                }
+            }
+
+            insert.executeBatch();
+            conn.commit();
+            tracker.add(count % batchSize);
+
+            LOG.debug("Done writing " + Internals.formatInteger(count) + " " + relName + " edges in "
+                    + Internals.formatInterval(start, new Date()));
+
+            return ret;
+
+        } catch (SQLException | RuntimeException ex) {
+            LOG.error("Error while computing transitive closure of " + relName + "! Rolling back current batch!");
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException exr) {
+                    LOG.error("Error while rolling back!", exr);
+                }
+            }
+            throw ex;
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing result set", ex);
+                }
+            }
+            if (insert != null) {
+                try {
+                    insert.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing PreparedStatement", ex);
+                }
+            }
+            if (stat != null) {
+                try {
+                    stat.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing Statement", ex);
+                }
+            }
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    LOG.error("Error while closing connection", ex);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkNotEmpty;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.kidf.diversicon.core.exceptions.DivIoException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Outcomes of XML validations which passed without issues, kept on disk
+ * in {@link XmlValidationConfig#getCacheDir()} by hash of the file content
+ * and of the {@link XmlValidationConfig} settings affecting the outcome.
+ *
+ * <p>
+ * An outcome holds what {@link ValidationStep#STEP_3_EXTERNAL step 3} needs,
+ * so validating again the same content only checks external references
+ * against the db. Outcomes with errors or warnings are never stored, as
+ * they would need to be reported again.
+ * </p>
+ *
+ * <p>
+ * Content hashes are computed while validating. To look up an outcome
+ * before reading a local file, the hash of the file is also remembered
+ * together with its path, size and modification time.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+final class ValidationCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationCache.class);
+
+    /**
+     * Subdirectory of {@link Diversicons#CACHE_PATH} holding outcomes by
+     * default
+     *
+     * @since 0.1.0
+     */
+    private static final String OUTCOMES_DIR = "validations";
+
+    /**
+     * Subdirectory of the cache dir holding content hashes of local files
+     *
+     * @since 0.1.0
+     */
+    private static final String FILES_DIR = "files";
+
+    /**
+     * To change when stored outcomes or validation rules change
+     */
+    private static final int FORMAT = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @since 0.1.0
+     */
+    private ValidationCache() {
+    }
+
+    /**
+     * The default directory of cached outcomes, in user home.
+     *
+     * @since 0.1.0
+     */
+    static File defaultDir() {
+        return new File(System.getProperty("user.home"), Diversicons.CACHE_PATH + OUTCOMES_DIR);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static File cacheDir(XmlValidationConfig config) {
+        File ret = config.getCacheDir();
+        if (ret == null) {
+            throw new IllegalStateException("Validation cache is off!");
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static File fileStatsEntry(File file, XmlValidationConfig config) {
+        return new File(new File(cacheDir(config), FILES_DIR),
+                Internals.sha256Hex(file.getAbsolutePath()
+                                        .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String fileStats(File file) {
+        return file.length() + " " + file.lastModified();
+    }
+
+    /**
+     * Returns the content hash of {@code file} remembered by
+     * {@link #storeContentHash(File, String, XmlValidationConfig)}, or
+     * {@code null} if unknown or the file changed size or modification time
+     * since then. The file is not read.
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    static String knownContentHash(File file, XmlValidationConfig config) {
+        checkNotNull(file);
+        checkNotNull(config);
+
+        File entry = fileStatsEntry(file, config);
+        if (!entry.exists()) {
+            return null;
+        }
+        try {
+            String[] parts = FileUtils.readFileToString(entry, StandardCharsets.UTF_8)
+                                      .split("\n");
+            if (parts.length == 2 && parts[0].equals(fileStats(file))) {
+                return parts[1];
+            } else {
+                return null;
+            }
+        } catch (IOException ex) {
+            LOG.warn("Couldn't read cached content hash " + entry.getAbsolutePath(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Remembers {@code contentHash} as the hash of {@code file} as long as
+     * its size and modification time don't change. Errors are only logged.
+     *
+     * @since 0.1.0
+     */
+    static void storeContentHash(File file, String contentHash, XmlValidationConfig config) {
+        checkNotNull(file);
+        checkNotEmpty(contentHash, "Invalid content hash!");
+        checkNotNull(config);
+
+        String entry = fileStats(file) + "\n" + contentHash;
+        XmlResourceCache.store(fileStatsEntry(file, config), entry.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the hex SHA-256 of {@code file} content
+     *
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    static String contentHash(File file) {
+        checkNotNull(file);
+        MessageDigest digest = Internals.newSha256();
+        try (InputStream in = new DigestInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), digest)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (in.read(buf) != -1) {
+                // just hashing
+            }
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + file.getAbsolutePath(), ex);
+        }
+        return Internals.toHex(digest.digest());
+    }
+
+    /**
+     * Returns the key of the outcome of validating content with hash
+     * {@code contentHash} with {@code config}. Settings only affecting
+     * reporting, like log limit or strictness, are not part of the key, as
+     * stored outcomes have no issues at all.
+     *
+     * @since 0.1.0
+     */
+    static String key(String contentHash, XmlValidationConfig config) {
+        checkNotEmpty(contentHash, "Invalid content hash!");
+        checkNotNull(config);
+
+        BuildInfo buildInfo = BuildInfo.of(Diversicons.class);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT)
+          .append('\n')
+          .append(contentHash)
+          .append('\n')
+          .append(buildInfo.getVersion())
+          .append(' ')
+          .append(buildInfo.getGitSha())
+          .append('\n');
+        if (!Internals.isBlank(config.getXsdUrl())) {
+            sb.append(config.getXsdUrl())
+              .append('\n')
+              .append(Internals.sha256Hex(XmlResourceCache.read(config.getDiversiconConfig(), config.getXsdUrl())));
+        }
+        return Internals.sha256Hex(sb.toString()
+                                     .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a validator ready for {@link ValidationStep#STEP_3_EXTERNAL step
+     * 3} restored from the outcome stored with {@code key}, or {@code null}
+     * if there is none.
+     *
+     * @param systemId
+     *            the system id reported in validation messages
+     *
+     * @since 0.1.0
+     */
+    @Nullable
+    static DivXmlValidator load(String key, String systemId, XmlValidationConfig config) {
+        checkNotEmpty(key, "Invalid key!");
+        checkNotNull(systemId);
+        checkNotNull(config);
+
+        File file = new File(cacheDir(config), key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            return DivXmlValidator.readState(in, new DivXmlHandler(config, systemId));
+        } catch (IOException ex) {
+            LOG.warn("Couldn't read cached validation outcome " + file.getAbsolutePath() + ", validating again.",
+                    ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the outcome of {@code validator} with {@code key}, if it
+     * reported no issues. Errors are only logged.
+     *
+     * @since 0.1.0
+     */
+    static void store(String key, DivXmlValidator validator, XmlValidationConfig config) {
+        checkNotEmpty(key, "Invalid key!");
+        checkNotNull(validator);
+        checkNotNull(config);
+
+        if (validator.getErrorHandler()
+                     .issuesCount() > 0) {
+            return;
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            validator.writeState(out);
+        } catch (IOException ex) {
+            LOG.warn("Couldn't serialize validation outcome!", ex);
+            return;
+        }
+        XmlResourceCache.store(new File(cacheDir(config), key), bos.toByteArray());
+    }
+}
@@ -0,0 +1,340 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.internal.Internals.checkArgument;
+import static eu.kidf.diversicon.core.internal.Internals.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.xerces.impl.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import eu.kidf.diversicon.core.exceptions.DivException;
+import eu.kidf.diversicon.core.exceptions.DivIoException;
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Caches needed to validate XMLs without fetching and compiling schemas
+ * over and over.
+ *
+ * <p>
+ * External resources like XSDs and DTDs with a remote url are kept in an
+ * on-disk content cache under {@link Diversicons#CACHE_PATH}, so they are
+ * fetched once per machine until they are older than
+ * {@link #getMaxAge() max age}. Expired resources are fetched again, and if
+ * that fails the expired copy is used. Remote and classpath resources are
+ * also kept in memory, remote ones until they expire. Local files are
+ * always read again, as they may be edited.
+ * </p>
+ *
+ * <p>
+ * Compiled {@link Schema schemas} are kept by SHA-256 of their content, and
+ * are thread safe, so all validators created from a schema share its
+ * grammars. Validating without an explicit XSD uses a single schema reading
+ * locations from the documents, whose grammar pool is likewise shared by all
+ * validations.
+ * </p>
+ *
+ * @since 0.1.0
+ */
+final class XmlResourceCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XmlResourceCache.class);
+
+    /**
+     * Subdirectory of {@link Diversicons#CACHE_PATH} holding fetched
+     * resources
+     *
+     * @since 0.1.0
+     */
+    private static final String RESOURCES_DIR = "xml-resources";
+
+    /**
+     * Default {@link #getMaxAge() max age} of cached remote resources, one
+     * week.
+     *
+     * @since 0.1.0
+     */
+    static final long DEFAULT_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final ConcurrentMap<String, Resource> RESOURCES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    @Nullable
+    private static volatile Schema hintsSchema;
+
+    private static volatile long maxAge = DEFAULT_MAX_AGE;
+
+    @Nullable
+    private static volatile File resourcesDir = null;
+
+    /**
+     * @since 0.1.0
+     */
+    private XmlResourceCache() {
+    }
+
+    /**
+     * Content read from a url
+     *
+     * @since 0.1.0
+     */
+    private static final class Resource {
+
+        private final byte[] content;
+
+        /**
+         * When the content was fetched, in millisecs
+         */
+        private final long fetched;
+
+        /**
+         * @since 0.1.0
+         */
+        private Resource(byte[] content, long fetched) {
+            this.content = content;
+            this.fetched = fetched;
+        }
+    }
+
+    /**
+     * Returns the max age in millisecs of remote resources, after which they
+     * are fetched again. Defaults to {@link #DEFAULT_MAX_AGE}.
+     *
+     * @since 0.1.0
+     */
+    static long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * See {@link #getMaxAge()}
+     *
+     * @since 0.1.0
+     */
+    static void setMaxAge(long maxAge) {
+        checkArgument(maxAge >= 0, "Invalid max age, must be >= 0, found instead %s", maxAge);
+        XmlResourceCache.maxAge = maxAge;
+    }
+
+    /**
+     * Sets the directory of the on-disk cache of remote resources. If
+     * {@code null}, a subdirectory of {@link Diversicons#CACHE_PATH} in the
+     * user home is used.
+     *
+     * @since 0.1.0
+     */
+    static void setResourcesDir(@Nullable File resourcesDir) {
+        XmlResourceCache.resourcesDir = resourcesDir;
+    }
+
+    /**
+     * Forgets resources and schemas kept in memory, the on-disk cache is
+     * kept.
+     *
+     * @since 0.1.0
+     */
+    static void clearMemory() {
+        RESOURCES.clear();
+        SCHEMAS.clear();
+        hintsSchema = null;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static boolean isFresh(long fetched) {
+        return System.currentTimeMillis() - fetched < maxAge;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static boolean isRemote(String url) {
+        try {
+            String scheme = new URI(url).getScheme();
+            return "http".equals(scheme) || "https".equals(scheme);
+        } catch (URISyntaxException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static boolean isClasspath(String url) {
+        return url.startsWith("classpath:");
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static File resourcesDir() {
+        File ret = resourcesDir;
+        if (ret == null) {
+            return new File(System.getProperty("user.home"), Diversicons.CACHE_PATH + RESOURCES_DIR);
+        } else {
+            return ret;
+        }
+    }
+
+    /**
+     * Returns the content at {@code url}, fetching remote urls only if they
+     * are not in the on-disk cache or are expired.
+     *
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    static byte[] read(DivConfig divConfig, String url) {
+        checkNotNull(divConfig);
+        checkNotNull(url);
+
+        boolean remote = isRemote(url);
+        if (!remote && !isClasspath(url)) {
+            return fetch(divConfig, url);
+        }
+
+        Resource ret = RESOURCES.get(url);
+        if (ret != null && (!remote || isFresh(ret.fetched))) {
+            return ret.content;
+        }
+
+        if (remote) {
+            ret = null;
+            byte[] expired = null;
+            File cached = new File(resourcesDir(), Internals.sha256Hex(url.getBytes(StandardCharsets.UTF_8)));
+            if (cached.exists()) {
+                try {
+                    long fetched = cached.lastModified();
+                    byte[] content = FileUtils.readFileToByteArray(cached);
+                    if (isFresh(fetched)) {
+                        ret = new Resource(content, fetched);
+                        LOG.debug("Read " + url + " from cache " + cached.getAbsolutePath());
+                    } else {
+                        expired = content;
+                    }
+                } catch (IOException ex) {
+                    LOG.warn("Couldn't read cached " + cached.getAbsolutePath() + ", fetching " + url + " again.",
+                            ex);
+                }
+            }
+            if (ret == null) {
+                try {
+                    byte[] content = fetch(divConfig, url);
+                    store(cached, content);
+                    ret = new Resource(content, System.currentTimeMillis());
+                } catch (DivIoException ex) {
+                    if (expired == null) {
+                        throw ex;
+                    }
+                    LOG.warn("Couldn't fetch " + url + " again, using expired copy cached at "
+                            + cached.getAbsolutePath(), ex);
+                    // so it's not fetched again on every read
+                    ret = new Resource(expired, System.currentTimeMillis());
+                }
+            }
+        } else {
+            ret = new Resource(fetch(divConfig, url), System.currentTimeMillis());
+        }
+        RESOURCES.put(url, ret);
+        return ret.content;
+    }
+
+    /**
+     * @throws DivIoException
+     *
+     * @since 0.1.0
+     */
+    private static byte[] fetch(DivConfig divConfig, String url) {
+        try (InputStream is = Diversicons.readData(divConfig, url, false)
+                                         .stream()) {
+            return IOUtils.toByteArray(is);
+        } catch (IOException ex) {
+            throw new DivIoException("Error while reading " + url, ex);
+        }
+    }
+
+    /**
+     * Writes {@code content} to {@code cached} through a temporary file, so
+     * concurrent readers never see partial content. Errors are only logged.
+     *
+     * @since 0.1.0
+     */
+    static void store(File cached, byte[] content) {
+        try {
+            File dir = cached.getParentFile();
+            FileUtils.forceMkdir(dir);
+            File tmp = File.createTempFile(cached.getName(), ".tmp", dir);
+            FileUtils.writeByteArrayToFile(tmp, content);
+            Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOG.warn("Couldn't cache resource at " + cached.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Returns the compiled schema to validate with {@code config}
+     *
+     * @throws DivException
+     *
+     * @since 0.1.0
+     */
+    static Schema schema(XmlValidationConfig config) {
+        checkNotNull(config);
+
+        // if editor can't find the Constants.W3C_XML_SCHEMA11_NS_URI constant
+        // probably default xerces is being used instead of the one supporting
+        // schema 1.1
+
+        try {
+            if (Internals.isBlank(config.getXsdUrl())) {
+                Schema ret = hintsSchema;
+                if (ret == null) {
+                    ret = SchemaFactory.newInstance(Constants.W3C_XML_SCHEMA10_NS_URI)
+                                       .newSchema();
+                    hintsSchema = ret;
+                }
+                return ret;
+            }
+
+            byte[] xsd = read(config.getDiversiconConfig(), config.getXsdUrl());
+            String key = Internals.sha256Hex(xsd);
+            Schema ret = SCHEMAS.get(key);
+            if (ret == null) {
+                LOG.debug("Compiling schema: " + config.getXsdUrl());
+                ret = SchemaFactory.newInstance(Constants.W3C_XML_SCHEMA10_NS_URI)
+                                   .newSchema(new StreamSource(new ByteArrayInputStream(xsd),
+                                           config.getXsdUrl()));
+                Schema old = SCHEMAS.putIfAbsent(key, ret);
+                if (old != null) {
+                    ret = old;
+                }
+            }
+            LOG.debug("Validating against schema: " + config.getXsdUrl());
+            return ret;
+        } catch (SAXException ex) {
+            throw new DivException(ex);
+        }
+    }
+}
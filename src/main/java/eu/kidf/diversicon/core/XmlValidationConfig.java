@@ -1,5 +1,7 @@
 package eu.kidf.diversicon.core;
 
+import java.io.File;
+
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
@@ -26,6 +28,9 @@ public class XmlValidationConfig {
 
     private boolean strict;
 
+    @Nullable
+    private File cacheDir;
+
     private DivConfig diversiconConfig; // to access resources via proxy
 
     /**
@@ -38,6 +43,7 @@ public class XmlValidationConfig {
         this.xsdUrl = null;
         this.diversiconConfig = DivConfig.of();
         this.strict = false;
+        this.cacheDir = null;
     }
 
     /**
@@ -79,6 +85,35 @@ public class XmlValidationConfig {
         return strict;
     }
 
+    /**
+     * If true, outcomes of validations of files which passed without issues
+     * are remembered by content hash in {@link #getCacheDir()}, so validating
+     * again the same content with an equivalent config skips all the steps
+     * not needing the db. False by default.
+     * 
+     * <p>
+     * <strong>NOTE:</strong> validators restored from the cache don't know
+     * the ids in the document, so their {@link DivXmlValidator#getTagIds()}
+     * and {@link DivXmlValidator#getIdRegistry()} are empty.
+     * </p>
+     * 
+     * @since 0.1.0
+     */
+    public boolean isCached() {
+        return cacheDir != null;
+    }
+
+    /**
+     * The directory holding cached validation outcomes, or {@code null} if
+     * caching is off. See {@link #isCached()}
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
     /**
      * The logger where to which messages are redirected.
      * 
@@ -225,6 +260,34 @@ public class XmlValidationConfig {
             return this;
         }
 
+        /**
+         * See {@link XmlValidationConfig#isCached()}. If true, outcomes are
+         * stored under {@link Diversicons#CACHE_PATH} in user home.
+         * 
+         * @since 0.1.0
+         */
+        public Builder setCached(boolean cached) {
+            checkBuilt();
+
+            config.cacheDir = cached ? ValidationCache.defaultDir() : null;
+            return this;
+        }
+
+        /**
+         * See {@link XmlValidationConfig#getCacheDir()}
+         * 
+         * @param cacheDir
+         *            if {@code null}, caching is turned off.
+         * 
+         * @since 0.1.0
+         */
+        public Builder setCacheDir(@Nullable File cacheDir) {
+            checkBuilt();
+
+            config.cacheDir = cacheDir;
+            return this;
+        }
+
         /**
          * See {@link XmlValidationConfig#getXsdUrl()}
          * 
@@ -0,0 +1,24 @@
+package eu.kidf.diversicon.core.exceptions;
+
+/**
+ * A runtime exception raised when a long running operation is stopped on
+ * request of a {@link eu.kidf.diversicon.core.ProgressListener
+ * ProgressListener}. Pending work of the operation was rolled back.
+ * 
+ * @see InterruptedImportException
+ * 
+ * @since 0.1.0
+ */
+public class CancelledOperationException extends DivException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception using the provided message
+     * 
+     * @since 0.1.0
+     */
+    public CancelledOperationException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,31 @@
+package eu.kidf.diversicon.core.exceptions;
+
+/**
+ * A checked exception raised when the Hibernate mapping of some LMF element
+ * or attribute uses constructs the StAX importer can't write, so the UBY
+ * importer has to be used instead.
+ * 
+ * @since 0.1.0
+ */
+public class UnmappedLmfException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception using the provided message
+     * 
+     * @since 0.1.0
+     */
+    public UnmappedLmfException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * Creates the exception using the provided message and throwable
+     * 
+     * @since 0.1.0
+     */
+    public UnmappedLmfException(String msg, Throwable tr) {
+        super(msg, tr);
+    }
+}
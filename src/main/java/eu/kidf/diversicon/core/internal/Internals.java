@@ -10,6 +10,8 @@ import java.lang.reflect.Method;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -22,7 +24,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -92,6 +98,14 @@ public final class Internals {
     @Nullable
     private static DTDGrammar DTD_GRAMMAR;
 
+    /**
+     * Time a thread waits on a queue shared with another thread before
+     * checking whether the other one failed, in millisecs
+     * 
+     * @since 0.1.0
+     */
+    private static final int QUEUE_POLL_TIMEOUT = 500;
+
     /**
      * @since 0.1.0
      */
@@ -637,6 +651,56 @@ public final class Internals {
         return result;
     }
 
+    /**
+     * Takes an item from {@code queue}, failing if {@code producer} ended
+     * without providing one.
+     *
+     * @throws ExecutionException
+     *             if producer failed.
+     * @throws IllegalStateException
+     *             if producer ended normally without providing the item.
+     *
+     * @since 0.1.0
+     */
+    public static <T> T take(BlockingQueue<T> queue, Future<?> producer)
+            throws InterruptedException, ExecutionException {
+        while (true) {
+            T ret = queue.poll(QUEUE_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (ret != null) {
+                return ret;
+            }
+            if (producer.isDone()) {
+                producer.get();
+                ret = queue.poll();
+                if (ret != null) {
+                    return ret;
+                }
+                throw new IllegalStateException("Producer ended without providing all the data!");
+            }
+        }
+    }
+
+    /**
+     * Puts {@code item} into {@code queue}, failing if {@code consumer} ended
+     * meanwhile.
+     *
+     * @throws ExecutionException
+     *             if consumer failed.
+     * @throws IllegalStateException
+     *             if consumer ended normally without consuming the item.
+     *
+     * @since 0.1.0
+     */
+    public static <T> void put(BlockingQueue<T> queue, T item, Future<?> consumer)
+            throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, QUEUE_POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                consumer.get();
+                throw new IllegalStateException("Consumer ended without consuming all the data!");
+            }
+        }
+    }
+
     /**
      * Returns a deep copy of any object, including non-serializable ones.
      * 
@@ -647,6 +711,17 @@ public final class Internals {
         return cloner.deepClone(orig);
     }
 
+    /**
+     * Returns a copy of any object sharing the field values of the original,
+     * including non-serializable ones.
+     * 
+     * @since 0.1.0
+     */
+    @Nullable
+    public static <T> T shallowCopy(@Nullable T orig) {
+        return cloner.shallowClone(orig);
+    }
+
     /**
      * Returns a new ArrayList, filled with provided objects.
      * 
@@ -1150,6 +1225,81 @@ public final class Internals {
         return createTempDir("diversicon-" + prefix);
     }
 
+    /**
+     * Returns a temporary directory named like
+     * {@link #createTempDivDir(String)}. If {@code deleteOnExit} is
+     * {@code false}, the caller is expected to delete it with
+     * {@link #deleteTempDir(Path)} as soon as it's not needed anymore, which
+     * spares long running programs from accumulating shutdown hooks.
+     *
+     * @throws DivIoException
+     * @since 0.1.0
+     */
+    public static Path createTempDivDir(String prefix, boolean deleteOnExit) {
+        if (deleteOnExit) {
+            return createTempDivDir(prefix);
+        }
+        checkNotNull(prefix);
+        try {
+            return Files.createTempDirectory("diversicon-" + prefix);
+        } catch (IOException e) {
+            throw new DivIoException("Couldn't create temporary directory!", e);
+        }
+    }
+
+    /**
+     * Quietly deletes a temporary directory with all its content (to prevent
+     * deletion, set system property
+     * {@link Diversicons#PROPERTY_DEBUG_KEEP_TEMP_FILES} to true).
+     *
+     * @since 0.1.0
+     */
+    public static void deleteTempDir(Path dir) {
+        checkNotNull(dir);
+        if (Boolean.parseBoolean(System.getProperty(Diversicons.PROPERTY_DEBUG_KEEP_TEMP_FILES))) {
+            LOG.debug("Keeping temporary directory " + dir);
+        } else {
+            FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+    /**
+     * Returns the SHA-256 digest of {@code bytes} as a lowercase hex string.
+     * 
+     * @since 0.1.0
+     */
+    public static String sha256Hex(byte[] bytes) {
+        checkNotNull(bytes);
+        return toHex(newSha256().digest(bytes));
+    }
+
+    /**
+     * Returns a new SHA-256 digest, to hash content while streaming it.
+     * 
+     * @throws DivException
+     * 
+     * @since 0.1.0
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new DivException("SHA-256 is not available!", ex);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+              .append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     /**
      * @since 0.1.0
      */
@@ -1229,6 +1379,12 @@ public final class Internals {
      * 
      * </p>
      * 
+     * <p>
+     * Exports write elements with the compiled
+     * {@code eu.kidf.diversicon.core.DivXmlElementWriter}, which must be kept
+     * producing the same output.
+     * </p>
+     * 
      * @return the element tagname. If {@code null}, the element must be
      *         skipped.
      * 
@@ -1382,6 +1538,8 @@ public final class Internals {
     }
 
     /**
+     * Returns the fields of {@code classMetadata}, attributes first and
+     * then subelements in the order declared by the DTD. Not thread safe.
      * 
      * @param normalizedElementName
      *            the normalized elementName,
@@ -1389,7 +1547,7 @@ public final class Internals {
      * 
      * @since 0.1.0
      */
-    private static List<UBYLMFFieldMetadata> extractFieldsInDtdOrder(
+    public static List<UBYLMFFieldMetadata> extractFieldsInDtdOrder(
             UBYLMFClassMetadata classMetadata,
             String normalizedElementName) {
 
@@ -0,0 +1,315 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.test.DivTester.DEFAULT_TEST_PREFIX;
+import static eu.kidf.diversicon.core.test.DivTester.tid;
+import static eu.kidf.diversicon.core.test.LmfBuilder.lmf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXParseException;
+
+import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
+import eu.kidf.diversicon.core.test.DivTester;
+import eu.kidf.diversicon.core.test.LmfBuilder;
+
+/**
+ * Tests {@link ChunkedValidation}, which is package private, with chunks
+ * small enough to split test files.
+ *
+ * @since 0.1.0
+ */
+public class ChunkedValidationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedValidationTest.class);
+
+    private static final long TEST_CHUNK_SIZE = 512;
+
+    @Before
+    public void beforeMethod() {
+        ChunkedValidation.setChunkSize(TEST_CHUNK_SIZE);
+    }
+
+    @After
+    public void afterMethod() {
+        ChunkedValidation.setChunkSize(ChunkedValidation.DEFAULT_CHUNK_SIZE);
+        ChunkedValidation.setMinFileSize(ChunkedValidation.DEFAULT_MIN_FILE_SIZE);
+    }
+
+    /**
+     * Synsets from 2 on point to synset 1, so references cross chunks.
+     *
+     * @since 0.1.0
+     */
+    private static LmfBuilder synsets(int n) {
+        LmfBuilder ret = lmf().lexicon()
+                              .synset();
+        for (int i = 1; i < n; i++) {
+            ret.synset()
+               .synsetRelation(ERelNameSemantics.HYPERNYM, 1);
+        }
+        return ret;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static String systemId(File file) {
+        return new StreamSource(file).getSystemId();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static DivXmlValidator singlePass(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return Diversicons.validateXmlSinglePass(in, systemId(file), XmlValidationConfig.of(LOG));
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static DivXmlValidator chunked(File file) {
+        return ChunkedValidation.validate(file, systemId(file), XmlValidationConfig.of(LOG));
+    }
+
+    /**
+     * Returns the number (starting from 1) of the first line of
+     * {@code file} containing {@code text}
+     *
+     * @since 0.1.0
+     */
+    private static int lineOf(File file, String text) throws IOException {
+        List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i)
+                     .contains(text)) {
+                return i + 1;
+            }
+        }
+        throw new AssertionError("Couldn't find '" + text + "' in " + file.getAbsolutePath());
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static SAXParseException findError(DivXmlHandler handler, String text) {
+        for (Exception ex : handler.getFirstErrors()) {
+            if (ex.getMessage()
+                  .contains(text)) {
+                return (SAXParseException) ex;
+            }
+        }
+        throw new AssertionError("Couldn't find error containing '" + text + "'");
+    }
+
+    /**
+     * Issues found in chunks after the first one should be reported at their
+     * exact position in the file.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testIssuePositionsInLaterChunks() throws IOException {
+        String missingId = tid("synset-999");
+        File file = DivTester.writeXml(synsets(40).synset()
+                                                  .synsetRelation(ERelNameSemantics.HYPERNYM, missingId)
+                                                  .lexicalEntry()
+                                                  .build());
+
+        // an id without prefix near the end, reported by the chunk itself
+        String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        String lastSynsetId = tid("synset-41");
+        String badId = "bad_synset-41";
+        FileUtils.write(file, content.replace("\"" + lastSynsetId + "\"", "\"" + badId + "\""),
+                StandardCharsets.UTF_8);
+
+        List<ChunkedValidation.Chunk> chunks = ChunkedValidation.split(file, TEST_CHUNK_SIZE);
+        assertNotNull(chunks);
+        assertTrue(chunks.size() > 2);
+
+        int missingLine = lineOf(file, missingId);
+        int badLine = lineOf(file, badId);
+        assertTrue(missingLine >= chunks.get(1)
+                                        .getLine());
+        assertTrue(badLine >= chunks.get(1)
+                                    .getLine());
+
+        DivXmlValidator expected = singlePass(file);
+        DivXmlValidator actual = chunked(file);
+
+        for (DivValidationError code : new DivValidationError[] { DivValidationError.MISSING_INTERNAL_ID,
+                DivValidationError.INVALID_INTERNAL_ID }) {
+            assertEquals(1, actual.getErrorHandler()
+                                  .getIssueCount(code));
+            assertEquals(expected.getErrorHandler()
+                                 .getIssueCount(code),
+                    actual.getErrorHandler()
+                          .getIssueCount(code));
+        }
+
+        SAXParseException expectedMissing = findError(expected.getErrorHandler(), missingId);
+        SAXParseException actualMissing = findError(actual.getErrorHandler(), missingId);
+        assertEquals(missingLine, actualMissing.getLineNumber());
+        assertEquals(expectedMissing.getLineNumber(), actualMissing.getLineNumber());
+        assertEquals(expectedMissing.getColumnNumber(), actualMissing.getColumnNumber());
+
+        SAXParseException expectedBad = findError(expected.getErrorHandler(), badId);
+        SAXParseException actualBad = findError(actual.getErrorHandler(), badId);
+        assertEquals(badLine, actualBad.getLineNumber());
+        assertEquals(expectedBad.getLineNumber(), actualBad.getLineNumber());
+        assertEquals(expectedBad.getColumnNumber(), actualBad.getColumnNumber());
+    }
+
+    /**
+     * References to ids declared in other chunks should be resolved.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testCrossChunkRefs() throws IOException {
+        File file = DivTester.writeXml(synsets(40).lexicalEntry()
+                                                  .build());
+
+        List<ChunkedValidation.Chunk> chunks = ChunkedValidation.split(file, TEST_CHUNK_SIZE);
+        assertNotNull(chunks);
+        assertTrue(chunks.size() > 2);
+
+        DivXmlValidator expected = singlePass(file);
+        DivXmlValidator actual = chunked(file);
+
+        assertEquals(0, actual.getErrorHandler()
+                              .getIssueCount(DivValidationError.MISSING_INTERNAL_ID));
+        assertEquals(expected.getErrorHandler()
+                             .issuesCount(),
+                actual.getErrorHandler()
+                      .issuesCount());
+        assertEquals(expected.getIdRegistry()
+                             .size(),
+                actual.getIdRegistry()
+                      .size());
+        assertTrue(actual.getTagIds()
+                         .containsKey(tid("synset-1")));
+        assertTrue(actual.getTagIds()
+                         .containsKey(tid("synset-40")));
+    }
+
+    /**
+     * If a chunk can't be parsed alone, the whole file should be validated
+     * in a single pass.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testChunkParseFailureFallsBack() throws IOException {
+        File file = DivTester.writeXml(synsets(10).lexicalEntry()
+                                                  .build());
+
+        // a processing instruction full of lines looking like synsets, so
+        // the file gets split inside it
+        StringBuilder pi = new StringBuilder("<?note\n");
+        while (pi.length() < 4 * TEST_CHUNK_SIZE) {
+            pi.append("<Synset id=\"" + tid("fake") + "\">\n");
+        }
+        pi.append("?>\n");
+
+        String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        int pos = content.indexOf("<Synset ");
+        assertTrue(pos > 0);
+        FileUtils.write(file, content.substring(0, pos) + pi + content.substring(pos), StandardCharsets.UTF_8);
+
+        List<ChunkedValidation.Chunk> chunks = ChunkedValidation.split(file, TEST_CHUNK_SIZE);
+        assertNotNull(chunks);
+        assertTrue(chunks.size() > 1);
+
+        DivXmlValidator expected = singlePass(file);
+        DivXmlValidator actual = chunked(file);
+
+        assertFalse(actual.getErrorHandler()
+                          .isFatal());
+        assertEquals(expected.getErrorHandler()
+                             .issuesCount(),
+                actual.getErrorHandler()
+                      .issuesCount());
+        assertEquals(expected.getIdRegistry()
+                             .size(),
+                actual.getIdRegistry()
+                      .size());
+        assertFalse(actual.getTagIds()
+                          .containsKey(tid("fake")));
+    }
+
+    /**
+     * Chunks should keep only the first issues, while still counting all of
+     * them.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testChunkIssuesCap() throws IOException {
+        int n = ChunkedValidation.MAX_CHUNK_ISSUES * 3;
+        LmfBuilder builder = lmf().lexicon();
+        for (int i = 0; i < n; i++) {
+            builder.synset();
+        }
+        File file = DivTester.writeXml(builder.lexicalEntry()
+                                              .build());
+
+        String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        FileUtils.write(file, content.replace("\"" + DEFAULT_TEST_PREFIX + "_synset-", "\"bad_synset-"),
+                StandardCharsets.UTF_8);
+
+        // two chunks, each with more issues than it keeps
+        long chunkSize = file.length() / 2;
+        ChunkedValidation.setChunkSize(chunkSize);
+        List<ChunkedValidation.Chunk> chunks = ChunkedValidation.split(file, chunkSize);
+        assertNotNull(chunks);
+        assertEquals(2, chunks.size());
+
+        DivXmlValidator expected = singlePass(file);
+        DivXmlValidator actual = chunked(file);
+
+        assertEquals(n, actual.getErrorHandler()
+                              .getIssueCount(DivValidationError.INVALID_INTERNAL_ID));
+        assertEquals(expected.getErrorHandler()
+                             .getErrorsCount(),
+                actual.getErrorHandler()
+                      .getErrorsCount());
+        assertEquals(DivXmlHandler.MAX_FIRST_ISSUES, actual.getErrorHandler()
+                                                           .getFirstErrors()
+                                                           .size());
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testMinFileSize() {
+        File file = DivTester.writeXml(synsets(3).lexicalEntry()
+                                                 .build());
+
+        assertFalse(ChunkedValidation.isWorthy(file));
+
+        ChunkedValidation.setMinFileSize(file.length());
+        assertEquals(Runtime.getRuntime()
+                            .availableProcessors() > 1,
+                ChunkedValidation.isWorthy(file));
+    }
+}
@@ -0,0 +1,177 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.test.LmfBuilder.lmf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.core.Lexicon;
+import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
+import eu.kidf.diversicon.core.internal.Internals;
+import eu.kidf.diversicon.core.test.DivTester;
+
+/**
+ * Tests {@link DivXmlElementWriter}, which is package private, writes the
+ * same XML as
+ * {@link Internals#prepareXmlElement(Object, boolean, LexResPackage, de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata, AttributesImpl, List)
+ * prepareXmlElement}
+ *
+ * @since 0.1.0
+ */
+public class DivXmlElementWriterTest {
+
+    private static final String TRICKY_TEXT = "a <b> & \"c\" 'd' è";
+
+    /**
+     * A resource with text to escape and closure edges to skip.
+     *
+     * @since 0.1.0
+     */
+    private static LexicalResource trickyLexRes() {
+        LexicalResource ret = lmf().lexicon()
+                                   .synset()
+                                   .definition(TRICKY_TEXT)
+                                   .lexicalEntry()
+                                   .synset()
+                                   .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                   .synset()
+                                   .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                   .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                   .depth(2)
+                                   .synsetRelation(ERelNameSemantics.HYPONYM, 2)
+                                   .build();
+        ret.setName(TRICKY_TEXT);
+
+        Synset synset3 = ret.getLexicons()
+                            .get(0)
+                            .getSynsets()
+                            .get(2);
+        // computed edges
+        ((DivSynsetRelation) synset3.getSynsetRelations()
+                                    .get(1)).setProvenance(Diversicons.getProvenanceId());
+        ((DivSynsetRelation) synset3.getSynsetRelations()
+                                    .get(2)).setProvenance(Diversicons.getProvenanceId());
+        return ret;
+    }
+
+    /**
+     * Writes {@code lexRes} with {@link DivXmlWriter}, using
+     * {@link DivXmlElementWriter} if {@code compiled}, otherwise
+     * {@link Internals#prepareXmlElement(Object, boolean, LexResPackage, de.tudarmstadt.ukp.lmf.transform.UBYLMFClassMetadata, AttributesImpl, List)
+     * prepareXmlElement}. If {@code open}, the lexical resource is written
+     * with an open tag first, and its lexicons one by one.
+     *
+     * @since 0.1.0
+     */
+    private static String write(LexicalResource lexRes, final LexResPackage pack, boolean compiled, boolean open)
+            throws SAXException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DivXmlWriter writer;
+        if (compiled) {
+            writer = new DivXmlWriter(out, null, pack);
+        } else {
+            writer = new DivXmlWriter(out, null, pack) {
+                @Override
+                protected void doWriteElement(Object lmfObject, boolean closeTag) throws SAXException {
+                    AttributesImpl atts = new AttributesImpl();
+                    List<Object> children = new ArrayList<>();
+
+                    @Nullable
+                    String elementName = Internals.prepareXmlElement(lmfObject,
+                            closeTag,
+                            pack,
+                            getClassMetadata(lmfObject.getClass()),
+                            atts,
+                            children);
+
+                    if (elementName == null) {
+                        return;
+                    }
+
+                    th.startElement("", "", elementName, atts);
+                    for (Object child : children) {
+                        doWriteElement(child, true);
+                    }
+                    if (closeTag) {
+                        th.endElement("", "", elementName);
+                    }
+                }
+            };
+        }
+        if (open) {
+            writer.writeStartElement(lexRes);
+            for (Lexicon lexicon : lexRes.getLexicons()) {
+                writer.writeElement(lexicon);
+            }
+            writer.writeEndElement(lexRes);
+        } else {
+            writer.writeElement(lexRes);
+        }
+        writer.writeEndDocument();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void checkSameXml(LexicalResource lexRes, LexResPackage pack) throws SAXException {
+        for (boolean open : new boolean[] { false, true }) {
+            String expected = write(lexRes, pack, false, open);
+            assertEquals(expected, write(lexRes, pack, true, open));
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testSameXml() throws SAXException {
+        LexicalResource lexRes = trickyLexRes();
+        LexResPackage pack = DivTester.createLexResPackage(lexRes);
+        pack.putNamespace("test2", "http://test2.org/ns?a=1&b=2");
+
+        String xml = write(lexRes, pack, true, false);
+        // sanity checks on the fixture
+        assertTrue(xml.contains("&amp;"));
+        assertTrue(xml.contains("&lt;"));
+        assertTrue(xml.contains("xmlns:test2="));
+        assertTrue(xml.contains("xmlns:xsi="));
+        assertFalse(xml.contains(ERelNameSemantics.HYPONYM));
+        assertFalse(xml.contains("DivSynsetRelation"));
+
+        checkSameXml(lexRes, pack);
+    }
+
+    /**
+     * A custom prefix for XML Schema instance namespace should be used in
+     * place of {@code xsi}
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testSameXmlCustomXsiPrefix() throws SAXException {
+        LexicalResource lexRes = trickyLexRes();
+        LexResPackage pack = DivTester.createLexResPackage(lexRes);
+        pack.putNamespace("myxsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+
+        String xml = write(lexRes, pack, true, false);
+        assertTrue(xml.contains("myxsi:noNamespaceSchemaLocation"));
+        assertFalse(xml.contains("xmlns:xsi="));
+
+        checkSameXml(lexRes, pack);
+    }
+}
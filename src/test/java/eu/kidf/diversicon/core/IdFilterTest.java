@@ -0,0 +1,151 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.test.DivTester.GRAPH_1_HYPERNYM;
+import static eu.kidf.diversicon.core.test.DivTester.tid;
+import static eu.kidf.diversicon.core.test.LmfBuilder.lmf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
+import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
+import eu.kidf.diversicon.core.test.DivTester;
+
+/**
+ * Tests the {@link IdFilter} used by {@link Diversicon}, which is package
+ * private, stays in sync with the db.
+ *
+ * @since 0.1.0
+ */
+public class IdFilterTest {
+
+    private static final String PREFIX_2 = "test2";
+
+    /**
+     * 2 verteces and 1 hypernym edge, pointing to {@link #GRAPH_1_HYPERNYM}
+     */
+    private static final LexicalResource LEX_RES_2 = lmf(PREFIX_2).lexicon()
+                                                                  .synset()
+                                                                  .synsetRelation(ERelNameSemantics.HYPERNYM,
+                                                                          tid("synset-2"))
+                                                                  .lexicalEntry()
+                                                                  .build();
+
+    private static final String SYNSET_2_1 = PREFIX_2 + "_synset-1";
+
+    private DivConfig divConfig;
+
+    @Before
+    public void beforeMethod() {
+        divConfig = DivTester.createNewDivConfig();
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+    }
+
+    @After
+    public void afterMethod() {
+        divConfig = null;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void importSecond(Diversicon div) {
+        div.importResource(LEX_RES_2, DivTester.createLexResPackage(LEX_RES_2, PREFIX_2), false);
+    }
+
+    /**
+     * Ids of a second import by the same instance should be found.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testSecondImport() {
+        Diversicon div = Diversicon.connectToDb(divConfig);
+        try {
+            DivTester.importResource(div, GRAPH_1_HYPERNYM, false);
+            assertTrue(div.mightContainId(tid("synset-1")));
+
+            importSecond(div);
+
+            assertTrue(div.mightContainId(SYNSET_2_1));
+            assertTrue(div.isConnected(SYNSET_2_1, tid("synset-2"), -1, ERelNameSemantics.HYPERNYM));
+            assertEquals(new HashSet<>(Arrays.asList(SYNSET_2_1)),
+                    div.findStoredIds(Synset.class, Arrays.asList(SYNSET_2_1)));
+        } finally {
+            div.getSession()
+               .close();
+        }
+    }
+
+    /**
+     * Ids imported by another instance should be found by the instance which
+     * already loaded the filter.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportByOtherInstance() {
+        Diversicon div1 = Diversicon.connectToDb(divConfig);
+        Diversicon div2 = Diversicon.connectToDb(divConfig);
+        try {
+            DivTester.importResource(div1, GRAPH_1_HYPERNYM, false);
+            assertFalse(div1.isConnected(SYNSET_2_1, tid("synset-2"), -1, ERelNameSemantics.HYPERNYM));
+
+            importSecond(div2);
+
+            assertTrue(div1.mightContainId(SYNSET_2_1));
+            assertTrue(div1.isConnected(SYNSET_2_1, tid("synset-2"), -1, ERelNameSemantics.HYPERNYM));
+            assertTrue(div1.isConnected(SYNSET_2_1, tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+            assertEquals(new HashSet<>(Arrays.asList(SYNSET_2_1)),
+                    div1.findStoredIds(Synset.class, Arrays.asList(SYNSET_2_1)));
+        } finally {
+            div1.getSession()
+                .close();
+            div2.getSession()
+                .close();
+        }
+    }
+
+    /**
+     * Without a filter, lookups should go to the db, also when the filter was
+     * removed by another instance.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testRemoveIdFilter() {
+        Diversicon div1 = Diversicon.connectToDb(divConfig);
+        Diversicon div2 = Diversicon.connectToDb(divConfig);
+        try {
+            DivTester.importResource(div1, GRAPH_1_HYPERNYM, false);
+            List<String> ids = Arrays.asList(tid("synset-1"), tid("synset-2"), "666_synset-1");
+
+            div2.removeIdFilter();
+
+            assertTrue(div1.mightContainId("666_synset-1"));
+            assertEquals(new HashSet<>(Arrays.asList(tid("synset-1"), tid("synset-2"))),
+                    div1.findStoredIds(Synset.class, ids));
+            assertTrue(div1.isConnected(tid("synset-2"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+
+            div1.removeIdFilter();
+
+            assertTrue(div1.mightContainId("666_synset-1"));
+            assertEquals(new HashSet<>(Arrays.asList(tid("synset-1"), tid("synset-2"))),
+                    div1.findStoredIds(Synset.class, ids));
+        } finally {
+            div1.getSession()
+                .close();
+            div2.getSession()
+                .close();
+        }
+    }
+}
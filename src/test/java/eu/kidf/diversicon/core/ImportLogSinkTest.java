@@ -0,0 +1,177 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.test.DivTester.GRAPH_1_HYPERNYM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+import eu.kidf.diversicon.core.test.DivTester;
+
+/**
+ * Tests {@link ImportLogSink}, which is package private.
+ *
+ * @since 0.1.0
+ */
+public class ImportLogSinkTest {
+
+    private DivConfig divConfig;
+    private Diversicon div;
+    private ImportJob job;
+
+    @Before
+    public void beforeMethod() {
+        divConfig = DivTester.createNewDivConfig();
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+        div = Diversicon.connectToDb(divConfig);
+        job = DivTester.importResource(div, GRAPH_1_HYPERNYM, true);
+    }
+
+    @After
+    public void afterMethod() {
+        div.getSession()
+           .close();
+        div = null;
+        job = null;
+        divConfig = null;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private long storedCount() {
+        return (Long) div.getSession()
+                         .createQuery("select count(*) from LogMessage where importJob.id = :id")
+                         .setParameter("id", job.getId())
+                         .uniqueResult();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static LogMessage findMessage(List<LogMessage> messages, String text) {
+        for (LogMessage msg : messages) {
+            if (msg.getMessage()
+                   .contains(text)) {
+                return msg;
+            }
+        }
+        throw new AssertionError("Couldn't find message containing '" + text + "' in " + messages.size()
+                + " messages!");
+    }
+
+    /**
+     * Messages should be written only when buffer is full or on close.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testBuffering() {
+        ImportLogSink sink = new ImportLogSink(div.getSession()
+                                                  .getSessionFactory(),
+                job, 3, 100, 100);
+
+        sink.add(Level.WARN, "a");
+        sink.add(Level.WARN, "b");
+        assertEquals(0, storedCount());
+        assertEquals(2, sink.getMessages()
+                            .size());
+
+        sink.add(Level.WARN, "c");
+        assertEquals(3, storedCount());
+
+        sink.add(Level.WARN, "d");
+        assertEquals(3, storedCount());
+
+        sink.close();
+        assertEquals(4, storedCount());
+
+        sink.add(Level.WARN, "e");
+        assertEquals(4, storedCount());
+    }
+
+    /**
+     * Messages beyond the examples limit of their code should be summarized,
+     * each summary with the level of the messages it summarizes.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testAggregationPerCode() {
+        ImportLogSink sink = new ImportLogSink(div.getSession()
+                                                  .getSessionFactory(),
+                job, 1000, 2, 100);
+        job.setLogSink(sink);
+
+        String missingInternal = DivValidationError.MISSING_INTERNAL_ID.toString();
+        String missingExternal = DivValidationError.MISSING_EXTERNAL_ID.toString();
+
+        for (int i = 0; i < 5; i++) {
+            sink.add(Level.WARN, missingInternal + ": missing id " + i);
+        }
+        sink.add(Level.ERROR, missingExternal + ": missing external id");
+        for (int i = 0; i < 3; i++) {
+            sink.add(Level.INFO, "info " + i);
+        }
+
+        assertEquals(Long.valueOf(5), sink.getCounts()
+                                          .get(missingInternal));
+        assertEquals(Long.valueOf(1), sink.getCounts()
+                                          .get(missingExternal));
+        assertEquals(Long.valueOf(3), sink.getCounts()
+                                          .get(Level.INFO.toString()));
+        assertEquals(5, sink.getMessages()
+                            .size());
+
+        sink.close();
+
+        assertEquals(7, storedCount());
+
+        LogMessage internalSummary = findMessage(job.getLogMessages(Level.WARN),
+                missingInternal + ": omitted other 3 messages");
+        assertEquals(Level.WARN, internalSummary.getLevel());
+
+        LogMessage infoSummary = findMessage(job.getLogMessages(Level.INFO),
+                Level.INFO + ": omitted other 1 messages");
+        assertEquals(Level.INFO, infoSummary.getLevel());
+
+        for (LogMessage msg : job.getLogMessages(Level.WARN)) {
+            assertTrue(!msg.getMessage()
+                           .startsWith(missingExternal + ": omitted"));
+        }
+    }
+
+    /**
+     * No more than max stored messages should be kept, and a summary with
+     * the most severe dropped level should be written on close.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testMaxStored() {
+        ImportLogSink sink = new ImportLogSink(div.getSession()
+                                                  .getSessionFactory(),
+                job, 1000, 100, 3);
+        job.setLogSink(sink);
+
+        for (int i = 0; i < 4; i++) {
+            sink.add(Level.INFO, "info " + i);
+        }
+        sink.add(Level.ERROR, "error");
+
+        assertEquals(3, sink.getMessages()
+                            .size());
+
+        sink.close();
+
+        assertEquals(4, storedCount());
+        LogMessage summary = findMessage(job.getLogMessages(Level.ERROR),
+                "Reached max number of stored messages (3), omitted other 2 messages");
+        assertEquals(Level.ERROR, summary.getLevel());
+    }
+}
@@ -0,0 +1,131 @@
+package eu.kidf.diversicon.core;
+
+import static eu.kidf.diversicon.core.test.DivTester.checkDbClosure;
+import static eu.kidf.diversicon.core.test.DivTester.tid;
+import static eu.kidf.diversicon.core.test.LmfBuilder.lmf;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
+import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
+import eu.kidf.diversicon.core.test.DivTester;
+import eu.kidf.diversicon.core.test.LmfBuilder;
+
+/**
+ * Tests {@link TransitiveClosureTask}, which is package private.
+ *
+ * @since 0.1.0
+ */
+public class TransitiveClosureTaskTest {
+
+    /**
+     * Length of the test chains
+     */
+    private static final int SIZE = 7;
+
+    private static final String[] REL_NAMES = { ERelNameSemantics.HYPERNYM, ERelNameSemantics.HOLONYM };
+
+    @After
+    public void afterMethod() {
+        TransitiveClosureTask.setSourceRanges(TransitiveClosureTask.DEFAULT_SOURCE_RANGES);
+    }
+
+    /**
+     * Each synset is connected to the previous one by all of
+     * {@link #REL_NAMES}
+     *
+     * @since 0.1.0
+     */
+    private static LexicalResource chains() {
+        LmfBuilder ret = lmf().lexicon()
+                              .synset()
+                              .lexicalEntry();
+        for (int i = 2; i <= SIZE; i++) {
+            ret.synset();
+            for (String relName : REL_NAMES) {
+                ret.synsetRelation(relName, i - 1);
+            }
+        }
+        return ret.build();
+    }
+
+    /**
+     * The expected closure of {@link #chains()}, direct edges excluded.
+     *
+     * @since 0.1.0
+     */
+    private static LexicalResource chainsClosure() {
+        LmfBuilder ret = lmf().lexicon()
+                              .synset()
+                              .lexicalEntry();
+        for (int i = 2; i <= SIZE; i++) {
+            ret.synset();
+            for (String relName : REL_NAMES) {
+                for (int j = 1; j < i - 1; j++) {
+                    ret.synsetRelation(relName, j)
+                       .depth(i - j);
+                }
+            }
+        }
+        return ret.build();
+    }
+
+    /**
+     * Imports {@link #chains()} splitting each relation in
+     * {@code sourceRanges} and returns all the closure edges found.
+     *
+     * @since 0.1.0
+     */
+    private static List<String> importChains(int sourceRanges) {
+        TransitiveClosureTask.setSourceRanges(sourceRanges);
+
+        DivConfig divConfig = DivTester.createNewDivConfig();
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+        Diversicon div = Diversicon.connectToDb(divConfig);
+        try {
+            DivTester.importResource(div, chains(), false);
+
+            checkDbClosure(chainsClosure(), div);
+
+            List<String> ret = new ArrayList<>();
+            for (int i = 1; i <= SIZE; i++) {
+                for (DivSynsetRelation dsr : div.getClosureSynsetRelations(tid("synset-" + i))) {
+                    ret.add(dsr.getSource()
+                               .getId() + " " + dsr.getRelName() + " "
+                            + dsr.getTarget()
+                                 .getId()
+                            + " " + dsr.getDepth());
+                }
+            }
+            Collections.sort(ret);
+            return ret;
+        } finally {
+            div.getSession()
+               .close();
+        }
+    }
+
+    /**
+     * Computing relations split in many source ranges should give the same
+     * closure as computing each of them at once.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testSourceRanges() {
+        List<String> sequential = importChains(1);
+        List<String> parallel = importChains(3);
+        List<String> tooMany = importChains(SIZE * 2);
+
+        // 2 relations, (SIZE - 2) * (SIZE - 1) / 2 edges each
+        assertEquals(2 * (SIZE - 2) * (SIZE - 1) / 2, sequential.size());
+        assertEquals(sequential, parallel);
+        assertEquals(sequential, tooMany);
+    }
+}
@@ -0,0 +1,158 @@
+package eu.kidf.diversicon.core;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+import eu.kidf.diversicon.core.internal.Internals;
+
+/**
+ * Tests {@link XmlResourceCache}, which is package private, serving schemas
+ * from a local server.
+ *
+ * @since 0.1.0
+ */
+public class XmlResourceCacheTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XmlResourceCacheTest.class);
+
+    private static final String XSD_PATH = "/test.xsd";
+
+    private static final String XSD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">\n"
+            + "    <xs:element name=\"a\" type=\"xs:string\"/>\n"
+            + "</xs:schema>\n";
+
+    private WireMockServer wireServer;
+    private String xsdUrl;
+
+    @Before
+    public void beforeMethod() {
+        XmlResourceCache.setResourcesDir(Internals.createTempDivDir("xml-resources-test", true)
+                                                  .toFile());
+        XmlResourceCache.clearMemory();
+
+        wireServer = new WireMockServer(options().dynamicPort());
+        wireServer.start();
+        wireServer.stubFor(get(urlEqualTo(XSD_PATH)).willReturn(aResponse().withStatus(200)
+                                                                           .withHeader("Content-Type",
+                                                                                   "application/xml")
+                                                                           .withBody(XSD)));
+        xsdUrl = "http://127.0.0.1:" + wireServer.port() + XSD_PATH;
+    }
+
+    @After
+    public void afterMethod() {
+        try {
+            wireServer.stop();
+        } catch (Exception ex) {
+            LOG.error("Couldn't stop wireServer", ex);
+        }
+        XmlResourceCache.setResourcesDir(null);
+        XmlResourceCache.setMaxAge(XmlResourceCache.DEFAULT_MAX_AGE);
+        XmlResourceCache.clearMemory();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private XmlValidationConfig config() {
+        return XmlValidationConfig.builder()
+                                  .setLog(LOG)
+                                  .setXsdUrl(xsdUrl)
+                                  .build();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static void validate(Schema schema) throws SAXException, IOException {
+        schema.newValidator()
+              .validate(new StreamSource(new StringReader("<a>x</a>")));
+    }
+
+    /**
+     * The second validation should neither fetch the schema again nor
+     * compile it again.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testSecondValidation() throws SAXException, IOException {
+        Schema first = XmlResourceCache.schema(config());
+        validate(first);
+
+        Schema second = XmlResourceCache.schema(config());
+        validate(second);
+
+        assertSame(first, second);
+        wireServer.verify(1, getRequestedFor(urlEqualTo(XSD_PATH)));
+
+        // a new session reads the on-disk cache
+        XmlResourceCache.clearMemory();
+        validate(XmlResourceCache.schema(config()));
+        wireServer.verify(1, getRequestedFor(urlEqualTo(XSD_PATH)));
+    }
+
+    /**
+     * Expired resources should be fetched again, while schemas with the same
+     * content are not compiled again.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testExpired() throws SAXException, IOException {
+        Schema first = XmlResourceCache.schema(config());
+
+        XmlResourceCache.setMaxAge(0);
+
+        Schema second = XmlResourceCache.schema(config());
+        validate(second);
+
+        wireServer.verify(2, getRequestedFor(urlEqualTo(XSD_PATH)));
+        assertSame(first, second);
+    }
+
+    /**
+     * If an expired resource can't be fetched again, the expired copy should
+     * be used.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testExpiredFetchFails() {
+        DivConfig divConfig = DivConfig.builder()
+                                       .build();
+        XmlResourceCache.read(divConfig, xsdUrl);
+
+        XmlResourceCache.setMaxAge(0);
+        XmlResourceCache.clearMemory();
+        // no stubs left, server will answer 404
+        wireServer.resetMappings();
+
+        byte[] content = XmlResourceCache.read(divConfig, xsdUrl);
+
+        assertEquals(XSD, new String(content, StandardCharsets.UTF_8));
+        wireServer.verify(2, getRequestedFor(urlEqualTo(XSD_PATH)));
+    }
+}
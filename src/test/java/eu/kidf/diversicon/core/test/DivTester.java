@@ -15,6 +15,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -630,6 +631,54 @@ public final class DivTester {
         checkDb(lr, diversicon, new HashSet<Flags>());
     }
 
+    /**
+     * Checks the edges computed by transitive closure departing from each
+     * synset of {@code expectedClosure} are exactly the synset relations
+     * listed for it, comparing relation names, targets and depths.
+     * 
+     * <p>
+     * Closure edges are stored in their own table, so they are not among
+     * {@link Synset#getSynsetRelations()} and
+     * {@link #checkDb(LexicalResource, Diversicon) checkDb} doesn't see
+     * them.
+     * </p>
+     * 
+     * @see Diversicon#getClosureSynsetRelations(String)
+     * @since 0.1.0
+     */
+    public static void checkDbClosure(LexicalResource expectedClosure, Diversicon diversicon) {
+        checkNotNull(expectedClosure);
+        checkNotNull(diversicon);
+
+        for (Lexicon lex : expectedClosure.getLexicons()) {
+            for (Synset syn : lex.getSynsets()) {
+                List<String> expected = new ArrayList<>();
+                for (SynsetRelation sr : syn.getSynsetRelations()) {
+                    expected.add(closureEdge(sr));
+                }
+                List<String> actual = new ArrayList<>();
+                for (DivSynsetRelation dsr : diversicon.getClosureSynsetRelations(syn.getId())) {
+                    assertEquals(Diversicons.getProvenanceId(), dsr.getProvenance());
+                    actual.add(closureEdge(dsr));
+                }
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals("Invalid closure edges for synset " + syn.getId(), expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Returns a string with relation name, target id and depth of
+     * {@code sr}
+     * 
+     * @since 0.1.0
+     */
+    private static String closureEdge(SynsetRelation sr) {
+        int depth = sr instanceof DivSynsetRelation ? ((DivSynsetRelation) sr).getDepth() : 1;
+        return sr.getRelName() + " " + getId(sr.getTarget()) + " " + depth;
+    }
+
     /**
      * @since 0.1.0
      */
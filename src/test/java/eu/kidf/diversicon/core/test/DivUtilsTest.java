@@ -9,14 +9,21 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -42,16 +49,20 @@ import de.tudarmstadt.ukp.lmf.model.enums.ERelNameSemantics;
 import de.tudarmstadt.ukp.lmf.model.semantics.Synset;
 import de.tudarmstadt.ukp.lmf.transform.DBConfig;
 import eu.kidf.diversicon.core.DivConfig;
+import eu.kidf.diversicon.core.DivValidationError;
 import eu.kidf.diversicon.core.DivXmlHandler;
 import eu.kidf.diversicon.core.DivXmlValidator;
 import eu.kidf.diversicon.core.Diversicon;
 import eu.kidf.diversicon.core.Diversicons;
 import eu.kidf.diversicon.core.ExtractedStream;
+import eu.kidf.diversicon.core.IdRegistry;
+import eu.kidf.diversicon.core.ImportConfig;
 import eu.kidf.diversicon.core.ImportJob;
 import eu.kidf.diversicon.core.LexResPackage;
 import eu.kidf.diversicon.core.XmlValidationConfig;
 import eu.kidf.diversicon.core.exceptions.DivIoException;
 import eu.kidf.diversicon.core.exceptions.DivNotFoundException;
+import eu.kidf.diversicon.core.exceptions.InvalidImportException;
 import eu.kidf.diversicon.core.exceptions.InvalidXmlException;
 import eu.kidf.diversicon.core.internal.Internals;
 import eu.kidf.diversicon.data.DivUpper;
@@ -355,6 +366,52 @@ public class DivUtilsTest {
         Diversicons.validateXml(f, XmlValidationConfig.of(LOG));
     }
 
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testValidateXmlCached() throws IOException {
+        File f = Diversicons.readData(Examplicon.XML_URI)
+                            .toTempFile();
+        File cacheDir = DivTester.createTestDir()
+                                 .toFile();
+
+        // not cached by default
+        Diversicons.validateXml(f, XmlValidationConfig.of(LOG));
+        DivXmlValidator uncached = Diversicons.validateXml(f, XmlValidationConfig.of(LOG));
+        assertTrue(uncached.getIdRegistry()
+                           .size() > 0);
+
+        DivXmlValidator first = Diversicons.validateXml(f, XmlValidationConfig.builder()
+                                                                              .setLog(LOG)
+                                                                              .setCacheDir(cacheDir)
+                                                                              .build());
+        assertTrue(first.getIdRegistry()
+                        .size() > 0);
+        assertTrue(cacheDir.list().length > 0);
+
+        DivXmlValidator second = Diversicons.validateXml(f, XmlValidationConfig.builder()
+                                                                               .setLog(LOG)
+                                                                               .setCacheDir(cacheDir)
+                                                                               .build());
+        assertEquals(first.getLexResPackage()
+                          .getPrefix(),
+                second.getLexResPackage()
+                      .getPrefix());
+        // restored from cache, without reading the file
+        assertEquals(0, second.getIdRegistry()
+                              .size());
+
+        // changed file must be read again
+        FileUtils.write(f, "\n", "UTF-8", true);
+        DivXmlValidator changed = Diversicons.validateXml(f, XmlValidationConfig.builder()
+                                                                                .setLog(LOG)
+                                                                                .setCacheDir(cacheDir)
+                                                                                .build());
+        assertTrue(changed.getIdRegistry()
+                          .size() > 0);
+    }
+
     /**
      * @since 0.1.0
      */
@@ -413,6 +470,44 @@ public class DivUtilsTest {
         }
     }    
 
+    /**
+     * Issues of a code past {@link DivXmlHandler#MAX_DETAILED_ISSUES} are
+     * still counted and summarized.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testValidateXmlIssueCounts() {
+
+        int n = DivXmlHandler.MAX_DETAILED_ISSUES + 5;
+
+        LmfBuilder builder = lmf().lexicon();
+        for (int i = 0; i < n; i++) {
+            builder.synset()
+                   .synsetRelation(ERelNameSemantics.HYPERNYM, pid(DEFAULT_TEST_PREFIX, "synset-999"));
+        }
+        File xml = DivTester.writeXml(builder.lexicalEntry()
+                                             .build());
+
+        try {
+            Diversicons.validateXml(xml, XmlValidationConfig.of(LOG));
+            Assert.fail("Shouldn't arrive here!");
+        } catch (InvalidXmlException ex) {
+            DivXmlHandler handler = ex.getErrorHandler();
+            assertEquals(n, handler.getIssueCount(DivValidationError.MISSING_INTERNAL_ID));
+            assertEquals(n, handler.getErrorsCount());
+            assertFalse(handler.isDetailed(DivValidationError.MISSING_INTERNAL_ID));
+            assertTrue(handler.summary()
+                              .contains(DivValidationError.MISSING_INTERNAL_ID + ": " + n));
+            assertEquals(DivXmlHandler.MAX_FIRST_ISSUES, handler.getFirstErrors()
+                                                                .size());
+            assertTrue(handler.getFirstErrors()
+                              .get(0)
+                              .getMessage()
+                              .contains(pid(DEFAULT_TEST_PREFIX, "synset-999")));
+        }
+    }
+
     /**
      * @since 0.1.0
      */
@@ -1207,4 +1302,174 @@ public class DivUtilsTest {
         assertEquals("xy", Internals.longestCommonPrefix("xy", "xyz"));
     }
 
-}
\ No newline at end of file
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testIdRegistry() {
+        IdRegistry reg = new IdRegistry("ex");
+        
+        assertTrue(reg.add("ex_s1", "Synset"));
+        assertFalse(reg.add("ex_s1", "Sense"));
+        assertTrue(reg.add("s1", "Sense"));
+        assertTrue(reg.add("wn31_s1", "Synset"));
+        
+        assertEquals("Synset", reg.getTag("ex_s1"));
+        assertEquals("Sense", reg.getTag("s1"));
+        assertTrue(reg.contains("wn31_s1", "Synset"));
+        assertFalse(reg.contains("ex_s1", "Sense"));
+        assertNull(reg.getTag("ex_s2"));
+        assertNull(reg.getTag("ex_"));
+        
+        for (int i = 0; i < 10000; i++) {
+            reg.add("ex_ss" + i, "Synset");
+        }
+        assertEquals(10003, reg.size());
+        assertTrue(reg.contains("ex_ss9999", "Synset"));
+        
+        Map<String, String> map = reg.toMap();
+        assertEquals(10003, map.size());
+        assertEquals("Sense", map.get("s1"));
+        assertEquals("Synset", map.get("ex_ss42"));
+    }
+
+
+    /**
+     * Returns the names of spool directories in the temporary directory.
+     * 
+     * @since 0.1.0
+     */
+    private static Set<String> spoolDirs() {
+        Set<String> ret = new HashSet<>();
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName()
+                        .startsWith("diversicon-spool")) {
+                    ret.add(file.getName());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes {@code bytes} gzipped into a new file named {@code name} next to
+     * {@code file}.
+     * 
+     * @since 0.1.0
+     */
+    private static File gzip(File file, String name, byte[] bytes) throws IOException {
+        File ret = new File(file.getParentFile(), name);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(ret))) {
+            out.write(bytes);
+        }
+        return ret;
+    }
+
+    /**
+     * Compressed files are streamed into validation and spooled for writing,
+     * spooled copies should be deleted as soon as the import ends.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportCompressedNoTempFiles() throws IOException {
+        System.setProperty(Diversicons.PROPERTY_DEBUG_KEEP_TEMP_FILES, Boolean.toString(false));
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+        Diversicon div = Diversicon.connectToDb(divConfig);
+        try {
+            File xml = DivTester.writeXml(GRAPH_1_HYPERNYM);
+            File gz = gzip(xml, xml.getName() + ".gz", FileUtils.readFileToByteArray(xml));
+
+            Set<String> before = spoolDirs();
+
+            // dry runs never read the spooled copy
+            ImportConfig dryRun = new ImportConfig();
+            dryRun.setAuthor(Diversicons.DEFAULT_AUTHOR);
+            dryRun.setDryRun(true);
+            dryRun.addLexResFileUrl(gz.getAbsolutePath());
+            div.importFiles(dryRun);
+
+            assertEquals(before, spoolDirs());
+
+            ImportConfig ic = new ImportConfig();
+            ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+            ic.addLexResFileUrl(gz.getAbsolutePath());
+            div.importFiles(ic);
+
+            checkDb(GRAPH_1_HYPERNYM, div);
+            assertEquals(before, spoolDirs());
+        } finally {
+            div.getSession()
+               .close();
+        }
+    }
+
+    /**
+     * Spooled copies should be deleted also when import fails while reading
+     * the header, while decompressing or while validating.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportCompressedErrorNoTempFiles() throws IOException {
+        System.setProperty(Diversicons.PROPERTY_DEBUG_KEEP_TEMP_FILES, Boolean.toString(false));
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+        Diversicon div = Diversicon.connectToDb(divConfig);
+        try {
+            File xml = DivTester.writeXml(GRAPH_1_HYPERNYM);
+            byte[] content = FileUtils.readFileToByteArray(xml);
+            String text = new String(content, StandardCharsets.UTF_8);
+
+            // well formed header, broken content
+            byte[] broken = text.substring(0, text.lastIndexOf("</Lexicon>"))
+                                .getBytes(StandardCharsets.UTF_8);
+            File brokenGz = gzip(xml, "broken-" + xml.getName() + ".gz", broken);
+
+            // compressed stream ending in the middle
+            File truncatedGz = gzip(xml, "truncated-" + xml.getName() + ".gz", content);
+            byte[] gzBytes = FileUtils.readFileToByteArray(truncatedGz);
+            FileUtils.writeByteArrayToFile(truncatedGz, Arrays.copyOf(gzBytes, gzBytes.length / 2));
+
+            Set<String> before = spoolDirs();
+
+            for (File file : Arrays.asList(brokenGz, truncatedGz)) {
+                ImportConfig ic = new ImportConfig();
+                ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+                ic.addLexResFileUrl(file.getAbsolutePath());
+                try {
+                    div.importFiles(ic);
+                    Assert.fail("Shouldn't arrive here!");
+                } catch (InvalidImportException ex) {
+                    LOG.debug("Caught expected exception for " + file.getName(), ex);
+                }
+                assertEquals("Found spooled files left by " + file.getName(), before, spoolDirs());
+            }
+
+            // staged concurrently, the valid file spooled copy must go too
+            File validGz = gzip(xml, "valid-" + xml.getName() + ".gz", content);
+            ImportConfig ic = new ImportConfig();
+            ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+            ic.setThreads(2);
+            ic.addLexResFileUrl(validGz.getAbsolutePath());
+            ic.addLexResFileUrl(brokenGz.getAbsolutePath());
+            try {
+                div.importFiles(ic);
+                Assert.fail("Shouldn't arrive here!");
+            } catch (InvalidImportException ex) {
+                LOG.debug("Caught expected exception", ex);
+            }
+            assertEquals(before, spoolDirs());
+
+            assertTrue(div.getImportJobs()
+                          .isEmpty());
+        } finally {
+            div.getSession()
+               .close();
+        }
+    }
+
+}
@@ -5,20 +5,32 @@ import static eu.kidf.diversicon.core.test.LmfBuilder.lmf;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
 
 import org.apache.commons.io.FileUtils;
 
 import org.dom4j.DocumentException;
+import org.hibernate.criterion.Restrictions;
 import org.hibernate.exception.GenericJDBCException;
 import org.junit.After;
 import org.junit.Assert;
@@ -27,6 +39,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 
 import de.tudarmstadt.ukp.lmf.model.core.LexicalEntry;
 import de.tudarmstadt.ukp.lmf.model.core.LexicalResource;
@@ -41,11 +54,19 @@ import de.tudarmstadt.ukp.lmf.transform.DBConfig;
 import eu.kidf.diversicon.core.DbInfo;
 import eu.kidf.diversicon.core.DivConfig;
 import eu.kidf.diversicon.core.DivSynsetRelation;
+import eu.kidf.diversicon.core.DivValidationError;
+import eu.kidf.diversicon.core.DivXmlHandler;
 import eu.kidf.diversicon.core.Diversicon;
 import eu.kidf.diversicon.core.Diversicons;
 import eu.kidf.diversicon.core.ImportConfig;
+import eu.kidf.diversicon.core.ImportSink;
+import eu.kidf.diversicon.core.LogMessage;
 import eu.kidf.diversicon.core.ImportJob;
+import eu.kidf.diversicon.core.ImportPhase;
 import eu.kidf.diversicon.core.LexResPackage;
+import eu.kidf.diversicon.core.Progress;
+import eu.kidf.diversicon.core.ProgressListener;
+import eu.kidf.diversicon.core.exceptions.CancelledOperationException;
 import eu.kidf.diversicon.core.exceptions.DivIoException;
 import eu.kidf.diversicon.core.exceptions.DivNotFoundException;
 import eu.kidf.diversicon.core.exceptions.InterruptedImportException;
@@ -178,6 +199,18 @@ public class DiversiconTest {
                   .close();
     };
 
+    /**
+     * Same as {@link #assertAugmentation(LexicalResource, LexicalResource, LexicalResource)}
+     * expecting no edge to be computed by transitive closure.
+     * 
+     * @since 0.1.0
+     */
+    public void assertAugmentation(
+            LexicalResource lexicalResource,
+            LexicalResource expectedLexicalResource) {
+        assertAugmentation(lexicalResource, expectedLexicalResource, null);
+    }
+
     /**
      * Saves provided {@code lexicalResource} to database, normalizes and
      * augments database
@@ -186,11 +219,18 @@ public class DiversiconTest {
      * 
      * @param lexicalResource
      * @param expectedLexicalResource
+     *            expected synset relations, closure edges excluded
+     * @param expectedClosure
+     *            expected edges computed by transitive closure, see
+     *            {@link DivTester#checkDbClosure(LexicalResource, Diversicon)}.
+     *            If {@code null}, no synset of
+     *            {@code expectedLexicalResource} should have any.
      * @since 0.1.0
      */
     public void assertAugmentation(
             LexicalResource lexicalResource,
-            LexicalResource expectedLexicalResource) {
+            LexicalResource expectedLexicalResource,
+            @Nullable LexicalResource expectedClosure) {
 
         Diversicons.dropCreateTables(divConfig.getDbConfig());
 
@@ -202,6 +242,17 @@ public class DiversiconTest {
 
         checkDb(expectedLexicalResource, div, Internals.newHashSet(DivTester.Flags.UNORDERED_SYNSET_RELATIONS));
 
+        if (expectedClosure == null) {
+            for (Lexicon lex : expectedLexicalResource.getLexicons()) {
+                for (Synset syn : lex.getSynsets()) {
+                    assertEquals(syn.getId(), 0, div.getClosureSynsetRelations(syn.getId())
+                                                    .size());
+                }
+            }
+        } else {
+            checkDbClosure(expectedClosure, div);
+        }
+
         div.getSession().close();
 
     };
@@ -261,7 +312,15 @@ public class DiversiconTest {
     public void testTransitiveClosureDepth_2() {
 
         assertAugmentation(GRAPH_3_HYPERNYM,
-                DAG_3_HYPERNYM);
+                GRAPH_3_HYPERNYM,
+                lmf().lexicon()
+                     .synset()
+                     .lexicalEntry()
+                     .synset()
+                     .synset()
+                     .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                     .depth(2)
+                     .build());
 
     }
 
@@ -288,12 +347,20 @@ public class DiversiconTest {
                      .lexicalEntry()
                      .synset()
                      .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
-                     .synset()                                          
+                     .synset()
                      .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
-                     .synsetRelation(ERelNameSemantics.HYPERNYM, 1)                     
-                     .depth(2)
-                     .synset()                     
+                     .synset()
                      .synsetRelation(ERelNameSemantics.HYPERNYM, 3)
+                     .build(),
+
+                lmf().lexicon()
+                     .synset()
+                     .lexicalEntry()
+                     .synset()
+                     .synset()
+                     .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                     .depth(2)
+                     .synset()
                      .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
                      .depth(2)
                      .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
@@ -302,8 +369,56 @@ public class DiversiconTest {
     }
 
     /**
+     * Closure is materialized only up to max depth, deeper connections are
+     * computed on the fly.
+     *
      * @since 0.1.0
-     * 
+     */
+    @Test
+    public void testTransitiveClosureMaxDepth() {
+
+        LexicalResource lexRes = lmf().lexicon()
+                                      .synset()
+                                      .lexicalEntry()
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 3)
+                                      .build();
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig importConfig = Internals.createImportConfig(lexRes);
+        importConfig.setClosureMaxDepth(2);
+
+        div.importResource(lexRes, createLexResPackage(lexRes), importConfig);
+
+        assertEquals(2, div.getDbInfo()
+                           .getClosureMaxDepth());
+        assertFalse(div.getDbInfo()
+                       .isClosureMaterialized(ERelNameSemantics.HYPERNYM, 3));
+
+        assertTrue(div.getRelations(tid("synset-4"), tid("synset-2"), -1)
+                      .contains(ERelNameSemantics.HYPERNYM));
+
+        assertTrue(div.isConnected(tid("synset-4"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+        assertTrue(div.isConnected(tid("synset-4"), tid("synset-1"), 3, ERelNameSemantics.HYPERNYM));
+        assertFalse(div.isConnected(tid("synset-4"), tid("synset-1"), 2, ERelNameSemantics.HYPERNYM));
+        assertTrue(div.isConnected(tid("synset-1"), tid("synset-4"), -1, ERelNameSemantics.HYPONYM));
+        assertTrue(div.getRelations(tid("synset-4"), tid("synset-1"), -1)
+                      .contains(ERelNameSemantics.HYPERNYM));
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * @since 0.1.0
+     *
      * Could still have problems, see https://github.com/diversicon-kb/diversicon/issues/14
      */
     @Test
@@ -892,6 +1007,22 @@ public class DiversiconTest {
     }
     
     
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testGetLogMessagesByLevel() {
+        ImportJob job = new ImportJob();
+        job.addLogMessage(new LogMessage(job, Level.ERROR, "a"));
+        job.addLogMessage(new LogMessage(job, Level.WARN, "b"));
+        job.addLogMessage(new LogMessage(job, Level.INFO, "c"));
+
+        assertEquals(2, job.getLogMessages(Level.WARN)
+                           .size());
+        assertEquals(1, job.getLogMessages(Level.ERROR)
+                           .size());
+    }
+
     /**
      * 
      * Imports two resources. Second one assigns to the first prefix a different url.
@@ -963,6 +1094,584 @@ public class DiversiconTest {
 
     }
 
+    /**
+     * Bulk load mode should write the same content and restore db settings
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportXmlBulkLoad() {
+
+        File xml = DivTester.writeXml(GRAPH_4_HYP_HOL_HELLO);
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        Map<String, String> before = h2Settings(divConfig.getDbConfig());
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setBulkLoad(true);
+        ic.addLexResFileUrl(xml.getAbsolutePath());
+
+        div.importFiles(ic);
+
+        checkDb(GRAPH_4_HYP_HOL_HELLO, div);
+
+        Map<String, String> after = h2Settings(divConfig.getDbConfig());
+        assertEquals(before.get("LOG"), after.get("LOG"));
+        assertEquals(before.get("LOCK_MODE"), after.get("LOCK_MODE"));
+        // CACHE_SIZE is only listed once explicitly set, so we compare the
+        // actual cache size
+        assertNotNull(before.get("info.CACHE_MAX_SIZE"));
+        assertEquals(before.get("info.CACHE_MAX_SIZE"), after.get("info.CACHE_MAX_SIZE"));
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * Reads H2 settings changed by bulk loading straight from the db.
+     * 
+     * @since 0.1.0
+     */
+    private static Map<String, String> h2Settings(DBConfig dbConfig) {
+        Map<String, String> ret = new HashMap<>();
+        try (Connection conn = Diversicons.getH2Connection(dbConfig);
+                Statement stat = conn.createStatement()) {
+            try (ResultSet rs = stat.executeQuery("SELECT NAME, VALUE FROM INFORMATION_SCHEMA.SETTINGS"
+                    + " WHERE NAME IN ('LOG', 'CACHE_SIZE', 'info.CACHE_MAX_SIZE')")) {
+                while (rs.next()) {
+                    ret.put(rs.getString(1), rs.getString(2));
+                }
+            }
+            try (ResultSet rs = stat.executeQuery("CALL LOCK_MODE()")) {
+                rs.next();
+                ret.put("LOCK_MODE", rs.getString(1));
+            }
+            return ret;
+        } catch (SQLException ex) {
+            throw new RuntimeException("Error while reading H2 settings!", ex);
+        }
+    }
+
+    /**
+     * StAX importer should write the same content as UBY importer
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportXmlStax() {
+
+        File xml = DivTester.writeXml(GRAPH_4_HYP_HOL_HELLO);
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setStaxImport(true);
+        ic.addLexResFileUrl(xml.getAbsolutePath());
+
+        ImportJob job = div.importFiles(ic)
+                           .get(0);
+
+        // file was not written by the UBY importer
+        for (LogMessage msg : job.getLogMessages(Level.WARN)) {
+            assertFalse(msg.getMessage(), msg.getMessage()
+                                             .contains("falling back to UBY importer"));
+        }
+
+        checkDb(GRAPH_4_HYP_HOL_HELLO, div);
+
+        Synset synset = div.getSynsetById(pid(DivTester.DEFAULT_TEST_PREFIX, "synset-4"));
+        assertFalse(synset.getSynsetRelations()
+                          .isEmpty());
+        for (SynsetRelation sr : synset.getSynsetRelations()) {
+            assertTrue(sr instanceof DivSynsetRelation);
+        }
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportSink() {
+
+        LexicalResource expected = lmf().lexicon()
+                                        .synset()
+                                        .synset()
+                                        .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                        .build();
+
+        // only resource attributes, objects are pushed one by one
+        LexicalResource lexRes = lmf().build();
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig importConfig = Internals.createImportConfig(lexRes);
+        importConfig.setBatchSize(1);
+
+        Lexicon lexicon = new Lexicon();
+        lexicon.setId(pid(DivTester.DEFAULT_TEST_PREFIX, "lexicon-1"));
+
+        try (ImportSink sink = div.openImportSink(lexRes, createLexResPackage(lexRes), importConfig)) {
+            sink.addLexicon(lexicon);
+
+            Synset synset1 = new Synset();
+            synset1.setId(pid(DivTester.DEFAULT_TEST_PREFIX, "synset-1"));
+            sink.addSynset(synset1);
+
+            Synset synset2 = new Synset();
+            synset2.setId(pid(DivTester.DEFAULT_TEST_PREFIX, "synset-2"));
+            DivSynsetRelation sr = new DivSynsetRelation();
+            sr.setSource(synset2);
+            sr.setTarget(synset1);
+            sr.setRelName(ERelNameSemantics.HYPERNYM);
+            synset2.getSynsetRelations()
+                   .add(sr);
+            sink.addSynset(synset2);
+
+            sink.finish();
+        }
+
+        // resource and lexicon given to the sink are never modified
+        assertTrue(lexRes.getLexicons()
+                         .isEmpty());
+        assertTrue(lexicon.getSynsets()
+                          .isEmpty());
+
+        assertEquals(2, div.getSynsetCount());
+        checkDb(expected, div);
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * Tiny batches and queues force pipeline stages to wait for each other
+     * and parent rows to be updated after being written.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportXmlStaxSmallBatches() {
+
+        File xml = DivTester.writeXml(GRAPH_4_HYP_HOL_HELLO);
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setStaxImport(true);
+        ic.setBatchSize(1);
+        ic.setQueueDepth(1);
+        ic.addLexResFileUrl(xml.getAbsolutePath());
+
+        div.importFiles(ic);
+
+        checkDb(GRAPH_4_HYP_HOL_HELLO, div);
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * Returns a listener cancelling the import after the first committed
+     * batch.
+     * 
+     * @since 0.1.0
+     */
+    private static ProgressListener cancelAfterFirstBatch() {
+        return new RecordingListener(false) {
+            private volatile boolean written;
+
+            @Override
+            public void onProgress(Progress progress) {
+                if (progress.getProcessed() > 0) {
+                    written = true;
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return written;
+            }
+        };
+    }
+
+    /**
+     * Importing again a file whose StAX import was interrupted should resume
+     * it from the last committed batch.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportXmlStaxResume() {
+
+        File xml = DivTester.writeXml(GRAPH_4_HYP_HOL_HELLO);
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setStaxImport(true);
+        ic.setBatchSize(3);
+        ic.setQueueDepth(1);
+        ic.addLexResFileUrl(xml.getAbsolutePath());
+        ic.setProgressListener(cancelAfterFirstBatch());
+
+        try {
+            div.importFiles(ic);
+            Assert.fail("Shouldn't arrive here!");
+        } catch (InterruptedImportException ex) {
+
+        }
+
+        List<ImportJob> jobs = div.getImportJobs();
+        assertEquals(1, jobs.size());
+        assertTrue(jobs.get(0)
+                       .getCheckpointElements() > 0);
+
+        ic.setProgressListener(null);
+        div.importFiles(ic);
+
+        checkDb(GRAPH_4_HYP_HOL_HELLO, div);
+        jobs = div.getImportJobs();
+        assertEquals(1, jobs.size());
+        assertEquals(0, jobs.get(0)
+                            .getCheckpointElements());
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * If a file whose StAX import was interrupted changed meanwhile,
+     * importing it again should validate it instead of resuming the old job.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportXmlStaxResumeChangedFile() throws IOException {
+
+        File xml = DivTester.writeXml(GRAPH_4_HYP_HOL_HELLO);
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setStaxImport(true);
+        ic.setBatchSize(3);
+        ic.setQueueDepth(1);
+        ic.addLexResFileUrl(xml.getAbsolutePath());
+        ic.setProgressListener(cancelAfterFirstBatch());
+
+        try {
+            div.importFiles(ic);
+            Assert.fail("Shouldn't arrive here!");
+        } catch (InterruptedImportException ex) {
+
+        }
+
+        List<ImportJob> jobs = div.getImportJobs();
+        assertEquals(1, jobs.size());
+        assertTrue(jobs.get(0)
+                       .getCheckpointElements() > 0);
+
+        // same url, invalid content
+        String str = FileUtils.readFileToString(xml, "UTF-8");
+        FileUtils.writeStringToFile(xml,
+                str.replace("\"" + tid("synset-2") + "\"", "\"bad_synset-2\""),
+                "UTF-8");
+
+        ic.setProgressListener(null);
+        try {
+            div.importFiles(ic);
+            Assert.fail("Shouldn't arrive here!");
+        } catch (InvalidImportException ex) {
+
+        }
+
+        jobs = div.getImportJobs();
+        assertEquals(1, jobs.size());
+        assertTrue(jobs.get(0)
+                       .getCheckpointElements() > 0);
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportDelta() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        DivTester.importResource(div, GRAPH_3_HYPERNYM, false);
+        assertTrue(div.isConnected(tid("synset-3"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setDelta(true);
+        ic.addLexResFileUrl(DivTester.writeXml(GRAPH_1_HYPERNYM)
+                                     .getAbsolutePath());
+        div.importFiles(ic);
+
+        checkDb(GRAPH_1_HYPERNYM, div);
+        // getSynsetById throws on missing ids, so we query directly
+        assertNull(div.getSession()
+                      .createCriteria(Synset.class)
+                      .add(Restrictions.eq("id", tid("synset-3")))
+                      .uniqueResult());
+        assertEquals(2, div.getImportJobs()
+                           .size());
+
+        ic.setFileUrls(newArrayList(DivTester.writeXml(GRAPH_3_HYPERNYM)
+                                             .getAbsolutePath()));
+        div.importFiles(ic);
+
+        checkDb(GRAPH_3_HYPERNYM, div);
+        checkDbClosure(lmf().lexicon()
+                            .synset()
+                            .lexicalEntry()
+                            .synset()
+                            .synset()
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                            .depth(2)
+                            .build(),
+                div);
+        assertTrue(div.isConnected(tid("synset-3"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * Closure edges recomputed by a delta import should be the same as the
+     * ones of a full graph processing, also for new synsets needing new
+     * integer keys.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportDeltaClosure() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        DivTester.importResource(div, GRAPH_3_HYPERNYM, false);
+
+        // synset-3 moves below new synset-4, new synset-5 goes below synset-3
+        LexicalResource lexRes2 = lmf().lexicon()
+                                       .synset()
+                                       .lexicalEntry()
+                                       .synset()
+                                       .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                       .synset()
+                                       .synsetRelation(ERelNameSemantics.HYPERNYM, 4)
+                                       .synset()
+                                       .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                       .synset()
+                                       .synsetRelation(ERelNameSemantics.HYPERNYM, 3)
+                                       .build();
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setDelta(true);
+        ic.addLexResFileUrl(DivTester.writeXml(lexRes2)
+                                     .getAbsolutePath());
+        div.importFiles(ic);
+
+        checkDb(lexRes2, div);
+
+        LexicalResource expectedClosure = lmf().lexicon()
+                                               .synset()
+                                               .lexicalEntry()
+                                               .synset()
+                                               .synset()
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                               .depth(2)
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                               .depth(3)
+                                               .synset()
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                               .depth(2)
+                                               .synset()
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 4)
+                                               .depth(2)
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                               .depth(3)
+                                               .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                               .depth(4)
+                                               .build();
+
+        checkDbClosure(expectedClosure, div);
+
+        // computing everything from scratch gives the same edges
+        div.processGraph();
+        checkDbClosure(expectedClosure, div);
+        assertTrue(div.isConnected(tid("synset-5"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * A delta import with a different closure max depth should compute the
+     * closure of the whole graph again, not only of touched synsets.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportDeltaClosureSettingsChanged() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        // 4 synsets in a hypernym chain
+        LexicalResource chain = lmf().lexicon()
+                                     .synset()
+                                     .lexicalEntry()
+                                     .synset()
+                                     .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                     .synset()
+                                     .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                     .synset()
+                                     .synsetRelation(ERelNameSemantics.HYPERNYM, 3)
+                                     .build();
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setClosureMaxDepth(2);
+        ic.addLexResFileUrl(DivTester.writeXml(chain)
+                                     .getAbsolutePath());
+        div.importFiles(ic);
+
+        assertEquals(2, div.getDbInfo()
+                           .getClosureMaxDepth());
+        checkDbClosure(lmf().lexicon()
+                            .synset()
+                            .lexicalEntry()
+                            .synset()
+                            .synset()
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                            .depth(2)
+                            .synset()
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                            .depth(2)
+                            .build(),
+                div);
+
+        // only a new synset-5 is touched, the chain stays the same
+        LexicalResource chain2 = lmf().lexicon()
+                                      .synset()
+                                      .lexicalEntry()
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                                      .synset()
+                                      .synsetRelation(ERelNameSemantics.HYPERNYM, 3)
+                                      .synset()
+                                      .build();
+
+        ImportConfig deltaConfig = new ImportConfig();
+        deltaConfig.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        deltaConfig.setDelta(true);
+        deltaConfig.setClosureMaxDepth(-1);
+        deltaConfig.addLexResFileUrl(DivTester.writeXml(chain2)
+                                              .getAbsolutePath());
+        div.importFiles(deltaConfig);
+
+        checkDb(chain2, div);
+        assertEquals(-1, div.getDbInfo()
+                            .getClosureMaxDepth());
+        // depth 3 edge of untouched synsets must be there too
+        checkDbClosure(lmf().lexicon()
+                            .synset()
+                            .lexicalEntry()
+                            .synset()
+                            .synset()
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                            .depth(2)
+                            .synset()
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 2)
+                            .depth(2)
+                            .synsetRelation(ERelNameSemantics.HYPERNYM, 1)
+                            .depth(3)
+                            .synset()
+                            .build(),
+                div);
+        assertTrue(div.isConnected(tid("synset-4"), tid("synset-1"), -1, ERelNameSemantics.HYPERNYM));
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * Validation outcomes of streams which are spooled, like compressed
+     * files, should be cached by the hash of their uncompressed content.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportValidationCacheCompressed() throws IOException {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        File xml = DivTester.writeXml(GRAPH_1_HYPERNYM);
+        File gz = new File(xml.getParentFile(), xml.getName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            FileUtils.copyFile(xml, out);
+        }
+        String expectedHash = Internals.sha256Hex(FileUtils.readFileToByteArray(xml));
+
+        File cacheDir = DivTester.createTestDir()
+                                 .toFile();
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setDryRun(true);
+        ic.setValidationCacheDir(cacheDir);
+        ic.addLexResFileUrl(gz.getAbsolutePath());
+
+        ImportJob job = div.importFiles(ic)
+                           .get(0);
+        assertEquals(expectedHash, job.getContentHash());
+        String[] outcomes = cacheDir.list();
+        assertEquals(1, outcomes.length);
+
+        ImportJob job2 = div.importFiles(ic)
+                            .get(0);
+        assertEquals(expectedHash, job2.getContentHash());
+        assertEquals(newHashSet(outcomes), newHashSet(cacheDir.list()));
+
+        div.getSession()
+           .close();
+    }
+
     /**
      * We should be able to import Smartphones and compute transitive closure 
      * even without Wordnet loaded, by using the {@code force} flag. 
@@ -1041,6 +1750,39 @@ public class DiversiconTest {
         
     }    
     
+    /**
+     * Files fetched and validated concurrently should all be imported.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportFilesThreads() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setForce(true); // otherwise it will complain there is no wordnet in the db
+        ic.setThreads(2);
+        ic.addLexResFileUrl(Smartphones.of()
+                                       .getXmlUri());
+        ic.addLexResFileUrl(Examplicon.of()
+                                      .getXmlUri());
+
+        List<ImportJob> jobs = div.importFiles(ic);
+
+        assertEquals(2, jobs.size());
+        assertNotNull(div.getLexicalResource(Smartphones.NAME));
+        assertNotNull(div.getLexicalResource(Examplicon.NAME));
+        assertTrue(jobs.get(0)
+                       .getPhaseTime(ImportPhase.SCHEMA_VALIDATION) >= 0);
+
+        div.getSession()
+           .close();
+    }
+
     /**
      * We should be able to import Smartphones and Examplicon and compute transitive closure 
      * even without Wordnet loaded, by using the {@code force} flag. 
@@ -1248,6 +1990,44 @@ public class DiversiconTest {
 
     }
 
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportJobStats() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        File xml = DivTester.writeXml(GRAPH_1_HYPERNYM);
+
+        ImportJob job = div.importXml(xml.getAbsolutePath());
+
+        for (ImportPhase phase : ImportPhase.values()) {
+            if (phase == ImportPhase.STRUCTURAL_VALIDATION
+                    || phase == ImportPhase.INTERNAL_VALIDATION) {
+                // done while validating XML Schema
+                assertEquals(phase.name(), -1, job.getPhaseTime(phase));
+            } else {
+                assertTrue(phase.name(), job.getPhaseTime(phase) >= 0);
+            }
+        }
+        assertEquals(Long.valueOf(2), job.getEntityCounts()
+                                         .get("Synset"));
+        assertTrue(job.getPeakHeap() > 0);
+
+        ImportJob dbJob = div.getImportJob(job.getId());
+        assertEquals(job.getPhaseTimes(), dbJob.getPhaseTimes());
+
+        String output = div.formatImportJob(job, false);
+        LOG.debug("\n\n" + output);
+        assertTrue(output.contains(ImportPhase.WRITE.getDescr()));
+
+        div.getSession()
+           .close();
+    }
+
     /**
      * Test for https://github.com/diversicon-kb/diversicon/issues/8
      * See also {@link UbyTest#testCantMergeSameLexicon()}
@@ -1276,6 +2056,59 @@ public class DiversiconTest {
     }
 
 
+    /**
+     * Imports a resource referring twice to a synset missing from the db,
+     * each reference should be reported.
+     * 
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportMissingExternalRefs() {
+
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        DivTester.importResource(div, GRAPH_1_HYPERNYM, false);
+
+        String prefix2 = "test2";
+
+        LexicalResource lexRes2 = lmf(prefix2).lexicon()
+                                              .synset()
+                                              .synsetRelation(ERelNameSemantics.HYPERNYM, "test_synset-2")
+                                              .synset()
+                                              .synsetRelation(ERelNameSemantics.HYPERNYM, "test_synset-9")
+                                              .synset()
+                                              .synsetRelation(ERelNameSemantics.HYPERNYM, "test_synset-9")
+                                              .lexicalEntry()
+                                              .build();
+        LexResPackage pack2 = DivTester.createLexResPackage(lexRes2, prefix2);
+        // refers to the first resource
+        pack2.putNamespace(DivTester.DEFAULT_TEST_PREFIX, DivTester.createLexResPackage(GRAPH_1_HYPERNYM)
+                                                                   .getNamespaces()
+                                                                   .get(DivTester.DEFAULT_TEST_PREFIX));
+
+        // external refs are only collected and checked when importing files
+        File xml2 = DivTester.writeXml(lexRes2, pack2);
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setSkipAugment(true);
+        ic.addLexResFileUrl(xml2.getAbsolutePath());
+
+        try {
+            div.importFiles(ic);
+            Assert.fail("Shouldn't arrive here!");
+        } catch (InvalidImportException ex) {
+            DivXmlHandler handler = ex.getValidator()
+                                      .getErrorHandler();
+            assertEquals(2, handler.getWarningCount());
+            assertEquals(2, handler.getIssueCount(DivValidationError.MISSING_EXTERNAL_ID));
+        } finally {
+            div.getSession()
+               .close();
+        }
+    }
+
     /**
      * @since 0.1.0
      */
@@ -1768,8 +2601,176 @@ public class DiversiconTest {
 
         assertEquals(1, div.getImportJobs().size());
         assertEquals(null, div.getLexicalResource(res.getName()));
-        
+
     }
-    
-    
+
+    /**
+     * Many files in a dry run are written into an in-memory shadow db,
+     * leaving the target db untouched.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportDryRunManyFiles() {
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setForce(true); // otherwise it will complain there is no wordnet in the db
+        ic.setDryRun(true);
+        ic.addLexResFileUrl(Smartphones.of()
+                                       .getXmlUri());
+        ic.addLexResFileUrl(Examplicon.of()
+                                      .getXmlUri());
+
+        List<ImportJob> jobs = div.importFiles(ic);
+
+        assertEquals(2, jobs.size());
+        assertTrue(ic.isDryRun());
+        assertEquals(null, div.getLexicalResource(Smartphones.NAME));
+        assertEquals(null, div.getLexicalResource(Examplicon.NAME));
+        assertEquals(0, div.getImportJobs()
+                           .size());
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * In a dry run of many files, a file referring to an earlier one should
+     * be validated against it, even without force flag.
+     *
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportDryRunDependentFiles() {
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        String prefix2 = "test2";
+
+        LexicalResource lexRes2 = lmf(prefix2).lexicon()
+                                              .synset()
+                                              .synsetRelation(ERelNameSemantics.HYPERNYM, tid("synset-2"))
+                                              .lexicalEntry()
+                                              .build();
+        LexResPackage pack2 = DivTester.createLexResPackage(lexRes2, prefix2);
+        // refers to the first resource
+        pack2.putNamespace(DivTester.DEFAULT_TEST_PREFIX, DivTester.createLexResPackage(GRAPH_1_HYPERNYM)
+                                                                   .getNamespaces()
+                                                                   .get(DivTester.DEFAULT_TEST_PREFIX));
+
+        ImportConfig ic = new ImportConfig();
+        ic.setAuthor(Diversicons.DEFAULT_AUTHOR);
+        ic.setDryRun(true);
+        ic.addLexResFileUrl(DivTester.writeXml(GRAPH_1_HYPERNYM)
+                                     .getAbsolutePath());
+        ic.addLexResFileUrl(DivTester.writeXml(lexRes2, pack2)
+                                     .getAbsolutePath());
+
+        List<ImportJob> jobs = div.importFiles(ic);
+
+        assertEquals(2, jobs.size());
+        assertFalse(ic.isForce());
+        assertEquals(null, div.getLexicalResource(GRAPH_1_HYPERNYM.getName()));
+        assertEquals(null, div.getLexicalResource(lexRes2.getName()));
+        assertEquals(0, div.getImportJobs()
+                           .size());
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    private static class RecordingListener implements ProgressListener {
+
+        private List<Progress> progresses = new ArrayList<>();
+        private boolean cancelled;
+
+        RecordingListener(boolean cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public synchronized void onProgress(Progress progress) {
+            progresses.add(progress);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized Set<ImportPhase> phases() {
+            Set<ImportPhase> ret = new HashSet<>();
+            for (Progress progress : progresses) {
+                ret.add(progress.getPhase());
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportProgressListener() {
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        File xml = DivTester.writeXml(DivTester.GRAPH_1_HYPERNYM);
+
+        RecordingListener listener = new RecordingListener(false);
+
+        ImportConfig importConfig = new ImportConfig()
+                                                      .addLexResFileUrl(xml.getAbsolutePath())
+                                                      .setAuthor(Diversicons.DEFAULT_AUTHOR)
+                                                      .setProgressListener(listener);
+
+        div.importFiles(importConfig);
+
+        assertEquals(newHashSet(ImportPhase.WRITE, ImportPhase.NORMALIZATION, ImportPhase.CLOSURE),
+                listener.phases());
+        Progress last = listener.progresses.get(listener.progresses.size() - 1);
+        assertEquals(ImportPhase.CLOSURE, last.getPhase());
+        assertEquals(-1, last.getTotal());
+
+        div.getSession()
+           .close();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Test
+    public void testImportCancelled() {
+        Diversicons.dropCreateTables(divConfig.getDbConfig());
+
+        Diversicon div = Diversicon.connectToDb(divConfig);
+
+        File xml = DivTester.writeXml(DivTester.GRAPH_1_HYPERNYM);
+
+        ImportConfig importConfig = new ImportConfig()
+                                                      .addLexResFileUrl(xml.getAbsolutePath())
+                                                      .setAuthor(Diversicons.DEFAULT_AUTHOR)
+                                                      .setProgressListener(new RecordingListener(true));
+        try {
+            div.importFiles(importConfig);
+            Assert.fail("Shouldn't arrive here!");
+        } catch (CancelledOperationException ex) {
+
+        }
+
+        assertEquals(null, div.getLexicalResource(GRAPH_1_HYPERNYM.getName()));
+
+        div.getSession()
+           .close();
+    }
+
 }